@@ -4,16 +4,24 @@ import android.app.Application;
 import android.content.*;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.Bundle;
 import android.os.RemoteException;
 import za.co.cporm.model.generate.TableDetails;
 import za.co.cporm.model.query.Select;
 import za.co.cporm.model.util.*;
+import za.co.cporm.provider.CPOrmContentProvider;
+import za.co.cporm.provider.CPOrmDirectExecutor;
+import za.co.cporm.provider.util.BlobStore;
 import za.co.cporm.provider.util.UriMatcherHelper;
+import za.co.cporm.util.CPOrmMetrics;
+import za.co.cporm.util.CPOrmMetricsRegistry;
 
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 /**
  * Contains helper methods that will query contents on the Content Provider
@@ -25,6 +33,9 @@ public class CPOrm {
 
     private static Context applicationContext;
     private static TableDetailsCache tableDetailsCache;
+    private static QueryResultCache queryResultCache;
+    private static volatile boolean directExecutionEnabled = false;
+    private static volatile GroupCommitWriter groupCommitWriter;
 
     public enum ChangeType {
         INSERT,
@@ -56,6 +67,134 @@ public class CPOrm {
         return applicationContext;
     }
 
+    /**
+     * @see #enableQueryCache(int, int)
+     */
+    public static void enableQueryCache() {
+
+        enableQueryCache(QueryResultCache.DEFAULT_MAX_CACHED_ROWS, QueryResultCache.DEFAULT_MAX_ROWS_PER_ENTRY);
+    }
+
+    /**
+     * Enables the query result cache.  Only selects that are marked with {@link Select#cached()} will store their results
+     * in the cache, and those results are evicted as soon as any of the tables the select reads from are changed.
+     * Requires that {@link #initialize(Application)} has been called.
+     *
+     * @param maxCachedRows   The maximum amount of rows that will be kept in the cache over all of the cached queries.
+     * @param maxRowsPerEntry Query results containing more rows than this will not be cached.
+     */
+    public static synchronized void enableQueryCache(int maxCachedRows, int maxRowsPerEntry) {
+
+        disableQueryCache();
+        queryResultCache = new QueryResultCache(getApplicationContext(), maxCachedRows, maxRowsPerEntry);
+    }
+
+    /**
+     * Clears and disables the query result cache.
+     */
+    public static synchronized void disableQueryCache() {
+
+        if (queryResultCache != null) {
+            queryResultCache.clear();
+            queryResultCache = null;
+        }
+    }
+
+    /**
+     * @return The query result cache if it is enabled, null otherwise.
+     */
+    public static synchronized QueryResultCache getQueryResultCache() {
+
+        return queryResultCache;
+    }
+
+    /**
+     * Evicts the cached query results of the table, and of the views that are notified of its changes.  Results are also
+     * evicted once the change notification is delivered, but that happens asynchronously, so a select right after a
+     * write could otherwise still return the result cached before the write.
+     */
+    public static void invalidateQueryCache(Context context, TableDetails tableDetails) {
+
+        QueryResultCache resultCache = getQueryResultCache();
+        if (resultCache == null)
+            return;
+
+        resultCache.invalidate(UriMatcherHelper.generateItemUri(context, tableDetails).build());
+        for (Class<?> changeListener : tableDetails.getChangeListeners()) {
+
+            resultCache.invalidate(UriMatcherHelper.generateItemUri(context, findTableDetails(context, changeListener)).build());
+        }
+    }
+
+    /**
+     * Evicts all of the cached query results, for writes that can change any of the tables.
+     */
+    public static void invalidateQueryCache() {
+
+        QueryResultCache resultCache = getQueryResultCache();
+        if (resultCache != null)
+            resultCache.invalidateAll();
+    }
+
+    /**
+     * Enables direct execution.  If the content provider is running in the same process, all of the operations performed by this
+     * class and by {@link Select} are executed directly on the provider's database, bypassing the content resolver.  Point writes are
+     * executed using compiled statements.  Change notifications are sent exactly as they would have been through the content resolver.
+     * If the content provider is running in a different process, the content resolver is still used.
+     */
+    public static void enableDirectExecution() {
+
+        directExecutionEnabled = true;
+    }
+
+    /**
+     * Disables direct execution, all operations will be executed through the content resolver.
+     */
+    public static void disableDirectExecution() {
+
+        directExecutionEnabled = false;
+    }
+
+    /**
+     * @see #enableGroupCommit(long, int)
+     */
+    public static void enableGroupCommit() {
+
+        enableGroupCommit(GroupCommitWriter.DEFAULT_WINDOW_MILLIS, GroupCommitWriter.DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    /**
+     * Enables group commit for {@link #insertAsync(Context, Object, CPOrmCallback)}, {@link #updateAsync(Context, Object, CPOrmCallback)}
+     * and {@link #deleteAsync(Context, Object, CPOrmCallback)}.  Instead of committing every write in its own transaction,
+     * the writes that arrive within the commit window are committed together in a single transaction, which greatly improves
+     * the throughput of bursts of small writes from many threads.  Requires that {@link #initialize(Application)} has been called.
+     *
+     * @param windowMillis The time to wait for more writes once the first write of a batch arrived.
+     * @param maxBatchSize The maximum amount of writes committed in a single transaction.
+     */
+    public static void enableGroupCommit(long windowMillis, int maxBatchSize) {
+
+        groupCommitWriter = new GroupCommitWriter(getApplicationContext(), windowMillis, maxBatchSize);
+    }
+
+    /**
+     * Disables group commit, writes that are already queued are still committed.
+     */
+    public static void disableGroupCommit() {
+
+        groupCommitWriter = null;
+    }
+
+    /**
+     * Finds the executor that can be used to execute operations directly on the provider's database.
+     *
+     * @return The direct executor, or null if direct execution is disabled or the content provider is not local.
+     */
+    public static CPOrmDirectExecutor findDirectExecutor(Context context, TableDetails tableDetails) {
+
+        return directExecutionEnabled ? CPOrmDirectExecutor.find(context, tableDetails.getAuthority()) : null;
+    }
+
     public static <T> long countAll(Class<T> dataModel) {
 
         return countAll(getApplicationContext(), dataModel);
@@ -75,8 +214,7 @@ public class CPOrm {
 
         TableDetails tableDetails = findTableDetails(context, dataModel);
         Uri itemUri = UriMatcherHelper.generateItemUri(context, tableDetails).build();
-        ContentResolver contentResolver = context.getContentResolver();
-        Cursor cursor = contentResolver.query(itemUri, null, null, null, null);
+        Cursor cursor = executeQuery(context, tableDetails, itemUri, null);
 
         return new CursorIterator<T>(tableDetails, cursor);
     }
@@ -103,11 +241,27 @@ public class CPOrm {
 
     public static <T> int insertAll(Context context, List<T> dataModelObjects) {
 
+        return insertAll(context, dataModelObjects, ConflictStrategy.ABORT);
+    }
+
+    public static <T> int insertAll(List<T> dataModelObjects, ConflictStrategy conflictStrategy) {
+
+        return insertAll(getApplicationContext(), dataModelObjects, conflictStrategy);
+    }
+
+    /**
+     * Bulk inserts the objects, resolving conflicts with existing rows using the conflict strategy.
+     *
+     * @return The amount of rows processed.
+     */
+    public static <T> int insertAll(Context context, List<T> dataModelObjects, ConflictStrategy conflictStrategy) {
+
         if (dataModelObjects == null || dataModelObjects.isEmpty())
             return 0;
 
+        long start = CPOrmMetricsRegistry.start();
         TableDetails tableDetails = findTableDetails(context, dataModelObjects.get(0).getClass());
-        Uri insertUri = UriMatcherHelper.generateItemUri(context, tableDetails).build();
+        Uri insertUri = conflictStrategy.appendTo(UriMatcherHelper.generateItemUri(context, tableDetails)).build();
 
         ContentValues[] values = new ContentValues[dataModelObjects.size()];
         for (int i = 0; i < dataModelObjects.size(); i++) {
@@ -115,8 +269,20 @@ public class CPOrm {
             values[i] = ModelInflater.deflate(tableDetails, dataModelObjects.get(i));
         }
 
-        ContentResolver contentResolver = context.getContentResolver();
-        return contentResolver.bulkInsert(insertUri, values);
+        int insertCount;
+        CPOrmDirectExecutor directExecutor = findDirectExecutor(context, tableDetails);
+        try {
+            if (directExecutor != null)
+                insertCount = directExecutor.bulkInsert(insertUri, values);
+            else
+                insertCount = context.getContentResolver().bulkInsert(insertUri, values);
+        } finally {
+            //Bulk inserts yield their transaction, so rows can be committed even if the insert fails
+            invalidateQueryCache(context, tableDetails);
+        }
+
+        recordMetrics(CPOrmMetrics.Operation.BULK_INSERT, tableDetails, insertCount, start);
+        return insertCount;
     }
 
     public static <T> int insertAll(Context context, ContentProviderClient providerClient, List<T> dataModelObjects) throws RemoteException {
@@ -133,7 +299,11 @@ public class CPOrm {
             values[i] = ModelInflater.deflate(tableDetails, dataModelObjects.get(i));
         }
 
-        return providerClient.bulkInsert(insertUri, values);
+        try {
+            return providerClient.bulkInsert(insertUri, values);
+        } finally {
+            invalidateQueryCache(context, tableDetails);
+        }
     }
 
     public static <T> long insert(T dataModelObject) {
@@ -143,14 +313,26 @@ public class CPOrm {
 
     public static <T> long insert(Context context, T dataModelObject) {
 
+        return insert(context, dataModelObject, ConflictStrategy.ABORT);
+    }
+
+    public static <T> long insert(T dataModelObject, ConflictStrategy conflictStrategy) {
+
+        return insert(getApplicationContext(), dataModelObject, conflictStrategy);
+    }
+
+    /**
+     * Inserts the object, resolving a conflict with an existing row using the conflict strategy.
+     *
+     * @return The id of the inserted or updated row, or -1 if the row was ignored.
+     */
+    public static <T> long insert(Context context, T dataModelObject, ConflictStrategy conflictStrategy) {
+
         TableDetails tableDetails = findTableDetails(context, dataModelObject.getClass());
         ContentValues contentValues = ModelInflater.deflate(tableDetails, dataModelObject);
-        Uri insertUri = UriMatcherHelper.generateItemUri(context, tableDetails).build();
+        Uri insert = executeInsert(context, tableDetails, contentValues, conflictStrategy);
 
-        ContentResolver contentResolver = context.getContentResolver();
-        Uri insert = contentResolver.insert(insertUri, contentValues);
-
-        return ContentUris.parseId(insert);
+        return insert == null ? -1 : ContentUris.parseId(insert);
     }
 
     public static <T> T insertAndReturn(T dataModelObject) {
@@ -162,10 +344,7 @@ public class CPOrm {
 
         TableDetails tableDetails = findTableDetails(context, dataModelObject.getClass());
         ContentValues contentValues = ModelInflater.deflate(tableDetails, dataModelObject);
-        Uri insertUri = UriMatcherHelper.generateItemUri(context, tableDetails).build();
-
-        ContentResolver contentResolver = context.getContentResolver();
-        Uri itemUri = contentResolver.insert(insertUri, contentValues);
+        Uri itemUri = executeInsert(context, tableDetails, contentValues, ConflictStrategy.ABORT);
 
         return findSingleItem(context, itemUri, tableDetails);
     }
@@ -197,10 +376,31 @@ public class CPOrm {
         TableDetails tableDetails = findTableDetails(context, dataModelObject.getClass());
         ContentValues contentValues = ModelInflater.deflate(tableDetails, dataModelObject);
         Object columnValue = ModelInflater.deflateColumn(tableDetails, tableDetails.findPrimaryKeyColumn(), dataModelObject);
-        Uri itemUri = UriMatcherHelper.generateItemUri(context, tableDetails, String.valueOf(columnValue)).build();
 
-        ContentResolver contentResolver = context.getContentResolver();
-        contentResolver.update(itemUri, contentValues, null, null);
+        executeUpdate(context, tableDetails, String.valueOf(columnValue), contentValues);
+    }
+
+    public static <T> int updateAll(List<T> dataModelObjects) {
+
+        return updateAll(getApplicationContext(), dataModelObjects);
+    }
+
+    /**
+     * Updates all of the objects by primary key in a single transaction, observers of the table are notified once.
+     *
+     * @return The amount of rows updated.
+     */
+    public static <T> int updateAll(Context context, List<T> dataModelObjects) {
+
+        if (dataModelObjects == null || dataModelObjects.isEmpty())
+            return 0;
+
+        TableDetails tableDetails = findTableDetails(context, dataModelObjects.get(0).getClass());
+        Bundle extras = new Bundle();
+        extras.putParcelableArray(CPOrmContentProvider.EXTRA_VALUES, ModelInflater.deflateAll(tableDetails, dataModelObjects.toArray()));
+        extras.putStringArray(CPOrmContentProvider.EXTRA_PRIMARY_KEYS, deflatePrimaryKeys(tableDetails, dataModelObjects));
+
+        return executeCall(context, tableDetails, CPOrmContentProvider.METHOD_UPDATE_ALL, extras);
     }
 
     public static <T> void batchUpdate(Class<T> dataModelClass, ContentValues contentValues) {
@@ -213,8 +413,15 @@ public class CPOrm {
         TableDetails tableDetails = findTableDetails(context, dataModelClass);
         Uri itemUri = UriMatcherHelper.generateItemUri(context, tableDetails).build();
 
-        ContentResolver contentResolver = context.getContentResolver();
-        contentResolver.update(itemUri, contentValues, null, null);
+        CPOrmDirectExecutor directExecutor = findDirectExecutor(context, tableDetails);
+        if (directExecutor != null)
+            directExecutor.update(itemUri, contentValues, null, null);
+        else {
+            ContentResolver contentResolver = context.getContentResolver();
+            contentResolver.update(itemUri, contentValues, null, null);
+        }
+
+        invalidateQueryCache(context, tableDetails);
     }
 
     public static <T> void updateColumns(T dataModelObject, String... columns) {
@@ -227,7 +434,6 @@ public class CPOrm {
         TableDetails tableDetails = findTableDetails(context, dataModelObject.getClass());
         ContentValues contentValues = ModelInflater.deflate(tableDetails, dataModelObject);
         Object columnValue = ModelInflater.deflateColumn(tableDetails, tableDetails.findPrimaryKeyColumn(), dataModelObject);
-        Uri itemUri = UriMatcherHelper.generateItemUri(context, tableDetails, String.valueOf(columnValue)).build();
 
         for (String contentColumn : tableDetails.getColumnNames()) {
 
@@ -243,8 +449,7 @@ public class CPOrm {
                 contentValues.remove(contentColumn);
         }
 
-        ContentResolver contentResolver = context.getContentResolver();
-        contentResolver.update(itemUri, contentValues, null, null);
+        executeUpdate(context, tableDetails, String.valueOf(columnValue), contentValues);
     }
 
     public static <T> void updateColumnsExcluding(T dataModelObject, String... columnsToExclude) {
@@ -257,15 +462,13 @@ public class CPOrm {
         TableDetails tableDetails = findTableDetails(context, dataModelObject.getClass());
         ContentValues contentValues = ModelInflater.deflate(tableDetails, dataModelObject);
         Object columnValue = ModelInflater.deflateColumn(tableDetails, tableDetails.findPrimaryKeyColumn(), dataModelObject);
-        Uri itemUri = UriMatcherHelper.generateItemUri(context, tableDetails, String.valueOf(columnValue)).build();
 
         for (String columnToExclude : columnsToExclude) {
 
             contentValues.remove(columnToExclude);
         }
 
-        ContentResolver contentResolver = context.getContentResolver();
-        contentResolver.update(itemUri, contentValues, null, null);
+        executeUpdate(context, tableDetails, String.valueOf(columnValue), contentValues);
     }
 
     public static <T> ContentProviderOperation prepareUpdate(T dataModelObject) {
@@ -293,12 +496,22 @@ public class CPOrm {
 
     public static <T> void delete(Context context, T dataModelObject) {
 
+        long start = CPOrmMetricsRegistry.start();
         TableDetails tableDetails = findTableDetails(context, dataModelObject.getClass());
         Object columnValue = ModelInflater.deflateColumn(tableDetails, tableDetails.findPrimaryKeyColumn(), dataModelObject);
-        Uri itemUri = UriMatcherHelper.generateItemUri(context, tableDetails, String.valueOf(columnValue)).build();
+        String primaryKey = String.valueOf(columnValue);
+
+        int deleteCount;
+        CPOrmDirectExecutor directExecutor = findDirectExecutor(context, tableDetails);
+        if (directExecutor != null)
+            deleteCount = directExecutor.delete(tableDetails, primaryKey);
+        else {
+            Uri itemUri = UriMatcherHelper.generateItemUri(context, tableDetails, primaryKey).build();
+            deleteCount = context.getContentResolver().delete(itemUri, null, null);
+        }
 
-        ContentResolver contentResolver = context.getContentResolver();
-        contentResolver.delete(itemUri, null, null);
+        invalidateQueryCache(context, tableDetails);
+        recordMetrics(CPOrmMetrics.Operation.DELETE, tableDetails, deleteCount, start);
     }
 
     public static <T> void delete(Select<T> select) {
@@ -308,10 +521,18 @@ public class CPOrm {
 
     public static <T> void delete(Context context, Select<T> select) {
 
+        long start = CPOrmMetricsRegistry.start();
         ContentResolverValues contentResolverValues = select.asContentResolverValue(context);
 
-        ContentResolver contentResolver = context.getContentResolver();
-        contentResolver.delete(contentResolverValues.getItemUri(), contentResolverValues.getWhere(), contentResolverValues.getWhereArgs());
+        int deleteCount;
+        CPOrmDirectExecutor directExecutor = findDirectExecutor(context, contentResolverValues.getTableDetails());
+        if (directExecutor != null)
+            deleteCount = directExecutor.delete(contentResolverValues.getItemUri(), contentResolverValues.getWhere(), contentResolverValues.getWhereArgs());
+        else
+            deleteCount = context.getContentResolver().delete(contentResolverValues.getItemUri(), contentResolverValues.getWhere(), contentResolverValues.getWhereArgs());
+
+        invalidateQueryCache(context, contentResolverValues.getTableDetails());
+        recordMetrics(CPOrmMetrics.Operation.DELETE, contentResolverValues.getTableDetails(), deleteCount, start);
     }
 
     public static <T> ContentProviderOperation prepareDelete(T dataModelObject) {
@@ -349,13 +570,306 @@ public class CPOrm {
         deleteAll(getApplicationContext(), dataModel);
     }
 
+    public static <T> int deleteAll(List<T> dataModelObjects) {
+
+        return deleteAll(getApplicationContext(), dataModelObjects);
+    }
+
+    /**
+     * Deletes all of the objects by primary key in a single transaction, observers of the table are notified once.
+     *
+     * @return The amount of rows deleted.
+     */
+    public static <T> int deleteAll(Context context, List<T> dataModelObjects) {
+
+        if (dataModelObjects == null || dataModelObjects.isEmpty())
+            return 0;
+
+        TableDetails tableDetails = findTableDetails(context, dataModelObjects.get(0).getClass());
+        Bundle extras = new Bundle();
+        extras.putStringArray(CPOrmContentProvider.EXTRA_PRIMARY_KEYS, deflatePrimaryKeys(tableDetails, dataModelObjects));
+
+        return executeCall(context, tableDetails, CPOrmContentProvider.METHOD_DELETE_ALL, extras);
+    }
+
     public static <T> void deleteAll(Context context, Class<T> dataModel) {
 
+        long start = CPOrmMetricsRegistry.start();
         TableDetails tableDetails = findTableDetails(context, dataModel);
         Uri itemUri = UriMatcherHelper.generateItemUri(context, tableDetails).build();
 
-        ContentResolver contentResolver = context.getContentResolver();
-        contentResolver.delete(itemUri, null, null);
+        int deleteCount;
+        CPOrmDirectExecutor directExecutor = findDirectExecutor(context, tableDetails);
+        if (directExecutor != null)
+            deleteCount = directExecutor.delete(itemUri, null, null);
+        else
+            deleteCount = context.getContentResolver().delete(itemUri, null, null);
+
+        invalidateQueryCache(context, tableDetails);
+        recordMetrics(CPOrmMetrics.Operation.DELETE, tableDetails, deleteCount, start);
+    }
+
+    /**
+     * @see #applyTuningProfile(Context, CPOrmTuningProfile)
+     */
+    public static void applyTuningProfile(CPOrmTuningProfile tuningProfile) {
+
+        applyTuningProfile(getApplicationContext(), tuningProfile);
+    }
+
+    /**
+     * Applies the tuning profile to the database at runtime, for instance {@link CPOrmTuningProfile#BULK_IMPORT} before
+     * a large import.  Call {@link #restoreTuningProfile(Context)} once the import completed.
+     */
+    public static void applyTuningProfile(Context context, CPOrmTuningProfile tuningProfile) {
+
+        callProvider(context, CPOrmContentProvider.METHOD_APPLY_TUNING_PROFILE, null, tuningProfile.toBundle());
+    }
+
+    public static void restoreTuningProfile() {
+
+        restoreTuningProfile(getApplicationContext());
+    }
+
+    /**
+     * Restores the pragma values the database was opened with, that is the tuning profile of the {@link CPOrmConfiguration}
+     * (see {@link CPOrmTuningProvider}) and the SQLite defaults of every setting it does not specify.
+     */
+    public static void restoreTuningProfile(Context context) {
+
+        callProvider(context, CPOrmContentProvider.METHOD_APPLY_TUNING_PROFILE, null, null);
+    }
+
+    /**
+     * @see #getSlowQueryReport(Context, int)
+     */
+    public static String getSlowQueryReport(int topCount) {
+
+        return getSlowQueryReport(getApplicationContext(), topCount);
+    }
+
+    /**
+     * Returns the report of the content provider's slow query log, which is enabled by setting the
+     * {@link ManifestHelper#METADATA_SLOW_QUERY_THRESHOLD_MILLIS} meta data.
+     *
+     * @param topCount The amount of query fingerprints to include, ordered by the total time spent on them.
+     * @return The report, or null if the content provider did not return one.
+     */
+    public static String getSlowQueryReport(Context context, int topCount) {
+
+        Bundle result = callProvider(context, CPOrmContentProvider.METHOD_GET_SLOW_QUERY_REPORT, String.valueOf(topCount), null);
+        return result == null ? null : result.getString(CPOrmContentProvider.EXTRA_REPORT);
+    }
+
+    /**
+     * @see #archive(Context)
+     */
+    public static int archive() {
+
+        return archive(getApplicationContext());
+    }
+
+    /**
+     * Moves the rows of the tables annotated with {@link za.co.cporm.model.annotation.Archive} that are older than the
+     * maximum age of the table into the archive database.  This should be scheduled periodically, for instance once a day
+     * while the device is idle, and not while bulk writes like a sync are running, since both need the write lock of the
+     * database.  See {@link CPOrmArchive#archive(za.co.cporm.model.generate.TableDetails, long)}.
+     *
+     * @return The amount of rows that were archived.
+     */
+    public static int archive(Context context) {
+
+        Bundle result = callProvider(context, CPOrmContentProvider.METHOD_ARCHIVE, null, null);
+        invalidateQueryCache();
+        return result == null ? 0 : result.getInt(CPOrmContentProvider.EXTRA_COUNT);
+    }
+
+    /**
+     * @see #deleteUnusedBlobs(Context, long)
+     */
+    public static int deleteUnusedBlobs() {
+
+        return deleteUnusedBlobs(getApplicationContext());
+    }
+
+    /**
+     * @see #deleteUnusedBlobs(Context, long)
+     */
+    public static int deleteUnusedBlobs(Context context) {
+
+        return deleteUnusedBlobs(context, BlobStore.DEFAULT_MIN_UNUSED_AGE_MILLIS);
+    }
+
+    /**
+     * Deletes the content of the {@link CPOrmBlob} instances that are no longer referenced by any row.  Blob content is
+     * not deleted with the row that references it, so this should be scheduled periodically, for instance together with
+     * {@link #archive(Context)}.
+     *
+     * @param minAgeMillis Blobs that were written more recently are kept, so that blobs that are written before the row
+     *                     referencing them is inserted are not deleted.
+     * @return The amount of blobs that were deleted.
+     */
+    public static int deleteUnusedBlobs(Context context, long minAgeMillis) {
+
+        Bundle result = callProvider(context, CPOrmContentProvider.METHOD_DELETE_UNUSED_BLOBS, String.valueOf(minAgeMillis), null);
+        return result == null ? 0 : result.getInt(CPOrmContentProvider.EXTRA_COUNT);
+    }
+
+    /**
+     * @see #observeChanges(Context, ChangeSetListener, Class[])
+     */
+    public static ChangeSetObserver observeChanges(ChangeSetListener listener, Class<?>... dataModels) {
+
+        return observeChanges(getApplicationContext(), listener, dataModels);
+    }
+
+    /**
+     * Observes the tables of the data models, the listener receives the change sets committed to the tables from now on.
+     *
+     * @return The observer, stop the observer once the changes are no longer required.
+     */
+    public static ChangeSetObserver observeChanges(Context context, ChangeSetListener listener, Class<?>... dataModels) {
+
+        ChangeSetObserver observer = new ChangeSetObserver(context, listener, dataModels);
+        observer.start();
+        return observer;
+    }
+
+    /**
+     * @see #insertAsync(Context, Object, CPOrmCallback)
+     */
+    public static <T> Future<Long> insertAsync(T dataModelObject) {
+
+        return insertAsync(getApplicationContext(), dataModelObject, null);
+    }
+
+    /**
+     * Inserts the object on the shared write executor, as part of a group commit if it is enabled.
+     *
+     * @param callback Optional callback that will receive the inserted id on the main thread
+     * @return The future containing the inserted id
+     * @see #enableGroupCommit(long, int)
+     */
+    public static <T> Future<Long> insertAsync(final Context context, final T dataModelObject, CPOrmCallback<Long> callback) {
+
+        GroupCommitWriter writer = groupCommitWriter;
+        if (writer != null)
+            return writer.insert(prepareInsert(context, dataModelObject), callback);
+
+        return CPOrmExecutors.submit(CPOrmExecutors.getWriteExecutor(), new Callable<Long>() {
+            @Override
+            public Long call() throws Exception {
+                return insert(context, dataModelObject);
+            }
+        }, callback);
+    }
+
+    /**
+     * @see #insertAllAsync(Context, List, CPOrmCallback)
+     */
+    public static <T> Future<Integer> insertAllAsync(List<T> dataModelObjects) {
+
+        return insertAllAsync(getApplicationContext(), dataModelObjects, null);
+    }
+
+    /**
+     * Bulk inserts the objects on the shared write executor.
+     *
+     * @param callback Optional callback that will receive the inserted row count on the main thread
+     * @return The future containing the inserted row count
+     */
+    public static <T> Future<Integer> insertAllAsync(final Context context, final List<T> dataModelObjects, CPOrmCallback<Integer> callback) {
+
+        return CPOrmExecutors.submit(CPOrmExecutors.getWriteExecutor(), new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                return insertAll(context, dataModelObjects);
+            }
+        }, callback);
+    }
+
+    /**
+     * @see #updateAsync(Context, Object, CPOrmCallback)
+     */
+    public static <T> Future<Void> updateAsync(T dataModelObject) {
+
+        return updateAsync(getApplicationContext(), dataModelObject, null);
+    }
+
+    /**
+     * Updates the object on the shared write executor, as part of a group commit if it is enabled.
+     *
+     * @param callback Optional callback that will be notified on the main thread once the update completed
+     * @return The future that completes once the update is done
+     * @see #enableGroupCommit(long, int)
+     */
+    public static <T> Future<Void> updateAsync(final Context context, final T dataModelObject, CPOrmCallback<Void> callback) {
+
+        GroupCommitWriter writer = groupCommitWriter;
+        if (writer != null)
+            return writer.execute(prepareGroupCommitUpdate(context, dataModelObject), callback);
+
+        return CPOrmExecutors.submit(CPOrmExecutors.getWriteExecutor(), new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                update(context, dataModelObject);
+                return null;
+            }
+        }, callback);
+    }
+
+    /**
+     * @see #deleteAsync(Context, Object, CPOrmCallback)
+     */
+    public static <T> Future<Void> deleteAsync(T dataModelObject) {
+
+        return deleteAsync(getApplicationContext(), dataModelObject, null);
+    }
+
+    /**
+     * Deletes the object on the shared write executor, as part of a group commit if it is enabled.
+     *
+     * @param callback Optional callback that will be notified on the main thread once the delete completed
+     * @return The future that completes once the delete is done
+     * @see #enableGroupCommit(long, int)
+     */
+    public static <T> Future<Void> deleteAsync(final Context context, final T dataModelObject, CPOrmCallback<Void> callback) {
+
+        GroupCommitWriter writer = groupCommitWriter;
+        if (writer != null)
+            return writer.execute(prepareGroupCommitDelete(context, dataModelObject), callback);
+
+        return CPOrmExecutors.submit(CPOrmExecutors.getWriteExecutor(), new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                delete(context, dataModelObject);
+                return null;
+            }
+        }, callback);
+    }
+
+    /**
+     * @see #applyPreparedOperationsAsync(Context, Collection, CPOrmCallback)
+     */
+    public static Future<ContentProviderResult[]> applyPreparedOperationsAsync(Collection<ContentProviderOperation> operations) {
+
+        return applyPreparedOperationsAsync(getApplicationContext(), operations, null);
+    }
+
+    /**
+     * Applies the operations as a batch on the shared write executor.
+     *
+     * @param callback Optional callback that will receive the results on the main thread
+     * @return The future containing the operation results
+     */
+    public static Future<ContentProviderResult[]> applyPreparedOperationsAsync(final Context context, final Collection<ContentProviderOperation> operations, CPOrmCallback<ContentProviderResult[]> callback) {
+
+        return CPOrmExecutors.submit(CPOrmExecutors.getWriteExecutor(), new Callable<ContentProviderResult[]>() {
+            @Override
+            public ContentProviderResult[] call() throws Exception {
+                return applyPreparedOperations(context, operations);
+            }
+        }, callback);
     }
 
     public static ContentProviderResult[] applyPreparedOperations(Collection<ContentProviderOperation> operations) throws RemoteException, OperationApplicationException {
@@ -365,9 +879,19 @@ public class CPOrm {
 
     public static ContentProviderResult[] applyPreparedOperations(Context context, Collection<ContentProviderOperation> operations) throws RemoteException, OperationApplicationException {
 
-        return context
-                .getContentResolver()
-                .applyBatch(ManifestHelper.getAuthority(context), new ArrayList<ContentProviderOperation>(operations));
+        long start = CPOrmMetricsRegistry.start();
+        ContentProviderResult[] results;
+        try {
+            results = context
+                    .getContentResolver()
+                    .applyBatch(ManifestHelper.getAuthority(context), new ArrayList<ContentProviderOperation>(operations));
+        } finally {
+            //Batches that yield can be committed partially, even if they fail
+            invalidateQueryCache();
+        }
+
+        CPOrmMetricsRegistry.record(CPOrmMetrics.Layer.CLIENT, CPOrmMetrics.Operation.BATCH, null, operations.size(), start);
+        return results;
     }
 
     public static <T> Uri getItemUri(Class<T> dataModel) {
@@ -388,11 +912,9 @@ public class CPOrm {
 
     protected static <T> T findSingleItem(Context context, Uri itemUri, TableDetails tableDetails) {
 
-        ContentResolver contentResolver = context.getContentResolver();
-
         Cursor cursor = null;
         try {
-            cursor = contentResolver.query(itemUri, tableDetails.getColumnNames(), null, null, null);
+            cursor = executeQuery(context, tableDetails, itemUri, tableDetails.getColumnNames());
 
             if (cursor != null && cursor.moveToFirst()) return ModelInflater.inflate(cursor, tableDetails);
             else throw new IllegalArgumentException("No row found with the key " + itemUri.getLastPathSegment());
@@ -401,6 +923,127 @@ public class CPOrm {
         }
     }
 
+    private static Cursor executeQuery(Context context, TableDetails tableDetails, Uri itemUri, String[] projection) {
+
+        CPOrmDirectExecutor directExecutor = findDirectExecutor(context, tableDetails);
+        if (directExecutor != null)
+            return directExecutor.query(itemUri, projection, null, null, null, null);
+
+        return context.getContentResolver().query(itemUri, projection, null, null, null);
+    }
+
+    private static <T> String[] deflatePrimaryKeys(TableDetails tableDetails, List<T> dataModelObjects) {
+
+        TableDetails.ColumnDetails primaryKeyColumn = tableDetails.findPrimaryKeyColumn();
+        String[] primaryKeys = new String[dataModelObjects.size()];
+        for (int i = 0; i < primaryKeys.length; i++) {
+
+            primaryKeys[i] = String.valueOf(ModelInflater.deflateColumn(tableDetails, primaryKeyColumn, dataModelObjects.get(i)));
+        }
+
+        return primaryKeys;
+    }
+
+    private static Bundle callProvider(Context context, String method, String arg, Bundle extras) {
+
+        String authority = ManifestHelper.getAuthority(context);
+        if (directExecutionEnabled) {
+            CPOrmDirectExecutor directExecutor = CPOrmDirectExecutor.find(context, authority);
+            if (directExecutor != null)
+                return directExecutor.call(method, arg, extras);
+        }
+
+        Uri authorityUri = new Uri.Builder().scheme(ContentResolver.SCHEME_CONTENT).authority(authority).build();
+        return context.getContentResolver().call(authorityUri, method, arg, extras);
+    }
+
+    private static int executeCall(Context context, TableDetails tableDetails, String method, Bundle extras) {
+
+        long start = CPOrmMetricsRegistry.start();
+        Uri itemUri = UriMatcherHelper.generateItemUri(context, tableDetails).build();
+        Bundle result;
+
+        CPOrmDirectExecutor directExecutor = findDirectExecutor(context, tableDetails);
+        if (directExecutor != null)
+            result = directExecutor.call(method, itemUri.toString(), extras);
+        else
+            result = context.getContentResolver().call(itemUri, method, itemUri.toString(), extras);
+
+        invalidateQueryCache(context, tableDetails);
+        int count = result == null ? 0 : result.getInt(CPOrmContentProvider.EXTRA_COUNT);
+        CPOrmMetrics.Operation operation = CPOrmContentProvider.METHOD_DELETE_ALL.equals(method) ? CPOrmMetrics.Operation.DELETE : CPOrmMetrics.Operation.UPDATE;
+        recordMetrics(operation, tableDetails, count, start);
+        return count;
+    }
+
+    private static Uri executeInsert(Context context, TableDetails tableDetails, ContentValues contentValues, ConflictStrategy conflictStrategy) {
+
+        long start = CPOrmMetricsRegistry.start();
+        boolean abortOnConflict = conflictStrategy.getAction() == ConflictStrategy.Action.ABORT;
+        CPOrmDirectExecutor directExecutor = findDirectExecutor(context, tableDetails);
+        Uri insertedUri;
+
+        if (directExecutor != null && abortOnConflict)
+            insertedUri = directExecutor.insert(tableDetails, contentValues);
+        else {
+            Uri insertUri = conflictStrategy.appendTo(UriMatcherHelper.generateItemUri(context, tableDetails)).build();
+            if (directExecutor != null)
+                insertedUri = directExecutor.insert(insertUri, contentValues);
+            else
+                insertedUri = context.getContentResolver().insert(insertUri, contentValues);
+        }
+
+        invalidateQueryCache(context, tableDetails);
+        recordMetrics(CPOrmMetrics.Operation.INSERT, tableDetails, insertedUri == null ? 0 : 1, start);
+        return insertedUri;
+    }
+
+    private static int executeUpdate(Context context, TableDetails tableDetails, String primaryKey, ContentValues contentValues) {
+
+        long start = CPOrmMetricsRegistry.start();
+        int updateCount;
+        CPOrmDirectExecutor directExecutor = findDirectExecutor(context, tableDetails);
+        if (directExecutor != null)
+            updateCount = directExecutor.update(tableDetails, primaryKey, contentValues);
+        else {
+            Uri itemUri = UriMatcherHelper.generateItemUri(context, tableDetails, primaryKey).build();
+            updateCount = context.getContentResolver().update(itemUri, contentValues, null, null);
+        }
+
+        invalidateQueryCache(context, tableDetails);
+        recordMetrics(CPOrmMetrics.Operation.UPDATE, tableDetails, updateCount, start);
+        return updateCount;
+    }
+
+    /**
+     * Group committed updates do not expect a row count, since {@link #update(Context, Object)} does not fail if the row does not exist.
+     */
+    private static <T> ContentProviderOperation prepareGroupCommitUpdate(Context context, T dataModelObject) {
+
+        TableDetails tableDetails = findTableDetails(context, dataModelObject.getClass());
+        ContentValues contentValues = ModelInflater.deflate(tableDetails, dataModelObject);
+        Object columnValue = ModelInflater.deflateColumn(tableDetails, tableDetails.findPrimaryKeyColumn(), dataModelObject);
+        Uri itemUri = UriMatcherHelper.generateItemUri(context, tableDetails, String.valueOf(columnValue)).build();
+
+        return ContentProviderOperation.newUpdate(itemUri)
+                .withValues(contentValues)
+                .build();
+    }
+
+    private static <T> ContentProviderOperation prepareGroupCommitDelete(Context context, T dataModelObject) {
+
+        TableDetails tableDetails = findTableDetails(context, dataModelObject.getClass());
+        Object columnValue = ModelInflater.deflateColumn(tableDetails, tableDetails.findPrimaryKeyColumn(), dataModelObject);
+        Uri itemUri = UriMatcherHelper.generateItemUri(context, tableDetails, String.valueOf(columnValue)).build();
+
+        return ContentProviderOperation.newDelete(itemUri).build();
+    }
+
+    private static void recordMetrics(CPOrmMetrics.Operation operation, TableDetails tableDetails, int rowCount, long start) {
+
+        CPOrmMetricsRegistry.record(CPOrmMetrics.Layer.CLIENT, operation, tableDetails.getTableName(), rowCount, start);
+    }
+
     public static synchronized TableDetails findTableDetails(Context context, Class<?> item) {
 
         if (tableDetailsCache == null) {
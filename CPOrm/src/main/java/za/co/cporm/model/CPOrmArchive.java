@@ -0,0 +1,259 @@
+package za.co.cporm.model;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDatabaseLockedException;
+import android.database.sqlite.SQLiteStatement;
+import android.text.TextUtils;
+import za.co.cporm.model.generate.TableDetails;
+import za.co.cporm.model.generate.TableGenerator;
+import za.co.cporm.model.util.CPOrmCursorFactory;
+import za.co.cporm.util.CPOrmLog;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * The archive of the tables of a {@link CPOrmDatabase} annotated with {@link za.co.cporm.model.annotation.Archive}, stored
+ * in a separate database file with the same table schema.  The archive is opened on its own connection, with the database
+ * attached as {@link #ATTACHED_SCHEMA}, so that rows can be moved and queried together in a single statement.  The archive
+ * is attached to the database and not the other way around, since Android disables write ahead logging on connections
+ * that have attached databases.
+ */
+public class CPOrmArchive {
+
+    public static final String ATTACHED_SCHEMA = "hot";
+    public static final int MAX_LOCKED_RETRIES = 5;
+    public static final long LOCKED_BACKOFF_MILLIS = 100;
+
+    private final Context context;
+    private final CPOrmDatabase database;
+    private final List<TableDetails> archivedTables;
+    private final boolean debugEnabled;
+    private SQLiteDatabase archiveDatabase;
+
+    /**
+     * @param database The database the rows are archived from.
+     * @param archivedTables The archived tables of the database.
+     */
+    public CPOrmArchive(Context context, CPOrmDatabase database, List<TableDetails> archivedTables) {
+
+        this.context = context;
+        this.database = database;
+        this.archivedTables = Collections.unmodifiableList(archivedTables);
+        this.debugEnabled = database.getcPOrmConfiguration().isQueryLoggingEnabled();
+    }
+
+    /**
+     * @return The file name of the archive of the group, the configured database name prefixed with archive.
+     */
+    public static String getArchiveName(CPOrmConfiguration cPOrmConfiguration, String databaseGroup) {
+
+        return "archive_" + CPOrmDatabase.getDatabaseName(cPOrmConfiguration, databaseGroup);
+    }
+
+    public List<TableDetails> getArchivedTables() {
+        return archivedTables;
+    }
+
+    /**
+     * Moves the rows of the table that are older than its maximum age into the archive.  Rows are moved in batches of the
+     * archive batch size of the table, each in its own transaction, so that writers are only blocked for a single batch.
+     * Rows that already exist in the archive with the same primary key are replaced.
+     * The archive connection competes with the connection of the database for its write lock, a batch that finds the
+     * database locked is retried with an increasing delay, up to {@link #MAX_LOCKED_RETRIES} times.  Archiving should
+     * therefore not run concurrently with bulk writes, like a sync, which hold the write lock for long transactions.
+     *
+     * @param tableDetails The archived table.
+     * @param now The current time in milliseconds.
+     * @return The amount of rows moved to the archive.
+     * @throws SQLiteDatabaseLockedException If the database stayed locked after all retries of a batch.
+     */
+    public int archive(TableDetails tableDetails, long now) {
+
+        if (!tableDetails.isArchived())
+            throw new IllegalArgumentException("Table " + tableDetails.getTableName() + " is not archived");
+
+        SQLiteDatabase db = getDatabase();
+        long cutoff = now - tableDetails.getArchiveMaxAgeMillis();
+        String tableName = tableDetails.getTableName();
+        String columns = TextUtils.join(", ", tableDetails.getColumnNames());
+        String batchRows = "SELECT rowid FROM " + ATTACHED_SCHEMA + "." + tableName + " WHERE " + tableDetails.getArchiveColumn() + " < ?" +
+                " LIMIT " + tableDetails.getArchiveBatchSize();
+
+        SQLiteStatement insertStatement = db.compileStatement("INSERT OR REPLACE INTO main." + tableName + " (" + columns + ") SELECT " + columns +
+                " FROM " + ATTACHED_SCHEMA + "." + tableName + " WHERE rowid IN (" + batchRows + ")");
+        SQLiteStatement deleteStatement = db.compileStatement("DELETE FROM " + ATTACHED_SCHEMA + "." + tableName + " WHERE rowid IN (" + batchRows + ")");
+
+        int archivedCount = 0;
+        try {
+            int batchCount;
+            do {
+                batchCount = archiveBatchWithRetries(db, tableName, insertStatement, deleteStatement, cutoff);
+                archivedCount += batchCount;
+            } while (batchCount == tableDetails.getArchiveBatchSize());
+        } finally {
+            insertStatement.close();
+            deleteStatement.close();
+        }
+
+        if (debugEnabled) {
+            CPOrmLog.d("Archived " + archivedCount + " rows of table " + tableName);
+        }
+
+        return archivedCount;
+    }
+
+    private int archiveBatchWithRetries(SQLiteDatabase db, String tableName, SQLiteStatement insertStatement, SQLiteStatement deleteStatement, long cutoff) {
+
+        long backoffMillis = LOCKED_BACKOFF_MILLIS;
+        for (int retry = 0; ; retry++) {
+
+            try {
+                return archiveBatch(db, tableName, insertStatement, deleteStatement, cutoff);
+            } catch (SQLiteDatabaseLockedException ex) {
+
+                if (retry == MAX_LOCKED_RETRIES)
+                    throw ex;
+
+                if (debugEnabled) {
+                    CPOrmLog.d("Database locked while archiving table " + tableName + ", retrying in " + backoffMillis + "ms");
+                }
+                try {
+                    Thread.sleep(backoffMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw ex;
+                }
+                backoffMillis *= 2;
+            }
+        }
+    }
+
+    private int archiveBatch(SQLiteDatabase db, String tableName, SQLiteStatement insertStatement, SQLiteStatement deleteStatement, long cutoff) {
+
+        //The exclusive transaction locks the attached database for writing, so the delete removes the rows that were copied
+        db.beginTransaction();
+        try {
+            insertStatement.bindLong(1, cutoff);
+            int batchCount = insertStatement.executeUpdateDelete();
+            deleteStatement.bindLong(1, cutoff);
+            int deleteCount = deleteStatement.executeUpdateDelete();
+            if (deleteCount != batchCount)
+                throw new IllegalStateException("Archived " + batchCount + " rows of table " + tableName + ", but deleted " + deleteCount);
+
+            db.setTransactionSuccessful();
+            return batchCount;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * @return The table expression that selects the rows of the table from both the database and the archive, to be
+     * executed on the archive database.
+     */
+    public static String buildArchiveTables(TableDetails tableDetails) {
+
+        String tableName = tableDetails.getTableName();
+        String columns = TextUtils.join(", ", tableDetails.getColumnNames());
+        return "(SELECT " + columns + " FROM " + ATTACHED_SCHEMA + "." + tableName +
+                " UNION ALL SELECT " + columns + " FROM main." + tableName + ") AS " + tableName;
+    }
+
+    /**
+     * Opens the archive, creating the archived tables and adding columns that were added to the tables since they were
+     * archived.  The database is opened first, so that it is created or upgraded before it is attached.
+     *
+     * @return The archive database, with the database attached as {@link #ATTACHED_SCHEMA}.
+     */
+    public synchronized SQLiteDatabase getDatabase() {
+
+        if (archiveDatabase != null && archiveDatabase.isOpen())
+            return archiveDatabase;
+
+        String databasePath = database.getWritableDatabase().getPath();
+        File archiveFile = context.getDatabasePath(getArchiveName(database.getcPOrmConfiguration(), database.getDatabaseGroup()));
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(archiveFile, new CPOrmCursorFactory(debugEnabled));
+
+        try {
+            db.beginTransaction();
+            try {
+                for (TableDetails tableDetails : archivedTables) {
+                    createOrUpdateTable(db, tableDetails);
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+
+            db.execSQL("ATTACH DATABASE ? AS " + ATTACHED_SCHEMA, new Object[]{databasePath});
+        } catch (RuntimeException ex) {
+            db.close();
+            throw ex;
+        }
+
+        archiveDatabase = db;
+        return archiveDatabase;
+    }
+
+    public synchronized void close() {
+
+        if (archiveDatabase != null) {
+            archiveDatabase.close();
+            archiveDatabase = null;
+        }
+    }
+
+    private void createOrUpdateTable(SQLiteDatabase db, TableDetails tableDetails) {
+
+        Set<String> archivedColumns = findColumns(db, tableDetails.getTableName());
+        if (archivedColumns.isEmpty()) {
+
+            String createStatement = TableGenerator.generateTableCreate(tableDetails, false);
+            if (debugEnabled) {
+                CPOrmLog.d("Creating Archive Table: " + createStatement);
+            }
+            db.execSQL(createStatement);
+
+            for (String index : TableGenerator.generateIndecesCreate(tableDetails, false)) {
+                db.execSQL(index);
+            }
+            return;
+        }
+
+        for (TableDetails.ColumnDetails column : tableDetails.getColumns()) {
+
+            if (archivedColumns.contains(column.getColumnName().toLowerCase(Locale.US)))
+                continue;
+
+            String alterStatement = "ALTER TABLE " + tableDetails.getTableName() + " ADD COLUMN " + column.getColumnName() + " " +
+                    column.getColumnTypeMapping().getSqlColumnTypeName();
+            if (debugEnabled) {
+                CPOrmLog.d("Updating Archive Table: " + alterStatement);
+            }
+            db.execSQL(alterStatement);
+        }
+    }
+
+    private static Set<String> findColumns(SQLiteDatabase db, String tableName) {
+
+        Set<String> columns = new HashSet<String>();
+        Cursor cursor = db.rawQuery("PRAGMA table_info(" + tableName + ")", null);
+        try {
+            int nameIndex = cursor.getColumnIndex("name");
+            while (cursor.moveToNext()) {
+                columns.add(cursor.getString(nameIndex).toLowerCase(Locale.US));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return columns;
+    }
+}
@@ -0,0 +1,189 @@
+package za.co.cporm.model;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Bundle;
+import za.co.cporm.model.generate.TableDetails;
+import za.co.cporm.model.util.ModelInflater;
+import za.co.cporm.provider.CPOrmContentProvider;
+import za.co.cporm.provider.CPOrmDirectExecutor;
+import za.co.cporm.provider.util.ColumnarValues;
+import za.co.cporm.provider.util.UriMatcherHelper;
+import za.co.cporm.util.CPOrmMetrics;
+import za.co.cporm.util.CPOrmMetricsRegistry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects inserts, upserts and deletes and sends them to the content provider in a single round trip, where they are
+ * executed in a single transaction.  Unlike {@link android.content.ContentProviderOperation} batches, consecutive operations
+ * on the same table are packed together column by column, so the column names are only sent once per table.
+ *
+ * <pre>
+ * long[] ids = new CPOrmBatch()
+ *         .insert(order)
+ *         .upsert(customer)
+ *         .delete(oldOrder)
+ *         .execute();
+ * </pre>
+ */
+public class CPOrmBatch {
+
+    private final Context context;
+    private final List<Section> sections;
+    private Uri authorityUri;
+    private int insertCount;
+
+    public CPOrmBatch() {
+
+        this(CPOrm.getApplicationContext());
+    }
+
+    public CPOrmBatch(Context context) {
+
+        this.context = context;
+        this.sections = new ArrayList<Section>();
+    }
+
+    public <T> CPOrmBatch insert(T dataModelObject) {
+
+        return insert(dataModelObject, ConflictStrategy.ABORT);
+    }
+
+    /**
+     * Inserts the object, or updates all of its columns if it conflicts with an existing row on the primary key.
+     */
+    public <T> CPOrmBatch upsert(T dataModelObject) {
+
+        return insert(dataModelObject, ConflictStrategy.update());
+    }
+
+    public <T> CPOrmBatch insert(T dataModelObject, ConflictStrategy conflictStrategy) {
+
+        TableDetails tableDetails = CPOrm.findTableDetails(context, dataModelObject.getClass());
+        ContentValues contentValues = ModelInflater.deflate(tableDetails, dataModelObject);
+        Uri uri = conflictStrategy.appendTo(UriMatcherHelper.generateItemUri(context, tableDetails)).build();
+
+        Section section = findSection(tableDetails, uri, CPOrmContentProvider.BATCH_OPERATION_INSERT);
+        if (!section.rows.isEmpty() && !section.rows.get(0).keySet().equals(contentValues.keySet()))
+            section = addSection(tableDetails, uri, CPOrmContentProvider.BATCH_OPERATION_INSERT);
+
+        section.rows.add(contentValues);
+        insertCount++;
+        return this;
+    }
+
+    public <T> CPOrmBatch delete(T dataModelObject) {
+
+        TableDetails tableDetails = CPOrm.findTableDetails(context, dataModelObject.getClass());
+        Object columnValue = ModelInflater.deflateColumn(tableDetails, tableDetails.findPrimaryKeyColumn(), dataModelObject);
+        Uri uri = UriMatcherHelper.generateItemUri(context, tableDetails).build();
+
+        findSection(tableDetails, uri, CPOrmContentProvider.BATCH_OPERATION_DELETE).primaryKeys.add(String.valueOf(columnValue));
+        return this;
+    }
+
+    /**
+     * @return The amount of inserts and upserts in the batch.
+     */
+    public int getInsertCount() {
+        return insertCount;
+    }
+
+    public boolean isEmpty() {
+        return sections.isEmpty();
+    }
+
+    /**
+     * Executes the batch in a single transaction.  If any operation fails, none of the operations are applied.
+     *
+     * @return The row id of every insert and upsert, in the order they were added, or -1 if the row was ignored.
+     */
+    public long[] execute() {
+
+        if (sections.isEmpty())
+            return new long[0];
+
+        long start = CPOrmMetricsRegistry.start();
+        Bundle extras = new Bundle();
+        extras.putInt(CPOrmContentProvider.EXTRA_SECTION_COUNT, sections.size());
+        for (int i = 0; i < sections.size(); i++) {
+
+            extras.putBundle(CPOrmContentProvider.EXTRA_SECTION + i, sections.get(i).toBundle());
+        }
+
+        Bundle result;
+        CPOrmDirectExecutor directExecutor = CPOrm.findDirectExecutor(context, sections.get(0).tableDetails);
+        if (directExecutor != null)
+            result = directExecutor.call(CPOrmContentProvider.METHOD_BATCH, null, extras);
+        else
+            result = context.getContentResolver().call(authorityUri, CPOrmContentProvider.METHOD_BATCH, null, extras);
+
+        for (Section section : sections) {
+            CPOrm.invalidateQueryCache(context, section.tableDetails);
+        }
+        sections.clear();
+        insertCount = 0;
+
+        int count = result == null ? 0 : result.getInt(CPOrmContentProvider.EXTRA_COUNT);
+        CPOrmMetricsRegistry.record(CPOrmMetrics.Layer.CLIENT, CPOrmMetrics.Operation.BATCH, null, count, start);
+        return result == null ? new long[0] : result.getLongArray(CPOrmContentProvider.EXTRA_IDS);
+    }
+
+    /**
+     * Operations are only packed together with the previous operation, so the order of the operations is preserved.
+     */
+    private Section findSection(TableDetails tableDetails, Uri uri, String operation) {
+
+        if (!sections.isEmpty()) {
+
+            Section lastSection = sections.get(sections.size() - 1);
+            if (lastSection.operation.equals(operation) && lastSection.uri.equals(uri))
+                return lastSection;
+        }
+
+        return addSection(tableDetails, uri, operation);
+    }
+
+    private Section addSection(TableDetails tableDetails, Uri uri, String operation) {
+
+        if (authorityUri == null)
+            authorityUri = uri;
+
+        Section section = new Section(tableDetails, uri, operation);
+        sections.add(section);
+        return section;
+    }
+
+    private static class Section {
+
+        private final TableDetails tableDetails;
+        private final Uri uri;
+        private final String operation;
+        private final List<ContentValues> rows = new ArrayList<ContentValues>();
+        private final List<String> primaryKeys = new ArrayList<String>();
+
+        private Section(TableDetails tableDetails, Uri uri, String operation) {
+
+            this.tableDetails = tableDetails;
+            this.uri = uri;
+            this.operation = operation;
+        }
+
+        private Bundle toBundle() {
+
+            Bundle bundle = new Bundle();
+            bundle.putString(CPOrmContentProvider.EXTRA_URI, uri.toString());
+            bundle.putString(CPOrmContentProvider.EXTRA_OPERATION, operation);
+
+            if (CPOrmContentProvider.BATCH_OPERATION_INSERT.equals(operation))
+                ColumnarValues.write(bundle, rows.toArray(new ContentValues[rows.size()]));
+            else
+                bundle.putStringArray(CPOrmContentProvider.EXTRA_PRIMARY_KEYS, primaryKeys.toArray(new String[primaryKeys.size()]));
+
+            return bundle;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package za.co.cporm.model;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import za.co.cporm.model.util.ManifestHelper;
+import za.co.cporm.provider.CPOrmContentProvider;
+import za.co.cporm.provider.util.BlobStore;
+
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.UUID;
+
+/**
+ * A handle to binary content that is stored outside of the database, in a file managed by the content provider.
+ * Only the id of the blob is stored in the column, so loading a model does not load the content, and large content does
+ * not have to fit in a cursor window.  The content is streamed from and to the file through the content provider when it
+ * is opened.  Files that are no longer referenced by any row are removed by {@link CPOrm#deleteUnusedBlobs(Context)}.
+ */
+public final class CPOrmBlob {
+
+    private final String id;
+
+    private CPOrmBlob(String id) {
+
+        if (!BlobStore.isValidId(id))
+            throw new IllegalArgumentException("Invalid blob id " + id);
+
+        this.id = id;
+    }
+
+    /**
+     * @return A new blob without any content, write the content using {@link #openOutputStream(Context)}.
+     */
+    public static CPOrmBlob create() {
+        return new CPOrmBlob(UUID.randomUUID().toString());
+    }
+
+    /**
+     * @return The blob with the id, as stored in the column.
+     */
+    public static CPOrmBlob fromId(String id) {
+        return new CPOrmBlob(id);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return The content provider uri of the blob content.
+     */
+    public Uri getUri(Context context) {
+
+        return new Uri.Builder()
+                .scheme("content")
+                .authority(ManifestHelper.getAuthority(context))
+                .appendPath(CPOrmContentProvider.BLOB_PATH)
+                .appendPath(id)
+                .build();
+    }
+
+    /**
+     * @throws FileNotFoundException If no content was written to the blob.
+     */
+    public InputStream openInputStream(Context context) throws FileNotFoundException {
+
+        return context.getContentResolver().openInputStream(getUri(context));
+    }
+
+    /**
+     * Opens the blob for writing, replacing its current content.
+     */
+    public OutputStream openOutputStream(Context context) throws FileNotFoundException {
+
+        return context.getContentResolver().openOutputStream(getUri(context), "wt");
+    }
+
+    /**
+     * Opens the blob as a file descriptor, which allows reading and writing at random positions.
+     *
+     * @param mode The mode as used by {@link android.content.ContentResolver#openFileDescriptor(Uri, String)}.
+     */
+    public ParcelFileDescriptor openFileDescriptor(Context context, String mode) throws FileNotFoundException {
+
+        return context.getContentResolver().openFileDescriptor(getUri(context), mode);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        return id.equals(((CPOrmBlob) o).id);
+    }
+
+    @Override
+    public int hashCode() {
+        return id.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return id;
+    }
+}
@@ -2,6 +2,7 @@ package za.co.cporm.model;
 
 import android.annotation.TargetApi;
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.graphics.Path;
@@ -15,19 +16,24 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.lang.reflect.Method;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.StringTokenizer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import za.co.cporm.model.generate.SchemaMigrator;
 import za.co.cporm.model.generate.TableDetails;
 import za.co.cporm.model.generate.TableGenerator;
 import za.co.cporm.model.generate.TableView;
 import za.co.cporm.model.generate.TableViewGenerator;
 import za.co.cporm.model.util.CPOrmCursorFactory;
+import za.co.cporm.model.util.ManifestHelper;
 import za.co.cporm.model.util.TableDetailsCache;
 import za.co.cporm.util.CPOrmLog;
 
@@ -39,13 +45,62 @@ public class CPOrmDatabase extends SQLiteOpenHelper {
     private final Context context;
     private final CPOrmConfiguration cPOrmConfiguration;
     private final TableDetailsCache tableDetailsCache;
+    private final String databaseGroup;
+    private CPOrmArchive archive;
+    private volatile CPOrmTuningProfile tuningProfile;
+    private volatile CPOrmTuningProfile openedTuningProfile;
+    private static final int LOOKASIDE_SDK_VERSION = 27;
+    private static final int DEFAULT_MAX_SQL_CACHE_SIZE = 25;
+    private static volatile SchemaMigrator.ProgressListener schemaMigrationListener;
 
     public CPOrmDatabase(Context context, CPOrmConfiguration cPOrmConfiguration) {
-        super(context, cPOrmConfiguration.getDatabaseName(), new CPOrmCursorFactory(cPOrmConfiguration.isQueryLoggingEnabled()), cPOrmConfiguration.getDatabaseVersion());
+        this(context, cPOrmConfiguration, null, new TableDetailsCache());
+    }
+
+    /**
+     * Creates the database of a {@link za.co.cporm.model.annotation.DatabaseGroup}, which only contains the tables and
+     * views of the group.  The upgrade scripts of the group are loaded from a sub directory of the upgrade resource
+     * directory with the name of the group.
+     *
+     * @param databaseGroup The group, or null for the default database.
+     * @param tableDetailsCache The cache shared by all of the databases.
+     */
+    public CPOrmDatabase(Context context, CPOrmConfiguration cPOrmConfiguration, String databaseGroup, TableDetailsCache tableDetailsCache) {
+        super(context, getDatabaseName(cPOrmConfiguration, databaseGroup), new CPOrmCursorFactory(cPOrmConfiguration.isQueryLoggingEnabled()), cPOrmConfiguration.getDatabaseVersion());
         this.cPOrmConfiguration = cPOrmConfiguration;
         this.context = context;
-        this.tableDetailsCache = new TableDetailsCache();
+        this.databaseGroup = databaseGroup;
+        this.tableDetailsCache = tableDetailsCache;
         this.tableDetailsCache.init(context, cPOrmConfiguration.getDataModelObjects());
+
+        CPOrmTuningProfile tuningProfile = getConfiguredTuningProfile(cPOrmConfiguration);
+        this.tuningProfile = tuningProfile;
+        if (Build.VERSION.SDK_INT >= LOOKASIDE_SDK_VERSION && tuningProfile.getLookasideSlotSize() != null) {
+            setLookasideConfig(tuningProfile);
+        }
+    }
+
+    /**
+     * @return The tuning profile of the configuration if it implements {@link CPOrmTuningProvider}, otherwise {@link CPOrmTuningProfile#DEFAULT}.
+     */
+    public static CPOrmTuningProfile getConfiguredTuningProfile(CPOrmConfiguration cPOrmConfiguration) {
+
+        CPOrmTuningProfile tuningProfile = null;
+        if (cPOrmConfiguration instanceof CPOrmTuningProvider)
+            tuningProfile = ((CPOrmTuningProvider) cPOrmConfiguration).getTuningProfile();
+
+        return tuningProfile == null ? CPOrmTuningProfile.DEFAULT : tuningProfile;
+    }
+
+    /**
+     * @return The file name of the database of the group, the group name is prefixed to the configured database name.
+     */
+    public static String getDatabaseName(CPOrmConfiguration cPOrmConfiguration, String databaseGroup) {
+
+        if (TextUtils.isEmpty(databaseGroup))
+            return cPOrmConfiguration.getDatabaseName();
+
+        return databaseGroup + "_" + cPOrmConfiguration.getDatabaseName();
     }
 
     @Override
@@ -53,6 +108,9 @@ public class CPOrmDatabase extends SQLiteOpenHelper {
 
         for (Class<?> dataModelObject : cPOrmConfiguration.getDataModelObjects()) {
 
+            if (!isInGroup(dataModelObject))
+                continue;
+
             if (TableView.class.isAssignableFrom(dataModelObject)) {
                 String createStatement = TableViewGenerator.createViewStatement(findTableDetails(dataModelObject), (Class<? extends TableView>) dataModelObject);
 
@@ -79,7 +137,7 @@ public class CPOrmDatabase extends SQLiteOpenHelper {
         }
 
         try {
-            String upgradeDir = cPOrmConfiguration.upgradeResourceDirectory();
+            String upgradeDir = getUpgradeResourceDirectory();
             if(!TextUtils.isEmpty(upgradeDir)) {
                 String initializeFileName = "0_init.sql";
                 if (Arrays.binarySearch(context.getResources().getAssets().list(upgradeDir), initializeFileName) > -1) {
@@ -94,7 +152,7 @@ public class CPOrmDatabase extends SQLiteOpenHelper {
     @Override
     public void onUpgrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
 
-        String upgradeDir = cPOrmConfiguration.upgradeResourceDirectory();
+        String upgradeDir = getUpgradeResourceDirectory();
         if (!TextUtils.isEmpty(upgradeDir)) {
 
             boolean upgraded = false;
@@ -125,9 +183,25 @@ public class CPOrmDatabase extends SQLiteOpenHelper {
             }
         }
 
+        if (ManifestHelper.isSchemaMigrationEnabled(context)) {
+
+            try {
+                migrateSchema(sqLiteDatabase);
+                return;
+            } catch (Exception e) {
+                CPOrmLog.e("Failed to migrate the database schema", e);
+                if(!cPOrmConfiguration.recreateDatabaseOnFailedUpgrade())
+                    throw new RuntimeException("Failed to upgrade database", e);
+                CPOrmLog.e("Recreating database");
+            }
+        }
+
         //First check if scripts are available
         for (Class<?> dataModelObject : cPOrmConfiguration.getDataModelObjects()) {
 
+            if (!isInGroup(dataModelObject))
+                continue;
+
             if (TableView.class.isAssignableFrom(dataModelObject)) {
                 String statement = TableViewGenerator.createDropViewStatement(findTableDetails(dataModelObject));
                 if (cPOrmConfiguration.isQueryLoggingEnabled()) {
@@ -140,12 +214,60 @@ public class CPOrmDatabase extends SQLiteOpenHelper {
                     CPOrmLog.d("Dropping Table: " + statement);
                 }
                 sqLiteDatabase.execSQL(statement);
+                //A failed migration can leave the table it was rebuilding behind
+                sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + SchemaMigrator.getRebuildTableName(findTableDetails(dataModelObject)));
             }
         }
 
         onCreate(sqLiteDatabase);
     }
 
+    /**
+     * Sets the listener that receives the progress of schema migrations, migrations are run when the database is first
+     * opened after the database version changed.
+     *
+     * @param listener The listener, or null to remove the listener.
+     */
+    public static void setSchemaMigrationListener(SchemaMigrator.ProgressListener listener) {
+
+        schemaMigrationListener = listener;
+    }
+
+    /**
+     * Migrates the tables to the data model, keeping the existing rows.  Views are dropped before the tables are migrated,
+     * since a table that a view depends on can not be replaced, and are created again afterwards.
+     * This runs in the upgrade transaction, so the migration is committed together with the new database version.
+     */
+    private void migrateSchema(SQLiteDatabase sqLiteDatabase) {
+
+        List<TableDetails> tables = new ArrayList<TableDetails>();
+        List<Class<?>> views = new ArrayList<Class<?>>();
+        for (Class<?> dataModelObject : cPOrmConfiguration.getDataModelObjects()) {
+
+            if (!isInGroup(dataModelObject))
+                continue;
+
+            if (TableView.class.isAssignableFrom(dataModelObject)) {
+                views.add(dataModelObject);
+                sqLiteDatabase.execSQL(TableViewGenerator.createDropViewStatement(findTableDetails(dataModelObject)));
+            } else
+                tables.add(findTableDetails(dataModelObject));
+        }
+
+        int steps = new SchemaMigrator(sqLiteDatabase, cPOrmConfiguration.isQueryLoggingEnabled(), schemaMigrationListener).migrate(tables);
+        if (cPOrmConfiguration.isQueryLoggingEnabled())
+            CPOrmLog.d("Migrated the database schema in " + steps + " steps");
+
+        for (Class<?> view : views) {
+
+            String createStatement = TableViewGenerator.createViewStatement(findTableDetails(view), (Class<? extends TableView>) view);
+            if (cPOrmConfiguration.isQueryLoggingEnabled()) {
+                CPOrmLog.d("Creating View: " + createStatement);
+            }
+            sqLiteDatabase.execSQL(createStatement);
+        }
+    }
+
     private boolean upgradeFromScript(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion, String script) throws IOException {
         if (script.length() > 0) {
 
@@ -153,7 +275,7 @@ public class CPOrmDatabase extends SQLiteOpenHelper {
 
             if (matcher.find()) {
 
-                String scriptFile = cPOrmConfiguration.upgradeResourceDirectory() + File.separator + script;
+                String scriptFile = getUpgradeResourceDirectory() + File.separator + script;
                 Integer number = Integer.valueOf(matcher.group());
 
                 if (number > oldVersion && number <= newVersion) {
@@ -213,9 +335,21 @@ public class CPOrmDatabase extends SQLiteOpenHelper {
     public void onConfigure(SQLiteDatabase db) {
 
         super.onConfigure(db);
+
+        CPOrmTuningProfile tuningProfile = getTuningProfile();
+        //The page size can only be changed before the database is created, so it is set before anything else
+        if (tuningProfile.getPageSize() != null && !db.isReadOnly()) {
+            executePragma(db, "page_size = " + tuningProfile.getPageSize());
+        }
+        if (tuningProfile.getForeignKeys() != null) {
+            db.setForeignKeyConstraintsEnabled(tuningProfile.getForeignKeys());
+        }
+
         if (!db.isReadOnly()) {
             db.enableWriteAheadLogging();
         }
+
+        applyTuningProfile(db, tuningProfile);
     }
 
     @Override
@@ -227,6 +361,168 @@ public class CPOrmDatabase extends SQLiteOpenHelper {
 
             db.enableWriteAheadLogging();
         }
+
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+
+            CPOrmTuningProfile tuningProfile = getTuningProfile();
+            if (tuningProfile.getForeignKeys() != null) {
+                executePragma(db, "foreign_keys = " + (tuningProfile.getForeignKeys() ? "ON" : "OFF"));
+            }
+            applyTuningProfile(db, tuningProfile);
+        }
+
+        //Only the first open reflects the configured profile, a reopen applies the profile that was applied at runtime
+        if (openedTuningProfile == null) {
+            openedTuningProfile = readTuningProfile(db);
+        }
+    }
+
+    /**
+     * Applies the tuning profile to the open database, settings that are not specified by the profile are left unchanged.
+     * The page size and lookaside configuration can only be applied when the database is opened, and are ignored.
+     * The profile replaces the configured profile until another profile is applied, so it is also applied when the
+     * database is reopened.
+     * The pragmas only reach the primary connection, which runs all writes and transactions.  In write ahead logging
+     * mode Android can open additional connections for queries outside of transactions, these keep the cache_size,
+     * mmap_size and temp_store of the profile that was applied when the database was opened, until it is reopened.
+     *
+     * @param tuningProfile The profile to apply.
+     */
+    public void applyTuningProfile(CPOrmTuningProfile tuningProfile) {
+
+        //Opens the database with the configured profile first, so that the values it was opened with are recorded
+        SQLiteDatabase db = getWritableDatabase();
+        this.tuningProfile = tuningProfile;
+        if (tuningProfile.getForeignKeys() != null) {
+            executePragma(db, "foreign_keys = " + (tuningProfile.getForeignKeys() ? "ON" : "OFF"));
+        }
+        applyTuningProfile(db, tuningProfile);
+    }
+
+    /**
+     * Restores the pragma values that were in effect when the database was first opened with the configured profile,
+     * including the SQLite defaults of the settings the configured profile does not specify.
+     */
+    public void restoreTuningProfile() {
+
+        this.tuningProfile = getConfiguredTuningProfile(cPOrmConfiguration);
+        CPOrmTuningProfile openedTuningProfile = this.openedTuningProfile;
+        if (openedTuningProfile == null)
+            return;
+
+        SQLiteDatabase db = getWritableDatabase();
+        executePragma(db, "foreign_keys = " + (openedTuningProfile.getForeignKeys() ? "ON" : "OFF"));
+        applyTuningProfile(db, openedTuningProfile);
+    }
+
+    private CPOrmTuningProfile readTuningProfile(SQLiteDatabase db) {
+
+        CPOrmTuningProfile.Builder builder = new CPOrmTuningProfile.Builder();
+        Long synchronous = queryPragma(db, "synchronous");
+        if (synchronous != null)
+            builder.synchronous(synchronous == 0 ? CPOrmTuningProfile.Synchronous.OFF : synchronous == 1 ? CPOrmTuningProfile.Synchronous.NORMAL : CPOrmTuningProfile.Synchronous.FULL);
+        Long cacheSize = queryPragma(db, "cache_size");
+        if (cacheSize != null)
+            builder.cacheSize(cacheSize.intValue());
+        //Returns no result if memory mapping is not supported by the SQLite build
+        Long mmapSize = queryPragma(db, "mmap_size");
+        if (mmapSize != null)
+            builder.mmapSize(mmapSize);
+        Long tempStore = queryPragma(db, "temp_store");
+        if (tempStore != null && tempStore >= 0 && tempStore < CPOrmTuningProfile.TempStore.values().length)
+            builder.tempStore(CPOrmTuningProfile.TempStore.values()[tempStore.intValue()]);
+        Long journalSizeLimit = queryPragma(db, "journal_size_limit");
+        if (journalSizeLimit != null)
+            builder.journalSizeLimit(journalSizeLimit);
+        Long walAutoCheckpoint = queryPragma(db, "wal_autocheckpoint");
+        if (walAutoCheckpoint != null)
+            builder.walAutoCheckpoint(walAutoCheckpoint.intValue());
+        Long foreignKeys = queryPragma(db, "foreign_keys");
+        builder.foreignKeys(foreignKeys != null && foreignKeys != 0);
+
+        //The statement cache size can not be queried, so the configured size or the Android default is used
+        Integer maxSqlCacheSize = getConfiguredTuningProfile(cPOrmConfiguration).getMaxSqlCacheSize();
+        builder.maxSqlCacheSize(maxSqlCacheSize == null ? DEFAULT_MAX_SQL_CACHE_SIZE : maxSqlCacheSize);
+        return builder.build();
+    }
+
+    private Long queryPragma(SQLiteDatabase db, String pragma) {
+
+        Cursor cursor = db.rawQuery("PRAGMA " + pragma, null);
+        try {
+            return cursor.moveToFirst() && !cursor.isNull(0) ? cursor.getLong(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void applyTuningProfile(SQLiteDatabase db, CPOrmTuningProfile tuningProfile) {
+
+        if (tuningProfile.getSynchronous() != null)
+            executePragma(db, "synchronous = " + tuningProfile.getSynchronous());
+        if (tuningProfile.getCacheSize() != null)
+            executePragma(db, "cache_size = " + tuningProfile.getCacheSize());
+        if (tuningProfile.getMmapSize() != null)
+            executePragma(db, "mmap_size = " + tuningProfile.getMmapSize());
+        if (tuningProfile.getTempStore() != null)
+            executePragma(db, "temp_store = " + tuningProfile.getTempStore());
+        if (tuningProfile.getJournalSizeLimit() != null)
+            executePragma(db, "journal_size_limit = " + tuningProfile.getJournalSizeLimit());
+        if (tuningProfile.getWalAutoCheckpoint() != null)
+            executePragma(db, "wal_autocheckpoint = " + tuningProfile.getWalAutoCheckpoint());
+        if (tuningProfile.getMaxSqlCacheSize() != null)
+            db.setMaxSqlCacheSize(tuningProfile.getMaxSqlCacheSize());
+    }
+
+    /**
+     * Some pragmas return their new value, which is not allowed by execSQL, so all pragmas are executed as queries.
+     */
+    private void executePragma(SQLiteDatabase db, String pragma) {
+
+        if (cPOrmConfiguration.isQueryLoggingEnabled()) {
+            CPOrmLog.d("Executing PRAGMA " + pragma);
+        }
+
+        Cursor cursor = db.rawQuery("PRAGMA " + pragma, null);
+        try {
+            cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * SQLiteOpenHelper.setLookasideConfig(int, int) is only available from Android 8.1, so it is looked up using
+     * reflection so that it can be used without compiling against Android 8.1.
+     */
+    private void setLookasideConfig(CPOrmTuningProfile tuningProfile) {
+
+        try {
+            Method method = SQLiteOpenHelper.class.getMethod("setLookasideConfig", int.class, int.class);
+            method.invoke(this, tuningProfile.getLookasideSlotSize(), tuningProfile.getLookasideSlotCount());
+        } catch (Exception ex) {
+            CPOrmLog.w("Failed to configure the lookaside memory allocator", ex);
+        }
+    }
+
+    private CPOrmTuningProfile getTuningProfile() {
+
+        return tuningProfile;
+    }
+
+    private String getUpgradeResourceDirectory() {
+
+        String upgradeDir = cPOrmConfiguration.upgradeResourceDirectory();
+        if (TextUtils.isEmpty(upgradeDir) || databaseGroup == null)
+            return upgradeDir;
+
+        return upgradeDir + File.separator + databaseGroup;
+    }
+
+    private boolean isInGroup(Class<?> dataModelObject) {
+
+        String tableGroup = findTableDetails(dataModelObject).getDatabaseGroup();
+        return databaseGroup == null ? tableGroup == null : databaseGroup.equals(tableGroup);
     }
 
     private TableDetails findTableDetails(Class<?> object) {
@@ -245,6 +541,41 @@ public class CPOrmDatabase extends SQLiteOpenHelper {
         return tableDetailsCache;
     }
 
+    /**
+     * @return The archive of the tables of this database that are annotated with {@link za.co.cporm.model.annotation.Archive},
+     * the archive database is only opened once it is used.
+     */
+    public synchronized CPOrmArchive getArchive() {
+
+        if (archive == null) {
+
+            List<TableDetails> archivedTables = new ArrayList<TableDetails>();
+            for (Class<?> dataModelObject : cPOrmConfiguration.getDataModelObjects()) {
+
+                if (isInGroup(dataModelObject) && findTableDetails(dataModelObject).isArchived())
+                    archivedTables.add(findTableDetails(dataModelObject));
+            }
+            archive = new CPOrmArchive(context, this, archivedTables);
+        }
+
+        return archive;
+    }
+
+    @Override
+    public synchronized void close() {
+
+        super.close();
+        if (archive != null)
+            archive.close();
+    }
+
+    /**
+     * @return The database group, or null if this is the default database.
+     */
+    public String getDatabaseGroup() {
+        return databaseGroup;
+    }
+
     /**
      * @return the model factory that contains all of the model objects. This should be accessed sparingly.
      */
@@ -0,0 +1,283 @@
+package za.co.cporm.model;
+
+import android.os.Bundle;
+
+/**
+ * The SQLite settings applied to the database when it is opened.  Settings that are not specified keep the SQLite and
+ * Android defaults.  Profiles can also be applied at runtime using {@link CPOrm#applyTuningProfile(CPOrmTuningProfile)},
+ * for instance to switch to {@link #BULK_IMPORT} for the duration of a large import, except for the page size and
+ * lookaside configuration, which can only be applied when the database is opened.
+ * The configured profile is provided by a {@link CPOrmConfiguration} that implements {@link CPOrmTuningProvider}.
+ */
+public final class CPOrmTuningProfile {
+
+    public enum Synchronous {OFF, NORMAL, FULL}
+
+    public enum TempStore {DEFAULT, FILE, MEMORY}
+
+    private static final String KEY_SYNCHRONOUS = "SYNCHRONOUS";
+    private static final String KEY_CACHE_SIZE = "CACHE_SIZE";
+    private static final String KEY_PAGE_SIZE = "PAGE_SIZE";
+    private static final String KEY_MMAP_SIZE = "MMAP_SIZE";
+    private static final String KEY_TEMP_STORE = "TEMP_STORE";
+    private static final String KEY_JOURNAL_SIZE_LIMIT = "JOURNAL_SIZE_LIMIT";
+    private static final String KEY_WAL_AUTO_CHECKPOINT = "WAL_AUTO_CHECKPOINT";
+    private static final String KEY_FOREIGN_KEYS = "FOREIGN_KEYS";
+    private static final String KEY_MAX_SQL_CACHE_SIZE = "MAX_SQL_CACHE_SIZE";
+    private static final String KEY_LOOKASIDE_SLOT_SIZE = "LOOKASIDE_SLOT_SIZE";
+    private static final String KEY_LOOKASIDE_SLOT_COUNT = "LOOKASIDE_SLOT_COUNT";
+
+    /**
+     * Keeps all of the defaults.
+     */
+    public static final CPOrmTuningProfile DEFAULT = new Builder().build();
+
+    /**
+     * Favours query latency: a larger page cache, memory mapped reads and in memory temporary tables.
+     */
+    public static final CPOrmTuningProfile READ_HEAVY_UI = new Builder()
+            .synchronous(Synchronous.NORMAL)
+            .cacheSize(-8 * 1024)
+            .mmapSize(64L * 1024 * 1024)
+            .tempStore(TempStore.MEMORY)
+            .build();
+
+    /**
+     * Favours write throughput for large imports: a large page cache, in memory temporary tables and infrequent WAL
+     * checkpoints.  Synchronous is NORMAL, which does not risk corruption in WAL mode, but the most recent transactions
+     * can be lost on power failure.
+     */
+    public static final CPOrmTuningProfile BULK_IMPORT = new Builder()
+            .synchronous(Synchronous.NORMAL)
+            .cacheSize(-16 * 1024)
+            .tempStore(TempStore.MEMORY)
+            .walAutoCheckpoint(10000)
+            .build();
+
+    private final Synchronous synchronous;
+    private final Integer cacheSize;
+    private final Integer pageSize;
+    private final Long mmapSize;
+    private final TempStore tempStore;
+    private final Long journalSizeLimit;
+    private final Integer walAutoCheckpoint;
+    private final Boolean foreignKeys;
+    private final Integer maxSqlCacheSize;
+    private final Integer lookasideSlotSize;
+    private final Integer lookasideSlotCount;
+
+    private CPOrmTuningProfile(Builder builder) {
+
+        this.synchronous = builder.synchronous;
+        this.cacheSize = builder.cacheSize;
+        this.pageSize = builder.pageSize;
+        this.mmapSize = builder.mmapSize;
+        this.tempStore = builder.tempStore;
+        this.journalSizeLimit = builder.journalSizeLimit;
+        this.walAutoCheckpoint = builder.walAutoCheckpoint;
+        this.foreignKeys = builder.foreignKeys;
+        this.maxSqlCacheSize = builder.maxSqlCacheSize;
+        this.lookasideSlotSize = builder.lookasideSlotSize;
+        this.lookasideSlotCount = builder.lookasideSlotCount;
+    }
+
+    public Synchronous getSynchronous() {
+        return synchronous;
+    }
+
+    /**
+     * @return The page cache size, in pages if positive or in KiB if negative.
+     */
+    public Integer getCacheSize() {
+        return cacheSize;
+    }
+
+    public Integer getPageSize() {
+        return pageSize;
+    }
+
+    public Long getMmapSize() {
+        return mmapSize;
+    }
+
+    public TempStore getTempStore() {
+        return tempStore;
+    }
+
+    public Long getJournalSizeLimit() {
+        return journalSizeLimit;
+    }
+
+    public Integer getWalAutoCheckpoint() {
+        return walAutoCheckpoint;
+    }
+
+    public Boolean getForeignKeys() {
+        return foreignKeys;
+    }
+
+    public Integer getMaxSqlCacheSize() {
+        return maxSqlCacheSize;
+    }
+
+    public Integer getLookasideSlotSize() {
+        return lookasideSlotSize;
+    }
+
+    public Integer getLookasideSlotCount() {
+        return lookasideSlotCount;
+    }
+
+    public Bundle toBundle() {
+
+        Bundle bundle = new Bundle();
+        if (synchronous != null) bundle.putString(KEY_SYNCHRONOUS, synchronous.toString());
+        if (cacheSize != null) bundle.putInt(KEY_CACHE_SIZE, cacheSize);
+        if (pageSize != null) bundle.putInt(KEY_PAGE_SIZE, pageSize);
+        if (mmapSize != null) bundle.putLong(KEY_MMAP_SIZE, mmapSize);
+        if (tempStore != null) bundle.putString(KEY_TEMP_STORE, tempStore.toString());
+        if (journalSizeLimit != null) bundle.putLong(KEY_JOURNAL_SIZE_LIMIT, journalSizeLimit);
+        if (walAutoCheckpoint != null) bundle.putInt(KEY_WAL_AUTO_CHECKPOINT, walAutoCheckpoint);
+        if (foreignKeys != null) bundle.putBoolean(KEY_FOREIGN_KEYS, foreignKeys);
+        if (maxSqlCacheSize != null) bundle.putInt(KEY_MAX_SQL_CACHE_SIZE, maxSqlCacheSize);
+        if (lookasideSlotSize != null) bundle.putInt(KEY_LOOKASIDE_SLOT_SIZE, lookasideSlotSize);
+        if (lookasideSlotCount != null) bundle.putInt(KEY_LOOKASIDE_SLOT_COUNT, lookasideSlotCount);
+        return bundle;
+    }
+
+    public static CPOrmTuningProfile fromBundle(Bundle bundle) {
+
+        Builder builder = new Builder();
+        if (bundle.containsKey(KEY_SYNCHRONOUS)) builder.synchronous(Synchronous.valueOf(bundle.getString(KEY_SYNCHRONOUS)));
+        if (bundle.containsKey(KEY_CACHE_SIZE)) builder.cacheSize(bundle.getInt(KEY_CACHE_SIZE));
+        if (bundle.containsKey(KEY_PAGE_SIZE)) builder.pageSize(bundle.getInt(KEY_PAGE_SIZE));
+        if (bundle.containsKey(KEY_MMAP_SIZE)) builder.mmapSize(bundle.getLong(KEY_MMAP_SIZE));
+        if (bundle.containsKey(KEY_TEMP_STORE)) builder.tempStore(TempStore.valueOf(bundle.getString(KEY_TEMP_STORE)));
+        if (bundle.containsKey(KEY_JOURNAL_SIZE_LIMIT)) builder.journalSizeLimit(bundle.getLong(KEY_JOURNAL_SIZE_LIMIT));
+        if (bundle.containsKey(KEY_WAL_AUTO_CHECKPOINT)) builder.walAutoCheckpoint(bundle.getInt(KEY_WAL_AUTO_CHECKPOINT));
+        if (bundle.containsKey(KEY_FOREIGN_KEYS)) builder.foreignKeys(bundle.getBoolean(KEY_FOREIGN_KEYS));
+        if (bundle.containsKey(KEY_MAX_SQL_CACHE_SIZE)) builder.maxSqlCacheSize(bundle.getInt(KEY_MAX_SQL_CACHE_SIZE));
+        if (bundle.containsKey(KEY_LOOKASIDE_SLOT_SIZE) && bundle.containsKey(KEY_LOOKASIDE_SLOT_COUNT))
+            builder.lookaside(bundle.getInt(KEY_LOOKASIDE_SLOT_SIZE), bundle.getInt(KEY_LOOKASIDE_SLOT_COUNT));
+        return builder.build();
+    }
+
+    public static class Builder {
+
+        private Synchronous synchronous;
+        private Integer cacheSize;
+        private Integer pageSize;
+        private Long mmapSize;
+        private TempStore tempStore;
+        private Long journalSizeLimit;
+        private Integer walAutoCheckpoint;
+        private Boolean foreignKeys;
+        private Integer maxSqlCacheSize;
+        private Integer lookasideSlotSize;
+        private Integer lookasideSlotCount;
+
+        public Builder() {
+        }
+
+        /**
+         * Starts with all of the settings of an existing profile.
+         */
+        public Builder(CPOrmTuningProfile profile) {
+
+            this.synchronous = profile.synchronous;
+            this.cacheSize = profile.cacheSize;
+            this.pageSize = profile.pageSize;
+            this.mmapSize = profile.mmapSize;
+            this.tempStore = profile.tempStore;
+            this.journalSizeLimit = profile.journalSizeLimit;
+            this.walAutoCheckpoint = profile.walAutoCheckpoint;
+            this.foreignKeys = profile.foreignKeys;
+            this.maxSqlCacheSize = profile.maxSqlCacheSize;
+            this.lookasideSlotSize = profile.lookasideSlotSize;
+            this.lookasideSlotCount = profile.lookasideSlotCount;
+        }
+
+        public Builder synchronous(Synchronous synchronous) {
+            this.synchronous = synchronous;
+            return this;
+        }
+
+        /**
+         * @param cacheSize The page cache size, in pages if positive or in KiB if negative.
+         */
+        public Builder cacheSize(int cacheSize) {
+            this.cacheSize = cacheSize;
+            return this;
+        }
+
+        /**
+         * @param pageSize The page size in bytes, a power of two between 512 and 65536.  Only applied to new databases.
+         */
+        public Builder pageSize(int pageSize) {
+
+            if (pageSize < 512 || pageSize > 65536 || (pageSize & (pageSize - 1)) != 0)
+                throw new IllegalArgumentException("The page size must be a power of two between 512 and 65536");
+
+            this.pageSize = pageSize;
+            return this;
+        }
+
+        /**
+         * @param mmapSize The maximum amount of bytes of the database file to memory map, 0 to disable memory mapping.
+         */
+        public Builder mmapSize(long mmapSize) {
+            this.mmapSize = mmapSize;
+            return this;
+        }
+
+        public Builder tempStore(TempStore tempStore) {
+            this.tempStore = tempStore;
+            return this;
+        }
+
+        /**
+         * @param journalSizeLimit The size in bytes the WAL file is truncated to after a checkpoint, -1 for no limit.
+         */
+        public Builder journalSizeLimit(long journalSizeLimit) {
+            this.journalSizeLimit = journalSizeLimit;
+            return this;
+        }
+
+        /**
+         * @param walAutoCheckpoint The amount of WAL pages after which a checkpoint is run, 0 to disable automatic checkpoints.
+         */
+        public Builder walAutoCheckpoint(int walAutoCheckpoint) {
+            this.walAutoCheckpoint = walAutoCheckpoint;
+            return this;
+        }
+
+        public Builder foreignKeys(boolean foreignKeys) {
+            this.foreignKeys = foreignKeys;
+            return this;
+        }
+
+        /**
+         * @param maxSqlCacheSize The amount of prepared statements cached per connection, Android allows at most 100.
+         */
+        public Builder maxSqlCacheSize(int maxSqlCacheSize) {
+            this.maxSqlCacheSize = maxSqlCacheSize;
+            return this;
+        }
+
+        /**
+         * Configures the lookaside memory allocator, only supported from Android 8.1 and only applied when the database is opened.
+         *
+         * @param slotSize The size of a lookaside slot in bytes, 0 together with a slot count of 0 disables lookaside.
+         * @param slotCount The amount of lookaside slots.
+         */
+        public Builder lookaside(int slotSize, int slotCount) {
+            this.lookasideSlotSize = slotSize;
+            this.lookasideSlotCount = slotCount;
+            return this;
+        }
+
+        public CPOrmTuningProfile build() {
+            return new CPOrmTuningProfile(this);
+        }
+    }
+}
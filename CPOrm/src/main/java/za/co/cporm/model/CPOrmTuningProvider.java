@@ -0,0 +1,14 @@
+package za.co.cporm.model;
+
+/**
+ * Can optionally be implemented by the {@link CPOrmConfiguration} to provide the SQLite settings that are applied when
+ * the database is opened.  If the configuration does not implement this interface, {@link CPOrmTuningProfile#DEFAULT} is used.
+ */
+public interface CPOrmTuningProvider {
+
+    /**
+     * Provides the SQLite settings that are applied when the database is opened.
+     * @return The tuning profile, or {@link CPOrmTuningProfile#DEFAULT} to keep the SQLite defaults.
+     */
+    CPOrmTuningProfile getTuningProfile();
+}
@@ -24,17 +24,22 @@ public class CPSyncHelper {
     }
 
     public static <T> void insert(Context context, boolean notifyChanges, ContentProviderClient provider, T... dataModelObjects) throws RemoteException {
+        insert(context, notifyChanges, ConflictStrategy.ABORT, provider, dataModelObjects);
+    }
+
+    public static <T> void insert(Context context, boolean notifyChanges, ConflictStrategy conflictStrategy, ContentProviderClient provider, T... dataModelObjects) throws RemoteException {
 
         if (dataModelObjects.length == 1) {
 
             T modelObject = dataModelObjects[0];
             TableDetails tableDetails = CPOrm.findTableDetails(context, modelObject.getClass());
             ContentValues contentValues = ModelInflater.deflate(tableDetails, modelObject);
-            Uri insertUri = UriMatcherHelper.generateItemUri(context, tableDetails)
+            Uri insertUri = conflictStrategy.appendTo(UriMatcherHelper.generateItemUri(context, tableDetails))
                     .appendQueryParameter(CPOrmContentProvider.PARAMETER_SYNC, "false")
                     .appendQueryParameter(CPOrmContentProvider.PARAMETER_NOTIFY_CHANGES, Boolean.toString(notifyChanges)).build();
 
             provider.insert(insertUri, contentValues);
+            CPOrm.invalidateQueryCache(context, tableDetails);
         } else {
 
             TableDetails tableDetails = CPOrm.findTableDetails(context, dataModelObjects[0].getClass());
@@ -42,10 +47,11 @@ public class CPSyncHelper {
 
             if (tableDetails != null) {
 
-                Uri insertUri = UriMatcherHelper.generateItemUri(context, tableDetails)
+                Uri insertUri = conflictStrategy.appendTo(UriMatcherHelper.generateItemUri(context, tableDetails))
                         .appendQueryParameter(CPOrmContentProvider.PARAMETER_SYNC, "false")
                         .appendQueryParameter(CPOrmContentProvider.PARAMETER_NOTIFY_CHANGES, Boolean.toString(notifyChanges)).build();
                 provider.bulkInsert(insertUri, insertObjects);
+                CPOrm.invalidateQueryCache(context, tableDetails);
             }
         }
     }
@@ -62,6 +68,7 @@ public class CPSyncHelper {
                 .appendQueryParameter(CPOrmContentProvider.PARAMETER_NOTIFY_CHANGES, Boolean.toString(notifyChanges)).build();
 
         Uri itemUri = provider.insert(insertUri, contentValues);
+        CPOrm.invalidateQueryCache(context, tableDetails);
 
         return CPOrm.findSingleItem(context, itemUri, tableDetails);
     }
@@ -79,6 +86,7 @@ public class CPSyncHelper {
                 .appendQueryParameter(CPOrmContentProvider.PARAMETER_NOTIFY_CHANGES, Boolean.toString(notifyChanges)).build();
 
         provider.update(itemUri, contentValues, null, null);
+        CPOrm.invalidateQueryCache(context, tableDetails);
     }
 
     public static <T> void updateColumns(Context context, ContentProviderClient provider, T dataModelObject, String... columns) throws RemoteException {
@@ -109,6 +117,7 @@ public class CPSyncHelper {
         }
 
         provider.update(itemUri, contentValues, null, null);
+        CPOrm.invalidateQueryCache(context, tableDetails);
     }
 
     public static <T> void updateColumnsExcluding(Context context, ContentProviderClient provider, T dataModelObject, String... columnsToExclude) throws RemoteException {
@@ -130,6 +139,7 @@ public class CPSyncHelper {
         }
 
         provider.update(itemUri, contentValues, null, null);
+        CPOrm.invalidateQueryCache(context, tableDetails);
     }
 
     public static <T> void delete(Context context, ContentProviderClient provider, T dataModelObject) throws RemoteException {
@@ -144,5 +154,6 @@ public class CPSyncHelper {
                 .appendQueryParameter(CPOrmContentProvider.PARAMETER_NOTIFY_CHANGES, Boolean.toString(notifyChanges)).build();
 
         provider.delete(itemUri, null, null);
+        CPOrm.invalidateQueryCache(context, tableDetails);
     }
 }
@@ -0,0 +1,141 @@
+package za.co.cporm.model;
+
+import android.net.Uri;
+import android.text.TextUtils;
+import za.co.cporm.provider.CPOrmContentProvider;
+
+import java.util.Arrays;
+
+/**
+ * Specifies what the content provider should do when an inserted row conflicts with an existing row on the primary key,
+ * or on a unique constraint.  The strategy is passed to the content provider as part of the insert uri, so it can be used
+ * with single inserts, bulk inserts and batch operations.
+ */
+public final class ConflictStrategy {
+
+    public enum Action {
+        /**
+         * The insert fails, this is the default.
+         */
+        ABORT,
+        /**
+         * The conflicting row is skipped, and the existing row is kept.
+         */
+        IGNORE,
+        /**
+         * The existing row is deleted and the new row is inserted.
+         */
+        REPLACE,
+        /**
+         * The selected columns of the existing row are updated with the values of the new row.
+         */
+        UPDATE
+    }
+
+    public static final ConflictStrategy ABORT = new ConflictStrategy(Action.ABORT, new String[0], new String[0]);
+    public static final ConflictStrategy IGNORE = new ConflictStrategy(Action.IGNORE, new String[0], new String[0]);
+    public static final ConflictStrategy REPLACE = new ConflictStrategy(Action.REPLACE, new String[0], new String[0]);
+
+    private final Action action;
+    private final String[] conflictColumns;
+    private final String[] updateColumns;
+
+    private ConflictStrategy(Action action, String[] conflictColumns, String[] updateColumns) {
+
+        this.action = action;
+        this.conflictColumns = conflictColumns;
+        this.updateColumns = updateColumns;
+    }
+
+    /**
+     * Updates the existing row if the inserted row conflicts on the primary key.
+     *
+     * @param updateColumns The columns to update, if none are specified all of the inserted columns are updated.
+     * @return The update strategy.
+     */
+    public static ConflictStrategy update(String... updateColumns) {
+
+        return new ConflictStrategy(Action.UPDATE, new String[0], updateColumns);
+    }
+
+    /**
+     * Updates the existing row if the inserted row conflicts on the columns of a unique constraint.
+     *
+     * @param conflictColumns The columns of the unique constraint that identifies the existing row.
+     * @param updateColumns The columns to update, if none are specified all of the inserted columns are updated.
+     * @return The update strategy.
+     */
+    public static ConflictStrategy updateOnConflict(String[] conflictColumns, String... updateColumns) {
+
+        if (conflictColumns == null || conflictColumns.length == 0)
+            throw new IllegalArgumentException("At least one conflict column must be specified");
+
+        return new ConflictStrategy(Action.UPDATE, conflictColumns, updateColumns);
+    }
+
+    public Action getAction() {
+        return action;
+    }
+
+    /**
+     * @return The columns that identify the conflicting row, if empty the primary key is used.
+     */
+    public String[] getConflictColumns() {
+        return conflictColumns;
+    }
+
+    /**
+     * @return The columns to update on conflict, if empty all of the inserted columns are updated.
+     */
+    public String[] getUpdateColumns() {
+        return updateColumns;
+    }
+
+    /**
+     * Adds this strategy to the uri, the default strategy does not add any parameters.
+     *
+     * @param uriBuilder The insert uri builder.
+     * @return The uri builder.
+     */
+    public Uri.Builder appendTo(Uri.Builder uriBuilder) {
+
+        if (action == Action.ABORT)
+            return uriBuilder;
+
+        uriBuilder.appendQueryParameter(CPOrmContentProvider.PARAMETER_CONFLICT, action.toString());
+        if (conflictColumns.length > 0)
+            uriBuilder.appendQueryParameter(CPOrmContentProvider.PARAMETER_CONFLICT_COLUMNS, TextUtils.join(",", conflictColumns));
+        if (updateColumns.length > 0)
+            uriBuilder.appendQueryParameter(CPOrmContentProvider.PARAMETER_UPDATE_COLUMNS, TextUtils.join(",", updateColumns));
+
+        return uriBuilder;
+    }
+
+    /**
+     * Reads the strategy from the request uri.
+     *
+     * @param uri The insert uri.
+     * @return The strategy, or {@link #ABORT} if the uri does not specify one.
+     */
+    public static ConflictStrategy fromUri(Uri uri) {
+
+        String action = uri.getQueryParameter(CPOrmContentProvider.PARAMETER_CONFLICT);
+        if (TextUtils.isEmpty(action))
+            return ABORT;
+
+        return new ConflictStrategy(Action.valueOf(action),
+                splitColumns(uri.getQueryParameter(CPOrmContentProvider.PARAMETER_CONFLICT_COLUMNS)),
+                splitColumns(uri.getQueryParameter(CPOrmContentProvider.PARAMETER_UPDATE_COLUMNS)));
+    }
+
+    private static String[] splitColumns(String columns) {
+
+        return TextUtils.isEmpty(columns) ? new String[0] : columns.split(",");
+    }
+
+    @Override
+    public String toString() {
+
+        return action + " " + Arrays.toString(conflictColumns) + " " + Arrays.toString(updateColumns);
+    }
+}
@@ -30,7 +30,19 @@ public class TransactionHelper {
 
     public static void saveInTransaction(Context context, List<? extends CPDefaultRecord> records) throws RemoteException, OperationApplicationException {
 
-        List<ContentProviderOperation> operations = prepareTransaction(context, records);
+        saveInTransaction(context, records, 0);
+    }
+
+    /**
+     * Saves the records in order, allowing the content provider to yield the transaction every yieldInterval records so that
+     * large saves do not block other writers.  Back references to records saved before a yield point keep working, but the
+     * save is no longer atomic: if a record fails, only the records since the last yield point are rolled back.
+     *
+     * @param yieldInterval The amount of records between yield points, 0 to save all of the records atomically.
+     */
+    public static void saveInTransaction(Context context, List<? extends CPDefaultRecord> records, int yieldInterval) throws RemoteException, OperationApplicationException {
+
+        List<ContentProviderOperation> operations = prepareTransaction(context, records, yieldInterval);
         ContentProviderResult[] contentProviderResults = CPOrm.applyPreparedOperations(operations);
 
         Map<Class, Long> referenceIds = new HashMap<>();
@@ -57,6 +69,11 @@ public class TransactionHelper {
 
     public static ArrayList<ContentProviderOperation> prepareTransaction(Context context, List<? extends CPDefaultRecord> records){
 
+        return prepareTransaction(context, records, 0);
+    }
+
+    public static ArrayList<ContentProviderOperation> prepareTransaction(Context context, List<? extends CPDefaultRecord> records, int yieldInterval){
+
         ArrayList<ContentProviderOperation> operations = new ArrayList<>();
         Map<Class, Integer> classIndex = new HashMap<>();
         String firstAuthority = null;
@@ -86,6 +103,9 @@ public class TransactionHelper {
 
             applyReferences(tableDetails, builder, classIndex);
 
+            if(yieldInterval > 0 && i > 0 && i % yieldInterval == 0)
+                builder.withYieldAllowed(true);
+
             operations.add(builder.build());
         }
 
@@ -0,0 +1,26 @@
+package za.co.cporm.model.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Moves old rows of the table into an archive database with the same schema when {@link za.co.cporm.model.CPOrm#archive()}
+ * is called, so that the indices of the table stay small.  Archived rows are only returned by selects that include the
+ * archive, see {@link za.co.cporm.model.query.Select#includeArchive()}, and can no longer be updated or deleted.
+ * The column must contain the time in milliseconds, like {@link java.util.Date} and {@link java.util.Calendar} columns.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Archive {
+
+    /** The column that contains the time of the row, it should be indexed. */
+    String column();
+
+    /** The age in days after which rows are moved to the archive. */
+    int maxAgeDays();
+
+    /** The amount of rows moved per transaction, writers are blocked while a batch is moved, so batches should be small. */
+    int batchSize() default 200;
+}
@@ -0,0 +1,20 @@
+package za.co.cporm.model.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Stores the table in a separate database file, shared by all of the tables of the same group.  Every database file has
+ * its own writer lock and WAL, so writes to tables of different groups do not block each other.  Tables without a group
+ * are stored in the database named by {@link za.co.cporm.model.CPOrmConfiguration#getDatabaseName()}.
+ * Views can only select from tables in the same group, and transactions cannot span groups atomically.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface DatabaseGroup {
+
+    /** The name of the group, which is used as part of the database file name. */
+    String value();
+}
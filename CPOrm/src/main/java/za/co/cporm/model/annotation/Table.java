@@ -17,4 +17,10 @@ public @interface Table {
 
     /** Any additional constraints that should be added for the table.  Todo: Not implemented yet */
     TableConstraint[] constraints() default {};
+
+    /** The size in bytes of the cursor windows of queries on this table, 0 to use the default size.  Requires Android 9 or higher. */
+    int cursorWindowSize() default 0;
+
+    /** The size in bytes of the cache of rows found by primary key, 0 to disable the cache.  Only enable this for tables that are not changed by triggers or foreign key actions. */
+    int rowCacheSize() default 0;
 }
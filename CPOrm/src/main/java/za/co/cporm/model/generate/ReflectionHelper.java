@@ -15,6 +15,7 @@ import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This class will convert any valid Java Object marked with the {@link za.co.cporm.model.annotation.Table} annotation
@@ -37,7 +38,11 @@ public class ReflectionHelper {
         String authorityName = authority == null ? ManifestHelper.getAuthority(context) : authority.value();
 
         String tableName = TextUtils.isEmpty(table.tableName()) ? TableDetails.COLUMN_NAME_CONVERTER.convertToSql(dataModelObject.getSimpleName()) : table.tableName();
-        TableDetails tableDetails = new TableDetails(tableName, authorityName, dataModelObject);
+        DatabaseGroup databaseGroup = dataModelObject.getAnnotation(DatabaseGroup.class);
+        String databaseGroupName = databaseGroup == null ? null : databaseGroup.value();
+        if(databaseGroupName != null && !databaseGroupName.matches("[A-Za-z0-9_]+")) throw new IllegalArgumentException("Database group names may only contain letters, digits and underscores: " + dataModelObject.getSimpleName());
+
+        TableDetails tableDetails = new TableDetails(tableName, authorityName, databaseGroupName, dataModelObject);
         SqlColumnMappingFactory columnMappingFactory = ManifestHelper.getMappingFactory(context);
 
         for (Map.Entry<Field, Column> columnFieldEntry : getColumns(dataModelObject).entrySet()) {
@@ -82,6 +87,17 @@ public class ReflectionHelper {
                 tableDetails.addConstraint(tableConstraint);
             }
         }
+
+        tableDetails.setCursorWindowSize(table.cursorWindowSize());
+        if(table.rowCacheSize() > 0 && TableView.class.isAssignableFrom(dataModelObject)) throw new IllegalArgumentException("Rows of views cannot be cached: " + dataModelObject.getSimpleName());
+        tableDetails.setRowCacheSize(table.rowCacheSize());
+
+        Archive archive = dataModelObject.getAnnotation(Archive.class);
+        if(archive != null){
+            if(TableView.class.isAssignableFrom(dataModelObject)) throw new IllegalArgumentException("Views cannot be archived: " + dataModelObject.getSimpleName());
+
+            tableDetails.setArchive(archive.column(), TimeUnit.DAYS.toMillis(archive.maxAgeDays()), archive.batchSize());
+        }
         return tableDetails;
     }
 
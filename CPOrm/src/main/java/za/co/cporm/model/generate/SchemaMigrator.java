@@ -0,0 +1,428 @@
+package za.co.cporm.model.generate;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.text.TextUtils;
+import za.co.cporm.model.annotation.Index;
+import za.co.cporm.model.annotation.TableConstraint;
+import za.co.cporm.util.CPOrmLog;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import static za.co.cporm.model.generate.TableDetails.ColumnDetails;
+
+/**
+ * Migrates the tables of a database to the current table details, keeping the existing rows.  The live schema is read
+ * from sqlite_master and the table pragmas, and compared with the table details:
+ * Missing tables are created.  Columns that can be added are added using ALTER TABLE ADD COLUMN, this excludes primary key,
+ * unique and required columns.  Tables with any other change, such as a changed column type or constraint, a removed
+ * column or a new column that can not be added, are rebuilt: a new table is created, the columns that still exist are
+ * copied, and the new table replaces the old one.  Required columns that are new, or that contain nulls, are filled with
+ * the default value of their type: 0, an empty string or an empty blob.  Indices of the table details are created, and the indices created
+ * for indices that are no longer part of the table details are dropped.
+ * Tables that are not part of the table details are kept, and triggers on rebuilt tables are not created again.
+ * The migration must be run in a transaction, so that a failed migration does not leave the database half migrated.
+ */
+public class SchemaMigrator {
+
+    public static final String REBUILD_TABLE_SUFFIX = "_cporm_rebuild";
+
+    /**
+     * Receives the progress of a migration, on the thread that opened the database.
+     */
+    public interface ProgressListener {
+
+        /**
+         * @param completedSteps The amount of steps completed, a step creates, alters or rebuilds a single table or index.
+         * @param totalSteps The total amount of steps of the migration.
+         * @param description The description of the step that was completed.
+         */
+        void onProgress(int completedSteps, int totalSteps, String description);
+    }
+
+    private final SQLiteDatabase db;
+    private final boolean loggingEnabled;
+    private final ProgressListener progressListener;
+
+    /**
+     * @param progressListener Optional listener that will receive the progress of the migration.
+     */
+    public SchemaMigrator(SQLiteDatabase db, boolean loggingEnabled, ProgressListener progressListener) {
+
+        this.db = db;
+        this.loggingEnabled = loggingEnabled;
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * @return The name of the table the table is rebuilt in before it replaces the existing table.
+     */
+    public static String getRebuildTableName(TableDetails tableDetails) {
+
+        return tableDetails.getTableName() + REBUILD_TABLE_SUFFIX;
+    }
+
+    /**
+     * Migrates the tables to the table details.
+     *
+     * @param tables The table details of the tables, views are not supported.
+     * @return The amount of steps that were executed, 0 if the tables were already up to date.
+     */
+    public int migrate(List<TableDetails> tables) {
+
+        List<Step> steps = new ArrayList<Step>();
+        for (TableDetails tableDetails : tables) {
+            planTable(tableDetails, steps);
+        }
+
+        for (int i = 0; i < steps.size(); i++) {
+
+            Step step = steps.get(i);
+            if (loggingEnabled) {
+                CPOrmLog.d("Migrating schema: " + step.description);
+            }
+            for (String statement : step.statements) {
+
+                if (loggingEnabled) {
+                    CPOrmLog.d(statement);
+                }
+                db.execSQL(statement);
+            }
+
+            if (progressListener != null)
+                progressListener.onProgress(i + 1, steps.size(), step.description);
+        }
+
+        return steps.size();
+    }
+
+    private void planTable(TableDetails tableDetails, List<Step> steps) {
+
+        String tableName = tableDetails.getTableName();
+        String tableSql = findTableSql(tableName);
+
+        if (tableSql == null) {
+            steps.add(new Step("Create table " + tableName, TableGenerator.generateTableCreate(tableDetails, false)));
+            planIndices(tableDetails, new HashMap<String, String>(), steps);
+            return;
+        }
+
+        Map<String, ExistingColumn> existingColumns = readColumns(tableName);
+        Set<String> uniqueColumns = readUniqueColumns(tableName, existingColumns);
+        Set<String> constraintPrimaryKeyColumns = findConstraintPrimaryKeyColumns(tableDetails);
+        boolean rebuild = tableSql.toUpperCase(Locale.US).contains("AUTOINCREMENT") != hasAutoIncrement(tableDetails);
+        List<ColumnDetails> addedColumns = new ArrayList<ColumnDetails>();
+        List<String> copiedColumns = new ArrayList<String>();
+        List<String> copiedValues = new ArrayList<String>();
+        Set<String> modelColumns = new HashSet<String>();
+
+        for (ColumnDetails columnDetails : tableDetails.getColumns()) {
+
+            String columnKey = columnDetails.getColumnName().toLowerCase(Locale.US);
+            ExistingColumn existingColumn = existingColumns.get(columnKey);
+            modelColumns.add(columnKey);
+
+            if (existingColumn == null) {
+
+                if (isAddable(columnDetails) && !constraintPrimaryKeyColumns.contains(columnKey))
+                    addedColumns.add(columnDetails);
+                else
+                    rebuild = true;
+
+                //Existing rows need a value for new required columns, otherwise the copy violates the NOT NULL constraint
+                if (isNotNull(columnDetails) && !columnDetails.isPrimaryKey()) {
+                    copiedColumns.add(columnDetails.getColumnName());
+                    copiedValues.add(getDefaultValue(columnDetails));
+                }
+            } else {
+
+                copiedColumns.add(columnDetails.getColumnName());
+                if (isNotNull(columnDetails) && !columnDetails.isPrimaryKey() && !existingColumn.notNull)
+                    copiedValues.add("COALESCE(" + columnDetails.getColumnName() + ", " + getDefaultValue(columnDetails) + ")");
+                else
+                    copiedValues.add(columnDetails.getColumnName());
+                if (!isSameColumn(columnDetails, existingColumn, uniqueColumns.contains(columnKey), constraintPrimaryKeyColumns.contains(columnKey)))
+                    rebuild = true;
+            }
+        }
+
+        //Removed columns can only be dropped by rebuilding the table
+        if (!modelColumns.containsAll(existingColumns.keySet()))
+            rebuild = true;
+
+        if (rebuild) {
+
+            String rebuildTableName = getRebuildTableName(tableDetails);
+            List<String> statements = new ArrayList<String>();
+            statements.add("DROP TABLE IF EXISTS " + rebuildTableName);
+            statements.add(TableGenerator.generateTableCreate(tableDetails, rebuildTableName, false));
+            if (!copiedColumns.isEmpty()) {
+
+                statements.add("INSERT INTO " + rebuildTableName + " (" + TextUtils.join(", ", copiedColumns) + ") SELECT " +
+                        TextUtils.join(", ", copiedValues) + " FROM " + tableName);
+            }
+            statements.add("DROP TABLE " + tableName);
+            statements.add("ALTER TABLE " + rebuildTableName + " RENAME TO " + tableName);
+            steps.add(new Step("Rebuild table " + tableName, statements));
+
+            //The indices of the existing table were dropped with it
+            planIndices(tableDetails, new HashMap<String, String>(), steps);
+            return;
+        }
+
+        for (ColumnDetails addedColumn : addedColumns) {
+
+            steps.add(new Step("Add column " + addedColumn.getColumnName() + " to table " + tableName,
+                    "ALTER TABLE " + tableName + " ADD COLUMN " + addedColumn.getColumnName() + " " + addedColumn.getColumnTypeMapping().getSqlColumnTypeName()));
+        }
+        planIndices(tableDetails, readIndices(tableName), steps);
+    }
+
+    /**
+     * Creates the indices that are missing or changed, and drops the indices created for indices that were removed.
+     *
+     * @param existingIndices The sql of the existing indices of the table by lower case name.
+     */
+    private void planIndices(TableDetails tableDetails, Map<String, String> existingIndices, List<Step> steps) {
+
+        String indexPrefix = TableGenerator.generateIndexName(tableDetails, "").toLowerCase(Locale.US);
+        Set<String> modelIndices = new HashSet<String>();
+        List<String> indexStatements = TableGenerator.generateIndecesCreate(tableDetails, false);
+        int position = 0;
+
+        for (Index index : tableDetails.getIndices()) {
+
+            String indexName = TableGenerator.generateIndexName(tableDetails, index.indexName());
+            String indexKey = indexName.toLowerCase(Locale.US);
+            String statement = indexStatements.get(position++);
+            String existingSql = existingIndices.get(indexKey);
+            modelIndices.add(indexKey);
+
+            if (existingSql != null && normalize(existingSql).equals(normalize(statement)))
+                continue;
+
+            List<String> statements = new ArrayList<String>();
+            if (existingSql != null)
+                statements.add("DROP INDEX " + indexName);
+            statements.add(statement);
+            steps.add(new Step("Create index " + indexName, statements));
+        }
+
+        for (String existingIndex : existingIndices.keySet()) {
+
+            if (existingIndex.startsWith(indexPrefix) && !modelIndices.contains(existingIndex))
+                steps.add(new Step("Drop index " + existingIndex, "DROP INDEX " + existingIndex));
+        }
+    }
+
+    private String findTableSql(String tableName) {
+
+        Cursor cursor = db.rawQuery("SELECT sql FROM sqlite_master WHERE type = 'table' AND name = ? COLLATE NOCASE", new String[]{tableName});
+        try {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private Map<String, ExistingColumn> readColumns(String tableName) {
+
+        Map<String, ExistingColumn> columns = new LinkedHashMap<String, ExistingColumn>();
+        Cursor cursor = db.rawQuery("PRAGMA table_info(" + tableName + ")", null);
+        try {
+            int nameIndex = cursor.getColumnIndexOrThrow("name");
+            int typeIndex = cursor.getColumnIndexOrThrow("type");
+            int notNullIndex = cursor.getColumnIndexOrThrow("notnull");
+            int primaryKeyIndex = cursor.getColumnIndexOrThrow("pk");
+
+            while (cursor.moveToNext()) {
+
+                ExistingColumn column = new ExistingColumn(cursor.getString(typeIndex), cursor.getInt(notNullIndex) != 0, cursor.getInt(primaryKeyIndex) != 0);
+                columns.put(cursor.getString(nameIndex).toLowerCase(Locale.US), column);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return columns;
+    }
+
+    /**
+     * Finds the columns with a unique constraint, which SQLite enforces with an automatic index on the column.
+     *
+     * @return The lower case names of the unique columns, excluding primary key columns.
+     */
+    private Set<String> readUniqueColumns(String tableName, Map<String, ExistingColumn> existingColumns) {
+
+        List<String> autoIndices = new ArrayList<String>();
+        Cursor cursor = db.rawQuery("PRAGMA index_list(" + tableName + ")", null);
+        try {
+            int nameIndex = cursor.getColumnIndexOrThrow("name");
+            int uniqueIndex = cursor.getColumnIndexOrThrow("unique");
+
+            while (cursor.moveToNext()) {
+
+                String indexName = cursor.getString(nameIndex);
+                if (cursor.getInt(uniqueIndex) != 0 && indexName.startsWith("sqlite_autoindex_"))
+                    autoIndices.add(indexName);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        Set<String> uniqueColumns = new HashSet<String>();
+        for (String autoIndex : autoIndices) {
+
+            cursor = db.rawQuery("PRAGMA index_info(" + autoIndex + ")", null);
+            try {
+                if (cursor.getCount() == 1 && cursor.moveToFirst())
+                    uniqueColumns.add(cursor.getString(cursor.getColumnIndexOrThrow("name")).toLowerCase(Locale.US));
+            } finally {
+                cursor.close();
+            }
+        }
+
+        for (Map.Entry<String, ExistingColumn> column : existingColumns.entrySet()) {
+            if (column.getValue().primaryKey)
+                uniqueColumns.remove(column.getKey());
+        }
+
+        return uniqueColumns;
+    }
+
+    /**
+     * @return The sql of the indices created for the table by lower case name, automatic indices are excluded.
+     */
+    private Map<String, String> readIndices(String tableName) {
+
+        Map<String, String> indices = new HashMap<String, String>();
+        Cursor cursor = db.rawQuery("SELECT name, sql FROM sqlite_master WHERE type = 'index' AND tbl_name = ? COLLATE NOCASE AND sql IS NOT NULL", new String[]{tableName});
+        try {
+            while (cursor.moveToNext()) {
+                indices.put(cursor.getString(0).toLowerCase(Locale.US), cursor.getString(1));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return indices;
+    }
+
+    /**
+     * Compares the column with the definition created by {@link TableGenerator}.
+     */
+    private static boolean isSameColumn(ColumnDetails columnDetails, ExistingColumn existingColumn, boolean unique, boolean constraintPrimaryKey) {
+
+        boolean primaryKey = columnDetails.isPrimaryKey();
+
+        return columnDetails.getColumnTypeMapping().getSqlColumnTypeName().equalsIgnoreCase(existingColumn.type) &&
+                (primaryKey || constraintPrimaryKey) == existingColumn.primaryKey &&
+                isNotNull(columnDetails) == existingColumn.notNull &&
+                (!primaryKey && columnDetails.isUnique()) == unique;
+    }
+
+    /**
+     * @return True if {@link TableGenerator} creates the column with a NOT NULL constraint.
+     */
+    private static boolean isNotNull(ColumnDetails columnDetails) {
+
+        return columnDetails.isPrimaryKey() ? columnDetails.isRequired() : !columnDetails.isUnique() && columnDetails.isRequired();
+    }
+
+    /**
+     * @return The literal used for required columns that have no value in the rebuilt rows.
+     */
+    private static String getDefaultValue(ColumnDetails columnDetails) {
+
+        String type = columnDetails.getColumnTypeMapping().getSqlColumnTypeName().toUpperCase(Locale.US);
+        if (type.contains("TEXT") || type.contains("CHAR") || type.contains("CLOB"))
+            return "''";
+        else if (type.contains("BLOB"))
+            return "X''";
+        else
+            return "0";
+    }
+
+    /**
+     * SQLite reports the columns of a primary key table constraint as primary key columns, like a column primary key.
+     *
+     * @return The lower case names of the columns of the primary key table constraints.
+     */
+    private static Set<String> findConstraintPrimaryKeyColumns(TableDetails tableDetails) {
+
+        Set<String> columns = new HashSet<String>();
+        for (TableConstraint constraint : tableDetails.getConstraints()) {
+
+            if (constraint.constraintType() != TableConstraint.Type.PRIMARY_KEY)
+                continue;
+
+            for (String column : constraint.constraintColumns()) {
+                columns.add(column.toLowerCase(Locale.US));
+            }
+        }
+
+        return columns;
+    }
+
+    /**
+     * SQLite can not add primary key or unique columns, and can only add required columns with a default value.
+     */
+    private static boolean isAddable(ColumnDetails columnDetails) {
+
+        return !columnDetails.isPrimaryKey() && !columnDetails.isUnique() && !columnDetails.isRequired();
+    }
+
+    private static boolean hasAutoIncrement(TableDetails tableDetails) {
+
+        ColumnDetails primaryKeyColumn = tableDetails.findPrimaryKeyColumn();
+        return primaryKeyColumn != null && primaryKeyColumn.isAutoIncrement();
+    }
+
+    private static String normalize(String sql) {
+
+        String normalized = sql.trim().replaceAll("\\s+", " ").replaceAll(" ?([(),]) ?", "$1");
+        if (normalized.endsWith(";"))
+            normalized = normalized.substring(0, normalized.length() - 1);
+
+        return normalized.toUpperCase(Locale.US);
+    }
+
+    private static class ExistingColumn {
+
+        private final String type;
+        private final boolean notNull;
+        private final boolean primaryKey;
+
+        ExistingColumn(String type, boolean notNull, boolean primaryKey) {
+
+            this.type = type;
+            this.notNull = notNull;
+            this.primaryKey = primaryKey;
+        }
+    }
+
+    private static class Step {
+
+        private final String description;
+        private final List<String> statements;
+
+        Step(String description, String statement) {
+
+            this(description, new ArrayList<String>());
+            statements.add(statement);
+        }
+
+        Step(String description, List<String> statements) {
+
+            this.description = description;
+            this.statements = statements;
+        }
+    }
+}
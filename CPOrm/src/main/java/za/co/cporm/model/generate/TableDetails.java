@@ -27,6 +27,7 @@ public class TableDetails {
 
     private final String tableName;
     private final String authority;
+    private final String databaseGroup;
     private final Class tableClass;
     private final boolean serializable;
     private final Constructor tableClassConstructor;
@@ -35,10 +36,23 @@ public class TableDetails {
     private final List<TableConstraint> constraints = new LinkedList<TableConstraint>();
     private final List<Class<?>> changeListener = new LinkedList<Class<?>>();
     private String primaryKeyClause;
+    private String archiveColumn;
+    private long archiveMaxAgeMillis;
+    private int archiveBatchSize;
+    private int cursorWindowSize;
+    private int rowCacheSize;
 
     public TableDetails(String tableName, String authority, Class tableClass){
+        this(tableName, authority, null, tableClass);
+    }
+
+    /**
+     * @param databaseGroup The {@link za.co.cporm.model.annotation.DatabaseGroup} of the table, or null for the default database.
+     */
+    public TableDetails(String tableName, String authority, String databaseGroup, Class tableClass){
         this.tableName = tableName;
         this.authority = authority;
+        this.databaseGroup = TextUtils.isEmpty(databaseGroup) ? null : databaseGroup;
         this.tableClass = tableClass;
         this.serializable = Serializable.class.isAssignableFrom(tableClass);
         try {
@@ -58,6 +72,14 @@ public class TableDetails {
         return authority;
     }
 
+    /**
+     * @return The database group of the table, or null if it is stored in the default database.
+     */
+    public String getDatabaseGroup() {
+
+        return databaseGroup;
+    }
+
     public Class getTableClass() {
         return tableClass;
     }
@@ -144,6 +166,74 @@ public class TableDetails {
         changeListener.add(clazz);
     }
 
+    /**
+     * Moves rows older than the maximum age to the archive database.
+     *
+     * @param column The column containing the time of the row in milliseconds.
+     * @param maxAgeMillis The age after which rows are archived.
+     * @param batchSize The amount of rows moved per transaction.
+     */
+    public void setArchive(String column, long maxAgeMillis, int batchSize) {
+
+        if (findColumn(column) == null)
+            throw new IllegalArgumentException("The archive column " + column + " is not a column of table " + tableName);
+        if (maxAgeMillis <= 0 || batchSize <= 0)
+            throw new IllegalArgumentException("The archive age and batch size of table " + tableName + " must be greater than 0");
+
+        this.archiveColumn = column;
+        this.archiveMaxAgeMillis = maxAgeMillis;
+        this.archiveBatchSize = batchSize;
+    }
+
+    /**
+     * @return True if old rows of this table are moved to the archive database.
+     */
+    public boolean isArchived() {
+        return archiveColumn != null;
+    }
+
+    public String getArchiveColumn() {
+        return archiveColumn;
+    }
+
+    public long getArchiveMaxAgeMillis() {
+        return archiveMaxAgeMillis;
+    }
+
+    public int getArchiveBatchSize() {
+        return archiveBatchSize;
+    }
+
+    /**
+     * @return The size in bytes of the cursor windows of queries on this table, or 0 to use the default size.
+     */
+    public int getCursorWindowSize() {
+        return cursorWindowSize;
+    }
+
+    public void setCursorWindowSize(int cursorWindowSize) {
+
+        if (cursorWindowSize < 0)
+            throw new IllegalArgumentException("The cursor window size of table " + tableName + " may not be negative");
+
+        this.cursorWindowSize = cursorWindowSize;
+    }
+
+    /**
+     * @return The size in bytes of the cache of rows found by primary key, or 0 if the rows are not cached.
+     */
+    public int getRowCacheSize() {
+        return rowCacheSize;
+    }
+
+    public void setRowCacheSize(int rowCacheSize) {
+
+        if (rowCacheSize < 0)
+            throw new IllegalArgumentException("The row cache size of table " + tableName + " may not be negative");
+
+        this.rowCacheSize = rowCacheSize;
+    }
+
     public Collection<TableConstraint> getConstraints() {
         return constraints;
     }
@@ -28,11 +28,19 @@ public class TableGenerator {
     }
 
     public static String generateTableCreate(TableDetails tableDetails, boolean prettyPrint) {
+
+        return generateTableCreate(tableDetails, tableDetails.getTableName(), prettyPrint);
+    }
+
+    /**
+     * Generates the create statement of the table using another table name, used to rebuild an existing table.
+     */
+    public static String generateTableCreate(TableDetails tableDetails, String tableName, boolean prettyPrint) {
         StringBuilder tableQuery = new StringBuilder();
 
         prettyPrint(0, prettyPrint,  tableQuery);
         tableQuery.append("CREATE TABLE ");
-        tableQuery.append(tableDetails.getTableName());
+        tableQuery.append(tableName);
 
         prettyPrint(1, prettyPrint,  tableQuery);
         tableQuery.append("(");
@@ -70,7 +78,7 @@ public class TableGenerator {
                 continue;
 
             prettyPrint(3, prettyPrint,  tableQuery);
-            tableQuery.append(createUniqueKeyConstraint(tableDetails.getTableName(), tableConstraint));
+            tableQuery.append(createUniqueKeyConstraint(tableName, tableConstraint));
 
             tableQuery.append(";\n");
             prettyPrint(1, prettyPrint, tableQuery);
@@ -80,9 +88,9 @@ public class TableGenerator {
 
             prettyPrint(1, prettyPrint,  tableQuery);
             tableQuery.append("CREATE INDEX ");
-            tableQuery.append(index.indexName()).append("_").append(tableDetails.getTableName());
+            tableQuery.append(index.indexName()).append("_").append(tableName);
             tableQuery.append(" ON ");
-            tableQuery.append(tableDetails.getTableName());
+            tableQuery.append(tableName);
             tableQuery.append(" (");
 
             int length = index.indexColumns().length;
@@ -108,7 +116,7 @@ public class TableGenerator {
             StringBuilder tableQuery = new StringBuilder();
             prettyPrint(1, prettyPrint,  tableQuery);
             tableQuery.append("CREATE INDEX ");
-            tableQuery.append("IDX_").append(tableDetails.getTableName()).append("_").append(index.indexName());
+            tableQuery.append(generateIndexName(tableDetails, index.indexName()));
             tableQuery.append(" ON ");
             tableQuery.append(tableDetails.getTableName());
             tableQuery.append(" (");
@@ -130,6 +138,14 @@ public class TableGenerator {
         return indeces;
     }
 
+    /**
+     * @return The name of the index created by {@link #generateIndecesCreate(TableDetails, boolean)}.
+     */
+    public static String generateIndexName(TableDetails tableDetails, String indexName) {
+
+        return "IDX_" + tableDetails.getTableName() + "_" + indexName;
+    }
+
     private static void prettyPrint(int tabSpace, boolean prettyPrint, StringBuilder tableQuery) {
         if(prettyPrint){
             tableQuery.append("\n");
@@ -3,11 +3,16 @@ package za.co.cporm.model.loader;
 import android.content.Context;
 import android.content.CursorLoader;
 import android.database.Cursor;
+import android.os.Build;
+import android.os.OperationCanceledException;
 import za.co.cporm.model.generate.TableDetails;
 import za.co.cporm.model.query.Select;
 import za.co.cporm.model.util.CPOrmCursor;
+import za.co.cporm.model.util.CPOrmExecutors;
 import za.co.cporm.model.util.ContentResolverValues;
 
+import java.util.concurrent.Future;
+
 /**
  * A loaded implementation that will create a new Cursor loaded based on the select statement provided.
  */
@@ -15,11 +20,14 @@ public class CPOrmLoader<Model> extends CursorLoader {
 
     private TableDetails tableDetails;
     private int cacheSize = 0;
+    private Long timeoutMillis;
+    private volatile boolean timedOut;
 
     /**
      * Creates a new cursor loader using the select statement provided. The default implementation
      * will enable the cache of the cursor to improve view performance.  To manually specify the
-     * cursor cache size, use the overloaded constructor.
+     * cursor cache size, use the overloaded constructor.  If a timeout was set on the select, the load is cancelled
+     * once the timeout expires, and a null cursor is delivered.
      * @param context The context that will be used to create the cursor.
      * @param select The select statement that will be used to retrieve the data.
      */
@@ -34,6 +42,7 @@ public class CPOrmLoader<Model> extends CursorLoader {
         setSortOrder(resolverValues.getSortOrder());
 
         tableDetails = resolverValues.getTableDetails();
+        timeoutMillis = select.getTimeout();
     }
 
     /**
@@ -54,9 +63,46 @@ public class CPOrmLoader<Model> extends CursorLoader {
         cacheSize = size;
     }
 
+    /**
+     * @return True if the last load was cancelled because the timeout of the select expired, a null cursor is delivered
+     * for such a load.
+     */
+    public boolean isTimedOut() {
+
+        return timedOut;
+    }
+
     @Override
     public CPOrmCursor<Model> loadInBackground() {
 
+        timedOut = false;
+        Future<?> timeout = null;
+        if (timeoutMillis != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            timeout = CPOrmExecutors.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    timedOut = true;
+                    cancelLoadInBackground();
+                }
+            }, timeoutMillis);
+        }
+
+        try {
+            return loadCursor();
+        } catch (OperationCanceledException ex) {
+            //The loader manager did not cancel the load, so the exception would be rethrown on the loader thread
+            if (timedOut)
+                return null;
+
+            throw ex;
+        } finally {
+            if (timeout != null)
+                timeout.cancel(false);
+        }
+    }
+
+    private CPOrmCursor<Model> loadCursor() {
+
         Cursor asyncCursor = super.loadInBackground();
         if(asyncCursor == null)
             return null;
@@ -73,10 +119,20 @@ public class CPOrmLoader<Model> extends CursorLoader {
         int count = cursor.getCount();
         for (int i = 0; i < count && cursor.isCacheEnabled() && i < 100; i++) {
 
+            if (isCanceled()) {
+                cursor.close();
+                throw new OperationCanceledException();
+            }
+
             cursor.moveToPosition(i);
             Model inflate = cursor.inflate();
         }
 
         return cursor;
     }
+
+    private boolean isCanceled() {
+
+        return timedOut || (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN && isLoadInBackgroundCanceled());
+    }
 }
@@ -18,6 +18,7 @@ public class SqlColumnMappingFactory {
     public SqlColumnMappingFactory(){
 
         columnMappings = new ArrayList<SqlColumnMapping>();
+        columnMappings.add(new BlobType());
         columnMappings.add(new BooleanType());
         columnMappings.add(new CalendarType());
         columnMappings.add(new DateType());
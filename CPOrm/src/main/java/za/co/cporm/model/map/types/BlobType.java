@@ -0,0 +1,53 @@
+package za.co.cporm.model.map.types;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.os.Bundle;
+import za.co.cporm.model.CPOrmBlob;
+import za.co.cporm.model.map.SqlColumnMapping;
+
+/**
+ * Stores the id of a {@link CPOrmBlob}, the content of the blob is stored outside of the database.  A blob that is not
+ * set is stored as NULL.
+ */
+public class BlobType implements SqlColumnMapping {
+    @Override
+    public Class<?> getJavaType() {
+        return CPOrmBlob.class;
+    }
+
+    @Override
+    public String getSqlColumnTypeName() {
+        return "TEXT";
+    }
+
+    @Override
+    public String toSqlType(Object source) {
+        return source == null ? null : ((CPOrmBlob) source).getId();
+    }
+
+    @Override
+    public Object getColumnValue(Cursor cursor, int columnIndex) {
+
+        return cursor.isNull(columnIndex) ? null : CPOrmBlob.fromId(cursor.getString(columnIndex));
+    }
+
+    @Override
+    public void setColumnValue(ContentValues contentValues, String key, Object value) {
+
+        if (value == null) contentValues.putNull(key);
+        else contentValues.put(key, toSqlType(value));
+    }
+
+    @Override
+    public void setBundleValue(Bundle bundle, String key, Cursor cursor, int columnIndex) {
+        bundle.putString(key, cursor.getString(columnIndex));
+    }
+
+    @Override
+    public Object getColumnValue(Bundle bundle, String columnName) {
+
+        String id = bundle.getString(columnName);
+        return id == null ? null : CPOrmBlob.fromId(id);
+    }
+}
@@ -3,6 +3,7 @@ package za.co.cporm.model.query;
 import android.content.Context;
 import za.co.cporm.model.map.SqlColumnMappingFactory;
 
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -125,6 +126,14 @@ public class DataFilterCriteria implements DataFilterClause<DataFilterCriteria>{
         return clone;
     }
 
+    /**
+     * @return The clauses contained in this criteria, in the order they were added
+     */
+    Collection<DataFilterClause> getClauses() {
+
+        return filterClauses.keySet();
+    }
+
     @Override
     public boolean hasFilterValue() {
 
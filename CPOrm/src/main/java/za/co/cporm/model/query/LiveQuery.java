@@ -0,0 +1,277 @@
+package za.co.cporm.model.query;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.SystemClock;
+import za.co.cporm.model.generate.TableDetails;
+import za.co.cporm.model.util.CPOrmCallback;
+import za.co.cporm.model.util.CPOrmCursor;
+import za.co.cporm.model.util.CPOrmExecutors;
+import za.co.cporm.model.util.ResultChangeListener;
+import za.co.cporm.model.util.ResultDiff;
+import za.co.cporm.model.util.ResultSnapshot;
+import za.co.cporm.provider.util.UriMatcherHelper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * A select that is re-executed every time one of the tables it reads from changes.  A content observer is registered for
+ * every table and view that the select references, views are notified by the content provider through their change listeners.
+ * Notifications are debounced, so a burst of changes, like a sync inserting many rows, will only cause a single re-query once
+ * no change was notified for the debounce delay.  A burst that does not settle re-queries at least once every maximum wait.  Queries are executed on the read executor, and the results are only delivered to the listener
+ * if they differ from the previous results, together with a {@link ResultDiff} keyed on the primary key, so that only the
+ * rows that changed need to be updated.
+ * Results are always delivered on the main thread, call {@link #stop()} once the results are no longer required.
+ */
+public class LiveQuery<Model> {
+
+    public static final long DEFAULT_DEBOUNCE_MILLIS = 100;
+    public static final long DEFAULT_MAX_WAIT_MILLIS = 1000;
+
+    private enum State {IDLE, SCHEDULED, RUNNING}
+
+    private final Context context;
+    private final Select<Model> select;
+    private final long debounceMillis;
+    private final long maxWaitMillis;
+    private final ResultChangeListener<Model> listener;
+    private final List<ContentObserver> tableObservers;
+    private State state = State.IDLE;
+    private boolean changedWhileRunning = false;
+    private long firstChangeMillis;
+    private long lastChangeMillis;
+    private boolean stopped = false;
+    private ResultSnapshot snapshot = ResultSnapshot.EMPTY;
+    private boolean delivered = false;
+
+    LiveQuery(Context context, Select<Model> select, long debounceMillis, long maxWaitMillis, CPOrmCallback<List<Model>> callback) {
+
+        this(context, select, debounceMillis, maxWaitMillis, new CallbackListener<Model>(callback));
+    }
+
+    LiveQuery(Context context, Select<Model> select, long debounceMillis, long maxWaitMillis, ResultChangeListener<Model> listener) {
+
+        if (debounceMillis < 0)
+            throw new IllegalArgumentException("The debounce delay cannot be negative");
+        if (maxWaitMillis < debounceMillis)
+            throw new IllegalArgumentException("The maximum wait cannot be shorter than the debounce delay");
+
+        this.context = context.getApplicationContext();
+        this.select = select;
+        this.debounceMillis = debounceMillis;
+        this.maxWaitMillis = maxWaitMillis;
+        this.listener = listener;
+        this.tableObservers = new ArrayList<ContentObserver>();
+    }
+
+    /**
+     * Registers the table observers and executes the initial query.
+     */
+    void start() {
+
+        ContentResolver contentResolver = context.getContentResolver();
+        for (TableDetails tableDetails : select.getReferencedTables(context)) {
+
+            Uri tableUri = UriMatcherHelper.generateItemUri(context, tableDetails).build();
+            ContentObserver observer = new TableObserver();
+            contentResolver.registerContentObserver(tableUri, true, observer);
+            tableObservers.add(observer);
+        }
+
+        synchronized (this) {
+            state = State.RUNNING;
+        }
+        CPOrmExecutors.getReadExecutor().submit(new QueryTask());
+    }
+
+    /**
+     * Stops observing the tables, no more results will be delivered once this method returns.  This method must be called
+     * on the main thread.
+     */
+    public void stop() {
+
+        synchronized (this) {
+            if (stopped)
+                return;
+
+            stopped = true;
+        }
+
+        ContentResolver contentResolver = context.getContentResolver();
+        for (ContentObserver observer : tableObservers) {
+            contentResolver.unregisterContentObserver(observer);
+        }
+        tableObservers.clear();
+    }
+
+    public synchronized boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * Forces the query to be executed again, the results will only be delivered if they changed.
+     */
+    public void refresh() {
+
+        onTablesChanged();
+    }
+
+    /**
+     * Called when one of the observed tables changed, the query is scheduled if it is not already scheduled, otherwise
+     * the scheduled query is postponed until the debounce delay passed without changes.  If the query is busy executing,
+     * it will be executed again once it completes, since the results could already be stale.
+     */
+    protected synchronized void onTablesChanged() {
+
+        if (stopped)
+            return;
+
+        long now = SystemClock.uptimeMillis();
+        if (state == State.IDLE) {
+
+            state = State.SCHEDULED;
+            firstChangeMillis = now;
+            lastChangeMillis = now;
+            CPOrmExecutors.schedule(new DebounceTask(), debounceMillis);
+        } else if (state == State.SCHEDULED) {
+
+            //The debounce task reschedules itself, instead of cancelling and scheduling a task for every notification
+            lastChangeMillis = now;
+        } else if (state == State.RUNNING) {
+
+            changedWhileRunning = true;
+        }
+    }
+
+    private synchronized void onQueryCompleted() {
+
+        if (changedWhileRunning) {
+
+            changedWhileRunning = false;
+            state = State.IDLE;
+            onTablesChanged();
+        } else state = State.IDLE;
+    }
+
+    private void deliver(final List<Model> results, final ResultDiff diff, final Throwable error) {
+
+        CPOrmExecutors.postToMainThread(new Runnable() {
+            @Override
+            public void run() {
+
+                if (isStopped())
+                    return;
+
+                if (error == null)
+                    listener.onResultChanged(results, diff);
+                else listener.onFailure(error);
+            }
+        });
+    }
+
+    /**
+     * Executes the query once no change was notified for the debounce delay, or once the maximum wait passed since the
+     * first change.
+     */
+    private class DebounceTask implements Runnable {
+
+        @Override
+        public void run() {
+
+            synchronized (LiveQuery.this) {
+
+                long now = SystemClock.uptimeMillis();
+                long quietMillis = now - lastChangeMillis;
+                long waitedMillis = now - firstChangeMillis;
+                if (quietMillis < debounceMillis && waitedMillis < maxWaitMillis) {
+
+                    CPOrmExecutors.schedule(this, Math.min(debounceMillis - quietMillis, maxWaitMillis - waitedMillis));
+                    return;
+                }
+                state = State.RUNNING;
+            }
+            CPOrmExecutors.getReadExecutor().submit(new QueryTask());
+        }
+    }
+
+    private class QueryTask implements Callable<Void> {
+
+        @Override
+        public Void call() throws Exception {
+
+            if (isStopped())
+                return null;
+
+            try {
+                CPOrmCursor<Model> cursor = select.queryAsCursor(context);
+                if (cursor == null)
+                    return null;
+
+                try {
+                    //Only inflate the results if they changed, unchanged results are not delivered
+                    ResultSnapshot newSnapshot = ResultSnapshot.create(cursor, cursor.getTableDetails());
+                    if (delivered && snapshot.contentEquals(newSnapshot))
+                        return null;
+
+                    ResultDiff diff = ResultDiff.calculate(snapshot, newSnapshot);
+
+                    List<Model> results = new ArrayList<Model>(cursor.getCount());
+                    cursor.moveToPosition(-1);
+                    while (cursor.moveToNext()) {
+                        results.add(cursor.inflate());
+                    }
+
+                    snapshot = newSnapshot;
+                    delivered = true;
+                    deliver(results, diff, null);
+                } finally {
+                    cursor.close();
+                }
+            } catch (Exception ex) {
+                deliver(null, null, ex);
+            } finally {
+                onQueryCompleted();
+            }
+
+            return null;
+        }
+    }
+
+    private static class CallbackListener<Model> implements ResultChangeListener<Model> {
+
+        private final CPOrmCallback<List<Model>> callback;
+
+        CallbackListener(CPOrmCallback<List<Model>> callback) {
+            this.callback = callback;
+        }
+
+        @Override
+        public void onResultChanged(List<Model> results, ResultDiff diff) {
+
+            callback.onSuccess(results);
+        }
+
+        @Override
+        public void onFailure(Throwable throwable) {
+
+            callback.onFailure(throwable);
+        }
+    }
+
+    private class TableObserver extends ContentObserver {
+
+        TableObserver() {
+            super(null);
+        }
+
+        @Override
+        public void onChange(boolean selfChange) {
+
+            onTablesChanged();
+        }
+    }
+}
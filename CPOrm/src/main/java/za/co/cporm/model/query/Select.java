@@ -4,18 +4,32 @@ import android.content.ContentResolver;
 import android.content.Context;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.Build;
+import android.os.CancellationSignal;
 import android.text.TextUtils;
 import za.co.cporm.model.CPOrm;
 import za.co.cporm.model.generate.TableDetails;
 import za.co.cporm.model.map.SqlColumnMappingFactory;
+import za.co.cporm.model.util.CPOrmCallback;
 import za.co.cporm.model.util.CPOrmCursor;
+import za.co.cporm.model.util.CPOrmExecutors;
 import za.co.cporm.model.util.ContentResolverValues;
 import za.co.cporm.model.util.CursorIterator;
+import za.co.cporm.model.util.KeysetCursor;
 import za.co.cporm.model.util.ManifestHelper;
+import za.co.cporm.model.util.QueryResultCache;
+import za.co.cporm.model.util.QueryTimeout;
+import za.co.cporm.model.util.ResultChangeListener;
 import za.co.cporm.provider.CPOrmContentProvider;
+import za.co.cporm.provider.CPOrmDirectExecutor;
 import za.co.cporm.provider.util.UriMatcherHelper;
+import za.co.cporm.util.CPOrmMetrics;
+import za.co.cporm.util.CPOrmMetricsRegistry;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * The starting point for select statements.  Contains the basic functions to do a simple select operation
@@ -33,6 +47,10 @@ public class Select<Model> implements DataFilterClause<Select<Model>> {
     private boolean distinct = false;
     private String groupBy;
     private String having;
+    private boolean cacheResults = false;
+    private Long timeoutMillis;
+    private boolean includeArchive = false;
+    private Integer cursorWindowSize;
 
     private Select(Class<Model> dataObjectClass) {
 
@@ -67,6 +85,10 @@ public class Select<Model> implements DataFilterClause<Select<Model>> {
         clone.distinct = this.distinct;
         clone.groupBy = this.groupBy;
         clone.having = this.having;
+        clone.cacheResults = this.cacheResults;
+        clone.timeoutMillis = this.timeoutMillis;
+        clone.includeArchive = this.includeArchive;
+        clone.cursorWindowSize = this.cursorWindowSize;
 
         return clone;
     }
@@ -327,6 +349,75 @@ public class Select<Model> implements DataFilterClause<Select<Model>> {
         return this;
     }
 
+    /**
+     * Marks this select to use the query result cache for the list, count, first and last queries.  Cached results are evicted
+     * as soon as one of the tables this select reads from changes.  This has no effect unless the cache has been enabled
+     * using {@link CPOrm#enableQueryCache()}.  Objects returned from the cache are shared, so they should not be modified.
+     *
+     * @return The current select instance
+     */
+    public Select<Model> cached() {
+
+        this.cacheResults = true;
+        return this;
+    }
+
+    /**
+     * Sets a time budget for the queries executed by this select.  Once the budget expires the query is cancelled and
+     * interrupted inside SQLite, causing an {@link android.os.OperationCanceledException} to be thrown.  For cursors and
+     * iterators the budget includes the time spent moving through the results, since rows are read lazily.
+     * Timeouts require Jelly Bean or higher, on older devices the query will not be interrupted.
+     *
+     * @param timeoutMillis The time budget in milliseconds
+     * @return The current select instance
+     */
+    public Select<Model> timeout(long timeoutMillis) {
+
+        if (timeoutMillis <= 0)
+            throw new IllegalArgumentException("The timeout must be greater than 0");
+
+        this.timeoutMillis = timeoutMillis;
+        return this;
+    }
+
+    /**
+     * Also selects the rows that were moved to the archive using {@link CPOrm#archive()}.  The table and its archive are
+     * combined using UNION ALL before the filter, sorting, grouping and limit are applied, so the results are the same as
+     * if the rows were never archived.  This has no effect on tables that are not annotated with
+     * {@link za.co.cporm.model.annotation.Archive}.
+     *
+     * @return The current select instance
+     */
+    public Select<Model> includeArchive() {
+
+        this.includeArchive = true;
+        return this;
+    }
+
+    /**
+     * Sets the size of the cursor window used by the query, overriding the window size of the table.  A larger window
+     * allows wide rows, and large results to be read with fewer window fills, at the cost of memory.
+     * Custom window sizes require Android 9 or higher, on older devices the default window size is used.
+     *
+     * @param windowSizeBytes The size of the window in bytes
+     * @return The current select instance
+     */
+    public Select<Model> cursorWindowSize(int windowSizeBytes) {
+
+        if (windowSizeBytes <= 0)
+            throw new IllegalArgumentException("The cursor window size must be greater than 0");
+
+        this.cursorWindowSize = windowSizeBytes;
+        return this;
+    }
+
+    /**
+     * @return The time budget in milliseconds, or null if no timeout was specified.
+     */
+    public Long getTimeout() {
+        return timeoutMillis;
+    }
+
     /**
      * @see #queryAsCursor(Context)
      */
@@ -344,17 +435,104 @@ public class Select<Model> implements DataFilterClause<Select<Model>> {
      */
     public CPOrmCursor<Model> queryAsCursor(Context context) {
 
-        ContentResolverValues contentResolverValues = asContentResolverValue(context);
+        return queryAsCursor(context, null);
+    }
+
+    /**
+     * Executes the query and returns the results as a cursor.  If the signal is cancelled while the query is running,
+     * SQLite will interrupt the query and an {@link android.os.OperationCanceledException} is thrown.
+     *
+     * @param cancellationSignal The signal used to cancel the query, may be null
+     * @return The {@link za.co.cporm.model.util.CPOrmCursor} containing the results
+     */
+    public CPOrmCursor<Model> queryAsCursor(Context context, CancellationSignal cancellationSignal) {
+
+        QueryTimeout queryTimeout = QueryTimeout.start(cancellationSignal, timeoutMillis);
+        return executeQuery(context, asContentResolverValue(context), queryTimeout.getCancellationSignal());
+    }
+
+    private CPOrmCursor<Model> executeQuery(Context context, ContentResolverValues contentResolverValues, CancellationSignal cancellationSignal) {
+
+        CPOrmDirectExecutor directExecutor = CPOrm.findDirectExecutor(context, contentResolverValues.getTableDetails());
+        if (directExecutor != null) {
+            Cursor cursor = directExecutor.query(contentResolverValues.getItemUri(),
+                    contentResolverValues.getProjection(),
+                    contentResolverValues.getWhere(),
+                    contentResolverValues.getWhereArgs(),
+                    contentResolverValues.getSortOrder(),
+                    cancellationSignal);
+
+            return cursor == null ? null : new CPOrmCursor<Model>(contentResolverValues.getTableDetails(), cursor);
+        }
+
         ContentResolver contentResolver = context.getContentResolver();
-        Cursor cursor = contentResolver.query(contentResolverValues.getItemUri(),
-                contentResolverValues.getProjection(),
-                contentResolverValues.getWhere(),
-                contentResolverValues.getWhereArgs(),
-                contentResolverValues.getSortOrder());
+        Cursor cursor;
+
+        if (cancellationSignal != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            cursor = contentResolver.query(contentResolverValues.getItemUri(),
+                    contentResolverValues.getProjection(),
+                    contentResolverValues.getWhere(),
+                    contentResolverValues.getWhereArgs(),
+                    contentResolverValues.getSortOrder(),
+                    cancellationSignal);
+        } else {
+            cursor = contentResolver.query(contentResolverValues.getItemUri(),
+                    contentResolverValues.getProjection(),
+                    contentResolverValues.getWhere(),
+                    contentResolverValues.getWhereArgs(),
+                    contentResolverValues.getSortOrder());
+        }
 
         return cursor == null ? null : new CPOrmCursor<Model>(contentResolverValues.getTableDetails(), cursor);
     }
 
+    /**
+     * @see #queryAsPagedCursor(Context, int, int)
+     */
+    public CPOrmCursor<Model> queryAsPagedCursor(Context context, int pageSize) {
+
+        return queryAsPagedCursor(context, pageSize, KeysetCursor.DEFAULT_MAX_CACHED_PAGES);
+    }
+
+    /**
+     * Executes the query as a cursor that loads its rows in pages on demand, sorted by the primary key.  Pages are queried
+     * using the last primary key of the previous page instead of an offset, and only the most recently used pages are kept
+     * in memory, so very large results can be scrolled using a bounded amount of memory.  Since the rows are sorted by
+     * primary key, the select may not be sorted, limited, distinct or grouped.
+     *
+     * @param pageSize The amount of rows loaded per query
+     * @param maxCachedPages The maximum amount of pages kept in memory
+     * @return The {@link za.co.cporm.model.util.CPOrmCursor} containing the results
+     */
+    public CPOrmCursor<Model> queryAsPagedCursor(final Context context, int pageSize, int maxCachedPages) {
+
+        if (!sortingOrderList.isEmpty() || offset != null || limit != null || distinct || !TextUtils.isEmpty(groupBy))
+            throw new IllegalArgumentException("Paged cursors are sorted by primary key, and cannot be sorted, limited, distinct or grouped");
+
+        final TableDetails tableDetails = getTableDetails(context);
+        final String keyColumn = tableDetails.findPrimaryKeyColumn().getColumnName();
+        String[] projection = getProjection(tableDetails);
+        String[] columnNames = projection == null ? tableDetails.getColumnNames() : projection;
+
+        KeysetCursor cursor = new KeysetCursor(columnNames, keyColumn, queryAsCount(context), pageSize, maxCachedPages, new KeysetCursor.PageLoader() {
+            @Override
+            public Cursor loadPage(Object afterKey, int size) {
+
+                Select<Model> page = cloneFrom();
+                if (afterKey != null) {
+                    page.filterCriteria = new DataFilterCriteria();
+                    page.filterCriteria.addClause(filterCriteria.cloneFrom(), DataFilterConjunction.AND);
+                    page.filterCriteria.addClause(new DataFilterCriterion(keyColumn, DataFilterCriterion.DataFilterOperator.GREATER_THAN, afterKey), DataFilterConjunction.AND);
+                }
+
+                return page.sortAsc(keyColumn).limit(size).queryAsCursor(context);
+            }
+        });
+        cursor.setNotificationUri(context.getContentResolver(), UriMatcherHelper.generateItemUri(context, tableDetails).build());
+
+        return new CPOrmCursor<Model>(tableDetails, cursor);
+    }
+
     /**
      * @see #queryAsIterator(Context)
      */
@@ -372,8 +550,21 @@ public class Select<Model> implements DataFilterClause<Select<Model>> {
      */
     public CursorIterator<Model> queryAsIterator(Context context) {
 
-        CPOrmCursor<Model> cursor = queryAsCursor(context);
-        return cursor == null ? null : new CursorIterator<Model>(cursor.getTableDetails(), cursor);
+        return queryAsIterator(context, null);
+    }
+
+    /**
+     * Does the same as {@link #queryAsIterator(Context)}, but the iterator will stop with an {@link android.os.OperationCanceledException}
+     * and close the cursor as soon as the signal is cancelled.
+     *
+     * @param cancellationSignal The signal used to cancel the query and the iteration, may be null
+     * @return The iterator containing the results
+     */
+    public CursorIterator<Model> queryAsIterator(Context context, CancellationSignal cancellationSignal) {
+
+        QueryTimeout queryTimeout = QueryTimeout.start(cancellationSignal, timeoutMillis);
+        CPOrmCursor<Model> cursor = executeQuery(context, asContentResolverValue(context), queryTimeout.getCancellationSignal());
+        return cursor == null ? null : new CursorIterator<Model>(cursor.getTableDetails(), cursor, queryTimeout.getCancellationSignal());
     }
 
     /**
@@ -391,20 +582,70 @@ public class Select<Model> implements DataFilterClause<Select<Model>> {
      */
     public List<Model> queryAsList(Context context) {
 
-        CPOrmCursor<Model> cursor = queryAsCursor(context);
+        return queryAsList(context, null);
+    }
+
+    /**
+     * Does the same as {@link #queryAsList(Context)}, but the query and the population of the list is stopped with an
+     * {@link android.os.OperationCanceledException} as soon as the signal is cancelled.
+     *
+     * @param cancellationSignal The signal used to cancel the query, may be null
+     * @return The list containing the results
+     */
+    public List<Model> queryAsList(Context context, CancellationSignal cancellationSignal) {
+
+        ContentResolverValues contentResolverValues = asContentResolverValue(context);
+        QueryResultCache resultCache = getResultCache();
+
+        if (resultCache == null)
+            return executeQueryAsList(context, contentResolverValues, cancellationSignal);
+
+        String cacheKey = QueryResultCache.createKey("list", contentResolverValues);
+        List<Model> cachedList = resultCache.getList(cacheKey);
+        if (cachedList != null)
+            return cachedList;
+
+        List<Uri> tableUris = getReferencedTableUris(context);
+        long cacheVersion = resultCache.prepare(tableUris);
+        List<Model> resultList = executeQueryAsList(context, contentResolverValues, cancellationSignal);
+        resultCache.putList(cacheKey, tableUris, cacheVersion, resultList);
+
+        return resultList;
+    }
+
+    private List<Model> executeQueryAsList(Context context, ContentResolverValues contentResolverValues, CancellationSignal cancellationSignal) {
+
+        QueryTimeout queryTimeout = QueryTimeout.start(cancellationSignal, timeoutMillis);
+        CPOrmCursor<Model> cursor = null;
+
+        String tableName = contentResolverValues.getTableDetails().getTableName();
+        long start = CPOrmMetricsRegistry.start();
 
-        if(cursor == null)
-            return new ArrayList<>();
         try {
-            List<Model> resultList = new ArrayList<Model>(cursor.getCount());
+            cursor = executeQuery(context, contentResolverValues, queryTimeout.getCancellationSignal());
+            CPOrmMetricsRegistry.record(CPOrmMetrics.Layer.CLIENT, CPOrmMetrics.Operation.QUERY, tableName, -1, start);
+            if(cursor == null)
+                return new ArrayList<>();
+
+            //The first call to getCount fills the first cursor window
+            long fillStart = CPOrmMetricsRegistry.start();
+            int count = cursor.getCount();
+            CPOrmMetricsRegistry.record(CPOrmMetrics.Layer.CLIENT, CPOrmMetrics.Operation.CURSOR_FILL, tableName, count, fillStart);
+
+            long inflateStart = CPOrmMetricsRegistry.start();
+            List<Model> resultList = new ArrayList<Model>(count);
 
             while (cursor.moveToNext()) {
+                QueryTimeout.throwIfCanceled(queryTimeout.getCancellationSignal());
                 resultList.add(cursor.inflate());
             }
 
+            CPOrmMetricsRegistry.record(CPOrmMetrics.Layer.CLIENT, CPOrmMetrics.Operation.INFLATE, tableName, resultList.size(), inflateStart);
             return resultList;
         } finally {
-            cursor.close();
+            queryTimeout.stop();
+            if(cursor != null)
+                cursor.close();
         }
     }
 
@@ -431,18 +672,42 @@ public class Select<Model> implements DataFilterClause<Select<Model>> {
             customInclude = true;
         }
 
-        CPOrmCursor<Model> cursor = queryAsCursor(context);
+        ContentResolverValues contentResolverValues = asContentResolverValue(context);
+        if(customInclude) {
+            includedColumns.clear();
+        }
+
+        QueryResultCache resultCache = getResultCache();
+        String cacheKey = null;
+        List<Uri> tableUris = null;
+        long cacheVersion = 0;
+
+        if (resultCache != null) {
+
+            cacheKey = QueryResultCache.createKey("count", contentResolverValues);
+            Integer cachedCount = resultCache.getValue(cacheKey);
+            if (cachedCount != null)
+                return cachedCount;
+
+            tableUris = getReferencedTableUris(context);
+            cacheVersion = resultCache.prepare(tableUris);
+        }
+
+        QueryTimeout queryTimeout = QueryTimeout.start(null, timeoutMillis);
+        CPOrmCursor<Model> cursor = null;
         try {
+            cursor = executeQuery(context, contentResolverValues, queryTimeout.getCancellationSignal());
             if(cursor == null)
                 return 0;
-            return cursor.getCount();
-        } finally {
 
-            if(customInclude)
-            {
-                includedColumns.clear();
-            }
+            int count = cursor.getCount();
+            if (resultCache != null)
+                resultCache.putValue(cacheKey, tableUris, cacheVersion, count);
 
+            return count;
+        } finally {
+
+            queryTimeout.stop();
             if(cursor != null)
                 cursor.close();
         }
@@ -482,6 +747,8 @@ public class Select<Model> implements DataFilterClause<Select<Model>> {
             itemUri.appendQueryParameter("GROUP_BY", groupBy);
             if (!TextUtils.isEmpty(having)) itemUri.appendQueryParameter("HAVING", having);
         }
+        if (includeArchive) itemUri.appendQueryParameter(CPOrmContentProvider.PARAMETER_INCLUDE_ARCHIVE, Boolean.TRUE.toString());
+        if (cursorWindowSize != null) itemUri.appendQueryParameter(CPOrmContentProvider.PARAMETER_CURSOR_WINDOW_SIZE, cursorWindowSize.toString());
 
         return new ContentResolverValues(tableDetails, itemUri.build(), getProjection(tableDetails), where.getQueryString(), where.getQueryArgsAsArray(), sort.getQueryString());
     }
@@ -505,18 +772,9 @@ public class Select<Model> implements DataFilterClause<Select<Model>> {
         Integer currentLimit = limit;
         limit(1); //Add a default limit for the user
 
-        CPOrmCursor<Model> cursor = queryAsCursor(context);
-        if(cursor == null)
-            return null;
         try {
-
-            if (cursor.moveToFirst()) {
-
-                Model inflate = cursor.inflate();
-                return inflate;
-            } else return null;
+            return queryAsSingleItem(context, "first", true);
         } finally {
-            cursor.close();
             //Restore the previous limit
             limit = currentLimit;
         }
@@ -537,19 +795,328 @@ public class Select<Model> implements DataFilterClause<Select<Model>> {
      */
     public Model last(Context context) {
 
-        ContentResolverValues values = asContentResolverValue(context);
-        CPOrmCursor<Model> cursor = queryAsCursor(context);
-        if(cursor == null)
-            return null;
+        return queryAsSingleItem(context, "last", false);
+    }
+
+    /**
+     * @see #queryAsListAsync(Context, ExecutorService, CPOrmCallback)
+     */
+    public Future<List<Model>> queryAsListAsync() {
+
+        return queryAsListAsync(CPOrm.getApplicationContext(), CPOrmExecutors.getReadExecutor(), null);
+    }
+
+    /**
+     * @see #queryAsListAsync(Context, ExecutorService, CPOrmCallback)
+     */
+    public Future<List<Model>> queryAsListAsync(CPOrmCallback<List<Model>> callback) {
+
+        return queryAsListAsync(CPOrm.getApplicationContext(), CPOrmExecutors.getReadExecutor(), callback);
+    }
+
+    /**
+     * @see #queryAsListAsync(Context, ExecutorService, CPOrmCallback)
+     */
+    public Future<List<Model>> queryAsListAsync(Context context, ExecutorService executor) {
+
+        return queryAsListAsync(context, executor, null);
+    }
+
+    /**
+     * Executes {@link #queryAsList(Context)} asynchronously on the supplied executor.  The select is copied before it is submitted, so it can safely be
+     * changed once this method returns.
+     *
+     * @param executor The executor to run the query on, use {@link CPOrmExecutors#getReadExecutor()} for the default read pool
+     * @param callback Optional callback that will receive the result on the main thread
+     * @return The future containing the result
+     */
+    public Future<List<Model>> queryAsListAsync(final Context context, ExecutorService executor, CPOrmCallback<List<Model>> callback) {
+
+        final Select<Model> select = cloneFrom();
+        return CPOrmExecutors.submit(executor, new Callable<List<Model>>() {
+            @Override
+            public List<Model> call() throws Exception {
+                return select.queryAsList(context);
+            }
+        }, callback);
+    }
+
+    /**
+     * @see #queryAsCountAsync(Context, ExecutorService, CPOrmCallback)
+     */
+    public Future<Integer> queryAsCountAsync() {
+
+        return queryAsCountAsync(CPOrm.getApplicationContext(), CPOrmExecutors.getReadExecutor(), null);
+    }
+
+    /**
+     * @see #queryAsCountAsync(Context, ExecutorService, CPOrmCallback)
+     */
+    public Future<Integer> queryAsCountAsync(CPOrmCallback<Integer> callback) {
+
+        return queryAsCountAsync(CPOrm.getApplicationContext(), CPOrmExecutors.getReadExecutor(), callback);
+    }
+
+    /**
+     * @see #queryAsCountAsync(Context, ExecutorService, CPOrmCallback)
+     */
+    public Future<Integer> queryAsCountAsync(Context context, ExecutorService executor) {
+
+        return queryAsCountAsync(context, executor, null);
+    }
+
+    /**
+     * Executes {@link #queryAsCount(Context)} asynchronously on the supplied executor.  The select is copied before it is submitted, so it can safely be
+     * changed once this method returns.
+     *
+     * @param executor The executor to run the query on, use {@link CPOrmExecutors#getReadExecutor()} for the default read pool
+     * @param callback Optional callback that will receive the result on the main thread
+     * @return The future containing the result
+     */
+    public Future<Integer> queryAsCountAsync(final Context context, ExecutorService executor, CPOrmCallback<Integer> callback) {
+
+        final Select<Model> select = cloneFrom();
+        return CPOrmExecutors.submit(executor, new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                return select.queryAsCount(context);
+            }
+        }, callback);
+    }
+
+    /**
+     * @see #firstAsync(Context, ExecutorService, CPOrmCallback)
+     */
+    public Future<Model> firstAsync() {
+
+        return firstAsync(CPOrm.getApplicationContext(), CPOrmExecutors.getReadExecutor(), null);
+    }
+
+    /**
+     * @see #firstAsync(Context, ExecutorService, CPOrmCallback)
+     */
+    public Future<Model> firstAsync(CPOrmCallback<Model> callback) {
+
+        return firstAsync(CPOrm.getApplicationContext(), CPOrmExecutors.getReadExecutor(), callback);
+    }
+
+    /**
+     * @see #firstAsync(Context, ExecutorService, CPOrmCallback)
+     */
+    public Future<Model> firstAsync(Context context, ExecutorService executor) {
+
+        return firstAsync(context, executor, null);
+    }
+
+    /**
+     * Executes {@link #first(Context)} asynchronously on the supplied executor.  The select is copied before it is submitted, so it can safely be
+     * changed once this method returns.
+     *
+     * @param executor The executor to run the query on, use {@link CPOrmExecutors#getReadExecutor()} for the default read pool
+     * @param callback Optional callback that will receive the result on the main thread
+     * @return The future containing the result
+     */
+    public Future<Model> firstAsync(final Context context, ExecutorService executor, CPOrmCallback<Model> callback) {
+
+        final Select<Model> select = cloneFrom();
+        return CPOrmExecutors.submit(executor, new Callable<Model>() {
+            @Override
+            public Model call() throws Exception {
+                return select.first(context);
+            }
+        }, callback);
+    }
+
+    /**
+     * @see #lastAsync(Context, ExecutorService, CPOrmCallback)
+     */
+    public Future<Model> lastAsync() {
+
+        return lastAsync(CPOrm.getApplicationContext(), CPOrmExecutors.getReadExecutor(), null);
+    }
+
+    /**
+     * @see #lastAsync(Context, ExecutorService, CPOrmCallback)
+     */
+    public Future<Model> lastAsync(CPOrmCallback<Model> callback) {
+
+        return lastAsync(CPOrm.getApplicationContext(), CPOrmExecutors.getReadExecutor(), callback);
+    }
+
+    /**
+     * @see #lastAsync(Context, ExecutorService, CPOrmCallback)
+     */
+    public Future<Model> lastAsync(Context context, ExecutorService executor) {
+
+        return lastAsync(context, executor, null);
+    }
+
+    /**
+     * Executes {@link #last(Context)} asynchronously on the supplied executor.  The select is copied before it is submitted, so it can safely be
+     * changed once this method returns.
+     *
+     * @param executor The executor to run the query on, use {@link CPOrmExecutors#getReadExecutor()} for the default read pool
+     * @param callback Optional callback that will receive the result on the main thread
+     * @return The future containing the result
+     */
+    public Future<Model> lastAsync(final Context context, ExecutorService executor, CPOrmCallback<Model> callback) {
+
+        final Select<Model> select = cloneFrom();
+        return CPOrmExecutors.submit(executor, new Callable<Model>() {
+            @Override
+            public Model call() throws Exception {
+                return select.last(context);
+            }
+        }, callback);
+    }
+
+    /**
+     * @see #observe(Context, long, CPOrmCallback)
+     */
+    public LiveQuery<Model> observe(CPOrmCallback<List<Model>> listener) {
+
+        return observe(CPOrm.getApplicationContext(), LiveQuery.DEFAULT_DEBOUNCE_MILLIS, listener);
+    }
+
+    /**
+     * Observes the results of this select.  The query is executed immediately, and again every time one of the tables it reads from
+     * changes, the listener only receives results that differ from the previous results.  Change notifications are debounced, so a
+     * burst of changes will only cause one query once it settles, or one query every {@link LiveQuery#DEFAULT_MAX_WAIT_MILLIS}
+     * while it lasts.  The select is copied, so it can safely be modified afterwards.
+     *
+     * @param debounceMillis The time without change notifications to wait before executing the query again
+     * @param listener The listener that will receive the results on the main thread
+     * @return The live query, that must be stopped once the results are no longer required
+     */
+    public LiveQuery<Model> observe(Context context, long debounceMillis, CPOrmCallback<List<Model>> listener) {
+
+        LiveQuery<Model> liveQuery = new LiveQuery<Model>(context, cloneFrom(), debounceMillis, getMaxWaitMillis(debounceMillis), listener);
+        liveQuery.start();
+
+        return liveQuery;
+    }
+
+    /**
+     * Does the same as {@link #observe(Context, long, CPOrmCallback)}, but the listener also receives the difference between the
+     * previous and the new results, calculated on a background thread and keyed on the primary key.  This allows large lists to
+     * only update the rows that changed.
+     *
+     * @param debounceMillis The time without change notifications to wait before executing the query again
+     * @param listener The listener that will receive the results and the differences on the main thread
+     * @return The live query, that must be stopped once the results are no longer required
+     */
+    public LiveQuery<Model> observe(Context context, long debounceMillis, ResultChangeListener<Model> listener) {
+
+        return observe(context, debounceMillis, getMaxWaitMillis(debounceMillis), listener);
+    }
+
+    /**
+     * Does the same as {@link #observe(Context, long, ResultChangeListener)}, with the maximum time a burst of changes can
+     * postpone the query.
+     *
+     * @param maxWaitMillis The maximum time to wait after the first change notification before executing the query again
+     */
+    public LiveQuery<Model> observe(Context context, long debounceMillis, long maxWaitMillis, ResultChangeListener<Model> listener) {
+
+        LiveQuery<Model> liveQuery = new LiveQuery<Model>(context, cloneFrom(), debounceMillis, maxWaitMillis, listener);
+        liveQuery.start();
+
+        return liveQuery;
+    }
+
+    private static long getMaxWaitMillis(long debounceMillis) {
+
+        return Math.max(debounceMillis, LiveQuery.DEFAULT_MAX_WAIT_MILLIS);
+    }
+
+    /**
+     * Queries the first or last item of the cursor, using the result cache if it is enabled for this select.
+     */
+    private Model queryAsSingleItem(Context context, String resultType, boolean first) {
+
+        ContentResolverValues contentResolverValues = asContentResolverValue(context);
+        QueryResultCache resultCache = getResultCache();
+        String cacheKey = null;
+        List<Uri> tableUris = null;
+        long cacheVersion = 0;
+
+        if (resultCache != null) {
+
+            cacheKey = QueryResultCache.createKey(resultType, contentResolverValues);
+            Model cachedItem = resultCache.getValue(cacheKey);
+            if (cachedItem != null)
+                return cachedItem;
+
+            tableUris = getReferencedTableUris(context);
+            cacheVersion = resultCache.prepare(tableUris);
+        }
+
+        QueryTimeout queryTimeout = QueryTimeout.start(null, timeoutMillis);
+        CPOrmCursor<Model> cursor = null;
         try {
 
-            if (cursor.moveToLast()) {
-                return cursor.inflate();
-            } else return null;
+            cursor = executeQuery(context, contentResolverValues, queryTimeout.getCancellationSignal());
+            if(cursor == null)
+                return null;
+
+            Model item = null;
+            if (first ? cursor.moveToFirst() : cursor.moveToLast()) {
+                item = cursor.inflate();
+            }
+
+            if (resultCache != null)
+                resultCache.putValue(cacheKey, tableUris, cacheVersion, item);
+
+            return item;
         } finally {
-            cursor.close();
+            queryTimeout.stop();
+            if(cursor != null)
+                cursor.close();
         }
+    }
+
+    /**
+     * Finds all of the tables and views that this select reads from, including the tables of any inner selects
+     * used as filter values.
+     *
+     * @return The table details of the referenced tables
+     */
+    public Set<TableDetails> getReferencedTables(Context context) {
+
+        Set<TableDetails> referencedTables = new LinkedHashSet<TableDetails>();
+        referencedTables.add(CPOrm.findTableDetails(context, dataObjectClass));
+        collectReferencedTables(context, filterCriteria, referencedTables);
+
+        return referencedTables;
+    }
+
+    private static void collectReferencedTables(Context context, DataFilterClause clause, Set<TableDetails> referencedTables) {
+
+        if (clause instanceof DataFilterCriteria) {
+
+            for (DataFilterClause childClause : ((DataFilterCriteria) clause).getClauses()) {
+                collectReferencedTables(context, childClause, referencedTables);
+            }
+        } else if (clause instanceof DataFilterCriterion && ((DataFilterCriterion) clause).filterValue instanceof Select) {
+
+            referencedTables.addAll(((Select<?>) ((DataFilterCriterion) clause).filterValue).getReferencedTables(context));
+        }
+    }
+
+    private List<Uri> getReferencedTableUris(Context context) {
+
+        List<Uri> tableUris = new ArrayList<Uri>();
+        for (TableDetails tableDetails : getReferencedTables(context)) {
+
+            tableUris.add(UriMatcherHelper.generateItemUri(context, tableDetails).build());
+        }
+
+        return tableUris;
+    }
+
+    private QueryResultCache getResultCache() {
 
+        return cacheResults ? CPOrm.getQueryResultCache() : null;
     }
 
     /**
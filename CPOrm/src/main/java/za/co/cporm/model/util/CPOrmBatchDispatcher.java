@@ -7,6 +7,7 @@ import android.net.Uri;
 import android.os.RemoteException;
 import za.co.cporm.model.CPOrm;
 import za.co.cporm.model.CPSyncHelper;
+import za.co.cporm.model.ConflictStrategy;
 import za.co.cporm.model.generate.TableDetails;
 
 import java.util.ArrayList;
@@ -25,6 +26,7 @@ public class CPOrmBatchDispatcher<T> extends ArrayList<T> {
     private ContentProviderClient provider;
     private boolean isSync;
     private boolean releaseProvider;
+    private ConflictStrategy conflictStrategy = ConflictStrategy.ABORT;
 
     public CPOrmBatchDispatcher(Context context, Class<? extends T> insertObject, int dispatchSize) {
 
@@ -45,6 +47,14 @@ public class CPOrmBatchDispatcher<T> extends ArrayList<T> {
         releaseProvider = false;
     }
 
+    /**
+     * Sets the strategy used to resolve conflicts with existing rows when the objects are dispatched.
+     */
+    public void setConflictStrategy(ConflictStrategy conflictStrategy) {
+
+        this.conflictStrategy = conflictStrategy;
+    }
+
     @Override
     public boolean add(T object) {
 
@@ -69,11 +79,11 @@ public class CPOrmBatchDispatcher<T> extends ArrayList<T> {
         }
 
         try {
-            if (isSync) CPSyncHelper.insert(context, provider, toArray());
+            if (isSync) CPSyncHelper.insert(context, true, conflictStrategy, provider, toArray());
             else {
                 ContentValues[] values = ModelInflater.deflateAll(tableDetails, toArray());
 
-                provider.bulkInsert(itemUri, values);
+                provider.bulkInsert(conflictStrategy.appendTo(itemUri.buildUpon()).build(), values);
             }
             clear();
         } catch (RemoteException e) {
@@ -0,0 +1,19 @@
+package za.co.cporm.model.util;
+
+/**
+ * Receives the result of an asynchronous ORM operation.  The methods are always called on the main thread.
+ */
+public interface CPOrmCallback<T> {
+
+    /**
+     * Called once the operation completed successfully.
+     * @param result The result of the operation.
+     */
+    void onSuccess(T result);
+
+    /**
+     * Called if the operation failed.
+     * @param throwable The reason the operation failed.
+     */
+    void onFailure(Throwable throwable);
+}
@@ -0,0 +1,195 @@
+package za.co.cporm.model.util;
+
+import android.content.res.Resources;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import za.co.cporm.util.CPOrmLog;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Contains the executors used by the asynchronous ORM methods.  Reads are executed on a pool that is sized to the
+ * SQLite WAL connection pool, so that concurrent reads can each get their own connection, while all writes are
+ * executed on a single thread so that they never contend for the SQLite write lock.
+ */
+public class CPOrmExecutors {
+
+    private static final int DEFAULT_CONNECTION_POOL_SIZE = 4;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+    private static final int PURGE_INTERVAL = 64;
+
+    private static ExecutorService readExecutor;
+    private static ExecutorService writeExecutor;
+    private static ScheduledThreadPoolExecutor timeoutExecutor;
+    private static final AtomicInteger scheduleCount = new AtomicInteger();
+    private static Handler mainHandler;
+
+    /**
+     * @return The shared executor used for asynchronous queries.
+     */
+    public static synchronized ExecutorService getReadExecutor() {
+
+        if (readExecutor == null) {
+            int poolSize = getReadPoolSize();
+            readExecutor = createExecutor(poolSize, "CPOrm-Read");
+        }
+
+        return readExecutor;
+    }
+
+    /**
+     * @return The shared single threaded executor used for asynchronous writes.
+     */
+    public static synchronized ExecutorService getWriteExecutor() {
+
+        if (writeExecutor == null) {
+            writeExecutor = createExecutor(1, "CPOrm-Write");
+        }
+
+        return writeExecutor;
+    }
+
+    /**
+     * Schedules the task to run once the delay expired, this is used to enforce query timeouts.  The task is executed on a shared background thread, so it should only do a minimal amount of work,
+     * like cancelling a signal or submitting a query to the read executor.
+     *
+     * @param task The task to execute.
+     * @param delayMillis The delay in milliseconds.
+     * @return The future for the task, that can be used to cancel it.
+     */
+    public static Future<?> schedule(Runnable task, long delayMillis) {
+
+        ScheduledThreadPoolExecutor executor = getTimeoutExecutor();
+
+        //Most timeouts are cancelled long before they expire, without the remove on cancel policy they are only removed
+        //from the queue once they expire, so they are purged periodically instead
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP && scheduleCount.incrementAndGet() % PURGE_INTERVAL == 0)
+            executor.purge();
+
+        return executor.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Finds the connection pool size that SQLite uses for databases in WAL mode.  The value is read from the
+     * platform resources, and falls back to the platform default if it is not available.
+     *
+     * @return The amount of threads to use for the read executor.
+     */
+    public static int getReadPoolSize() {
+
+        try {
+            Resources resources = Resources.getSystem();
+            int resourceId = resources.getIdentifier("db_connection_pool_size", "integer", "android");
+            if (resourceId != 0)
+                return Math.max(2, resources.getInteger(resourceId));
+        } catch (Exception ex) {
+            CPOrmLog.d("Could not read the SQLite connection pool size, using the default");
+        }
+
+        return DEFAULT_CONNECTION_POOL_SIZE;
+    }
+
+    /**
+     * Submits the task to the executor, and delivers the result or the failure to the callback on the main thread.
+     *
+     * @param executor The executor to run the task on.
+     * @param task The task to execute.
+     * @param callback The callback that will receive the result, may be null.
+     * @return The future for the task.
+     */
+    public static <T> Future<T> submit(ExecutorService executor, final Callable<T> task, final CPOrmCallback<T> callback) {
+
+        if (callback == null)
+            return executor.submit(task);
+
+        return executor.submit(new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+
+                try {
+                    final T result = task.call();
+                    getMainHandler().post(new Runnable() {
+                        @Override
+                        public void run() {
+                            callback.onSuccess(result);
+                        }
+                    });
+                    return result;
+                } catch (final Exception ex) {
+                    getMainHandler().post(new Runnable() {
+                        @Override
+                        public void run() {
+                            callback.onFailure(ex);
+                        }
+                    });
+                    throw ex;
+                }
+            }
+        });
+    }
+
+    /**
+     * Posts the task to the main thread.
+     *
+     * @param task The task to execute.
+     */
+    public static void postToMainThread(Runnable task) {
+
+        getMainHandler().post(task);
+    }
+
+    private static synchronized Handler getMainHandler() {
+
+        if (mainHandler == null)
+            mainHandler = new Handler(Looper.getMainLooper());
+
+        return mainHandler;
+    }
+
+    private static synchronized ScheduledThreadPoolExecutor getTimeoutExecutor() {
+
+        if (timeoutExecutor == null) {
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, createThreadFactory("CPOrm-Timeout"));
+            executor.setKeepAliveTime(KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+            executor.allowCoreThreadTimeOut(true);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP)
+                executor.setRemoveOnCancelPolicy(true);
+            timeoutExecutor = executor;
+        }
+
+        return timeoutExecutor;
+    }
+
+    private static ExecutorService createExecutor(int poolSize, final String name) {
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(poolSize, poolSize, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), createThreadFactory(name));
+        executor.allowCoreThreadTimeOut(true);
+
+        return executor;
+    }
+
+    private static ThreadFactory createThreadFactory(final String name) {
+
+        return new ThreadFactory() {
+
+            private final AtomicInteger threadCount = new AtomicInteger(1);
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+
+                Thread thread = new Thread(runnable, name + "-" + threadCount.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+}
@@ -0,0 +1,113 @@
+package za.co.cporm.model.util;
+
+import android.os.Bundle;
+import za.co.cporm.model.CPOrm;
+
+import java.util.Arrays;
+
+/**
+ * Describes the rows of a table that were changed by a single committed operation or transaction.  Change sets are
+ * numbered in the order they were committed, so observers can ask the content provider for all of the changes since the
+ * last change set they received.
+ */
+public class ChangeSet {
+
+    private static final String KEY_SEQUENCE = "SEQUENCE";
+    private static final String KEY_TABLE = "TABLE";
+    private static final String KEY_CHANGE_TYPE = "CHANGE_TYPE";
+    private static final String KEY_PRIMARY_KEYS = "PRIMARY_KEYS";
+    private static final String KEY_COLUMNS = "COLUMNS";
+
+    private final long sequence;
+    private final String tableName;
+    private final CPOrm.ChangeType changeType;
+    private final String[] primaryKeys;
+    private final String[] changedColumns;
+
+    /**
+     * @param sequence The sequence number assigned by the change log.
+     * @param tableName The table that changed.
+     * @param changeType The type of the change.
+     * @param primaryKeys The primary keys of the changed rows, or null if the changed rows are not known.
+     * @param changedColumns The columns that changed, or null if all of the columns could have changed.
+     */
+    public ChangeSet(long sequence, String tableName, CPOrm.ChangeType changeType, String[] primaryKeys, String[] changedColumns) {
+
+        this.sequence = sequence;
+        this.tableName = tableName;
+        this.changeType = changeType;
+        this.primaryKeys = primaryKeys;
+        this.changedColumns = changedColumns;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public CPOrm.ChangeType getChangeType() {
+        return changeType;
+    }
+
+    /**
+     * @return The primary keys of the changed rows, or null if the rows are not known, for instance when rows were deleted
+     * using a where clause.  The entire table should be reloaded if the rows are not known.
+     */
+    public String[] getPrimaryKeys() {
+        return primaryKeys;
+    }
+
+    public boolean isRowsKnown() {
+        return primaryKeys != null;
+    }
+
+    /**
+     * @return The columns that changed, or null if all of the columns could have changed.
+     */
+    public String[] getChangedColumns() {
+        return changedColumns;
+    }
+
+    /**
+     * @return A copy of this change set with a new sequence number.
+     */
+    public ChangeSet withSequence(long sequence) {
+
+        return new ChangeSet(sequence, tableName, changeType, primaryKeys, changedColumns);
+    }
+
+    public Bundle toBundle() {
+
+        Bundle bundle = new Bundle();
+        bundle.putLong(KEY_SEQUENCE, sequence);
+        bundle.putString(KEY_TABLE, tableName);
+        bundle.putString(KEY_CHANGE_TYPE, changeType.toString());
+        bundle.putStringArray(KEY_PRIMARY_KEYS, primaryKeys);
+        bundle.putStringArray(KEY_COLUMNS, changedColumns);
+        return bundle;
+    }
+
+    public static ChangeSet fromBundle(Bundle bundle) {
+
+        return new ChangeSet(bundle.getLong(KEY_SEQUENCE),
+                bundle.getString(KEY_TABLE),
+                CPOrm.ChangeType.valueOf(bundle.getString(KEY_CHANGE_TYPE)),
+                bundle.getStringArray(KEY_PRIMARY_KEYS),
+                bundle.getStringArray(KEY_COLUMNS));
+    }
+
+    @Override
+    public String toString() {
+
+        return "ChangeSet{" +
+                "sequence=" + sequence +
+                ", tableName='" + tableName + '\'' +
+                ", changeType=" + changeType +
+                ", primaryKeys=" + Arrays.toString(primaryKeys) +
+                ", changedColumns=" + Arrays.toString(changedColumns) +
+                '}';
+    }
+}
@@ -0,0 +1,22 @@
+package za.co.cporm.model.util;
+
+import java.util.List;
+
+/**
+ * Receives the change sets committed to the observed tables, so that caches and adapters can apply the changes
+ * incrementally instead of reloading everything.  The methods are always called on the main thread.
+ */
+public interface ChangeSetListener {
+
+    /**
+     * Called with the change sets committed since the previous call, in the order they were committed.
+     * @param changeSets The change sets of the observed tables.
+     */
+    void onChanges(List<ChangeSet> changeSets);
+
+    /**
+     * Called if the changes could not be determined, because the content provider already discarded them or was restarted.
+     * Everything derived from the observed tables should be reloaded.
+     */
+    void onChangesMissed();
+}
@@ -0,0 +1,266 @@
+package za.co.cporm.model.util;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Parcelable;
+import za.co.cporm.model.CPOrm;
+import za.co.cporm.model.generate.TableDetails;
+import za.co.cporm.provider.CPOrmContentProvider;
+import za.co.cporm.provider.CPOrmDirectExecutor;
+import za.co.cporm.provider.util.UriMatcherHelper;
+import za.co.cporm.util.CPOrmLog;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Observes tables and delivers the change sets committed to them.  A content observer is registered on every table, and
+ * when one of them is notified, all of the change sets since the last delivered change set are requested from the content
+ * provider's change log.  Every authority has its own change log, so the position in the log is kept per authority.  Only
+ * changes committed after the observer started are delivered.
+ * Change sets are always delivered on the main thread, call {@link #stop()} once the changes are no longer required.
+ */
+public class ChangeSetObserver {
+
+    private final Context context;
+    private final List<TableDetails> tables;
+    private final Set<String> tableNames;
+    private final Map<String, ChangeLogPosition> positions;
+    private final ChangeSetListener listener;
+    private final List<ContentObserver> tableObservers;
+    private final Runnable fetchTask;
+    private boolean fetching = false;
+    private boolean changedWhileFetching = false;
+    private boolean stopped = false;
+
+    public ChangeSetObserver(Context context, ChangeSetListener listener, Class<?>... dataModels) {
+
+        this.context = context.getApplicationContext();
+        this.listener = listener;
+        this.tables = new ArrayList<TableDetails>(dataModels.length);
+        this.tableNames = new HashSet<String>();
+        this.positions = new LinkedHashMap<String, ChangeLogPosition>();
+        this.tableObservers = new ArrayList<ContentObserver>();
+        this.fetchTask = new Runnable() {
+            @Override
+            public void run() {
+
+                fetchChanges();
+            }
+        };
+
+        for (Class<?> dataModel : dataModels) {
+
+            TableDetails tableDetails = CPOrm.findTableDetails(this.context, dataModel);
+            tables.add(tableDetails);
+            tableNames.add(tableDetails.getTableName());
+
+            String authority = UriMatcherHelper.generateItemUri(this.context, tableDetails).build().getAuthority();
+            if (!positions.containsKey(authority))
+                positions.put(authority, new ChangeLogPosition(tableDetails));
+        }
+    }
+
+    /**
+     * Registers the table observers and finds the current position in the change log.
+     */
+    public void start() {
+
+        if (tables.isEmpty())
+            throw new IllegalArgumentException("At least one table must be observed");
+
+        ContentResolver contentResolver = context.getContentResolver();
+        for (TableDetails tableDetails : tables) {
+
+            Uri tableUri = UriMatcherHelper.generateItemUri(context, tableDetails).build();
+            ContentObserver observer = new TableObserver();
+            contentResolver.registerContentObserver(tableUri, true, observer);
+            tableObservers.add(observer);
+        }
+
+        onTablesChanged();
+    }
+
+    /**
+     * Stops observing the tables, no more change sets will be delivered once this method returns.  This method must be called
+     * on the main thread.
+     */
+    public void stop() {
+
+        synchronized (this) {
+            if (stopped)
+                return;
+
+            stopped = true;
+        }
+
+        ContentResolver contentResolver = context.getContentResolver();
+        for (ContentObserver observer : tableObservers) {
+            contentResolver.unregisterContentObserver(observer);
+        }
+        tableObservers.clear();
+    }
+
+    public synchronized boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * Called when one of the observed tables changed.  If the changes are busy being fetched, they are fetched again
+     * once the fetch completes.
+     */
+    protected synchronized void onTablesChanged() {
+
+        if (stopped)
+            return;
+
+        if (fetching) {
+            changedWhileFetching = true;
+            return;
+        }
+
+        fetching = true;
+        CPOrmExecutors.getReadExecutor().submit(fetchTask);
+    }
+
+    private void fetchChanges() {
+
+        try {
+            if (isStopped())
+                return;
+
+            boolean missed = false;
+            List<ChangeSet> changeSets = new ArrayList<ChangeSet>();
+            for (ChangeLogPosition position : positions.values()) {
+
+                try {
+                    missed = fetchChanges(position, changeSets) || missed;
+                } catch (Exception ex) {
+                    CPOrmLog.e("Failed to fetch the change sets", ex);
+                }
+            }
+
+            if (missed)
+                deliver(null);
+            else if (!changeSets.isEmpty())
+                deliver(changeSets);
+        } finally {
+            onFetchCompleted();
+        }
+    }
+
+    /**
+     * Fetches the change sets of the observed tables from the change log of an authority.  The position is only advanced once
+     * all of the change sets were read, so that a failed fetch is retried from the same position.
+     *
+     * @return True if changes were missed.
+     */
+    private boolean fetchChanges(ChangeLogPosition position, List<ChangeSet> changeSets) {
+
+        Bundle result = callChangeLog(position.tableDetails, position.sequence == null ? null : String.valueOf(position.sequence));
+        if (result == null)
+            return false;
+
+        long resultLogId = result.getLong(CPOrmContentProvider.EXTRA_LOG_ID);
+        long resultSequence = result.getLong(CPOrmContentProvider.EXTRA_SEQUENCE);
+
+        if (position.sequence == null) {
+            //This is the initial request, which only finds the current position in the log
+            position.logId = resultLogId;
+            position.sequence = resultSequence;
+            return false;
+        }
+
+        boolean missed = resultLogId != position.logId || result.getBoolean(CPOrmContentProvider.EXTRA_CHANGES_MISSED, false);
+        List<ChangeSet> fetchedChangeSets = new ArrayList<ChangeSet>();
+        ArrayList<Parcelable> changeSetBundles = result.getParcelableArrayList(CPOrmContentProvider.EXTRA_CHANGE_SETS);
+        if (!missed && changeSetBundles != null) {
+            for (Parcelable changeSetBundle : changeSetBundles) {
+
+                ChangeSet changeSet = ChangeSet.fromBundle((Bundle) changeSetBundle);
+                if (tableNames.contains(changeSet.getTableName()))
+                    fetchedChangeSets.add(changeSet);
+            }
+        }
+
+        position.logId = resultLogId;
+        position.sequence = resultSequence;
+        changeSets.addAll(fetchedChangeSets);
+        return missed;
+    }
+
+    private synchronized void onFetchCompleted() {
+
+        fetching = false;
+        if (changedWhileFetching) {
+
+            changedWhileFetching = false;
+            onTablesChanged();
+        }
+    }
+
+    private Bundle callChangeLog(TableDetails tableDetails, String afterSequence) {
+
+        CPOrmDirectExecutor directExecutor = CPOrm.findDirectExecutor(context, tableDetails);
+        if (directExecutor != null)
+            return directExecutor.call(CPOrmContentProvider.METHOD_GET_CHANGES, afterSequence, null);
+
+        Uri tableUri = UriMatcherHelper.generateItemUri(context, tableDetails).build();
+        return context.getContentResolver().call(tableUri, CPOrmContentProvider.METHOD_GET_CHANGES, afterSequence, null);
+    }
+
+    /**
+     * @param changeSets The change sets to deliver, or null if changes were missed.
+     */
+    private void deliver(final List<ChangeSet> changeSets) {
+
+        CPOrmExecutors.postToMainThread(new Runnable() {
+            @Override
+            public void run() {
+
+                if (isStopped())
+                    return;
+
+                if (changeSets == null)
+                    listener.onChangesMissed();
+                else listener.onChanges(changeSets);
+            }
+        });
+    }
+
+    /**
+     * The position in the change log of an authority, the table details are used to call the content provider of the
+     * authority.
+     */
+    private static class ChangeLogPosition {
+
+        private final TableDetails tableDetails;
+        private long logId = 0;
+        private Long sequence = null;
+
+        ChangeLogPosition(TableDetails tableDetails) {
+
+            this.tableDetails = tableDetails;
+        }
+    }
+
+    private class TableObserver extends ContentObserver {
+
+        TableObserver() {
+            super(null);
+        }
+
+        @Override
+        public void onChange(boolean selfChange) {
+
+            onTablesChanged();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package za.co.cporm.model.util;
+
+import android.database.Cursor;
+
+/**
+ * Calculates hashes over the column values of cursor rows, this allows results to be compared without having to inflate
+ * the rows to model objects.
+ * The type of every value is part of the hash, so NULL, 0, 0.0 and an empty string hash differently, and every value is
+ * mixed into all 64 bits of the hash, so that different rows are very unlikely to have the same hash.
+ */
+public class CursorHasher {
+
+    private static final long SEED = 0x9E3779B97F4A7C15L;
+
+    /**
+     * Calculates the hash of all of the column values at the current position of the cursor.
+     *
+     * @param cursor The cursor, that must be on a valid row.
+     * @return The hash of the row.
+     */
+    public static long hashRow(Cursor cursor) {
+
+        int columnCount = cursor.getColumnCount();
+        long hash = combine(SEED, columnCount);
+
+        for (int i = 0; i < columnCount; i++) {
+
+            hash = hashColumn(hash, cursor, i);
+        }
+
+        return hash;
+    }
+
+    private static long hashColumn(long hash, Cursor cursor, int columnIndex) {
+
+        int type = cursor.getType(columnIndex);
+        hash = combine(hash, type);
+
+        switch (type) {
+            case Cursor.FIELD_TYPE_NULL:
+                return hash;
+            case Cursor.FIELD_TYPE_INTEGER:
+                return combine(hash, cursor.getLong(columnIndex));
+            case Cursor.FIELD_TYPE_FLOAT:
+                return combine(hash, Double.doubleToLongBits(cursor.getDouble(columnIndex)));
+            case Cursor.FIELD_TYPE_BLOB:
+                return hashBytes(hash, cursor.getBlob(columnIndex));
+            default:
+                return hashString(hash, cursor.getString(columnIndex));
+        }
+    }
+
+    /**
+     * Combines eight bytes at a time, followed by the length, so that values that only differ in length hash differently.
+     */
+    private static long hashBytes(long hash, byte[] bytes) {
+
+        long block = 0;
+        for (int i = 0; i < bytes.length; i++) {
+
+            block = (block << 8) | (bytes[i] & 0xFF);
+            if ((i & 7) == 7) {
+                hash = combine(hash, block);
+                block = 0;
+            }
+        }
+        if ((bytes.length & 7) != 0)
+            hash = combine(hash, block);
+
+        return combine(hash, bytes.length);
+    }
+
+    /**
+     * Combines four characters at a time, followed by the length, so that values that only differ in length hash differently.
+     */
+    private static long hashString(long hash, String string) {
+
+        long block = 0;
+        int length = string.length();
+        for (int i = 0; i < length; i++) {
+
+            block = (block << 16) | string.charAt(i);
+            if ((i & 3) == 3) {
+                hash = combine(hash, block);
+                block = 0;
+            }
+        }
+        if ((length & 3) != 0)
+            hash = combine(hash, block);
+
+        return combine(hash, length);
+    }
+
+    private static long combine(long hash, long value) {
+
+        return mix(hash * 31 + mix(value));
+    }
+
+    /**
+     * The 64 bit finalizer of MurmurHash3, every bit of the value affects every bit of the result.
+     */
+    private static long mix(long value) {
+
+        value ^= value >>> 33;
+        value *= 0xFF51AFD7ED558CCDL;
+        value ^= value >>> 33;
+        value *= 0xC4CEB9FE1A85EC53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
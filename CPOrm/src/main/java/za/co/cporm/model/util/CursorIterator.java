@@ -2,6 +2,7 @@ package za.co.cporm.model.util;
 
 import android.database.Cursor;
 import android.database.SQLException;
+import android.os.CancellationSignal;
 import za.co.cporm.model.generate.TableDetails;
 
 import java.io.Closeable;
@@ -13,19 +14,29 @@ import java.util.NoSuchElementException;
  * The iterator will just iterator over a cursor, it does that by checking in the has next method
  * if the cursor is open and not after the last item.  If the cursor is can fetch a next item, that item is returned in next,
  * if the returned item is the last one, the cursor is automatically closed.
+ * If a cancellation signal is supplied, it is checked before every item, and once it is cancelled the cursor is closed
+ * and an {@link android.os.OperationCanceledException} is thrown.
  */
 public class CursorIterator<T> implements Iterator<T>, Closeable {
     private final TableDetails tableDetails;
     private final Cursor cursor;
+    private final CancellationSignal cancellationSignal;
 
     public CursorIterator(TableDetails tableDetails, Cursor cursor) {
+        this(tableDetails, cursor, null);
+    }
+
+    public CursorIterator(TableDetails tableDetails, Cursor cursor, CancellationSignal cancellationSignal) {
         this.tableDetails = tableDetails;
         this.cursor = cursor;
+        this.cancellationSignal = cancellationSignal;
     }
 
     @Override
     public boolean hasNext() {
 
+        throwIfCanceled();
+
         if(cursor != null && cursor.isAfterLast())
             cursor.close();//Close the cursor if we reached the last position
 
@@ -35,6 +46,7 @@ public class CursorIterator<T> implements Iterator<T>, Closeable {
     @Override
     public T next() {
         T entity = null;
+        throwIfCanceled();
         if (cursor == null || cursor.isAfterLast()) {
             throw new NoSuchElementException();
         }
@@ -60,6 +72,18 @@ public class CursorIterator<T> implements Iterator<T>, Closeable {
         return entity;
     }
 
+    private void throwIfCanceled() {
+
+        try {
+            QueryTimeout.throwIfCanceled(cancellationSignal);
+        } catch (RuntimeException ex) {
+
+            if (cursor != null && !cursor.isClosed())
+                cursor.close();
+            throw ex;
+        }
+    }
+
     @Override
     public void remove() {
         throw new UnsupportedOperationException();
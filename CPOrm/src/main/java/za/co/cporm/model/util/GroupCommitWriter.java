@@ -0,0 +1,250 @@
+package za.co.cporm.model.util;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentUris;
+import android.content.Context;
+import android.text.TextUtils;
+import za.co.cporm.model.CPOrm;
+import za.co.cporm.util.CPOrmLog;
+import za.co.cporm.util.CPOrmMetrics;
+import za.co.cporm.util.CPOrmMetricsRegistry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Merges writes submitted from many threads into shared transactions.  Writes are queued, and drained on the shared
+ * write executor, where all of the writes that arrive within the commit window are applied as a single batch.  Every
+ * batch is committed in one transaction, so a burst of writes only waits for a single commit instead of one per write.
+ * If a write in a batch fails the batch is rolled back, and every write of the batch is retried on its own, so that
+ * only the futures of the writes that failed receive the failure.  Writes are applied in the order they were submitted.
+ */
+public class GroupCommitWriter {
+
+    public static final long DEFAULT_WINDOW_MILLIS = 5;
+    public static final int DEFAULT_MAX_BATCH_SIZE = 500;
+
+    private static final Runnable NO_OP = new Runnable() {
+        @Override
+        public void run() {
+        }
+    };
+
+    private final Context context;
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final LinkedBlockingQueue<PendingWrite<?>> pendingWrites = new LinkedBlockingQueue<PendingWrite<?>>();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+    private final Runnable drainTask = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    /**
+     * @param windowMillis The time to wait for more writes once the first write of a batch arrived.
+     * @param maxBatchSize The maximum amount of writes committed in a single transaction.  The batch size is limited to
+     *                     the {@link ManifestHelper#METADATA_BATCH_YIELD_INTERVAL}, since a batch that yields is no longer
+     *                     rolled back completely when a write fails, and could not be retried.
+     */
+    public GroupCommitWriter(Context context, long windowMillis, int maxBatchSize) {
+
+        if (windowMillis < 0 || maxBatchSize < 1)
+            throw new IllegalArgumentException("The commit window may not be negative and the batch size must be larger than 0");
+
+        this.context = context.getApplicationContext();
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        int yieldInterval = ManifestHelper.getBatchYieldInterval(context);
+        this.maxBatchSize = yieldInterval > 0 ? Math.min(maxBatchSize, yieldInterval) : maxBatchSize;
+    }
+
+    /**
+     * Queues an insert operation.
+     *
+     * @param callback Optional callback that will receive the inserted id on the main thread
+     * @return The future containing the id of the inserted row, or -1 if the row was not inserted.
+     */
+    public Future<Long> insert(ContentProviderOperation operation, CPOrmCallback<Long> callback) {
+
+        return submit(new PendingWrite<Long>(operation, callback) {
+            @Override
+            Long convert(ContentProviderResult result) {
+                return result.uri == null ? -1 : ContentUris.parseId(result.uri);
+            }
+        });
+    }
+
+    /**
+     * Queues an update or delete operation.
+     *
+     * @param callback Optional callback that will be notified on the main thread once the operation was committed
+     * @return The future that completes once the operation was committed.
+     */
+    public Future<Void> execute(ContentProviderOperation operation, CPOrmCallback<Void> callback) {
+
+        return submit(new PendingWrite<Void>(operation, callback) {
+            @Override
+            Void convert(ContentProviderResult result) {
+                return null;
+            }
+        });
+    }
+
+    /**
+     * @return The amount of writes waiting to be committed.
+     */
+    public int getPendingCount() {
+        return pendingWrites.size();
+    }
+
+    private <T> Future<T> submit(PendingWrite<T> pendingWrite) {
+
+        pendingWrites.add(pendingWrite);
+        scheduleDrain();
+        return pendingWrite;
+    }
+
+    private void scheduleDrain() {
+
+        if (drainScheduled.compareAndSet(false, true))
+            CPOrmExecutors.getWriteExecutor().execute(drainTask);
+    }
+
+    private void drain() {
+
+        List<PendingWrite<?>> batch = new ArrayList<PendingWrite<?>>();
+        long deadline = System.nanoTime() + windowNanos;
+
+        try {
+            while (batch.size() < maxBatchSize) {
+
+                long remaining = deadline - System.nanoTime();
+                PendingWrite<?> pendingWrite = remaining > 0 ? pendingWrites.poll(remaining, TimeUnit.NANOSECONDS) : pendingWrites.poll();
+                if (pendingWrite == null)
+                    break;
+
+                if (!pendingWrite.isCancelled())
+                    batch.add(pendingWrite);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        try {
+            commit(batch);
+        } finally {
+            drainScheduled.set(false);
+            if (!pendingWrites.isEmpty())
+                scheduleDrain();
+        }
+    }
+
+    /**
+     * Commits every run of consecutive writes to the same authority in a single batch.  Writes are not grouped across
+     * runs, since that would apply a later write to one authority before an earlier write to another.
+     */
+    private void commit(List<PendingWrite<?>> batch) {
+
+        int runStart = 0;
+        while (runStart < batch.size()) {
+
+            String authority = batch.get(runStart).operation.getUri().getAuthority();
+            int runEnd = runStart + 1;
+            while (runEnd < batch.size() && TextUtils.equals(authority, batch.get(runEnd).operation.getUri().getAuthority())) {
+                runEnd++;
+            }
+
+            commit(authority, batch.subList(runStart, runEnd));
+            runStart = runEnd;
+        }
+    }
+
+    private void commit(String authority, List<PendingWrite<?>> batch) {
+
+        long start = CPOrmMetricsRegistry.start();
+        ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>(batch.size());
+        for (PendingWrite<?> pendingWrite : batch) {
+            operations.add(pendingWrite.operation);
+        }
+
+        ContentProviderResult[] results;
+        try {
+            results = context.getContentResolver().applyBatch(authority, operations);
+        } catch (Exception ex) {
+
+            if (batch.size() == 1) {
+                batch.get(0).fail(ex);
+                return;
+            }
+
+            CPOrmLog.w("Group commit of " + batch.size() + " writes failed, retrying the writes separately", ex);
+            for (PendingWrite<?> pendingWrite : batch) {
+                commit(authority, Collections.<PendingWrite<?>>singletonList(pendingWrite));
+            }
+            return;
+        }
+
+        //Evicted before the writes complete, so that a select after a write never returns a result cached before it
+        CPOrm.invalidateQueryCache();
+        CPOrmMetricsRegistry.record(CPOrmMetrics.Layer.CLIENT, CPOrmMetrics.Operation.BATCH, null, operations.size(), start);
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).complete(results[i]);
+        }
+    }
+
+    private abstract static class PendingWrite<T> extends FutureTask<T> {
+
+        private final ContentProviderOperation operation;
+        private final CPOrmCallback<T> callback;
+
+        PendingWrite(ContentProviderOperation operation, CPOrmCallback<T> callback) {
+
+            super(NO_OP, null);
+            this.operation = operation;
+            this.callback = callback;
+        }
+
+        abstract T convert(ContentProviderResult result);
+
+        void complete(ContentProviderResult result) {
+
+            try {
+                set(convert(result));
+            } catch (RuntimeException ex) {
+                setException(ex);
+            }
+        }
+
+        void fail(Throwable throwable) {
+
+            setException(throwable);
+        }
+
+        @Override
+        protected void done() {
+
+            if (callback == null || isCancelled())
+                return;
+
+            CPOrmExecutors.postToMainThread(new Runnable() {
+                @Override
+                public void run() {
+
+                    try {
+                        callback.onSuccess(get());
+                    } catch (Exception ex) {
+                        callback.onFailure(ex.getCause() == null ? ex : ex.getCause());
+                    }
+                }
+            });
+        }
+    }
+}
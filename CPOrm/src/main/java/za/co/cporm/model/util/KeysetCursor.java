@@ -0,0 +1,245 @@
+package za.co.cporm.model.util;
+
+import android.database.AbstractCursor;
+import android.database.Cursor;
+import android.util.LruCache;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A cursor that loads its rows in pages on demand, using keyset pagination: every page is queried as the rows with a
+ * key greater than the last key of the previous page, so loading a page does not get slower the further the page is
+ * into the results, unlike an offset.  Only a limited amount of pages are kept in memory, so the memory used by the
+ * cursor is bounded regardless of the size of the results.  Pages are loaded in order, moving far ahead in the cursor
+ * loads all of the pages in between, but only the last key of every page is kept after it is evicted.
+ * The count is determined once when the cursor is created, rows inserted or deleted afterwards shift the pages, and
+ * positions past the last row that was found are not valid.
+ */
+public class KeysetCursor extends AbstractCursor {
+
+    public static final int DEFAULT_MAX_CACHED_PAGES = 4;
+
+    /**
+     * Loads a page of rows sorted by the key.
+     */
+    public interface PageLoader {
+
+        /**
+         * @param afterKey The last key of the previous page, or null for the first page.
+         * @param pageSize The maximum amount of rows to load.
+         * @return The rows with a key greater than the after key, sorted by the key.
+         */
+        Cursor loadPage(Object afterKey, int pageSize);
+    }
+
+    private final String[] columnNames;
+    private final int keyColumnIndex;
+    private final int count;
+    private final int pageSize;
+    private final PageLoader pageLoader;
+    private final LruCache<Integer, Object[][]> pages;
+    private final List<Object> pageLastKeys = new ArrayList<Object>();
+    private Object[] currentRow;
+
+    /**
+     * @param columnNames The columns of the rows, in the order they are returned by the loader.
+     * @param keyColumn The column that contains the unique key the pages are sorted by.
+     * @param count The total amount of rows.
+     * @param pageSize The amount of rows per page.
+     * @param maxCachedPages The maximum amount of pages kept in memory.
+     */
+    public KeysetCursor(String[] columnNames, String keyColumn, int count, int pageSize, int maxCachedPages, PageLoader pageLoader) {
+
+        if (pageSize < 1 || maxCachedPages < 1)
+            throw new IllegalArgumentException("The page size and the amount of cached pages must be larger than 0");
+
+        this.columnNames = columnNames;
+        this.keyColumnIndex = findColumn(columnNames, keyColumn);
+        this.count = count;
+        this.pageSize = pageSize;
+        this.pageLoader = pageLoader;
+        this.pages = new LruCache<Integer, Object[][]>(maxCachedPages);
+    }
+
+    @Override
+    public int getCount() {
+        return count;
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return columnNames;
+    }
+
+    @Override
+    public boolean onMove(int oldPosition, int newPosition) {
+
+        Object[][] page = getPage(newPosition / pageSize);
+        int row = newPosition % pageSize;
+        currentRow = page != null && row < page.length ? page[row] : null;
+
+        return currentRow != null;
+    }
+
+    @Override
+    public String getString(int column) {
+
+        Object value = getValue(column);
+        return value == null ? null : value instanceof byte[] ? new String((byte[]) value) : value.toString();
+    }
+
+    @Override
+    public short getShort(int column) {
+        return (short) getLong(column);
+    }
+
+    @Override
+    public int getInt(int column) {
+        return (int) getLong(column);
+    }
+
+    @Override
+    public long getLong(int column) {
+
+        Object value = getValue(column);
+        if (value == null) return 0;
+        if (value instanceof Number) return ((Number) value).longValue();
+        return Long.parseLong(value.toString());
+    }
+
+    @Override
+    public float getFloat(int column) {
+        return (float) getDouble(column);
+    }
+
+    @Override
+    public double getDouble(int column) {
+
+        Object value = getValue(column);
+        if (value == null) return 0;
+        if (value instanceof Number) return ((Number) value).doubleValue();
+        return Double.parseDouble(value.toString());
+    }
+
+    @Override
+    public byte[] getBlob(int column) {
+
+        Object value = getValue(column);
+        return value == null ? null : value instanceof byte[] ? (byte[]) value : value.toString().getBytes();
+    }
+
+    @Override
+    public int getType(int column) {
+
+        Object value = getValue(column);
+        if (value == null) return FIELD_TYPE_NULL;
+        if (value instanceof byte[]) return FIELD_TYPE_BLOB;
+        if (value instanceof Long) return FIELD_TYPE_INTEGER;
+        if (value instanceof Double) return FIELD_TYPE_FLOAT;
+        return FIELD_TYPE_STRING;
+    }
+
+    @Override
+    public boolean isNull(int column) {
+        return getValue(column) == null;
+    }
+
+    @Override
+    public void close() {
+
+        super.close();
+        pages.evictAll();
+        currentRow = null;
+    }
+
+    private Object getValue(int column) {
+
+        if (currentRow == null)
+            throw new IllegalStateException("The cursor is not positioned on a row");
+
+        return currentRow[column];
+    }
+
+    /**
+     * Loads the page, and all of the pages before it of which the last key is not known yet.
+     *
+     * @return The rows of the page, or null if the results ended before the page.
+     */
+    private Object[][] getPage(int pageIndex) {
+
+        Object[][] page = pages.get(pageIndex);
+        if (page != null)
+            return page;
+
+        for (int i = Math.min(pageLastKeys.size(), pageIndex); i <= pageIndex; i++) {
+
+            Object afterKey = i == 0 ? null : pageLastKeys.get(i - 1);
+            if (i > 0 && afterKey == null)
+                return null;
+
+            page = loadPage(afterKey);
+            pages.put(i, page);
+            Object lastKey = page.length == 0 ? null : page[page.length - 1][keyColumnIndex];
+            if (i == pageLastKeys.size())
+                pageLastKeys.add(page.length < pageSize ? null : lastKey);
+        }
+
+        return page;
+    }
+
+    private Object[][] loadPage(Object afterKey) {
+
+        Cursor cursor = pageLoader.loadPage(afterKey, pageSize);
+        if (cursor == null)
+            return new Object[0][];
+
+        try {
+            int[] columnIndexes = new int[columnNames.length];
+            for (int i = 0; i < columnNames.length; i++) {
+                columnIndexes[i] = cursor.getColumnIndexOrThrow(columnNames[i]);
+            }
+
+            Object[][] rows = new Object[cursor.getCount()][];
+            int row = 0;
+            while (cursor.moveToNext() && row < rows.length) {
+
+                Object[] values = new Object[columnNames.length];
+                for (int i = 0; i < columnIndexes.length; i++) {
+                    values[i] = readValue(cursor, columnIndexes[i]);
+                }
+                rows[row++] = values;
+            }
+
+            return rows;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static Object readValue(Cursor cursor, int columnIndex) {
+
+        switch (cursor.getType(columnIndex)) {
+            case FIELD_TYPE_NULL:
+                return null;
+            case FIELD_TYPE_INTEGER:
+                return cursor.getLong(columnIndex);
+            case FIELD_TYPE_FLOAT:
+                return cursor.getDouble(columnIndex);
+            case FIELD_TYPE_BLOB:
+                return cursor.getBlob(columnIndex);
+            default:
+                return cursor.getString(columnIndex);
+        }
+    }
+
+    private static int findColumn(String[] columnNames, String columnName) {
+
+        for (int i = 0; i < columnNames.length; i++) {
+            if (columnNames[i].equalsIgnoreCase(columnName))
+                return i;
+        }
+
+        throw new IllegalArgumentException("The key column " + columnName + " is not one of the cursor columns");
+    }
+}
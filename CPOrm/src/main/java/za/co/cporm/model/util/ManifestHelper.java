@@ -16,6 +16,13 @@ public class ManifestHelper {
     public static final String METADATA_AUTHORITY = "AUTHORITY";
     public static final String METADATA_CPORM_CONFIG = "CPORM_CONFIG";
     public static final String METADATA_MAPPING_FACTORY = "MAPPING_FACTORY";
+    public static final String METADATA_BULK_INSERT_ROWS_PER_STATEMENT = "BULK_INSERT_ROWS_PER_STATEMENT";
+    public static final String METADATA_BATCH_YIELD_INTERVAL = "BATCH_YIELD_INTERVAL";
+    public static final String METADATA_NOTIFICATION_DEBOUNCE_MILLIS = "NOTIFICATION_DEBOUNCE_MILLIS";
+    public static final String METADATA_NOTIFICATION_ROW_THRESHOLD = "NOTIFICATION_ROW_THRESHOLD";
+    public static final int DEFAULT_NOTIFICATION_ROW_THRESHOLD = 10;
+    public static final String METADATA_SLOW_QUERY_THRESHOLD_MILLIS = "SLOW_QUERY_THRESHOLD_MILLIS";
+    public static final String METADATA_SCHEMA_MIGRATION = "SCHEMA_MIGRATION";
 
     public static final String DATABASE_DEFAULT_NAME = "CPOrm.db";
 
@@ -75,6 +82,72 @@ public class ManifestHelper {
         }
     }
 
+    /**
+     * Reads the maximum amount of rows the content provider will insert using a single multi row insert statement during
+     * bulk inserts.  Multi row inserts are disabled by default.
+     * @param context the {@link android.content.Context} of the Android application
+     * @return The value of {@link #METADATA_BULK_INSERT_ROWS_PER_STATEMENT}, or 1 if it is not set.
+     */
+    public static int getBulkInsertRowsPerStatement(Context context) {
+
+        Integer rowsPerStatement = getMetaDataInteger(context, METADATA_BULK_INSERT_ROWS_PER_STATEMENT);
+        return rowsPerStatement == null || rowsPerStatement < 1 ? 1 : rowsPerStatement;
+    }
+
+    /**
+     * Reads the amount of operations after which the content provider yields the transaction of a batch, so that other
+     * writers are not blocked by large batches.  Batches only yield where the operations allow it by default.
+     * @param context the {@link android.content.Context} of the Android application
+     * @return The value of {@link #METADATA_BATCH_YIELD_INTERVAL}, or 0 if it is not set.
+     */
+    public static int getBatchYieldInterval(Context context) {
+
+        Integer yieldInterval = getMetaDataInteger(context, METADATA_BATCH_YIELD_INTERVAL);
+        return yieldInterval == null || yieldInterval < 0 ? 0 : yieldInterval;
+    }
+
+    /**
+     * Reads the time the content provider waits to coalesce change notifications before sending them.
+     * Notifications are sent immediately by default.
+     * @param context the {@link android.content.Context} of the Android application
+     * @return The value of {@link #METADATA_NOTIFICATION_DEBOUNCE_MILLIS}, or 0 if it is not set.
+     */
+    public static int getNotificationDebounceMillis(Context context) {
+
+        Integer debounceMillis = getMetaDataInteger(context, METADATA_NOTIFICATION_DEBOUNCE_MILLIS);
+        return debounceMillis == null || debounceMillis < 0 ? 0 : debounceMillis;
+    }
+
+    /**
+     * Reads the amount of changed row uris of a single table above which the content provider notifies the table uri instead.
+     * @param context the {@link android.content.Context} of the Android application
+     * @return The value of {@link #METADATA_NOTIFICATION_ROW_THRESHOLD}, or {@link #DEFAULT_NOTIFICATION_ROW_THRESHOLD} if it is not set.
+     */
+    public static int getNotificationRowThreshold(Context context) {
+
+        Integer rowThreshold = getMetaDataInteger(context, METADATA_NOTIFICATION_ROW_THRESHOLD);
+        return rowThreshold == null || rowThreshold < 1 ? DEFAULT_NOTIFICATION_ROW_THRESHOLD : rowThreshold;
+    }
+
+    /**
+     * @return The value of {@link #METADATA_SLOW_QUERY_THRESHOLD_MILLIS}, or 0 if it is not set, which disables the slow query log.
+     */
+    public static int getSlowQueryThresholdMillis(Context context) {
+
+        Integer thresholdMillis = getMetaDataInteger(context, METADATA_SLOW_QUERY_THRESHOLD_MILLIS);
+        return thresholdMillis == null || thresholdMillis < 0 ? 0 : thresholdMillis;
+    }
+
+    /**
+     * Reads if the database schema should be migrated to the data model when no upgrade script upgrades the database to
+     * the new version, instead of recreating the database.
+     * @return The value of {@link #METADATA_SCHEMA_MIGRATION}, or true if it is not set.
+     */
+    public static boolean isSchemaMigrationEnabled(Context context) {
+
+        return getMetaDataBoolean(context, METADATA_SCHEMA_MIGRATION, true);
+    }
+
     private static String getMetaDataString(Context context, String name) {
         String value = null;
 
@@ -106,13 +179,18 @@ public class ManifestHelper {
     }
 
     private static Boolean getMetaDataBoolean(Context context, String name) {
-        Boolean value = false;
+
+        return getMetaDataBoolean(context, name, false);
+    }
+
+    private static Boolean getMetaDataBoolean(Context context, String name, boolean defaultValue) {
+        Boolean value = defaultValue;
 
         PackageManager pm = context.getPackageManager();
         try {
             ApplicationInfo ai = pm.getApplicationInfo(context.getPackageName(),
                     PackageManager.GET_META_DATA);
-            value = ai.metaData.getBoolean(name);
+            value = ai.metaData.getBoolean(name, defaultValue);
         } catch (Exception e) {
             CPOrmLog.d("Couldn't find config value: " + name);
         }
@@ -0,0 +1,247 @@
+package za.co.cporm.model.util;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.util.LruCache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An opt in cache for the results of {@link za.co.cporm.model.query.Select} statements.  Results are keyed on the
+ * normalized query and its arguments, and stored in an LRU cache that is bound by the total amount of cached rows.
+ * A content observer is registered for every table a cached query reads from, so as soon as the content provider
+ * notifies a change on a table (or on a view through its change listeners), all of the results read from it are evicted.
+ * Writes made through {@link za.co.cporm.model.CPOrm} also evict the results synchronously, since notifications are
+ * delivered asynchronously.
+ */
+public class QueryResultCache {
+
+    public static final int DEFAULT_MAX_CACHED_ROWS = 2000;
+    public static final int DEFAULT_MAX_ROWS_PER_ENTRY = 500;
+
+    private final ContentResolver contentResolver;
+    private final int maxRowsPerEntry;
+    private final LruCache<String, CacheEntry> cache;
+    private final Map<Uri, TableObserver> tableObservers;
+    private long version = 0;
+
+    /**
+     * Creates a new cache.
+     * @param context The context used to register the table observers, the application context will be used.
+     * @param maxCachedRows The maximum amount of rows, over all of the entries, that will be kept in the cache.
+     * @param maxRowsPerEntry Results containing more rows than this will not be cached.
+     */
+    public QueryResultCache(Context context, int maxCachedRows, int maxRowsPerEntry) {
+
+        if (maxCachedRows < 1)
+            throw new IllegalArgumentException("The cache must be able to store at least one row");
+
+        this.contentResolver = context.getApplicationContext().getContentResolver();
+        this.maxRowsPerEntry = Math.min(maxRowsPerEntry, maxCachedRows);
+        this.tableObservers = new HashMap<Uri, TableObserver>();
+        this.cache = new LruCache<String, CacheEntry>(maxCachedRows) {
+            @Override
+            protected int sizeOf(String key, CacheEntry value) {
+                return value.rowCount;
+            }
+        };
+    }
+
+    /**
+     * Creates the cache key for a query.  The where clause is normalized so that queries that only differ in white space
+     * outside of quoted literals and identifiers share the same entry.
+     * @param resultType The type of result that is cached for the query, for example a list or a count.
+     * @param values The query values.
+     * @return The key to use for this query.
+     */
+    public static String createKey(String resultType, ContentResolverValues values) {
+
+        StringBuilder key = new StringBuilder(resultType);
+        key.append('|').append(values.getItemUri());
+        key.append('|').append(Arrays.toString(values.getProjection()));
+        key.append('|').append(normalize(values.getWhere()));
+        key.append('|').append(Arrays.toString(values.getWhereArgs()));
+        key.append('|').append(normalize(values.getSortOrder()));
+
+        return key.toString();
+    }
+
+    /**
+     * Makes sure all of the tables are observed, and returns the current version of the cache.  The version must be supplied
+     * when the result is stored, if any of the observed tables changed while the query was running the result is discarded.
+     * @param tableUris The table uris that the query will read from.
+     * @return The current cache version.
+     */
+    public synchronized long prepare(Collection<Uri> tableUris) {
+
+        for (Uri tableUri : tableUris) {
+
+            if (!tableObservers.containsKey(tableUri)) {
+                TableObserver observer = new TableObserver(tableUri);
+                contentResolver.registerContentObserver(tableUri, true, observer);
+                tableObservers.put(tableUri, observer);
+            }
+        }
+
+        return version;
+    }
+
+    /**
+     * @return A copy of the cached list, or null if the query is not cached.
+     */
+    public synchronized <T> List<T> getList(String key) {
+
+        CacheEntry entry = cache.get(key);
+        if (entry == null)
+            return null;
+
+        return new ArrayList<T>((List<T>) entry.value);
+    }
+
+    /**
+     * @return The cached value, or null if the query is not cached.
+     */
+    public synchronized <T> T getValue(String key) {
+
+        CacheEntry entry = cache.get(key);
+        return entry == null ? null : (T) entry.value;
+    }
+
+    public synchronized <T> void putList(String key, Collection<Uri> tableUris, long version, List<T> value) {
+
+        if (value.size() > maxRowsPerEntry)
+            return;
+
+        put(key, tableUris, version, new ArrayList<T>(value), value.size());
+    }
+
+    public synchronized void putValue(String key, Collection<Uri> tableUris, long version, Object value) {
+
+        if (value == null)
+            return;
+
+        put(key, tableUris, version, value, 1);
+    }
+
+    /**
+     * Evicts all of the results that were read from the supplied table.
+     * @param tableUri The uri of the table that changed.
+     */
+    public synchronized void invalidate(Uri tableUri) {
+
+        version++;
+
+        for (Map.Entry<String, CacheEntry> entry : cache.snapshot().entrySet()) {
+
+            if (entry.getValue().tableUris.contains(tableUri))
+                cache.remove(entry.getKey());
+        }
+    }
+
+    /**
+     * Evicts all of the results, the tables stay observed.
+     */
+    public synchronized void invalidateAll() {
+
+        version++;
+        cache.evictAll();
+    }
+
+    /**
+     * Evicts all results and stops observing the tables.
+     */
+    public synchronized void clear() {
+
+        version++;
+        cache.evictAll();
+
+        for (TableObserver observer : tableObservers.values()) {
+            contentResolver.unregisterContentObserver(observer);
+        }
+        tableObservers.clear();
+    }
+
+    private void put(String key, Collection<Uri> tableUris, long version, Object value, int rowCount) {
+
+        //A table changed while the query was running, the result could already be stale
+        if (this.version != version)
+            return;
+
+        cache.put(key, new CacheEntry(new ArrayList<Uri>(tableUris), value, Math.max(rowCount, 1)));
+    }
+
+    /**
+     * Collapses white space to single spaces, white space inside quoted literals and identifiers is kept as is, since it
+     * is part of the value.
+     */
+    private static String normalize(String sql) {
+
+        if (sql == null)
+            return "";
+
+        String trimmed = sql.trim();
+        StringBuilder normalized = new StringBuilder(trimmed.length());
+        char quote = 0;
+        boolean whitespace = false;
+
+        for (int i = 0; i < trimmed.length(); i++) {
+
+            char character = trimmed.charAt(i);
+            if (quote == 0 && Character.isWhitespace(character)) {
+                whitespace = true;
+                continue;
+            }
+
+            if (whitespace) {
+                normalized.append(' ');
+                whitespace = false;
+            }
+
+            //An escaped quote closes and reopens the quote, so it does not need to be handled separately
+            if (quote == 0 && (character == '\'' || character == '"' || character == '`'))
+                quote = character;
+            else if (character == quote)
+                quote = 0;
+
+            normalized.append(character);
+        }
+
+        return normalized.toString();
+    }
+
+    private static class CacheEntry {
+
+        final List<Uri> tableUris;
+        final Object value;
+        final int rowCount;
+
+        CacheEntry(List<Uri> tableUris, Object value, int rowCount) {
+            this.tableUris = tableUris;
+            this.value = value;
+            this.rowCount = rowCount;
+        }
+    }
+
+    private class TableObserver extends ContentObserver {
+
+        private final Uri tableUri;
+
+        TableObserver(Uri tableUri) {
+            super(null);
+            this.tableUri = tableUri;
+        }
+
+        @Override
+        public void onChange(boolean selfChange) {
+
+            invalidate(tableUri);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package za.co.cporm.model.util;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.CancellationSignal;
+
+import java.util.concurrent.Future;
+
+/**
+ * Enforces a time budget on a query by cancelling its {@link CancellationSignal} once the budget expires.  When the signal
+ * is cancelled, SQLite interrupts the running statement and the query throws an {@link android.os.OperationCanceledException}.
+ * Cancellation signals are only supported from Jelly Bean, on older devices the timeout is ignored.
+ */
+public class QueryTimeout {
+
+    private final CancellationSignal cancellationSignal;
+    private final Future<?> timeoutFuture;
+
+    private QueryTimeout(CancellationSignal cancellationSignal, Future<?> timeoutFuture) {
+
+        this.cancellationSignal = cancellationSignal;
+        this.timeoutFuture = timeoutFuture;
+    }
+
+    /**
+     * Starts the timeout for a query.
+     *
+     * @param cancellationSignal The signal supplied by the caller, may be null.  If a timeout is specified and no signal
+     *                           was supplied, a new one is created.
+     * @param timeoutMillis The time budget in milliseconds, or null if the query has no timeout.
+     * @return The started timeout.
+     */
+    public static QueryTimeout start(CancellationSignal cancellationSignal, Long timeoutMillis) {
+
+        if (timeoutMillis == null || Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN)
+            return new QueryTimeout(cancellationSignal, null);
+
+        CancellationSignal signal = cancellationSignal == null ? new CancellationSignal() : cancellationSignal;
+        return new QueryTimeout(signal, CPOrmExecutors.schedule(new CancelTask(signal), timeoutMillis));
+    }
+
+    /**
+     * @return The signal the query must be executed with, null if the query cannot be cancelled.
+     */
+    public CancellationSignal getCancellationSignal() {
+
+        return cancellationSignal;
+    }
+
+    /**
+     * Stops the timeout, this should be called once the query completed so the signal is not cancelled afterwards.
+     */
+    public void stop() {
+
+        if (timeoutFuture != null)
+            timeoutFuture.cancel(false);
+    }
+
+    /**
+     * Throws an {@link android.os.OperationCanceledException} if the signal has been cancelled.
+     *
+     * @param cancellationSignal The signal to check, may be null.
+     */
+    public static void throwIfCanceled(CancellationSignal cancellationSignal) {
+
+        if (cancellationSignal != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN)
+            throwIfCanceledCompat(cancellationSignal);
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static void throwIfCanceledCompat(CancellationSignal cancellationSignal) {
+
+        cancellationSignal.throwIfCanceled();
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static class CancelTask implements Runnable {
+
+        private final CancellationSignal cancellationSignal;
+
+        CancelTask(CancellationSignal cancellationSignal) {
+            this.cancellationSignal = cancellationSignal;
+        }
+
+        @Override
+        public void run() {
+
+            cancellationSignal.cancel();
+        }
+    }
+}
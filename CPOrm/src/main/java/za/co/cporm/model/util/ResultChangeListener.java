@@ -0,0 +1,23 @@
+package za.co.cporm.model.util;
+
+import java.util.List;
+
+/**
+ * Receives the results of an observed query together with the difference from the previous results.  The methods are
+ * always called on the main thread.
+ */
+public interface ResultChangeListener<T> {
+
+    /**
+     * Called every time the results of the query changed.
+     * @param results The new results.
+     * @param diff The difference from the previous results, the first results are all reported as inserted.
+     */
+    void onResultChanged(List<T> results, ResultDiff diff);
+
+    /**
+     * Called if the query failed.
+     * @param throwable The reason the query failed.
+     */
+    void onFailure(Throwable throwable);
+}
@@ -0,0 +1,197 @@
+package za.co.cporm.model.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+/**
+ * The difference between two query results, rows are matched on their primary keys.  The diff contains the positions of the
+ * rows that were removed from the old result, inserted into the new result, moved to a different position, and rows whose
+ * column values changed.  Moves are calculated as the minimum amount of rows that must be moved to get from the old order
+ * to the new order, the rows that are not moved keep their relative order.
+ */
+public class ResultDiff {
+
+    private final int[] removedPositions;
+    private final int[] insertedPositions;
+    private final int[] movedFromPositions;
+    private final int[] movedToPositions;
+    private final int[] changedPositions;
+
+    private ResultDiff(List<Integer> removedPositions, List<Integer> insertedPositions, List<Integer> movedFromPositions,
+                       List<Integer> movedToPositions, List<Integer> changedPositions) {
+
+        this.removedPositions = toArray(removedPositions);
+        this.insertedPositions = toArray(insertedPositions);
+        this.movedFromPositions = toArray(movedFromPositions);
+        this.movedToPositions = toArray(movedToPositions);
+        this.changedPositions = toArray(changedPositions);
+    }
+
+    /**
+     * Calculates the difference between the two snapshots.  For large results this should be done on a background thread.
+     *
+     * @param oldSnapshot The previous result.
+     * @param newSnapshot The current result.
+     * @return The difference between the results.
+     */
+    public static ResultDiff calculate(ResultSnapshot oldSnapshot, ResultSnapshot newSnapshot) {
+
+        int oldSize = oldSnapshot.size();
+        int newSize = newSnapshot.size();
+
+        Map<Object, Integer> oldPositions = new HashMap<Object, Integer>(Math.max(16, oldSize * 4 / 3 + 1));
+        for (int i = oldSize - 1; i >= 0; i--) {
+            oldPositions.put(oldSnapshot.getPrimaryKey(i), i);
+        }
+
+        List<Integer> insertedPositions = new ArrayList<Integer>();
+        List<Integer> changedPositions = new ArrayList<Integer>();
+        List<Integer> matchedOldPositions = new ArrayList<Integer>(Math.min(oldSize, newSize));
+        List<Integer> matchedNewPositions = new ArrayList<Integer>(Math.min(oldSize, newSize));
+        boolean[] matched = new boolean[oldSize];
+
+        for (int newPosition = 0; newPosition < newSize; newPosition++) {
+
+            //Remove the key, so that duplicate keys are only matched once
+            Integer oldPosition = oldPositions.remove(newSnapshot.getPrimaryKey(newPosition));
+            if (oldPosition == null) {
+                insertedPositions.add(newPosition);
+                continue;
+            }
+
+            matched[oldPosition] = true;
+            matchedOldPositions.add(oldPosition);
+            matchedNewPositions.add(newPosition);
+
+            if (oldSnapshot.getRowHash(oldPosition) != newSnapshot.getRowHash(newPosition))
+                changedPositions.add(newPosition);
+        }
+
+        List<Integer> removedPositions = new ArrayList<Integer>();
+        for (int i = 0; i < oldSize; i++) {
+            if (!matched[i])
+                removedPositions.add(i);
+        }
+
+        //Rows in the longest increasing sequence of old positions keep their relative order, all of the others moved
+        boolean[] stationary = findLongestIncreasingSequence(matchedOldPositions);
+        List<Integer> movedFromPositions = new ArrayList<Integer>();
+        List<Integer> movedToPositions = new ArrayList<Integer>();
+        for (int i = 0; i < stationary.length; i++) {
+
+            if (!stationary[i]) {
+                movedFromPositions.add(matchedOldPositions.get(i));
+                movedToPositions.add(matchedNewPositions.get(i));
+            }
+        }
+
+        return new ResultDiff(removedPositions, insertedPositions, movedFromPositions, movedToPositions, changedPositions);
+    }
+
+    /**
+     * Calculates the difference between the two snapshots on the read executor.
+     *
+     * @param callback The callback that will receive the diff on the main thread, may be null.
+     * @return The future for the diff.
+     */
+    public static Future<ResultDiff> calculateAsync(final ResultSnapshot oldSnapshot, final ResultSnapshot newSnapshot, CPOrmCallback<ResultDiff> callback) {
+
+        return CPOrmExecutors.submit(CPOrmExecutors.getReadExecutor(), new Callable<ResultDiff>() {
+            @Override
+            public ResultDiff call() throws Exception {
+                return calculate(oldSnapshot, newSnapshot);
+            }
+        }, callback);
+    }
+
+    /**
+     * @return True if both results contain the same rows, in the same order, with the same values.
+     */
+    public boolean isEmpty() {
+
+        return removedPositions.length == 0 && insertedPositions.length == 0 && movedFromPositions.length == 0 && changedPositions.length == 0;
+    }
+
+    /**
+     * @return The positions in the old result of the rows that were removed, in ascending order.
+     */
+    public int[] getRemovedPositions() {
+        return removedPositions;
+    }
+
+    /**
+     * @return The positions in the new result of the rows that were inserted, in ascending order.
+     */
+    public int[] getInsertedPositions() {
+        return insertedPositions;
+    }
+
+    /**
+     * @return The positions in the old result of the rows that moved, the new positions are at the same index in {@link #getMovedToPositions()}.
+     */
+    public int[] getMovedFromPositions() {
+        return movedFromPositions;
+    }
+
+    /**
+     * @return The positions in the new result of the rows that moved, the old positions are at the same index in {@link #getMovedFromPositions()}.
+     */
+    public int[] getMovedToPositions() {
+        return movedToPositions;
+    }
+
+    /**
+     * @return The positions in the new result of the rows whose values changed, in ascending order.
+     */
+    public int[] getChangedPositions() {
+        return changedPositions;
+    }
+
+    private static boolean[] findLongestIncreasingSequence(List<Integer> values) {
+
+        int size = values.size();
+        int[] tailIndexes = new int[size];
+        int[] previousIndexes = new int[size];
+        int length = 0;
+
+        for (int i = 0; i < size; i++) {
+
+            int value = values.get(i);
+            int low = 0;
+            int high = length;
+            while (low < high) {
+
+                int middle = (low + high) >>> 1;
+                if (values.get(tailIndexes[middle]) < value)
+                    low = middle + 1;
+                else high = middle;
+            }
+
+            previousIndexes[i] = low > 0 ? tailIndexes[low - 1] : -1;
+            tailIndexes[low] = i;
+            if (low == length)
+                length++;
+        }
+
+        boolean[] inSequence = new boolean[size];
+        for (int i = length > 0 ? tailIndexes[length - 1] : -1; i >= 0; i = previousIndexes[i]) {
+            inSequence[i] = true;
+        }
+
+        return inSequence;
+    }
+
+    private static int[] toArray(List<Integer> values) {
+
+        int[] array = new int[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+
+        return array;
+    }
+}
@@ -0,0 +1,88 @@
+package za.co.cporm.model.util;
+
+import android.database.Cursor;
+import za.co.cporm.model.generate.TableDetails;
+
+import java.util.Arrays;
+
+/**
+ * A light weight copy of a query result, containing only the primary key and a hash of the column values of every row.
+ * Two snapshots can be compared using a {@link ResultDiff} to find the rows that were inserted, removed, moved or changed.
+ * If the primary key is not part of the result, rows are identified by their position instead.
+ */
+public class ResultSnapshot {
+
+    public static final ResultSnapshot EMPTY = new ResultSnapshot(new Object[0], new long[0]);
+
+    private final Object[] primaryKeys;
+    private final long[] rowHashes;
+
+    private ResultSnapshot(Object[] primaryKeys, long[] rowHashes) {
+
+        this.primaryKeys = primaryKeys;
+        this.rowHashes = rowHashes;
+    }
+
+    /**
+     * Creates a snapshot of all of the rows in the cursor, the cursor is left after the last row.
+     *
+     * @param cursor The cursor containing the results.
+     * @param tableDetails The table details of the results, used to find the primary key.
+     * @return The snapshot of the results.
+     */
+    public static ResultSnapshot create(Cursor cursor, TableDetails tableDetails) {
+
+        TableDetails.ColumnDetails primaryKeyColumn = tableDetails.findPrimaryKeyColumn();
+        int primaryKeyIndex = primaryKeyColumn == null ? -1 : cursor.getColumnIndex(primaryKeyColumn.getColumnName());
+
+        int count = cursor.getCount();
+        Object[] primaryKeys = new Object[count];
+        long[] rowHashes = new long[count];
+
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+
+            int position = cursor.getPosition();
+            primaryKeys[position] = primaryKeyIndex == -1 ? Integer.valueOf(position) : readKey(cursor, primaryKeyIndex);
+            rowHashes[position] = CursorHasher.hashRow(cursor);
+        }
+
+        return new ResultSnapshot(primaryKeys, rowHashes);
+    }
+
+    public int size() {
+        return primaryKeys.length;
+    }
+
+    public Object getPrimaryKey(int position) {
+        return primaryKeys[position];
+    }
+
+    public long getRowHash(int position) {
+        return rowHashes[position];
+    }
+
+    /**
+     * @return True if both snapshots contain exactly the same rows in the same order.
+     */
+    public boolean contentEquals(ResultSnapshot other) {
+
+        return other != null && Arrays.equals(rowHashes, other.rowHashes) && Arrays.equals(primaryKeys, other.primaryKeys);
+    }
+
+    private static Object readKey(Cursor cursor, int columnIndex) {
+
+        switch (cursor.getType(columnIndex)) {
+            case Cursor.FIELD_TYPE_NULL:
+                return null;
+            case Cursor.FIELD_TYPE_INTEGER:
+                return cursor.getLong(columnIndex);
+            case Cursor.FIELD_TYPE_FLOAT:
+                return cursor.getDouble(columnIndex);
+            case Cursor.FIELD_TYPE_BLOB:
+                return Arrays.toString(cursor.getBlob(columnIndex));
+            default:
+                return cursor.getString(columnIndex);
+        }
+    }
+}
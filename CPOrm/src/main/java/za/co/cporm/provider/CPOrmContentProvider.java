@@ -9,26 +9,56 @@ import android.content.Context;
 import android.content.OperationApplicationException;
 import android.content.pm.ProviderInfo;
 import android.database.Cursor;
+import android.database.MatrixCursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
 import android.os.Build;
+import android.os.Bundle;
 import android.os.CancellationSignal;
+import android.os.ParcelFileDescriptor;
+import android.os.Parcelable;
 import android.support.annotation.NonNull;
 import android.text.TextUtils;
+import android.util.LruCache;
 
 import za.co.cporm.model.CPOrm;
+import za.co.cporm.model.CPOrmArchive;
 import za.co.cporm.model.CPOrmConfiguration;
 import za.co.cporm.model.CPOrmDatabase;
+import za.co.cporm.model.CPOrmTuningProfile;
+import za.co.cporm.model.ConflictStrategy;
 import za.co.cporm.model.generate.TableDetails;
+import za.co.cporm.model.map.types.BlobType;
+import za.co.cporm.model.util.ChangeSet;
 import za.co.cporm.model.util.ManifestHelper;
+import za.co.cporm.provider.util.BlobStore;
+import za.co.cporm.provider.util.BulkDeleteHelper;
+import za.co.cporm.provider.util.BulkInsertHelper;
+import za.co.cporm.provider.util.BulkUpdateHelper;
+import za.co.cporm.provider.util.ChangeLog;
+import za.co.cporm.provider.util.ChangeNotifier;
+import za.co.cporm.provider.util.ColumnarValues;
+import za.co.cporm.provider.util.CursorWindowHelper;
+import za.co.cporm.provider.util.RequestDescriptor;
+import za.co.cporm.provider.util.RowCache;
+import za.co.cporm.provider.util.SlowQueryLog;
+import za.co.cporm.provider.util.StatementCache;
 import za.co.cporm.provider.util.UriMatcherHelper;
 import za.co.cporm.util.CPOrmLog;
+import za.co.cporm.util.CPOrmMetrics;
+import za.co.cporm.util.CPOrmMetricsRegistry;
 
+import java.io.File;
+import java.io.FileNotFoundException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -42,22 +72,82 @@ public class CPOrmContentProvider extends ContentProvider {
     public static final String PARAMETER_SYNC = "IS_SYNC";
     public static final String PARAMETER_CHANGE_TYPE = "CPORM_CHANGE_TYPE";
     public static final String PARAMETER_NOTIFY_CHANGES = "NOTIFY_CHANGES";
+    public static final String PARAMETER_CONFLICT = "CONFLICT";
+    public static final String PARAMETER_CONFLICT_COLUMNS = "CONFLICT_COLUMNS";
+    public static final String PARAMETER_UPDATE_COLUMNS = "UPDATE_COLUMNS";
+    public static final String PARAMETER_INCLUDE_ARCHIVE = "INCLUDE_ARCHIVE";
+    public static final String PARAMETER_CURSOR_WINDOW_SIZE = "CURSOR_WINDOW_SIZE";
+    public static final String METHOD_UPDATE_ALL = "CPORM_UPDATE_ALL";
+    public static final String METHOD_DELETE_ALL = "CPORM_DELETE_ALL";
+    public static final String METHOD_BATCH = "CPORM_BATCH";
+    public static final String METHOD_GET_CHANGES = "CPORM_GET_CHANGES";
+    public static final String METHOD_APPLY_TUNING_PROFILE = "CPORM_APPLY_TUNING_PROFILE";
+    public static final String METHOD_GET_SLOW_QUERY_REPORT = "CPORM_GET_SLOW_QUERY_REPORT";
+    public static final String METHOD_ARCHIVE = "CPORM_ARCHIVE";
+    public static final String METHOD_DELETE_UNUSED_BLOBS = "CPORM_DELETE_UNUSED_BLOBS";
+    public static final String BLOB_PATH = "cporm_blob";
+    public static final String BLOB_MIME_TYPE = "application/octet-stream";
+    public static final String BATCH_OPERATION_INSERT = "INSERT";
+    public static final String BATCH_OPERATION_DELETE = "DELETE";
+    public static final String EXTRA_VALUES = "VALUES";
+    public static final String EXTRA_PRIMARY_KEYS = "PRIMARY_KEYS";
+    public static final String EXTRA_COUNT = "COUNT";
+    public static final String EXTRA_IDS = "IDS";
+    public static final String EXTRA_URI = "URI";
+    public static final String EXTRA_OPERATION = "OPERATION";
+    public static final String EXTRA_SECTION_COUNT = "SECTION_COUNT";
+    public static final String EXTRA_SECTION = "SECTION_";
+    public static final String EXTRA_LOG_ID = "LOG_ID";
+    public static final String EXTRA_SEQUENCE = "SEQUENCE";
+    public static final String EXTRA_CHANGE_SETS = "CHANGE_SETS";
+    public static final String EXTRA_CHANGES_MISSED = "CHANGES_MISSED";
+    public static final String EXTRA_REPORT = "REPORT";
+    public static final int DEFAULT_SLOW_QUERY_REPORT_SIZE = 10;
+    public static final int REQUEST_DESCRIPTOR_CACHE_SIZE = 128;
 
     private final ThreadLocal<Boolean> isBatchOperation = new ThreadLocal<>();
-    private final ThreadLocal<Set<Uri>> changedUri = new ThreadLocal<>();
+    private final ThreadLocal<Map<CPOrmDatabase, BatchChanges>> batchChanges = new ThreadLocal<>();
+    private final LruCache<String, RequestDescriptor> requestDescriptors = new LruCache<>(REQUEST_DESCRIPTOR_CACHE_SIZE);
+    private final Map<TableDetails, List<Uri>> changeListenerUris = new HashMap<>();
+    private final Map<TableDetails, Uri> tableUris = new HashMap<>();
+    private final Map<String, CPOrmDatabase> groupDatabases = new LinkedHashMap<>();
 
     protected CPOrmConfiguration cPOrmConfiguration;
     protected CPOrmDatabase database;
     protected UriMatcherHelper uriMatcherHelper;
     protected boolean debugEnabled;
+    protected int bulkInsertRowsPerStatement;
+    protected int batchYieldInterval;
+    protected ChangeNotifier changeNotifier;
+    protected ChangeLog changeLog;
+    protected SlowQueryLog slowQueryLog;
+    protected StatementCache statementCache;
+    protected BlobStore blobStore;
+    protected RowCache rowCache;
 
     @Override
     public boolean onCreate() {
 
         cPOrmConfiguration = ManifestHelper.getConfiguration(getContext());
         database = new CPOrmDatabase(getContext(), cPOrmConfiguration);
+        for (Class<?> dataModelObject : cPOrmConfiguration.getDataModelObjects()) {
+
+            String databaseGroup = database.getTableDetailsCache().findTableDetails(getContext(), dataModelObject).getDatabaseGroup();
+            if (databaseGroup != null && !groupDatabases.containsKey(databaseGroup))
+                groupDatabases.put(databaseGroup, new CPOrmDatabase(getContext(), cPOrmConfiguration, databaseGroup, database.getTableDetailsCache()));
+        }
 
         debugEnabled = cPOrmConfiguration.isQueryLoggingEnabled();
+        bulkInsertRowsPerStatement = ManifestHelper.getBulkInsertRowsPerStatement(getContext());
+        batchYieldInterval = ManifestHelper.getBatchYieldInterval(getContext());
+        changeNotifier = new ChangeNotifier(getContext().getContentResolver(),
+                ManifestHelper.getNotificationDebounceMillis(getContext()),
+                ManifestHelper.getNotificationRowThreshold(getContext()));
+        changeLog = new ChangeLog(ChangeLog.DEFAULT_CAPACITY);
+        slowQueryLog = new SlowQueryLog(ManifestHelper.getSlowQueryThresholdMillis(getContext()), SlowQueryLog.DEFAULT_CAPACITY);
+        statementCache = new StatementCache(StatementCache.DEFAULT_MAX_STATEMENTS);
+        rowCache = new RowCache();
+        blobStore = new BlobStore(new File(getContext().getFilesDir(), BlobStore.DIRECTORY_NAME));
         return true;
     }
 
@@ -72,12 +162,15 @@ public class CPOrmContentProvider extends ContentProvider {
     @Override
     public Cursor query(@NonNull Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
 
-        TableDetails tableDetails = uriMatcherHelper.getTableDetails(uri);
-        SQLiteDatabase db = database.getReadableDatabase();
-        String limit = constructLimit(uri);
-        Boolean distinct = uri.getBooleanQueryParameter("DISTINCT", false);
-        String groupBy = uri.getQueryParameter("GROUP_BY");
-        String having = uri.getQueryParameter("HAVING");
+        long start = CPOrmMetricsRegistry.start();
+        long slowStart = slowQueryLog.start();
+        RequestDescriptor requestDescriptor = getRequestDescriptor(uri);
+        TableDetails tableDetails = requestDescriptor.getTableDetails();
+        SQLiteDatabase db = getDatabase(tableDetails).getReadableDatabase();
+        String limit = requestDescriptor.getLimit();
+        boolean distinct = requestDescriptor.isDistinct();
+        String groupBy = requestDescriptor.getGroupBy();
+        String having = requestDescriptor.getHaving();
 
         if (debugEnabled) {
             CPOrmLog.d("********* Query **********");
@@ -94,14 +187,26 @@ public class CPOrmContentProvider extends ContentProvider {
 
         Cursor cursor;
 
-        if (uriMatcherHelper.isSingleItemRequested(uri)) {
+        if (isArchiveQuery(requestDescriptor)) {
+
+            db = getDatabase(tableDetails).getArchive().getDatabase();
+            cursor = queryArchive(db, uri, requestDescriptor, projection, selection, selectionArgs, sortOrder, null);
+        } else if (requestDescriptor.isSingleItem()) {
 
-            String itemId = uri.getLastPathSegment();
-            cursor = db.query(true, tableDetails.getTableName(), projection, tableDetails.getPrimaryKeyClause(), new String[]{itemId}, null, null, null, "1");
+            String itemId = requestDescriptor.getItemId(uri);
+            cursor = queryCachedRow(db, tableDetails, itemId, projection, null);
+            if (cursor == null)
+                cursor = db.query(true, tableDetails.getTableName(), projection, tableDetails.getPrimaryKeyClause(), new String[]{itemId}, null, null, null, "1");
         } else
             cursor = db.query(distinct, tableDetails.getTableName(), projection, selection, selectionArgs, groupBy, having, sortOrder, limit);
 
+        CursorWindowHelper.setWindowSize(cursor, requestDescriptor.getCursorWindowSize(), tableDetails.getTableName());
         cursor.setNotificationUri(getContext().getContentResolver(), uri);
+        recordQueryMetrics(tableDetails, cursor, start);
+        if (slowStart != 0) {
+            slowQueryLog.record(db, CPOrmMetrics.Operation.QUERY, tableDetails.getTableName(), buildQuerySql(requestDescriptor, projection, selection, sortOrder),
+                    requestDescriptor.isSingleItem() ? 1 : argumentCount(selectionArgs), cursor.getCount(), slowStart);
+        }
 
         return cursor;
     }
@@ -110,12 +215,15 @@ public class CPOrmContentProvider extends ContentProvider {
     @Override
     public Cursor query(@NonNull Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder, CancellationSignal cancellationSignal) {
 
-        TableDetails tableDetails = uriMatcherHelper.getTableDetails(uri);
-        SQLiteDatabase db = database.getReadableDatabase();
-        String limit = constructLimit(uri);
-        Boolean distinct = uri.getBooleanQueryParameter("DISTINCT", false);
-        String groupBy = uri.getQueryParameter("GROUP_BY");
-        String having = uri.getQueryParameter("HAVING");
+        long start = CPOrmMetricsRegistry.start();
+        long slowStart = slowQueryLog.start();
+        RequestDescriptor requestDescriptor = getRequestDescriptor(uri);
+        TableDetails tableDetails = requestDescriptor.getTableDetails();
+        SQLiteDatabase db = getDatabase(tableDetails).getReadableDatabase();
+        String limit = requestDescriptor.getLimit();
+        boolean distinct = requestDescriptor.isDistinct();
+        String groupBy = requestDescriptor.getGroupBy();
+        String having = requestDescriptor.getHaving();
 
         if (debugEnabled) {
             CPOrmLog.d("********* Query **********");
@@ -132,29 +240,184 @@ public class CPOrmContentProvider extends ContentProvider {
 
         Cursor cursor;
 
-        if (uriMatcherHelper.isSingleItemRequested(uri)) {
+        if (isArchiveQuery(requestDescriptor)) {
+
+            db = getDatabase(tableDetails).getArchive().getDatabase();
+            cursor = queryArchive(db, uri, requestDescriptor, projection, selection, selectionArgs, sortOrder, cancellationSignal);
+        } else if (requestDescriptor.isSingleItem()) {
 
-            String itemId = uri.getLastPathSegment();
-            cursor = db.query(true, tableDetails.getTableName(), projection, tableDetails.getPrimaryKeyClause(), new String[]{itemId}, null, null, null, "1", cancellationSignal);
+            String itemId = requestDescriptor.getItemId(uri);
+            cursor = queryCachedRow(db, tableDetails, itemId, projection, cancellationSignal);
+            if (cursor == null)
+                cursor = db.query(true, tableDetails.getTableName(), projection, tableDetails.getPrimaryKeyClause(), new String[]{itemId}, null, null, null, "1", cancellationSignal);
         } else
             cursor = db.query(distinct, tableDetails.getTableName(), projection, selection, selectionArgs, groupBy, having, sortOrder, limit, cancellationSignal);
 
+        CursorWindowHelper.setWindowSize(cursor, requestDescriptor.getCursorWindowSize(), tableDetails.getTableName());
         cursor.setNotificationUri(getContext().getContentResolver(), uri);
+        recordQueryMetrics(tableDetails, cursor, start);
+        if (slowStart != 0) {
+            slowQueryLog.record(db, CPOrmMetrics.Operation.QUERY, tableDetails.getTableName(), buildQuerySql(requestDescriptor, projection, selection, sortOrder),
+                    requestDescriptor.isSingleItem() ? 1 : argumentCount(selectionArgs), cursor.getCount(), slowStart);
+        }
 
         return cursor;
     }
 
+    /**
+     * Finds a single row by primary key in the row cache of the table, the complete row is queried and added to the cache
+     * if it is not cached.  The cache is not used while this thread is in a transaction, since the transaction can
+     * contain changes that are not committed yet.
+     *
+     * @return The cursor containing the row, or null if the row cache can not be used for the query.
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private Cursor queryCachedRow(SQLiteDatabase db, TableDetails tableDetails, String itemId, String[] projection, CancellationSignal cancellationSignal) {
+
+        if (!RowCache.isCached(tableDetails) || db.inTransaction())
+            return null;
+
+        Cursor cursor = rowCache.get(tableDetails, itemId, projection);
+        if (cursor != null)
+            return cursor;
+
+        long generation = rowCache.getGeneration(tableDetails);
+        String[] selectionArgs = new String[]{itemId};
+        Cursor rowCursor = cancellationSignal == null
+                ? db.query(tableDetails.getTableName(), null, tableDetails.getPrimaryKeyClause(), selectionArgs, null, null, null, "1")
+                : db.query(false, tableDetails.getTableName(), null, tableDetails.getPrimaryKeyClause(), selectionArgs, null, null, null, "1", cancellationSignal);
+
+        try {
+            if (!rowCursor.moveToFirst())
+                return new MatrixCursor(projection == null ? rowCursor.getColumnNames() : projection, 0);
+
+            RowCache.CachedRow row = RowCache.readRow(rowCursor);
+            rowCache.put(tableDetails, itemId, row, generation);
+            return row.toCursor(projection);
+        } finally {
+            rowCursor.close();
+        }
+    }
+
+    /**
+     * Records the time to compile the query, and the time to fill the first cursor window.  Filling the window is
+     * forced here while metrics are enabled, otherwise it only happens when the cursor is first used.
+     */
+    private void recordQueryMetrics(TableDetails tableDetails, Cursor cursor, long start) {
+
+        if (start == 0)
+            return;
+
+        CPOrmMetricsRegistry.record(CPOrmMetrics.Layer.PROVIDER, CPOrmMetrics.Operation.QUERY, tableDetails.getTableName(), -1, start);
+
+        long fillStart = CPOrmMetricsRegistry.start();
+        int rowCount = cursor.getCount();
+        CPOrmMetricsRegistry.record(CPOrmMetrics.Layer.PROVIDER, CPOrmMetrics.Operation.CURSOR_FILL, tableDetails.getTableName(), rowCount, fillStart);
+    }
+
+    /**
+     * Queries the table together with its archive on the archive database, which has the table's database attached.
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static Cursor queryArchive(SQLiteDatabase archiveDb, Uri uri, RequestDescriptor requestDescriptor, String[] projection, String selection, String[] selectionArgs,
+                                       String sortOrder, CancellationSignal cancellationSignal) {
+
+        String sql = buildQuerySql(requestDescriptor, projection, selection, sortOrder);
+        String[] args = requestDescriptor.isSingleItem() ? new String[]{requestDescriptor.getItemId(uri)} : selectionArgs;
+
+        return cancellationSignal == null ? archiveDb.rawQuery(sql, args) : archiveDb.rawQuery(sql, args, cancellationSignal);
+    }
+
+    private static boolean isArchiveQuery(RequestDescriptor requestDescriptor) {
+
+        return requestDescriptor.isIncludeArchive() && requestDescriptor.getTableDetails().isArchived();
+    }
+
+    /**
+     * @return The sql the query is compiled to, used for archive queries and the slow query log.
+     */
+    private static String buildQuerySql(RequestDescriptor requestDescriptor, String[] projection, String selection, String sortOrder) {
+
+        TableDetails tableDetails = requestDescriptor.getTableDetails();
+        String tables = isArchiveQuery(requestDescriptor) ? CPOrmArchive.buildArchiveTables(tableDetails) : tableDetails.getTableName();
+        if (requestDescriptor.isSingleItem())
+            return SQLiteQueryBuilder.buildQueryString(true, tables, projection, tableDetails.getPrimaryKeyClause(), null, null, null, "1");
+
+        return SQLiteQueryBuilder.buildQueryString(requestDescriptor.isDistinct(), tables, projection, selection,
+                requestDescriptor.getGroupBy(), requestDescriptor.getHaving(), sortOrder, requestDescriptor.getLimit());
+    }
+
+    private static String buildUpdateSql(TableDetails tableDetails, ContentValues contentValues, String where) {
+
+        StringBuilder sql = new StringBuilder("UPDATE ");
+        sql.append(tableDetails.getTableName()).append(" SET ");
+        int index = 0;
+        for (String columnName : contentValues.keySet()) {
+
+            if (index++ > 0)
+                sql.append(", ");
+            sql.append(columnName).append(" = ?");
+        }
+        if (!TextUtils.isEmpty(where))
+            sql.append(" WHERE ").append(where);
+
+        return sql.toString();
+    }
+
+    private static String buildDeleteSql(TableDetails tableDetails, String where) {
+
+        return "DELETE FROM " + tableDetails.getTableName() + (TextUtils.isEmpty(where) ? "" : " WHERE " + where);
+    }
+
+    private static int argumentCount(String[] args) {
+
+        return args == null ? 0 : args.length;
+    }
+
     @Override
     public String getType(@NonNull Uri uri) {
 
+        if (isBlobUri(uri))
+            return BLOB_MIME_TYPE;
+
         return uriMatcherHelper.getType(uri);
     }
 
+    /**
+     * Opens the file of a {@link za.co.cporm.model.CPOrmBlob}, the uri is in the form of authority/{@value #BLOB_PATH}/blob_id.
+     * The file itself is returned instead of a pipe, so that the caller can seek in the content and no thread is needed
+     * to copy the content.
+     */
+    @Override
+    public ParcelFileDescriptor openFile(@NonNull Uri uri, @NonNull String mode) throws FileNotFoundException {
+
+        if (!isBlobUri(uri))
+            throw new FileNotFoundException("No blob found for uri " + uri);
+
+        if (debugEnabled) {
+            CPOrmLog.d("********* Open Blob **********");
+            CPOrmLog.d("Uri: " + uri);
+            CPOrmLog.d("Mode: " + mode);
+        }
+
+        return blobStore.open(uri.getLastPathSegment(), mode);
+    }
+
+    private static boolean isBlobUri(Uri uri) {
+
+        List<String> pathSegments = uri.getPathSegments();
+        return pathSegments.size() == 2 && BLOB_PATH.equals(pathSegments.get(0));
+    }
+
     @Override
     public Uri insert(@NonNull Uri uri, ContentValues contentValues) {
 
-        TableDetails tableDetails = uriMatcherHelper.getTableDetails(uri);
-        SQLiteDatabase db = database.getWritableDatabase();
+        long start = CPOrmMetricsRegistry.start();
+        long slowStart = slowQueryLog.start();
+        RequestDescriptor requestDescriptor = getRequestDescriptor(uri);
+        TableDetails tableDetails = requestDescriptor.getTableDetails();
+        ConflictStrategy conflictStrategy = requestDescriptor.getConflictStrategy();
+        SQLiteDatabase db = getDatabase(tableDetails).getWritableDatabase();
 
         if (debugEnabled) {
             CPOrmLog.d("********* Insert **********");
@@ -162,38 +425,71 @@ public class CPOrmContentProvider extends ContentProvider {
             CPOrmLog.d("Content Values: " + contentValues);
         }
 
-        long insertId = db.insertOrThrow(tableDetails.getTableName(), null, contentValues);
-
-        if (insertId == -1)
-            throw new IllegalArgumentException("Failed to insert row for into table " + tableDetails.getTableName() + " using values " + contentValues);
+        long insertId;
+        if (conflictStrategy.getAction() == ConflictStrategy.Action.ABORT) {
+            if (contentValues != null && contentValues.size() > 0)
+                insertId = statementCache.executeInsert(db, tableDetails.getTableName(), StatementCache.buildInsertSql(tableDetails, contentValues),
+                        StatementCache.buildBindArgs(contentValues, null));
+            else
+                insertId = db.insertOrThrow(tableDetails.getTableName(), null, contentValues);
 
-        Uri insertedUri;
-        TableDetails.ColumnDetails primaryKeyColumn = tableDetails.findPrimaryKeyColumn();
-        if (primaryKeyColumn.isAutoIncrement()) {
-            insertedUri = uriMatcherHelper.generateSingleItemUri(tableDetails, insertId)
-                    .buildUpon()
-                    .appendQueryParameter(PARAMETER_CHANGE_TYPE, CPOrm.ChangeType.INSERT.toString())
-                    .build();
+            if (insertId == -1)
+                throw new IllegalArgumentException("Failed to insert row for into table " + tableDetails.getTableName() + " using values " + contentValues);
         } else {
+            insertId = insertWithConflictStrategy(db, tableDetails, conflictStrategy, contentValues);
 
-            String primaryKeyValue = contentValues.getAsString(primaryKeyColumn.getColumnName());
-            insertedUri = uriMatcherHelper.generateSingleItemUri(tableDetails, primaryKeyValue)
-                    .buildUpon()
-                    .appendQueryParameter(PARAMETER_CHANGE_TYPE, CPOrm.ChangeType.INSERT.toString())
-                    .build();
+            //The row was ignored, so nothing changed
+            if (insertId == -1) {
+                CPOrmMetricsRegistry.record(CPOrmMetrics.Layer.PROVIDER, CPOrmMetrics.Operation.INSERT, tableDetails.getTableName(), 0, start);
+                recordSlowInsert(db, tableDetails, contentValues, 0, slowStart);
+                return null;
+            }
         }
 
+        Uri insertedUri = createInsertedUri(tableDetails, insertId, contentValues);
+        recordChange(tableDetails, CPOrm.ChangeType.INSERT, new String[]{insertedUri.getLastPathSegment()}, null);
+        invalidateConflictingRows(tableDetails, conflictStrategy);
+
         if(!isBatchOperation()) notifyChanges(insertedUri, tableDetails);
-        else changedUri.get().add(insertedUri);
+        else getBatchChanges(tableDetails).changedUris.add(insertedUri);
 
+        CPOrmMetricsRegistry.record(CPOrmMetrics.Layer.PROVIDER, CPOrmMetrics.Operation.INSERT, tableDetails.getTableName(), 1, start);
+        recordSlowInsert(db, tableDetails, contentValues, 1, slowStart);
         return insertedUri;
     }
 
+    private void recordSlowInsert(SQLiteDatabase db, TableDetails tableDetails, ContentValues contentValues, int rowCount, long slowStart) {
+
+        if (slowStart != 0) {
+            slowQueryLog.record(db, CPOrmMetrics.Operation.INSERT, tableDetails.getTableName(), StatementCache.buildInsertSql(tableDetails, contentValues),
+                    contentValues.size(), rowCount, slowStart);
+        }
+    }
+
+    private long insertWithConflictStrategy(SQLiteDatabase db, TableDetails tableDetails, ConflictStrategy conflictStrategy, ContentValues contentValues) {
+
+        BulkInsertHelper insertHelper = new BulkInsertHelper(db, tableDetails, 1, conflictStrategy);
+
+        try {
+            db.beginTransactionNonExclusive();
+            long insertId = insertHelper.insertRow(contentValues);
+
+            db.setTransactionSuccessful();
+            return insertId;
+        } finally {
+            db.endTransaction();
+            insertHelper.close();
+        }
+    }
+
     @Override
     public int delete(@NonNull Uri uri, String where, String[] args) {
 
-        TableDetails tableDetails = uriMatcherHelper.getTableDetails(uri);
-        SQLiteDatabase db = database.getWritableDatabase();
+        long start = CPOrmMetricsRegistry.start();
+        long slowStart = slowQueryLog.start();
+        RequestDescriptor requestDescriptor = getRequestDescriptor(uri);
+        TableDetails tableDetails = requestDescriptor.getTableDetails();
+        SQLiteDatabase db = getDatabase(tableDetails).getWritableDatabase();
 
         if (debugEnabled) {
             CPOrmLog.d("********* Delete **********");
@@ -204,19 +500,28 @@ public class CPOrmContentProvider extends ContentProvider {
 
         int deleteCount;
 
-        if (uriMatcherHelper.isSingleItemRequested(uri)) {
+        if (requestDescriptor.isSingleItem()) {
 
-            String itemId = uri.getLastPathSegment();
-            TableDetails.ColumnDetails primaryKeyColumn = tableDetails.findPrimaryKeyColumn();
-            deleteCount = db.delete(tableDetails.getTableName(), primaryKeyColumn.getColumnName() + " = ?", new String[]{itemId});
+            String itemId = requestDescriptor.getItemId(uri);
+            deleteCount = statementCache.executeUpdateDelete(db, tableDetails.getTableName(), StatementCache.buildDeleteSql(tableDetails), new Object[]{itemId});
         } else deleteCount = db.delete(tableDetails.getTableName(), where, args);
 
+        CPOrmMetricsRegistry.record(CPOrmMetrics.Layer.PROVIDER, CPOrmMetrics.Operation.DELETE, tableDetails.getTableName(), deleteCount, start);
+        if (slowStart != 0) {
+            boolean singleItem = requestDescriptor.isSingleItem();
+            slowQueryLog.record(db, CPOrmMetrics.Operation.DELETE, tableDetails.getTableName(),
+                    buildDeleteSql(tableDetails, singleItem ? tableDetails.getPrimaryKeyClause() : where),
+                    singleItem ? 1 : argumentCount(args), deleteCount, slowStart);
+        }
+
         if (deleteCount == 0)
             return deleteCount;
 
-        Uri deleteUri = uri.buildUpon().appendQueryParameter(PARAMETER_CHANGE_TYPE, CPOrm.ChangeType.DELETE.toString()).build();
-        if(!isBatchOperation()) notifyChanges(deleteUri, tableDetails);
-        else changedUri.get().add(deleteUri);
+        recordChange(tableDetails, CPOrm.ChangeType.DELETE, requestDescriptor.isSingleItem() ? new String[]{requestDescriptor.getItemId(uri)} : null, null);
+
+        Uri deleteUri = requestDescriptor.getNotificationUri(uri, CPOrm.ChangeType.DELETE);
+        if(!isBatchOperation()) notifyChanges(deleteUri, tableDetails, requestDescriptor);
+        else getBatchChanges(tableDetails).changedUris.add(deleteUri);
 
         return deleteCount;
     }
@@ -224,8 +529,11 @@ public class CPOrmContentProvider extends ContentProvider {
     @Override
     public int update(@NonNull Uri uri, ContentValues contentValues, String where, String[] args) {
 
-        TableDetails tableDetails = uriMatcherHelper.getTableDetails(uri);
-        SQLiteDatabase db = database.getWritableDatabase();
+        long start = CPOrmMetricsRegistry.start();
+        long slowStart = slowQueryLog.start();
+        RequestDescriptor requestDescriptor = getRequestDescriptor(uri);
+        TableDetails tableDetails = requestDescriptor.getTableDetails();
+        SQLiteDatabase db = getDatabase(tableDetails).getWritableDatabase();
 
         if (debugEnabled) {
             CPOrmLog.d("********* Update **********");
@@ -237,17 +545,35 @@ public class CPOrmContentProvider extends ContentProvider {
 
         int updateCount;
 
-        if (uriMatcherHelper.isSingleItemRequested(uri)) {
+        if (requestDescriptor.isSingleItem() && contentValues.size() > 0) {
 
-            String itemId = uri.getLastPathSegment();
+            String itemId = requestDescriptor.getItemId(uri);
+            updateCount = statementCache.executeUpdateDelete(db, tableDetails.getTableName(), StatementCache.buildUpdateSql(tableDetails, contentValues),
+                    StatementCache.buildBindArgs(contentValues, itemId));
+        } else if (requestDescriptor.isSingleItem()) {
+
+            String itemId = requestDescriptor.getItemId(uri);
             TableDetails.ColumnDetails primaryKeyColumn = tableDetails.findPrimaryKeyColumn();
             updateCount = db.update(tableDetails.getTableName(), contentValues, primaryKeyColumn.getColumnName() + " = ?", new String[]{itemId});
         } else updateCount = db.update(tableDetails.getTableName(), contentValues, where, args);
 
+        CPOrmMetricsRegistry.record(CPOrmMetrics.Layer.PROVIDER, CPOrmMetrics.Operation.UPDATE, tableDetails.getTableName(), updateCount, start);
+        if (slowStart != 0) {
+            boolean singleItem = requestDescriptor.isSingleItem();
+            slowQueryLog.record(db, CPOrmMetrics.Operation.UPDATE, tableDetails.getTableName(),
+                    buildUpdateSql(tableDetails, contentValues, singleItem ? tableDetails.getPrimaryKeyClause() : where),
+                    contentValues.size() + (singleItem ? 1 : argumentCount(args)), updateCount, slowStart);
+        }
+
+        if (updateCount > 0) {
+            recordChange(tableDetails, CPOrm.ChangeType.UPDATE, requestDescriptor.isSingleItem() ? new String[]{requestDescriptor.getItemId(uri)} : null,
+                    contentValues.keySet().toArray(new String[contentValues.size()]));
+        }
+
         if (updateCount > 0 && shouldChangesBeNotified(tableDetails, contentValues)) {
-            Uri updateUri = uri.buildUpon().appendQueryParameter(PARAMETER_CHANGE_TYPE, CPOrm.ChangeType.UPDATE.toString()).build();
-            if(!isBatchOperation()) notifyChanges(updateUri, tableDetails);
-            else changedUri.get().add(updateUri);
+            Uri updateUri = requestDescriptor.getNotificationUri(uri, CPOrm.ChangeType.UPDATE);
+            if(!isBatchOperation()) notifyChanges(updateUri, tableDetails, requestDescriptor);
+            else getBatchChanges(tableDetails).changedUris.add(updateUri);
         }
 
         return updateCount;
@@ -260,38 +586,63 @@ public class CPOrmContentProvider extends ContentProvider {
         if (length == 0)
             return 0;
 
-        TableDetails tableDetails = uriMatcherHelper.getTableDetails(uri);
-        SQLiteDatabase db = database.getWritableDatabase();
+        long start = CPOrmMetricsRegistry.start();
+        long slowStart = slowQueryLog.start();
+        RequestDescriptor requestDescriptor = getRequestDescriptor(uri);
+        TableDetails tableDetails = requestDescriptor.getTableDetails();
+        SQLiteDatabase db = getDatabase(tableDetails).getWritableDatabase();
 
         if (debugEnabled) {
             CPOrmLog.d("********* Bulk Insert **********");
             CPOrmLog.d("Uri: " + uri);
         }
 
-        int count = 0;
+        int count;
+        boolean success = false;
+        BulkInsertHelper insertHelper = new BulkInsertHelper(db, tableDetails, bulkInsertRowsPerStatement, requestDescriptor.getConflictStrategy());
 
         try {
             db.beginTransactionNonExclusive();
-            String tableName = tableDetails.getTableName();
-            for (int i = 0; i < length; i++) {
-
-                db.insertOrThrow(tableName, null, values[i]);
-                count++;
-
-                if (count % 100 == 0)
-                    db.yieldIfContendedSafely();
-            }
+            count = insertHelper.insert(values);
 
             db.setTransactionSuccessful();
+            success = true;
 
-            notifyChanges(uri.buildUpon().appendQueryParameter(PARAMETER_CHANGE_TYPE, CPOrm.ChangeType.INSERT.toString()).build(), tableDetails);
+            notifyChanges(requestDescriptor.getNotificationUri(uri, CPOrm.ChangeType.INSERT), tableDetails, requestDescriptor);
         } finally {
             db.endTransaction();
+            insertHelper.close();
+
+            //The insert yields its transaction, so rows inserted before a failure can be committed, and rows replaced
+            //or updated by them are not known
+            if (!success)
+                rowCache.invalidate(tableDetails.getTableName(), null);
         }
 
+        //The change is recorded once it is committed, so that the cached rows are not removed before the change is visible
+        recordChange(tableDetails, CPOrm.ChangeType.INSERT, findPrimaryKeys(tableDetails, values, null), null);
+        invalidateConflictingRows(tableDetails, requestDescriptor.getConflictStrategy());
+
+        CPOrmMetricsRegistry.record(CPOrmMetrics.Layer.PROVIDER, CPOrmMetrics.Operation.BULK_INSERT, tableDetails.getTableName(), count, start);
+        if (slowStart != 0) {
+            slowQueryLog.record(db, CPOrmMetrics.Operation.BULK_INSERT, tableDetails.getTableName(), StatementCache.buildInsertSql(tableDetails, values[0]),
+                    values[0].size(), count, slowStart);
+        }
         return count;
     }
 
+    /**
+     * Applies the operations in a single transaction.  The transaction is yielded before every operation that allows it
+     * with {@link ContentProviderOperation.Builder#withYieldAllowed(boolean)}, and after every {@link #batchYieldInterval}
+     * operations if an interval is configured, so that other writers and WAL checkpoints are not blocked for the duration
+     * of a huge batch.  The operations are always applied in order, and back references can refer to any earlier
+     * operation, including operations before a yield point.
+     * Yielding commits the transaction if another thread is waiting for the database, so a batch that yields is no longer
+     * atomic: if an operation fails, only the operations since the last yield are rolled back.  The changes committed
+     * at a yield point are published immediately, only for the database that yielded.
+     * If the operations target tables of more than one database group, a transaction is started on every database and the
+     * transactions are committed one after the other, so the batch is only atomic per database.
+     */
     @NonNull
     @Override
     public ContentProviderResult[] applyBatch(@NonNull ArrayList<ContentProviderOperation> operations) throws OperationApplicationException {
@@ -302,66 +653,711 @@ public class CPOrmContentProvider extends ContentProvider {
         }
 
         isBatchOperation.set(true);
-        changedUri.set(new LinkedHashSet<Uri>());
+        batchChanges.set(new LinkedHashMap<CPOrmDatabase, BatchChanges>());
 
+        long start = CPOrmMetricsRegistry.start();
         boolean success = false;
-        ContentProviderResult[] contentProviderResults = null;
-        SQLiteDatabase db = database.getWritableDatabase();
+        int size = operations.size();
+        ContentProviderResult[] contentProviderResults = new ContentProviderResult[size];
+        List<CPOrmDatabase> batchDatabases = findBatchDatabases(operations);
+        List<SQLiteDatabase> databases = new ArrayList<>(batchDatabases.size());
+        for (CPOrmDatabase cpOrmDatabase : batchDatabases) {
+            databases.add(cpOrmDatabase.getWritableDatabase());
+        }
+        int transactionCount = 0;
+        try {
+            for (SQLiteDatabase db : databases) {
+                db.beginTransactionNonExclusive();
+                transactionCount++;
+            }
+
+            int operationsSinceYield = 0;
+            for (int i = 0; i < size; i++) {
+
+                ContentProviderOperation operation = operations.get(i);
+                boolean yieldPoint = operation.isYieldAllowed() || (batchYieldInterval > 0 && operationsSinceYield >= batchYieldInterval);
+                if (i > 0 && yieldPoint) {
+
+                    operationsSinceYield = 0;
+                    boolean yielded = false;
+                    for (int j = 0; j < databases.size(); j++) {
+
+                        //Only the transaction of the database that yielded was committed
+                        if (databases.get(j).yieldIfContendedSafely()) {
+                            publishBatchChanges(batchDatabases.get(j));
+                            yielded = true;
+                        }
+                    }
+                    if (yielded)
+                        changeNotifier.dispatch();
+                }
+
+                contentProviderResults[i] = operation.apply(this, contentProviderResults, i);
+                operationsSinceYield++;
+            }
+
+            for (SQLiteDatabase db : databases) {
+                db.setTransactionSuccessful();
+            }
+            success = true;
+            return contentProviderResults;
+        } finally {
+            for (int i = transactionCount - 1; i >= 0; i--) {
+                databases.get(i).endTransaction();
+            }
+
+            if (success) {
+                for (CPOrmDatabase cpOrmDatabase : batchDatabases) {
+                    publishBatchChanges(cpOrmDatabase);
+                }
+            }
+
+            isBatchOperation.set(false);
+            batchChanges.remove();
+            changeNotifier.dispatch();
+            CPOrmMetricsRegistry.record(CPOrmMetrics.Layer.PROVIDER, CPOrmMetrics.Operation.BATCH, null, size, start);
+        }
+    }
+
+    /**
+     * @return The databases of all of the tables targeted by the operations, in the order of {@link #getDatabases()}.
+     */
+    private List<CPOrmDatabase> findBatchDatabases(List<ContentProviderOperation> operations) {
+
+        Set<CPOrmDatabase> batchDatabases = new HashSet<>();
+        for (ContentProviderOperation operation : operations) {
+            batchDatabases.add(getDatabase(uriMatcherHelper.getTableDetails(operation.getUri())));
+        }
+
+        List<CPOrmDatabase> databases = new ArrayList<>(batchDatabases.size());
+        for (CPOrmDatabase cpOrmDatabase : getDatabases()) {
+            if (batchDatabases.contains(cpOrmDatabase))
+                databases.add(cpOrmDatabase);
+        }
+
+        return databases;
+    }
+
+    /**
+     * @return The pending changes of the current batch to the database of the table.
+     */
+    private BatchChanges getBatchChanges(TableDetails tableDetails) {
+
+        CPOrmDatabase cpOrmDatabase = getDatabase(tableDetails);
+        Map<CPOrmDatabase, BatchChanges> changes = batchChanges.get();
+        BatchChanges databaseChanges = changes.get(cpOrmDatabase);
+        if (databaseChanges == null) {
+            databaseChanges = new BatchChanges();
+            changes.put(cpOrmDatabase, databaseChanges);
+        }
+
+        return databaseChanges;
+    }
+
+    /**
+     * Records the committed change sets of the current batch to the database and queues its changed uris, the
+     * notifications are sent on the next dispatch.  The changes to other databases stay pending until their transactions
+     * are committed.
+     */
+    private void publishBatchChanges(CPOrmDatabase cpOrmDatabase) {
+
+        BatchChanges databaseChanges = batchChanges.get().get(cpOrmDatabase);
+        if (databaseChanges == null)
+            return;
+
+        for (String tableName : databaseChanges.conflictingTables) {
+            rowCache.invalidate(tableName, null);
+        }
+        databaseChanges.conflictingTables.clear();
+
+        List<ChangeSet> changeSets = databaseChanges.changeSets;
+        invalidateCachedRows(changeSets);
+        changeLog.recordAll(changeSets);
+        changeSets.clear();
+
+        Set<Uri> uris = databaseChanges.changedUris;
+        for (Uri uri : uris) {
+
+            if (uri != null) {
+                TableDetails tableDetails = uriMatcherHelper.getTableDetails(uri);
+                notifyChanges(uri, tableDetails);
+            }
+        }
+        uris.clear();
+    }
+
+    /**
+     * Handles the keyed bulk operations.  The argument is the table uri, including the notification parameters, and
+     * the extras contain the primary keys and values of the rows.  The result contains the amount of affected rows.
+     *
+     * @see #METHOD_UPDATE_ALL
+     * @see #METHOD_DELETE_ALL
+     * @see #METHOD_BATCH
+     * @see #METHOD_GET_CHANGES
+     * @see #METHOD_APPLY_TUNING_PROFILE
+     * @see #METHOD_GET_SLOW_QUERY_REPORT
+     * @see #METHOD_ARCHIVE
+     * @see #METHOD_DELETE_UNUSED_BLOBS
+     */
+    @Override
+    public Bundle call(@NonNull String method, String arg, Bundle extras) {
+
+        if (METHOD_UPDATE_ALL.equals(method))
+            return updateAll(Uri.parse(arg), extras);
+        else if (METHOD_DELETE_ALL.equals(method))
+            return deleteAll(Uri.parse(arg), extras);
+        else if (METHOD_BATCH.equals(method))
+            return executeBatch(extras);
+        else if (METHOD_GET_CHANGES.equals(method))
+            return getChanges(arg);
+        else if (METHOD_APPLY_TUNING_PROFILE.equals(method))
+            return applyTuningProfile(extras);
+        else if (METHOD_GET_SLOW_QUERY_REPORT.equals(method))
+            return getSlowQueryReport(arg);
+        else if (METHOD_ARCHIVE.equals(method))
+            return archive();
+        else if (METHOD_DELETE_UNUSED_BLOBS.equals(method))
+            return deleteUnusedBlobs(TextUtils.isEmpty(arg) ? BlobStore.DEFAULT_MIN_UNUSED_AGE_MILLIS : Long.parseLong(arg));
+
+        return super.call(method, arg, extras);
+    }
+
+    /**
+     * Updates all of the rows by primary key in a single transaction, and notifies the table once.
+     */
+    protected Bundle updateAll(Uri uri, Bundle extras) {
+
+        long start = CPOrmMetricsRegistry.start();
+        long slowStart = slowQueryLog.start();
+        RequestDescriptor requestDescriptor = getRequestDescriptor(uri);
+        TableDetails tableDetails = requestDescriptor.getTableDetails();
+        String[] primaryKeys = extras.getStringArray(EXTRA_PRIMARY_KEYS);
+        Parcelable[] parcelables = extras.getParcelableArray(EXTRA_VALUES);
+        SQLiteDatabase db = getDatabase(tableDetails).getWritableDatabase();
+
+        //Parcelable arrays are not always unparceled as their original type
+        ContentValues[] values = new ContentValues[parcelables.length];
+        for (int i = 0; i < parcelables.length; i++) {
+            values[i] = (ContentValues) parcelables[i];
+        }
+
+        Bundle result = new Bundle();
+        if (values.length == 0) {
+            result.putInt(EXTRA_COUNT, 0);
+            return result;
+        }
+
+        if (debugEnabled) {
+            CPOrmLog.d("********* Update All **********");
+            CPOrmLog.d("Uri: " + uri);
+            CPOrmLog.d("Rows: " + values.length);
+        }
+
+        int updateCount;
+        boolean success = false;
+        BulkUpdateHelper updateHelper = new BulkUpdateHelper(db, tableDetails);
+
         try {
             db.beginTransactionNonExclusive();
-            contentProviderResults = super.applyBatch(operations);
+            updateCount = updateHelper.update(values, primaryKeys);
+
             db.setTransactionSuccessful();
             success = true;
-            return contentProviderResults;
         } finally {
             db.endTransaction();
+            updateHelper.close();
+
+            //The update yields its transaction, so rows updated before a failure can be committed
+            if (!success)
+                rowCache.invalidate(tableDetails.getTableName(), primaryKeys);
+        }
+
+        //Rows can update different columns, so the changes are the union of the columns of all of the rows
+        Set<String> changedColumns = new LinkedHashSet<>();
+        boolean notify = false;
+        int argumentCount = 0;
+        for (ContentValues rowValues : values) {
+
+            changedColumns.addAll(rowValues.keySet());
+            notify = notify || shouldChangesBeNotified(tableDetails, rowValues);
+            argumentCount += rowValues.size() + 1;
+        }
+
+        CPOrmMetricsRegistry.record(CPOrmMetrics.Layer.PROVIDER, CPOrmMetrics.Operation.UPDATE, tableDetails.getTableName(), updateCount, start);
+        if (slowStart != 0) {
+            slowQueryLog.record(db, CPOrmMetrics.Operation.UPDATE, tableDetails.getTableName(),
+                    buildUpdateSql(tableDetails, values[0], tableDetails.getPrimaryKeyClause()),
+                    argumentCount, updateCount, slowStart);
+        }
+        if (updateCount > 0)
+            recordChange(tableDetails, CPOrm.ChangeType.UPDATE, primaryKeys, changedColumns.toArray(new String[changedColumns.size()]));
+
+        if (updateCount > 0 && notify)
+            notifyChanges(requestDescriptor.getNotificationUri(uri, CPOrm.ChangeType.UPDATE), tableDetails, requestDescriptor);
+
+        result.putInt(EXTRA_COUNT, updateCount);
+        return result;
+    }
+
+    /**
+     * Deletes all of the rows by primary key in a single transaction, and notifies the table once.
+     */
+    protected Bundle deleteAll(Uri uri, Bundle extras) {
+
+        long start = CPOrmMetricsRegistry.start();
+        long slowStart = slowQueryLog.start();
+        RequestDescriptor requestDescriptor = getRequestDescriptor(uri);
+        TableDetails tableDetails = requestDescriptor.getTableDetails();
+        String[] primaryKeys = extras.getStringArray(EXTRA_PRIMARY_KEYS);
+        SQLiteDatabase db = getDatabase(tableDetails).getWritableDatabase();
+
+        if (debugEnabled) {
+            CPOrmLog.d("********* Delete All **********");
+            CPOrmLog.d("Uri: " + uri);
+            CPOrmLog.d("Rows: " + primaryKeys.length);
+        }
+
+        int deleteCount;
+        try {
+            db.beginTransactionNonExclusive();
+            deleteCount = new BulkDeleteHelper(db, tableDetails).delete(primaryKeys);
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        CPOrmMetricsRegistry.record(CPOrmMetrics.Layer.PROVIDER, CPOrmMetrics.Operation.DELETE, tableDetails.getTableName(), deleteCount, start);
+        if (slowStart != 0) {
+            slowQueryLog.record(db, CPOrmMetrics.Operation.DELETE, tableDetails.getTableName(),
+                    buildDeleteSql(tableDetails, tableDetails.findPrimaryKeyColumn().getColumnName() + " IN (?)"),
+                    primaryKeys.length, deleteCount, slowStart);
+        }
+
+        if (deleteCount > 0) {
+            recordChange(tableDetails, CPOrm.ChangeType.DELETE, primaryKeys, null);
+            notifyChanges(requestDescriptor.getNotificationUri(uri, CPOrm.ChangeType.DELETE), tableDetails, requestDescriptor);
+        }
+
+        Bundle result = new Bundle();
+        result.putInt(EXTRA_COUNT, deleteCount);
+        return result;
+    }
+
+    /**
+     * Executes a batch of sections in a single transaction.  Every section targets a single table uri and contains either
+     * rows to insert, written using {@link ColumnarValues}, or the primary keys of rows to delete.  Inserts use the
+     * conflict strategy of the section uri, so upserts are inserts with an update strategy.
+     * The result contains the row id of every inserted row in the order it was sent, or -1 for ignored rows,
+     * and the total amount of affected rows.  Every changed table is notified once after the transaction completes.
+     */
+    protected Bundle executeBatch(Bundle extras) {
+
+        long start = CPOrmMetricsRegistry.start();
+        int sectionCount = extras.getInt(EXTRA_SECTION_COUNT);
+        SQLiteDatabase db = findBatchDatabase(extras, sectionCount).getWritableDatabase();
+        Map<Uri, RequestDescriptor> changedUris = new LinkedHashMap<>();
+        List<long[]> sectionIds = new ArrayList<>(sectionCount);
+        List<ChangeSet> changeSets = new ArrayList<>(sectionCount);
+        int idCount = 0;
+        int count = 0;
+
+        if (debugEnabled) {
+            CPOrmLog.d("********* Batch **********");
+            CPOrmLog.d("Sections: " + sectionCount);
+        }
+
+        try {
+            db.beginTransactionNonExclusive();
 
-            if(success && changedUri.get() != null) {
-                for (Uri uri : changedUri.get()) {
+            for (int i = 0; i < sectionCount; i++) {
+
+                Bundle section = extras.getBundle(EXTRA_SECTION + i);
+                Uri uri = Uri.parse(section.getString(EXTRA_URI));
+                RequestDescriptor requestDescriptor = getRequestDescriptor(uri);
+                TableDetails tableDetails = requestDescriptor.getTableDetails();
+                String operation = section.getString(EXTRA_OPERATION);
+
+                if (BATCH_OPERATION_INSERT.equals(operation)) {
+
+                    ContentValues[] rows = ColumnarValues.read(section);
+                    long[] ids = new long[rows.length];
+                    int insertCount = 0;
+                    BulkInsertHelper insertHelper = new BulkInsertHelper(db, tableDetails, 1, requestDescriptor.getConflictStrategy());
+                    try {
+                        for (int r = 0; r < rows.length; r++) {
+                            ids[r] = insertHelper.insertRow(rows[r]);
+                            if (ids[r] != -1)
+                                insertCount++;
+                        }
+                    } finally {
+                        insertHelper.close();
+                    }
 
-                    if (uri != null) {
-                        TableDetails tableDetails = uriMatcherHelper.getTableDetails(uri);
-                        notifyChanges(uri, tableDetails);
+                    sectionIds.add(ids);
+                    idCount += ids.length;
+                    count += insertCount;
+                    if (insertCount > 0) {
+                        changeSets.add(new ChangeSet(0, tableDetails.getTableName(), CPOrm.ChangeType.INSERT, findPrimaryKeys(tableDetails, rows, ids), null));
+                        changedUris.put(requestDescriptor.getNotificationUri(uri, CPOrm.ChangeType.INSERT), requestDescriptor);
+                    }
+                } else if (BATCH_OPERATION_DELETE.equals(operation)) {
+
+                    String[] primaryKeys = section.getStringArray(EXTRA_PRIMARY_KEYS);
+                    int deleteCount = new BulkDeleteHelper(db, tableDetails).delete(primaryKeys);
+                    count += deleteCount;
+                    if (deleteCount > 0) {
+                        changeSets.add(new ChangeSet(0, tableDetails.getTableName(), CPOrm.ChangeType.DELETE, primaryKeys, null));
+                        changedUris.put(requestDescriptor.getNotificationUri(uri, CPOrm.ChangeType.DELETE), requestDescriptor);
                     }
+                } else throw new IllegalArgumentException("Unknown batch operation " + operation);
+            }
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        CPOrmMetricsRegistry.record(CPOrmMetrics.Layer.PROVIDER, CPOrmMetrics.Operation.BATCH, null, count, start);
+        invalidateCachedRows(changeSets);
+        for (int i = 0; i < sectionCount; i++) {
+            RequestDescriptor requestDescriptor = getRequestDescriptor(Uri.parse(extras.getBundle(EXTRA_SECTION + i).getString(EXTRA_URI)));
+            invalidateConflictingRows(requestDescriptor.getTableDetails(), requestDescriptor.getConflictStrategy());
+        }
+        changeLog.recordAll(changeSets);
+        for (Map.Entry<Uri, RequestDescriptor> changedUri : changedUris.entrySet()) {
+            RequestDescriptor requestDescriptor = changedUri.getValue();
+            notifyChanges(changedUri.getKey(), requestDescriptor.getTableDetails(), requestDescriptor);
+        }
+
+        long[] ids = new long[idCount];
+        int offset = 0;
+        for (long[] section : sectionIds) {
+            System.arraycopy(section, 0, ids, offset, section.length);
+            offset += section.length;
+        }
+
+        Bundle result = new Bundle();
+        result.putLongArray(EXTRA_IDS, ids);
+        result.putInt(EXTRA_COUNT, count);
+        return result;
+    }
+
+    /**
+     * @return The database of the tables of the sections, which must all be in the same database group.
+     */
+    private CPOrmDatabase findBatchDatabase(Bundle extras, int sectionCount) {
+
+        CPOrmDatabase batchDatabase = database;
+        for (int i = 0; i < sectionCount; i++) {
+
+            Bundle section = extras.getBundle(EXTRA_SECTION + i);
+            CPOrmDatabase sectionDatabase = getDatabase(getRequestDescriptor(Uri.parse(section.getString(EXTRA_URI))).getTableDetails());
+            if (i > 0 && sectionDatabase != batchDatabase)
+                throw new IllegalArgumentException("A batch cannot contain tables of different database groups");
+
+            batchDatabase = sectionDatabase;
+        }
+
+        return batchDatabase;
+    }
+
+    /**
+     * Finds the change sets committed after the sequence number.  If the sequence number is empty, only the current
+     * sequence number is returned, this is used by observers to find their starting point.
+     */
+    protected Bundle getChanges(String afterSequence) {
+
+        Bundle result = new Bundle();
+        result.putLong(EXTRA_LOG_ID, changeLog.getLogId());
+
+        if (TextUtils.isEmpty(afterSequence)) {
+            result.putLong(EXTRA_SEQUENCE, changeLog.getSequence());
+            return result;
+        }
+
+        List<ChangeSet> changes = changeLog.getChangesSince(Long.parseLong(afterSequence));
+        if (changes == null) {
+            result.putBoolean(EXTRA_CHANGES_MISSED, true);
+            result.putLong(EXTRA_SEQUENCE, changeLog.getSequence());
+            return result;
+        }
+
+        ArrayList<Bundle> changeSets = new ArrayList<>(changes.size());
+        for (ChangeSet changeSet : changes) {
+            changeSets.add(changeSet.toBundle());
+        }
+        result.putParcelableArrayList(EXTRA_CHANGE_SETS, changeSets);
+        result.putLong(EXTRA_SEQUENCE, changes.isEmpty() ? Long.parseLong(afterSequence) : changes.get(changes.size() - 1).getSequence());
+        return result;
+    }
+
+    /**
+     * Applies the tuning profile in the extras to the database, or restores the pragma values the database was opened
+     * with if there are no extras.
+     */
+    protected Bundle applyTuningProfile(Bundle extras) {
+
+        CPOrmTuningProfile tuningProfile = extras == null ? null : CPOrmTuningProfile.fromBundle(extras);
+
+        if (debugEnabled) {
+            CPOrmLog.d("********* Apply Tuning Profile **********");
+        }
+
+        for (CPOrmDatabase cpOrmDatabase : getDatabases()) {
+            if (tuningProfile == null)
+                cpOrmDatabase.restoreTuningProfile();
+            else
+                cpOrmDatabase.applyTuningProfile(tuningProfile);
+        }
+        return null;
+    }
+
+    /**
+     * Moves the rows of every archived table that are older than the maximum age of the table into the archive of its
+     * database, and notifies every table that rows were moved from.  Archived rows are not recorded in the change log,
+     * since they still exist.  The result contains the total amount of archived rows.
+     */
+    protected Bundle archive() {
+
+        if (debugEnabled) {
+            CPOrmLog.d("********* Archive **********");
+        }
+
+        long now = System.currentTimeMillis();
+        int archivedCount = 0;
+        for (CPOrmDatabase cpOrmDatabase : getDatabases()) {
+
+            CPOrmArchive archive = cpOrmDatabase.getArchive();
+            for (TableDetails tableDetails : archive.getArchivedTables()) {
+
+                int tableCount = archive.archive(tableDetails, now);
+                if (tableCount > 0) {
+                    rowCache.invalidate(tableDetails.getTableName(), null);
+                    Uri deleteUri = getTableUri(tableDetails).buildUpon().appendQueryParameter(PARAMETER_CHANGE_TYPE, CPOrm.ChangeType.DELETE.toString()).build();
+                    notifyChanges(deleteUri, tableDetails);
                 }
+                archivedCount += tableCount;
             }
-            isBatchOperation.set(false);
-            changedUri.remove();
         }
+
+        Bundle result = new Bundle();
+        result.putInt(EXTRA_COUNT, archivedCount);
+        return result;
+    }
+
+    /**
+     * Deletes the blob files that are not referenced by any row of a blob column, including the archived rows.
+     *
+     * @param minAgeMillis The minimum time since a file was last modified before it is deleted.
+     */
+    protected Bundle deleteUnusedBlobs(long minAgeMillis) {
+
+        if (debugEnabled) {
+            CPOrmLog.d("********* Delete Unused Blobs **********");
+        }
+
+        Set<String> usedBlobIds = new HashSet<>();
+        for (Class<?> dataModelObject : cPOrmConfiguration.getDataModelObjects()) {
+
+            TableDetails tableDetails = database.getTableDetailsCache().findTableDetails(getContext(), dataModelObject);
+            CPOrmDatabase cpOrmDatabase = getDatabase(tableDetails);
+            for (TableDetails.ColumnDetails columnDetails : tableDetails.getColumns()) {
+
+                if (!(columnDetails.getColumnTypeMapping() instanceof BlobType))
+                    continue;
+
+                String columnName = columnDetails.getColumnName();
+                if (tableDetails.isArchived()) {
+                    addBlobIds(cpOrmDatabase.getArchive().getDatabase(), columnName, CPOrmArchive.buildArchiveTables(tableDetails), usedBlobIds);
+                } else
+                    addBlobIds(cpOrmDatabase.getReadableDatabase(), columnName, tableDetails.getTableName(), usedBlobIds);
+            }
+        }
+
+        int deleteCount = blobStore.deleteUnused(usedBlobIds, minAgeMillis);
+        Bundle result = new Bundle();
+        result.putInt(EXTRA_COUNT, deleteCount);
+        return result;
+    }
+
+    private static void addBlobIds(SQLiteDatabase db, String columnName, String tables, Set<String> blobIds) {
+
+        Cursor cursor = db.rawQuery("SELECT DISTINCT " + columnName + " FROM " + tables + " WHERE " + columnName + " IS NOT NULL", null);
+        try {
+            while (cursor.moveToNext()) {
+                blobIds.add(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Finds the database the table is stored in, tables with a {@link za.co.cporm.model.annotation.DatabaseGroup} are
+     * stored in a separate database per group so that writes to different groups do not block each other.
+     */
+    protected CPOrmDatabase getDatabase(TableDetails tableDetails) {
+
+        String databaseGroup = tableDetails.getDatabaseGroup();
+        if (databaseGroup == null)
+            return database;
+
+        CPOrmDatabase groupDatabase = groupDatabases.get(databaseGroup);
+        if (groupDatabase == null)
+            throw new IllegalArgumentException("No database found for the group " + databaseGroup + " of table " + tableDetails.getTableName());
+
+        return groupDatabase;
+    }
+
+    /**
+     * @return The default database followed by the databases of all of the groups.
+     */
+    protected List<CPOrmDatabase> getDatabases() {
+
+        List<CPOrmDatabase> databases = new ArrayList<>(groupDatabases.size() + 1);
+        databases.add(database);
+        databases.addAll(groupDatabases.values());
+        return databases;
     }
 
-    private String constructLimit(Uri uri) {
+    /**
+     * @return The statistics of the statements used for primary key point writes.
+     */
+    public StatementCache.Statistics getStatementCacheStatistics() {
 
-        String offsetParam = uri.getQueryParameter(PARAMETER_OFFSET);
-        String limitParam = uri.getQueryParameter(PARAMETER_LIMIT);
+        return statementCache.getStatistics();
+    }
 
-        Integer offset = null;
-        Integer limit = null;
+    /**
+     * @return The statistics of the cache of rows found by primary key.
+     */
+    public RowCache.Statistics getRowCacheStatistics() {
 
-        if (!TextUtils.isEmpty(offsetParam) && TextUtils.isDigitsOnly(offsetParam)) {
-            offset = Integer.valueOf(offsetParam);
+        return rowCache.getStatistics();
+    }
+
+    /**
+     * Dumps the slow query log.  The argument is the amount of fingerprints to include in the top list, the default is
+     * {@link #DEFAULT_SLOW_QUERY_REPORT_SIZE}.
+     */
+    protected Bundle getSlowQueryReport(String topCount) {
+
+        Bundle result = new Bundle();
+        result.putString(EXTRA_REPORT, slowQueryLog.dump(TextUtils.isEmpty(topCount) ? DEFAULT_SLOW_QUERY_REPORT_SIZE : Integer.parseInt(topCount)));
+        return result;
+    }
+
+    /**
+     * Records a change in the change log, and removes the changed rows from the row cache.  This must only be called once
+     * the change is committed, changes made during a batch are only recorded once the batch is committed.
+     *
+     * @param primaryKeys The primary keys of the changed rows, or null if they are not known.
+     * @param changedColumns The changed columns, or null if they are not known.
+     */
+    protected void recordChange(TableDetails tableDetails, CPOrm.ChangeType changeType, String[] primaryKeys, String[] changedColumns) {
+
+        ChangeSet changeSet = new ChangeSet(0, tableDetails.getTableName(), changeType, primaryKeys, changedColumns);
+        if (isBatchOperation()) getBatchChanges(tableDetails).changeSets.add(changeSet);
+        else {
+            rowCache.invalidate(changeSet.getTableName(), changeSet.getPrimaryKeys());
+            changeLog.record(changeSet);
         }
-        if (!TextUtils.isEmpty(limitParam) && TextUtils.isDigitsOnly(limitParam)) {
-            limit = Integer.valueOf(limitParam);
+    }
+
+    /**
+     * Removes the rows of the committed change sets from the row cache.
+     */
+    private void invalidateCachedRows(List<ChangeSet> changeSets) {
+
+        for (ChangeSet changeSet : changeSets) {
+            rowCache.invalidate(changeSet.getTableName(), changeSet.getPrimaryKeys());
         }
+    }
 
-        if (limit == null && offset == null)
-            return null;
+    /**
+     * Inserts that replace or update conflicting rows can change rows with other primary keys than the inserted rows, for
+     * instance rows that conflict on a unique column, so all of the cached rows of the table are removed.  During a batch
+     * the rows are only removed once the transaction of the table is committed.
+     */
+    private void invalidateConflictingRows(TableDetails tableDetails, ConflictStrategy conflictStrategy) {
 
-        StringBuilder limitStatement = new StringBuilder();
+        ConflictStrategy.Action action = conflictStrategy.getAction();
+        if (action != ConflictStrategy.Action.REPLACE && action != ConflictStrategy.Action.UPDATE)
+            return;
 
-        if (limit != null && offset != null) {
-            limitStatement.append(offset);
-            limitStatement.append(",");
-            limitStatement.append(limit);
-        } else if (limit != null) {
-            limitStatement.append(limit);
-        } else throw new IllegalArgumentException("A limit must also be provided when setting an offset");
+        if (isBatchOperation()) getBatchChanges(tableDetails).conflictingTables.add(tableDetails.getTableName());
+        else rowCache.invalidate(tableDetails.getTableName(), null);
+    }
+
+    /**
+     * Finds the primary keys of inserted rows, ignored rows are skipped.
+     *
+     * @param ids The row ids of the inserted rows, or null if they are not known.
+     * @return The primary keys, or null if they could not be determined.
+     */
+    private static String[] findPrimaryKeys(TableDetails tableDetails, ContentValues[] rows, long[] ids) {
+
+        TableDetails.ColumnDetails primaryKeyColumn = tableDetails.findPrimaryKeyColumn();
+        String columnName = primaryKeyColumn.getColumnName();
+        List<String> primaryKeys = new ArrayList<>(rows.length);
+
+        for (int i = 0; i < rows.length; i++) {
+
+            if (ids != null && ids[i] == -1)
+                continue;
+
+            if (primaryKeyColumn.isAutoIncrement()) {
+                if (ids == null)
+                    return null;
+                primaryKeys.add(String.valueOf(ids[i]));
+            } else {
+                if (!rows[i].containsKey(columnName))
+                    return null;
+                primaryKeys.add(rows[i].getAsString(columnName));
+            }
+        }
 
-        return limitStatement.toString();
+        return primaryKeys.toArray(new String[primaryKeys.size()]);
     }
 
-    private boolean shouldChangesBeNotified(TableDetails tableDetails, ContentValues contentValues) {
+    /**
+     * Finds the descriptor for the request uri, the uri is only parsed if its cache key is not already in the descriptor cache.
+     */
+    protected RequestDescriptor getRequestDescriptor(Uri uri) {
+
+        String cacheKey = RequestDescriptor.createCacheKey(uri);
+        RequestDescriptor requestDescriptor = requestDescriptors.get(cacheKey);
+        if (requestDescriptor == null) {
+            requestDescriptor = RequestDescriptor.parse(uri, uriMatcherHelper);
+            requestDescriptors.put(cacheKey, requestDescriptor);
+        }
+
+        return requestDescriptor;
+    }
+
+    /**
+     * Creates the uri of an inserted row, that is returned to the caller and used to notify the change.
+     */
+    protected Uri createInsertedUri(TableDetails tableDetails, long insertId, ContentValues contentValues) {
+
+        TableDetails.ColumnDetails primaryKeyColumn = tableDetails.findPrimaryKeyColumn();
+        if (primaryKeyColumn.isAutoIncrement()) {
+            return uriMatcherHelper.generateSingleItemUri(tableDetails, insertId)
+                    .buildUpon()
+                    .appendQueryParameter(PARAMETER_CHANGE_TYPE, CPOrm.ChangeType.INSERT.toString())
+                    .build();
+        } else {
+
+            String primaryKeyValue = contentValues.getAsString(primaryKeyColumn.getColumnName());
+            return uriMatcherHelper.generateSingleItemUri(tableDetails, primaryKeyValue)
+                    .buildUpon()
+                    .appendQueryParameter(PARAMETER_CHANGE_TYPE, CPOrm.ChangeType.INSERT.toString())
+                    .build();
+        }
+    }
+
+    protected boolean shouldChangesBeNotified(TableDetails tableDetails, ContentValues contentValues) {
 
         boolean notify = false;
 
@@ -375,33 +1371,78 @@ public class CPOrmContentProvider extends ContentProvider {
         return notify;
     }
 
-    private void notifyChanges(Uri uri, TableDetails tableDetails) {
+    protected void notifyChanges(Uri uri, TableDetails tableDetails) {
 
-        if(!uri.getBooleanQueryParameter(PARAMETER_NOTIFY_CHANGES, true))
+        //Uris without query parameters, like inserted item uris, always use the defaults
+        boolean hasParameters = uri.getEncodedQuery() != null;
+        boolean notify = !hasParameters || uri.getBooleanQueryParameter(PARAMETER_NOTIFY_CHANGES, true);
+        boolean sync = !hasParameters || uri.getBooleanQueryParameter(PARAMETER_SYNC, true);
+
+        notifyChanges(uri, tableDetails, notify, sync);
+    }
+
+    protected void notifyChanges(Uri uri, TableDetails tableDetails, RequestDescriptor requestDescriptor) {
+
+        notifyChanges(uri, tableDetails, requestDescriptor.isNotifyChanges(), requestDescriptor.isSync());
+    }
+
+    private void notifyChanges(Uri uri, TableDetails tableDetails, boolean notify, boolean sync) {
+
+        if(!notify)
             return;
 
-        Boolean sync = uri.getBooleanQueryParameter(PARAMETER_SYNC, true);
-        getContext().getContentResolver().notifyChange(uri, null, sync);
+        //Change listeners are registered on views, so the entire view needs to be updated if changes to its data occurs
+        changeNotifier.add(tableDetails, uri, getTableUri(tableDetails), getChangeListenerUris(tableDetails), sync);
 
-        List<Class<?>> changeListeners = tableDetails.getChangeListeners();
-        if (!changeListeners.isEmpty()) {
+        //Changes made during a batch are sent together once the batch completes
+        if (!isBatchOperation())
+            changeNotifier.dispatch();
+    }
 
-            int size = changeListeners.size();
-            for (int i = 0; i < size; i++) {
-                Class<?> changeListener = changeListeners.get(i);
-                TableDetails changeListenerDetails = database.getTableDetailsCache().findTableDetails(getContext(), changeListener);
+    private Uri getTableUri(TableDetails tableDetails) {
 
-                if (changeListenerDetails == null)
-                    continue;
+        synchronized (tableUris) {
+            Uri tableUri = tableUris.get(tableDetails);
+            if (tableUri == null) {
+                tableUri = uriMatcherHelper.generateItemUri(tableDetails);
+                tableUris.put(tableDetails, tableUri);
+            }
 
-                //Change listeners are registered on views, so the entire view needs to be updated if changes to its data occurs
-                Uri changeUri = uriMatcherHelper.generateItemUri(changeListenerDetails);
-                getContext().getContentResolver().notifyChange(changeUri, null, sync);
+            return tableUri;
+        }
+    }
+
+    private List<Uri> getChangeListenerUris(TableDetails tableDetails) {
+
+        synchronized (changeListenerUris) {
+            List<Uri> changeUris = changeListenerUris.get(tableDetails);
+            if (changeUris != null)
+                return changeUris;
+
+            changeUris = new ArrayList<>();
+            for (Class<?> changeListener : tableDetails.getChangeListeners()) {
+                TableDetails changeListenerDetails = database.getTableDetailsCache().findTableDetails(getContext(), changeListener);
+
+                if (changeListenerDetails != null)
+                    changeUris.add(uriMatcherHelper.generateItemUri(changeListenerDetails));
             }
+
+            changeListenerUris.put(tableDetails, changeUris);
+            return changeUris;
         }
     }
 
     private boolean isBatchOperation(){
         return this.isBatchOperation.get() != null && this.isBatchOperation.get();
     }
+
+    /**
+     * The changes of a batch to a single database, which are published once the transaction of the database is committed.
+     */
+    private static class BatchChanges {
+
+        private final Set<Uri> changedUris = new LinkedHashSet<>();
+        private final List<ChangeSet> changeSets = new ArrayList<>();
+        private final Set<String> conflictingTables = new LinkedHashSet<>();
+    }
 }
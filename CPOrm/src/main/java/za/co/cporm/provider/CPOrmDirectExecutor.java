@@ -0,0 +1,241 @@
+package za.co.cporm.provider;
+
+import android.annotation.TargetApi;
+import android.content.ContentProvider;
+import android.content.ContentProviderClient;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.CancellationSignal;
+import za.co.cporm.model.CPOrm;
+import za.co.cporm.model.generate.TableDetails;
+import za.co.cporm.provider.util.RowCache;
+import za.co.cporm.provider.util.StatementCache;
+import za.co.cporm.provider.util.UriMatcherHelper;
+import za.co.cporm.util.CPOrmLog;
+import za.co.cporm.util.CPOrmMetrics;
+import za.co.cporm.util.CPOrmMetricsRegistry;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Executes operations directly on the database of a {@link CPOrmContentProvider} that is running in the same process,
+ * bypassing the content resolver.  Point inserts, updates and deletes are executed as compiled statements through
+ * the provider's {@link StatementCache}, all other operations are passed directly to the provider.  Change notifications are sent
+ * by the provider exactly as they would have been if the operation was executed through the content resolver.
+ */
+public class CPOrmDirectExecutor {
+
+    private static final Map<String, CPOrmDirectExecutor> executors = new HashMap<String, CPOrmDirectExecutor>();
+
+    private final Context context;
+    private final CPOrmContentProvider contentProvider;
+
+    private CPOrmDirectExecutor(Context context, CPOrmContentProvider contentProvider) {
+
+        this.context = context.getApplicationContext();
+        this.contentProvider = contentProvider;
+    }
+
+    /**
+     * Finds the direct executor for the authority.  This will only return an executor if the content provider for the authority
+     * is a {@link CPOrmContentProvider} that is running in this process.
+     *
+     * @param context The context used to find the content provider.
+     * @param authority The authority of the content provider.
+     * @return The executor, or null if the provider is not local.
+     */
+    public static synchronized CPOrmDirectExecutor find(Context context, String authority) {
+
+        if (executors.containsKey(authority))
+            return executors.get(authority);
+
+        CPOrmDirectExecutor executor = null;
+        ContentProviderClient providerClient = context.getContentResolver().acquireContentProviderClient(authority);
+        if (providerClient != null) {
+            try {
+                ContentProvider contentProvider = providerClient.getLocalContentProvider();
+                if (contentProvider instanceof CPOrmContentProvider)
+                    executor = new CPOrmDirectExecutor(context, (CPOrmContentProvider) contentProvider);
+            } finally {
+                providerClient.release();
+            }
+        }
+
+        executors.put(authority, executor);
+        return executor;
+    }
+
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder, CancellationSignal cancellationSignal) {
+
+        if (cancellationSignal != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN)
+            return queryCancelable(uri, projection, selection, selectionArgs, sortOrder, cancellationSignal);
+
+        return contentProvider.query(uri, projection, selection, selectionArgs, sortOrder);
+    }
+
+    public Uri insert(Uri uri, ContentValues contentValues) {
+
+        return contentProvider.insert(uri, contentValues);
+    }
+
+    public int bulkInsert(Uri uri, ContentValues[] values) {
+
+        return contentProvider.bulkInsert(uri, values);
+    }
+
+    public int update(Uri uri, ContentValues contentValues, String where, String[] args) {
+
+        return contentProvider.update(uri, contentValues, where, args);
+    }
+
+    public int delete(Uri uri, String where, String[] args) {
+
+        return contentProvider.delete(uri, where, args);
+    }
+
+    public Bundle call(String method, String arg, Bundle extras) {
+
+        return contentProvider.call(method, arg, extras);
+    }
+
+    /**
+     * Inserts the row using a compiled insert statement.
+     *
+     * @return The uri of the inserted row, the same uri the content provider would have returned.
+     */
+    public Uri insert(TableDetails tableDetails, ContentValues contentValues) {
+
+        if (contentValues.size() == 0)
+            return contentProvider.insert(UriMatcherHelper.generateItemUri(context, tableDetails).build(), contentValues);
+
+        if (contentProvider.debugEnabled) {
+            CPOrmLog.d("********* Direct Insert **********");
+            CPOrmLog.d("Table: " + tableDetails.getTableName());
+            CPOrmLog.d("Content Values: " + contentValues);
+        }
+
+        long start = CPOrmMetricsRegistry.start();
+        long slowStart = contentProvider.slowQueryLog.start();
+        String sql = StatementCache.buildInsertSql(tableDetails, contentValues);
+        Object[] bindArgs = StatementCache.buildBindArgs(contentValues, null);
+
+        long insertId = contentProvider.statementCache.executeInsert(getDatabase(tableDetails), tableDetails.getTableName(), sql, bindArgs);
+        if (insertId == -1)
+            throw new IllegalArgumentException("Failed to insert row for into table " + tableDetails.getTableName() + " using values " + contentValues);
+
+        CPOrmMetricsRegistry.record(CPOrmMetrics.Layer.PROVIDER, CPOrmMetrics.Operation.INSERT, tableDetails.getTableName(), 1, start);
+        recordSlowOperation(CPOrmMetrics.Operation.INSERT, tableDetails, sql, bindArgs.length, 1, slowStart);
+        Uri insertedUri = contentProvider.createInsertedUri(tableDetails, insertId, contentValues);
+        contentProvider.recordChange(tableDetails, CPOrm.ChangeType.INSERT, new String[]{insertedUri.getLastPathSegment()}, null);
+        contentProvider.notifyChanges(insertedUri, tableDetails);
+
+        return insertedUri;
+    }
+
+    /**
+     * Updates the row with the primary key using a compiled update statement.
+     *
+     * @return The amount of rows updated.
+     */
+    public int update(TableDetails tableDetails, String primaryKey, ContentValues contentValues) {
+
+        Uri itemUri = UriMatcherHelper.generateItemUri(context, tableDetails, primaryKey).build();
+        if (contentValues.size() == 0)
+            return contentProvider.update(itemUri, contentValues, null, null);
+
+        if (contentProvider.debugEnabled) {
+            CPOrmLog.d("********* Direct Update **********");
+            CPOrmLog.d("Uri: " + itemUri);
+            CPOrmLog.d("Content Values: " + contentValues);
+        }
+
+        long start = CPOrmMetricsRegistry.start();
+        long slowStart = contentProvider.slowQueryLog.start();
+        String sql = StatementCache.buildUpdateSql(tableDetails, contentValues);
+        Object[] bindArgs = StatementCache.buildBindArgs(contentValues, primaryKey);
+
+        int updateCount = contentProvider.statementCache.executeUpdateDelete(getDatabase(tableDetails), tableDetails.getTableName(), sql, bindArgs);
+        CPOrmMetricsRegistry.record(CPOrmMetrics.Layer.PROVIDER, CPOrmMetrics.Operation.UPDATE, tableDetails.getTableName(), updateCount, start);
+        recordSlowOperation(CPOrmMetrics.Operation.UPDATE, tableDetails, sql, bindArgs.length, updateCount, slowStart);
+        if (updateCount > 0) {
+            contentProvider.recordChange(tableDetails, CPOrm.ChangeType.UPDATE, new String[]{primaryKey},
+                    contentValues.keySet().toArray(new String[contentValues.size()]));
+        }
+        if (updateCount > 0 && contentProvider.shouldChangesBeNotified(tableDetails, contentValues)) {
+            Uri updateUri = itemUri.buildUpon().appendQueryParameter(CPOrmContentProvider.PARAMETER_CHANGE_TYPE, CPOrm.ChangeType.UPDATE.toString()).build();
+            contentProvider.notifyChanges(updateUri, tableDetails);
+        }
+
+        return updateCount;
+    }
+
+    /**
+     * Deletes the row with the primary key using a compiled delete statement.
+     *
+     * @return The amount of rows deleted.
+     */
+    public int delete(TableDetails tableDetails, String primaryKey) {
+
+        Uri itemUri = UriMatcherHelper.generateItemUri(context, tableDetails, primaryKey).build();
+
+        if (contentProvider.debugEnabled) {
+            CPOrmLog.d("********* Direct Delete **********");
+            CPOrmLog.d("Uri: " + itemUri);
+        }
+
+        long start = CPOrmMetricsRegistry.start();
+        long slowStart = contentProvider.slowQueryLog.start();
+        String sql = StatementCache.buildDeleteSql(tableDetails);
+        int deleteCount = contentProvider.statementCache.executeUpdateDelete(getDatabase(tableDetails), tableDetails.getTableName(), sql, new Object[]{primaryKey});
+        CPOrmMetricsRegistry.record(CPOrmMetrics.Layer.PROVIDER, CPOrmMetrics.Operation.DELETE, tableDetails.getTableName(), deleteCount, start);
+        recordSlowOperation(CPOrmMetrics.Operation.DELETE, tableDetails, sql, 1, deleteCount, slowStart);
+
+        if (deleteCount > 0) {
+            contentProvider.recordChange(tableDetails, CPOrm.ChangeType.DELETE, new String[]{primaryKey}, null);
+            Uri deleteUri = itemUri.buildUpon().appendQueryParameter(CPOrmContentProvider.PARAMETER_CHANGE_TYPE, CPOrm.ChangeType.DELETE.toString()).build();
+            contentProvider.notifyChanges(deleteUri, tableDetails);
+        }
+
+        return deleteCount;
+    }
+
+    /**
+     * @return The statistics of the point write statements, shared with the content provider.
+     */
+    public StatementCache.Statistics getStatementCacheStatistics() {
+
+        return contentProvider.statementCache.getStatistics();
+    }
+
+    /**
+     * @return The statistics of the row cache of the content provider.
+     */
+    public RowCache.Statistics getRowCacheStatistics() {
+
+        return contentProvider.rowCache.getStatistics();
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private Cursor queryCancelable(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder, CancellationSignal cancellationSignal) {
+
+        return contentProvider.query(uri, projection, selection, selectionArgs, sortOrder, cancellationSignal);
+    }
+
+    private void recordSlowOperation(CPOrmMetrics.Operation operation, TableDetails tableDetails, String sql, int bindArgCount, int rowCount, long slowStart) {
+
+        if (slowStart != 0) {
+            contentProvider.slowQueryLog.record(getDatabase(tableDetails), operation, tableDetails.getTableName(), sql, bindArgCount, rowCount, slowStart);
+        }
+    }
+
+    private SQLiteDatabase getDatabase(TableDetails tableDetails) {
+
+        return contentProvider.getDatabase(tableDetails).getWritableDatabase();
+    }
+}
@@ -0,0 +1,99 @@
+package za.co.cporm.provider.util;
+
+import android.os.ParcelFileDescriptor;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Stores the content of {@link za.co.cporm.model.CPOrmBlob} columns as files in a single directory, named by the blob id.
+ * The files are opened as file descriptors, so that the content can be streamed and read at random positions without
+ * loading it into memory, or into a cursor window.
+ */
+public class BlobStore {
+
+    public static final String DIRECTORY_NAME = "cporm_blobs";
+    public static final long DEFAULT_MIN_UNUSED_AGE_MILLIS = 60 * 60 * 1000;
+
+    private static final Pattern BLOB_ID = Pattern.compile("[A-Za-z0-9_-]+");
+
+    private final File directory;
+
+    public BlobStore(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Only letters, digits, dashes and underscores are allowed, so that an id can not refer to a file outside of the
+     * blob directory.
+     */
+    public static boolean isValidId(String blobId) {
+        return blobId != null && BLOB_ID.matcher(blobId).matches();
+    }
+
+    /**
+     * @param mode The mode as used by {@link android.content.ContentProvider#openFile(android.net.Uri, String)}.
+     */
+    public ParcelFileDescriptor open(String blobId, String mode) throws FileNotFoundException {
+
+        return ParcelFileDescriptor.open(getFile(blobId), parseMode(mode));
+    }
+
+    public File getFile(String blobId) throws FileNotFoundException {
+
+        if (!isValidId(blobId))
+            throw new FileNotFoundException("Invalid blob id " + blobId);
+
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new FileNotFoundException("Could not create the blob directory " + directory);
+
+        return new File(directory, blobId);
+    }
+
+    /**
+     * Deletes the files of the blobs that are not used by any row.  Files that were modified recently are kept, since
+     * their content is usually written before the row referencing them is inserted.
+     *
+     * @param usedBlobIds The ids of all of the blobs referenced by rows.
+     * @param minAgeMillis The minimum time since the file was last modified before it is deleted.
+     * @return The amount of files deleted.
+     */
+    public int deleteUnused(Set<String> usedBlobIds, long minAgeMillis) {
+
+        File[] files = directory.listFiles();
+        if (files == null)
+            return 0;
+
+        long cutoff = System.currentTimeMillis() - minAgeMillis;
+        int deleteCount = 0;
+        for (File file : files) {
+
+            if (!usedBlobIds.contains(file.getName()) && file.lastModified() < cutoff && file.delete())
+                deleteCount++;
+        }
+
+        return deleteCount;
+    }
+
+    /**
+     * Converts the mode to file descriptor flags, {@link ParcelFileDescriptor#parseMode(String)} is only available from
+     * api level 19.
+     */
+    public static int parseMode(String mode) {
+
+        if ("r".equals(mode))
+            return ParcelFileDescriptor.MODE_READ_ONLY;
+        else if ("w".equals(mode) || "wt".equals(mode))
+            return ParcelFileDescriptor.MODE_WRITE_ONLY | ParcelFileDescriptor.MODE_CREATE | ParcelFileDescriptor.MODE_TRUNCATE;
+        else if ("wa".equals(mode))
+            return ParcelFileDescriptor.MODE_WRITE_ONLY | ParcelFileDescriptor.MODE_CREATE | ParcelFileDescriptor.MODE_APPEND;
+        else if ("rw".equals(mode))
+            return ParcelFileDescriptor.MODE_READ_WRITE | ParcelFileDescriptor.MODE_CREATE;
+        else if ("rwt".equals(mode))
+            return ParcelFileDescriptor.MODE_READ_WRITE | ParcelFileDescriptor.MODE_CREATE | ParcelFileDescriptor.MODE_TRUNCATE;
+
+        throw new IllegalArgumentException("Invalid blob mode " + mode);
+    }
+}
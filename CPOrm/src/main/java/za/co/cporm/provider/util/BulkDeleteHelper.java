@@ -0,0 +1,83 @@
+package za.co.cporm.provider.util;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import za.co.cporm.model.generate.TableDetails;
+
+/**
+ * Deletes rows by primary key using DELETE ... WHERE pk IN (...) statements.  The keys are deleted in chunks so that a
+ * statement never exceeds the SQLite bind argument limit, the statement for a full chunk is compiled once and reused.
+ */
+public class BulkDeleteHelper {
+
+    private final SQLiteDatabase db;
+    private final String tableName;
+    private final String primaryKeyColumn;
+
+    /**
+     * @param db The database to delete the rows from, the caller is responsible for the transaction.
+     * @param tableDetails The table to delete the rows from.
+     */
+    public BulkDeleteHelper(SQLiteDatabase db, TableDetails tableDetails) {
+
+        this.db = db;
+        this.tableName = tableDetails.getTableName();
+        this.primaryKeyColumn = tableDetails.findPrimaryKeyColumn().getColumnName();
+    }
+
+    /**
+     * Deletes all of the rows with the primary keys.
+     *
+     * @param primaryKeys The primary keys of the rows to delete.
+     * @return The amount of rows deleted.
+     */
+    public int delete(String[] primaryKeys) {
+
+        int length = primaryKeys.length;
+        int count = 0;
+        SQLiteStatement chunkStatement = null;
+
+        try {
+            for (int offset = 0; offset < length; offset += BulkInsertHelper.MAX_BIND_ARGUMENTS) {
+
+                int chunkSize = Math.min(BulkInsertHelper.MAX_BIND_ARGUMENTS, length - offset);
+                SQLiteStatement statement;
+                if (chunkSize == BulkInsertHelper.MAX_BIND_ARGUMENTS) {
+                    if (chunkStatement == null)
+                        chunkStatement = db.compileStatement(createDeleteSql(chunkSize));
+                    statement = chunkStatement;
+                } else statement = db.compileStatement(createDeleteSql(chunkSize));
+
+                try {
+                    for (int i = 0; i < chunkSize; i++) {
+                        statement.bindString(i + 1, primaryKeys[offset + i]);
+                    }
+                    count += statement.executeUpdateDelete();
+                } finally {
+                    if (statement != chunkStatement)
+                        statement.close();
+                }
+            }
+        } finally {
+            if (chunkStatement != null)
+                chunkStatement.close();
+        }
+
+        return count;
+    }
+
+    private String createDeleteSql(int keyCount) {
+
+        StringBuilder sql = new StringBuilder("DELETE FROM ");
+        sql.append(tableName).append(" WHERE ").append(primaryKeyColumn).append(" IN (");
+        for (int i = 0; i < keyCount; i++) {
+
+            if (i > 0)
+                sql.append(", ");
+            sql.append("?");
+        }
+        sql.append(")");
+
+        return sql.toString();
+    }
+}
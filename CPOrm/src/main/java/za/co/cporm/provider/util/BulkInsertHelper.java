@@ -0,0 +1,365 @@
+package za.co.cporm.provider.util;
+
+import android.content.ContentValues;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Build;
+import za.co.cporm.model.ConflictStrategy;
+import za.co.cporm.model.generate.TableDetails;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Inserts rows into a table using compiled statements.  One statement is compiled for every distinct set of columns, so rows
+ * only need to be bound and executed, instead of building and preparing the insert sql for every row.
+ * Consecutive rows with the same columns can optionally be inserted using a single multi row insert statement, the amount of
+ * rows per statement is limited so that the statement never exceeds the SQLite bind argument limit.
+ *
+ * Conflicts are resolved using the {@link ConflictStrategy}.  During bulk inserts, conflicting rows are updated natively with
+ * an upsert statement where SQLite supports it (Android 11).  On older devices, and for single rows where the row id of the updated
+ * row is required, the row with the values of the conflict columns is looked up first and updated if it exists, otherwise the
+ * row is inserted.  Only conflicts on the conflict columns are resolved, any other constraint violation fails the insert.  The
+ * caller must make sure this happens inside a transaction.
+ */
+public class BulkInsertHelper {
+
+    public static final int MAX_BIND_ARGUMENTS = 999;
+    public static final int YIELD_INTERVAL = 100;
+    private static final int NATIVE_UPSERT_SDK_VERSION = 30;
+
+    private final SQLiteDatabase db;
+    private final String tableName;
+    private final ConflictStrategy conflictStrategy;
+    private final String[] conflictColumns;
+    private final boolean nativeUpsert;
+    private final int rowsPerStatement;
+    private final Map<String, SQLiteStatement> statements;
+    private Set<String> previousKeySet;
+    private String[] previousColumns;
+
+    /**
+     * @param db The database to insert the rows into, the caller is responsible for the transaction.
+     * @param tableDetails The table to insert the rows into.
+     * @param rowsPerStatement The maximum amount of rows to insert with a single statement, multi row inserts are only supported
+     *                         from Jelly Bean, on older devices every row is inserted individually.
+     * @param conflictStrategy The strategy used to resolve conflicts.
+     */
+    public BulkInsertHelper(SQLiteDatabase db, TableDetails tableDetails, int rowsPerStatement, ConflictStrategy conflictStrategy) {
+
+        this.db = db;
+        this.tableName = tableDetails.getTableName();
+        this.conflictStrategy = conflictStrategy;
+        this.conflictColumns = conflictStrategy.getConflictColumns().length > 0 ? conflictStrategy.getConflictColumns() :
+                new String[]{tableDetails.findPrimaryKeyColumn().getColumnName()};
+        this.nativeUpsert = conflictStrategy.getAction() == ConflictStrategy.Action.UPDATE && Build.VERSION.SDK_INT >= NATIVE_UPSERT_SDK_VERSION;
+
+        boolean emulatedUpsert = conflictStrategy.getAction() == ConflictStrategy.Action.UPDATE && !nativeUpsert;
+        boolean multiRowSupported = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN && !emulatedUpsert;
+        this.rowsPerStatement = multiRowSupported ? Math.max(1, rowsPerStatement) : 1;
+        this.statements = new HashMap<String, SQLiteStatement>();
+    }
+
+    /**
+     * Inserts all of the rows, yielding the transaction if it is contended every {@link #YIELD_INTERVAL} rows.
+     *
+     * @param values The rows to insert.
+     * @return The amount of rows processed.
+     */
+    public int insert(ContentValues[] values) {
+
+        int length = values.length;
+        int count = 0;
+        int lastYield = 0;
+
+        while (count < length) {
+
+            ContentValues row = values[count];
+            if (row.size() == 0) {
+                insertRow(row);
+                count++;
+            } else {
+
+                String[] columns = getColumns(row);
+                int maxRows = Math.min(rowsPerStatement, MAX_BIND_ARGUMENTS / columns.length);
+
+                int rows = 1;
+                Set<String> keySet = row.keySet();
+                while (rows < maxRows && count + rows < length && keySet.equals(values[count + rows].keySet())) {
+                    rows++;
+                }
+
+                if (rows > 1 && rows == maxRows) {
+                    executeInsert(columns, values, count, rows, nativeUpsert);
+                } else if (nativeUpsert) {
+                    for (int i = 0; i < rows; i++) {
+                        executeInsert(columns, values, count + i, 1, true);
+                    }
+                } else {
+                    for (int i = 0; i < rows; i++) {
+                        insertRow(columns, values[count + i], false);
+                    }
+                }
+                count += rows;
+            }
+
+            if (count - lastYield >= YIELD_INTERVAL) {
+                db.yieldIfContendedSafely();
+                lastYield = count;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Inserts a single row.
+     *
+     * @param row The row to insert.
+     * @return The row id of the inserted or updated row, or -1 if the row was ignored.
+     */
+    public long insertRow(ContentValues row) {
+
+        if (row.size() == 0) {
+            return db.insertWithOnConflict(tableName, null, row, getConflictAlgorithm());
+        }
+
+        return insertRow(getColumns(row), row, true);
+    }
+
+    /**
+     * Releases all of the compiled statements.
+     */
+    public void close() {
+
+        for (SQLiteStatement statement : statements.values()) {
+            statement.close();
+        }
+        statements.clear();
+    }
+
+    private long insertRow(String[] columns, ContentValues row, boolean findRowId) {
+
+        ContentValues[] values = new ContentValues[]{row};
+        if (conflictStrategy.getAction() != ConflictStrategy.Action.UPDATE)
+            return executeInsert(columns, values, 0, 1, false);
+
+        long rowId = findConflictingRow(row);
+        if (rowId == -1)
+            return executeInsert(columns, values, 0, 1, false);
+
+        String[] updateColumns = getUpdateColumns(columns);
+        if (updateColumns.length > 0) {
+
+            SQLiteStatement updateStatement = getStatement("update" + Arrays.toString(updateColumns), createUpdateSql(updateColumns));
+            int bindIndex = 1;
+            for (String column : updateColumns) {
+                DatabaseUtils.bindObjectToProgram(updateStatement, bindIndex++, row.get(column));
+            }
+            updateStatement.bindLong(bindIndex, rowId);
+            updateStatement.executeUpdateDelete();
+        }
+
+        return findRowId ? rowId : -1;
+    }
+
+    /**
+     * @return The row id of the existing row with the values of the conflict columns of the row, or -1 if there is none.  A row
+     * that does not contain all of the conflict columns, or contains a null conflict value, can not conflict on them.
+     */
+    private long findConflictingRow(ContentValues row) {
+
+        for (String column : conflictColumns) {
+            if (row.get(column) == null)
+                return -1;
+        }
+
+        SQLiteStatement rowIdStatement = getStatement("rowid", "SELECT rowid FROM " + tableName + createConflictWhereClause());
+        int bindIndex = 1;
+        for (String column : conflictColumns) {
+            DatabaseUtils.bindObjectToProgram(rowIdStatement, bindIndex++, row.get(column));
+        }
+        try {
+            return rowIdStatement.simpleQueryForLong();
+        } catch (SQLiteDoneException ex) {
+            return -1;
+        }
+    }
+
+    private long executeInsert(String[] columns, ContentValues[] values, int offset, int rows, boolean upsert) {
+
+        String key = (upsert ? "upsert" : "insert") + rows + Arrays.toString(columns);
+        SQLiteStatement statement = statements.get(key);
+        if (statement == null) {
+            statement = db.compileStatement(createInsertSql(columns, rows, upsert));
+            statements.put(key, statement);
+        }
+
+        int bindIndex = 1;
+        for (int i = offset; i < offset + rows; i++) {
+
+            ContentValues row = values[i];
+            for (String column : columns) {
+                DatabaseUtils.bindObjectToProgram(statement, bindIndex++, row.get(column));
+            }
+        }
+
+        return statement.executeInsert();
+    }
+
+    private SQLiteStatement getStatement(String key, String sql) {
+
+        SQLiteStatement statement = statements.get(key);
+        if (statement == null) {
+            statement = db.compileStatement(sql);
+            statements.put(key, statement);
+        }
+
+        return statement;
+    }
+
+    private String createInsertSql(String[] columns, int rows, boolean upsert) {
+
+        StringBuilder sql = new StringBuilder("INSERT ");
+        switch (conflictStrategy.getAction()) {
+            case IGNORE:
+                sql.append("OR IGNORE ");
+                break;
+            case REPLACE:
+                sql.append("OR REPLACE ");
+                break;
+        }
+        sql.append("INTO ").append(tableName).append(" (");
+
+        StringBuilder rowValues = new StringBuilder("(");
+        for (int i = 0; i < columns.length; i++) {
+
+            if (i > 0) {
+                sql.append(", ");
+                rowValues.append(", ");
+            }
+            sql.append(columns[i]);
+            rowValues.append("?");
+        }
+        sql.append(") VALUES ");
+        rowValues.append(")");
+
+        for (int i = 0; i < rows; i++) {
+
+            if (i > 0)
+                sql.append(", ");
+            sql.append(rowValues);
+        }
+
+        if (upsert) {
+
+            sql.append(" ON CONFLICT (").append(joinColumns(conflictColumns)).append(")");
+            String[] updateColumns = getUpdateColumns(columns);
+            if (updateColumns.length == 0) {
+                sql.append(" DO NOTHING");
+            } else {
+                sql.append(" DO UPDATE SET ");
+                for (int i = 0; i < updateColumns.length; i++) {
+
+                    if (i > 0)
+                        sql.append(", ");
+                    sql.append(updateColumns[i]).append(" = excluded.").append(updateColumns[i]);
+                }
+            }
+        }
+
+        return sql.toString();
+    }
+
+    private String createUpdateSql(String[] updateColumns) {
+
+        StringBuilder sql = new StringBuilder("UPDATE ");
+        sql.append(tableName).append(" SET ");
+        for (int i = 0; i < updateColumns.length; i++) {
+
+            if (i > 0)
+                sql.append(", ");
+            sql.append(updateColumns[i]).append(" = ?");
+        }
+        sql.append(" WHERE rowid = ?");
+
+        return sql.toString();
+    }
+
+    private String createConflictWhereClause() {
+
+        StringBuilder where = new StringBuilder(" WHERE ");
+        for (int i = 0; i < conflictColumns.length; i++) {
+
+            if (i > 0)
+                where.append(" AND ");
+            where.append(conflictColumns[i]).append(" = ?");
+        }
+
+        return where.toString();
+    }
+
+    /**
+     * Finds the columns to update on conflict, only columns that are part of the row and not part of the conflict target are updated.
+     */
+    private String[] getUpdateColumns(String[] columns) {
+
+        List<String> requestedColumns = Arrays.asList(conflictStrategy.getUpdateColumns());
+        List<String> keyColumns = Arrays.asList(conflictColumns);
+        List<String> updateColumns = new ArrayList<String>();
+
+        for (String column : columns) {
+
+            if (keyColumns.contains(column))
+                continue;
+            if (requestedColumns.isEmpty() || requestedColumns.contains(column))
+                updateColumns.add(column);
+        }
+
+        return updateColumns.toArray(new String[updateColumns.size()]);
+    }
+
+    private int getConflictAlgorithm() {
+
+        switch (conflictStrategy.getAction()) {
+            case IGNORE:
+                return SQLiteDatabase.CONFLICT_IGNORE;
+            case REPLACE:
+                return SQLiteDatabase.CONFLICT_REPLACE;
+            default:
+                return SQLiteDatabase.CONFLICT_ABORT;
+        }
+    }
+
+    private static String joinColumns(String[] columns) {
+
+        StringBuilder joined = new StringBuilder();
+        for (int i = 0; i < columns.length; i++) {
+
+            if (i > 0)
+                joined.append(", ");
+            joined.append(columns[i]);
+        }
+
+        return joined.toString();
+    }
+
+    private String[] getColumns(ContentValues row) {
+
+        Set<String> keySet = row.keySet();
+        if (!keySet.equals(previousKeySet)) {
+
+            previousColumns = keySet.toArray(new String[keySet.size()]);
+            Arrays.sort(previousColumns);
+            previousKeySet = keySet;
+        }
+
+        return previousColumns;
+    }
+}
@@ -0,0 +1,107 @@
+package za.co.cporm.provider.util;
+
+import android.content.ContentValues;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import za.co.cporm.model.generate.TableDetails;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Updates rows by primary key using compiled statements.  One UPDATE ... WHERE pk = ? statement is compiled for every
+ * distinct set of columns, and reused for all of the rows with the same columns.
+ */
+public class BulkUpdateHelper {
+
+    private final SQLiteDatabase db;
+    private final String tableName;
+    private final String primaryKeyColumn;
+    private final Map<Set<String>, SQLiteStatement> statements;
+
+    /**
+     * @param db The database to update the rows in, the caller is responsible for the transaction.
+     * @param tableDetails The table to update the rows in.
+     */
+    public BulkUpdateHelper(SQLiteDatabase db, TableDetails tableDetails) {
+
+        this.db = db;
+        this.tableName = tableDetails.getTableName();
+        this.primaryKeyColumn = tableDetails.findPrimaryKeyColumn().getColumnName();
+        this.statements = new HashMap<Set<String>, SQLiteStatement>();
+    }
+
+    /**
+     * Updates every row with the values at the same index, yielding the transaction if it is contended
+     * every {@link BulkInsertHelper#YIELD_INTERVAL} rows.
+     *
+     * @param values The values of the rows.
+     * @param primaryKeys The primary keys of the rows to update.
+     * @return The amount of rows updated.
+     */
+    public int update(ContentValues[] values, String[] primaryKeys) {
+
+        if (values.length != primaryKeys.length)
+            throw new IllegalArgumentException("A primary key must be supplied for every row, expected " + values.length + " keys but got " + primaryKeys.length);
+
+        int count = 0;
+        for (int i = 0; i < values.length; i++) {
+
+            ContentValues row = values[i];
+            if (row.size() == 0)
+                continue;
+
+            String[] columns = row.keySet().toArray(new String[row.size()]);
+            Arrays.sort(columns);
+
+            SQLiteStatement statement = getStatement(row.keySet(), columns);
+            int bindIndex = 1;
+            for (String column : columns) {
+                DatabaseUtils.bindObjectToProgram(statement, bindIndex++, row.get(column));
+            }
+            statement.bindString(bindIndex, primaryKeys[i]);
+            count += statement.executeUpdateDelete();
+
+            if ((i + 1) % BulkInsertHelper.YIELD_INTERVAL == 0)
+                db.yieldIfContendedSafely();
+        }
+
+        return count;
+    }
+
+    /**
+     * Releases all of the compiled statements.
+     */
+    public void close() {
+
+        for (SQLiteStatement statement : statements.values()) {
+            statement.close();
+        }
+        statements.clear();
+    }
+
+    private SQLiteStatement getStatement(Set<String> keySet, String[] columns) {
+
+        SQLiteStatement statement = statements.get(keySet);
+        if (statement == null) {
+
+            StringBuilder sql = new StringBuilder("UPDATE ");
+            sql.append(tableName).append(" SET ");
+            for (int i = 0; i < columns.length; i++) {
+
+                if (i > 0)
+                    sql.append(", ");
+                sql.append(columns[i]).append(" = ?");
+            }
+            sql.append(" WHERE ").append(primaryKeyColumn).append(" = ?");
+
+            statement = db.compileStatement(sql.toString());
+            statements.put(keySet, statement);
+        }
+
+        return statement;
+    }
+}
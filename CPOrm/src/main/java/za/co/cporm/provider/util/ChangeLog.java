@@ -0,0 +1,123 @@
+package za.co.cporm.provider.util;
+
+import za.co.cporm.model.CPOrm;
+import za.co.cporm.model.util.ChangeSet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Keeps the most recent committed change sets in a ring buffer, so that observers can request all of the changes since
+ * the last change set they have seen.  If an observer falls so far behind that the change sets it needs were already
+ * discarded, it is told that changes were missed so that it can reload everything.
+ */
+public class ChangeLog {
+
+    public static final int DEFAULT_CAPACITY = 256;
+
+    private final ChangeSet[] changeSets;
+    private final long logId;
+    private long sequence = 0;
+
+    public ChangeLog(int capacity) {
+
+        this.changeSets = new ChangeSet[capacity];
+        this.logId = System.currentTimeMillis();
+    }
+
+    /**
+     * @return The id of this log, which changes when the content provider is recreated and the sequence numbers restart.
+     */
+    public long getLogId() {
+        return logId;
+    }
+
+    public synchronized long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Adds a committed change set to the log.
+     *
+     * @param changeSet The change set, the sequence number of the change set is ignored.
+     * @return The change set with its assigned sequence number.
+     */
+    public synchronized ChangeSet record(ChangeSet changeSet) {
+
+        ChangeSet sequencedChangeSet = changeSet.withSequence(++sequence);
+        changeSets[(int) (sequence % changeSets.length)] = sequencedChangeSet;
+        return sequencedChangeSet;
+    }
+
+    /**
+     * Adds all of the change sets of a transaction to the log.  Consecutive change sets of the same table and change type
+     * are merged into a single change set, the order of the other change sets is kept so that observers can replay them.
+     */
+    public synchronized void recordAll(List<ChangeSet> transactionChangeSets) {
+
+        List<ChangeSet> group = new ArrayList<ChangeSet>();
+        for (ChangeSet changeSet : transactionChangeSets) {
+
+            if (!group.isEmpty()) {
+
+                ChangeSet previous = group.get(0);
+                if (!previous.getTableName().equals(changeSet.getTableName()) || previous.getChangeType() != changeSet.getChangeType()) {
+                    record(merge(group));
+                    group.clear();
+                }
+            }
+            group.add(changeSet);
+        }
+
+        if (!group.isEmpty())
+            record(merge(group));
+    }
+
+    /**
+     * Finds all of the change sets recorded after the sequence number.
+     *
+     * @param afterSequence The sequence number of the last change set the observer has seen.
+     * @return The change sets in the order they were committed, or null if some of the change sets were already discarded.
+     */
+    public synchronized List<ChangeSet> getChangesSince(long afterSequence) {
+
+        if (afterSequence > sequence || sequence - afterSequence > changeSets.length)
+            return null;
+
+        List<ChangeSet> changes = new ArrayList<ChangeSet>((int) (sequence - afterSequence));
+        for (long i = afterSequence + 1; i <= sequence; i++) {
+            changes.add(changeSets[(int) (i % changeSets.length)]);
+        }
+
+        return changes;
+    }
+
+    private static ChangeSet merge(List<ChangeSet> group) {
+
+        ChangeSet first = group.get(0);
+        if (group.size() == 1)
+            return first;
+
+        Set<String> primaryKeys = new LinkedHashSet<String>();
+        Set<String> columns = new LinkedHashSet<String>();
+        boolean keysKnown = true;
+        boolean columnsKnown = true;
+
+        for (ChangeSet changeSet : group) {
+
+            if (changeSet.getPrimaryKeys() == null) keysKnown = false;
+            else if (keysKnown) primaryKeys.addAll(Arrays.asList(changeSet.getPrimaryKeys()));
+
+            if (changeSet.getChangedColumns() == null) columnsKnown = false;
+            else if (columnsKnown) columns.addAll(Arrays.asList(changeSet.getChangedColumns()));
+        }
+
+        CPOrm.ChangeType changeType = first.getChangeType();
+        return new ChangeSet(0, first.getTableName(), changeType,
+                keysKnown ? primaryKeys.toArray(new String[primaryKeys.size()]) : null,
+                columnsKnown ? columns.toArray(new String[columns.size()]) : null);
+    }
+}
@@ -0,0 +1,180 @@
+package za.co.cporm.provider.util;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import za.co.cporm.model.generate.TableDetails;
+import za.co.cporm.provider.CPOrmContentProvider;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Coalesces change notifications per table before sending them to the content resolver.  Changes are queued using
+ * {@link #add(TableDetails, Uri, Uri, List, boolean)} and sent when {@link #dispatch()} is called, either immediately or
+ * after the debounce window if one is configured, so that all of the changes made during the window are sent together.
+ * If more row uris of a table changed than the row threshold, only the table uri is notified, which also notifies all of
+ * the observers registered on the rows of the table.  Change listener uris are notified once per table.
+ * Debounced notifications are sent from a thread owned by the notifier, so that they are never delayed by other work,
+ * such as query timeouts, and never delay it in turn.
+ */
+public class ChangeNotifier {
+
+    private final ContentResolver contentResolver;
+    private final long debounceMillis;
+    private final int rowThreshold;
+    private final Map<TableDetails, PendingChanges> syncChanges = new LinkedHashMap<TableDetails, PendingChanges>();
+    private final Map<TableDetails, PendingChanges> localChanges = new LinkedHashMap<TableDetails, PendingChanges>();
+    private boolean flushScheduled;
+    private Handler flushHandler;
+
+    private final Runnable flushRunnable = new Runnable() {
+        @Override
+        public void run() {
+
+            synchronized (ChangeNotifier.this) {
+                flushScheduled = false;
+            }
+            flush();
+        }
+    };
+
+    /**
+     * @param contentResolver The resolver used to send the notifications.
+     * @param debounceMillis The time to wait for more changes before sending the notifications, 0 to send them immediately.
+     * @param rowThreshold The amount of row uris of a table above which the table uri is notified instead.
+     */
+    public ChangeNotifier(ContentResolver contentResolver, long debounceMillis, int rowThreshold) {
+
+        this.contentResolver = contentResolver;
+        this.debounceMillis = debounceMillis;
+        this.rowThreshold = rowThreshold;
+    }
+
+    /**
+     * Queues a change, the change is only sent on the next dispatch.
+     *
+     * @param tableDetails The table that changed.
+     * @param uri The changed uri.
+     * @param tableUri The uri of the table, notified instead of the row uris if there are too many.
+     * @param changeListenerUris The uris of the views that depend on the table.
+     * @param sync True if the notification should request a network sync.
+     */
+    public synchronized void add(TableDetails tableDetails, Uri uri, Uri tableUri, List<Uri> changeListenerUris, boolean sync) {
+
+        Map<TableDetails, PendingChanges> changes = sync ? syncChanges : localChanges;
+        PendingChanges pendingChanges = changes.get(tableDetails);
+        if (pendingChanges == null) {
+            pendingChanges = new PendingChanges(tableUri, changeListenerUris);
+            changes.put(tableDetails, pendingChanges);
+        }
+
+        pendingChanges.uris.add(uri);
+    }
+
+    /**
+     * Sends the queued changes, after the debounce window if one is configured.
+     */
+    public void dispatch() {
+
+        if (debounceMillis <= 0) {
+            flush();
+            return;
+        }
+
+        synchronized (this) {
+            if (flushScheduled || (syncChanges.isEmpty() && localChanges.isEmpty()))
+                return;
+
+            flushScheduled = true;
+            getFlushHandler().postDelayed(flushRunnable, debounceMillis);
+        }
+    }
+
+    /**
+     * Sends all of the queued changes immediately.
+     */
+    public void flush() {
+
+        List<PendingChanges> sync;
+        List<PendingChanges> local;
+        synchronized (this) {
+            if (syncChanges.isEmpty() && localChanges.isEmpty())
+                return;
+
+            sync = new ArrayList<PendingChanges>(syncChanges.values());
+            local = new ArrayList<PendingChanges>(localChanges.values());
+            syncChanges.clear();
+            localChanges.clear();
+        }
+
+        for (PendingChanges pendingChanges : sync) {
+            notifyChanges(pendingChanges, true);
+        }
+        for (PendingChanges pendingChanges : local) {
+            notifyChanges(pendingChanges, false);
+        }
+    }
+
+    private synchronized Handler getFlushHandler() {
+
+        if (flushHandler == null) {
+            HandlerThread flushThread = new HandlerThread("CPOrm-Notify");
+            flushThread.start();
+            flushHandler = new Handler(flushThread.getLooper());
+        }
+
+        return flushHandler;
+    }
+
+    private void notifyChanges(PendingChanges pendingChanges, boolean sync) {
+
+        if (pendingChanges.uris.size() > rowThreshold) {
+            contentResolver.notifyChange(pendingChanges.getCollapsedUri(), null, sync);
+        } else {
+            for (Uri uri : pendingChanges.uris) {
+                contentResolver.notifyChange(uri, null, sync);
+            }
+        }
+
+        for (Uri changeListenerUri : pendingChanges.changeListenerUris) {
+            contentResolver.notifyChange(changeListenerUri, null, sync);
+        }
+    }
+
+    private static class PendingChanges {
+
+        private final Uri tableUri;
+        private final List<Uri> changeListenerUris;
+        private final Set<Uri> uris = new LinkedHashSet<Uri>();
+
+        private PendingChanges(Uri tableUri, List<Uri> changeListenerUris) {
+
+            this.tableUri = tableUri;
+            this.changeListenerUris = changeListenerUris;
+        }
+
+        /**
+         * The table uri keeps the change type if all of the changes were of the same type.
+         */
+        private Uri getCollapsedUri() {
+
+            String changeType = null;
+            for (Uri uri : uris) {
+
+                String uriChangeType = uri.getQueryParameter(CPOrmContentProvider.PARAMETER_CHANGE_TYPE);
+                if (uriChangeType == null || (changeType != null && !changeType.equals(uriChangeType)))
+                    return tableUri;
+
+                changeType = uriChangeType;
+            }
+
+            return tableUri.buildUpon().appendQueryParameter(CPOrmContentProvider.PARAMETER_CHANGE_TYPE, changeType).build();
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package za.co.cporm.provider.util;
+
+import android.content.ContentValues;
+import android.os.Bundle;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Packs rows into a {@link Bundle} column by column.  The column names are written once, and the values of every column
+ * are written as a single primitive array where possible, which is far more compact than parceling a {@link ContentValues}
+ * for every row.  Blobs are concatenated into a single byte array with the offsets of the rows.  The columns are all of the
+ * columns of the rows, rows that do not contain a column are read back without it.
+ */
+public class ColumnarValues {
+
+    private static final String KEY_COLUMNS = "COLUMNS";
+    private static final String KEY_TYPES = "TYPES";
+    private static final String KEY_ROW_COUNT = "ROW_COUNT";
+    private static final String KEY_VALUES = "VALUES_";
+    private static final String KEY_NULLS = "NULLS_";
+    private static final String KEY_MISSING = "MISSING_";
+    private static final String KEY_OFFSETS = "OFFSETS_";
+
+    private static final char TYPE_NULL = 'N';
+    private static final char TYPE_LONG = 'L';
+    private static final char TYPE_DOUBLE = 'D';
+    private static final char TYPE_STRING = 'S';
+    private static final char TYPE_BLOB = 'B';
+    private static final char TYPE_OBJECT = 'O';
+
+    private ColumnarValues() {
+    }
+
+    /**
+     * Writes the rows to the bundle.
+     *
+     * @param bundle The bundle to write the rows to.
+     * @param rows The rows to write.
+     */
+    public static void write(Bundle bundle, ContentValues[] rows) {
+
+        int rowCount = rows.length;
+        Set<String> columnSet = new LinkedHashSet<String>();
+        for (ContentValues row : rows) {
+            columnSet.addAll(row.keySet());
+        }
+        String[] columns = columnSet.toArray(new String[columnSet.size()]);
+        char[] types = new char[columns.length];
+
+        for (int c = 0; c < columns.length; c++) {
+
+            String column = columns[c];
+            char type = findType(rows, column);
+            types[c] = type;
+
+            boolean[] nulls = new boolean[rowCount];
+            boolean hasNulls = false;
+            boolean[] missing = new boolean[rowCount];
+            boolean hasMissing = false;
+            for (int r = 0; r < rowCount; r++) {
+                if (!rows[r].containsKey(column))
+                    missing[r] = hasMissing = true;
+            }
+
+            switch (type) {
+                case TYPE_LONG:
+                    long[] longs = new long[rowCount];
+                    for (int r = 0; r < rowCount; r++) {
+                        Object value = getValue(rows[r], column);
+                        if (value == null) {
+                            nulls[r] = hasNulls = true;
+                        } else if (value instanceof Boolean) {
+                            longs[r] = (Boolean) value ? 1 : 0;
+                        } else longs[r] = ((Number) value).longValue();
+                    }
+                    bundle.putLongArray(KEY_VALUES + c, longs);
+                    break;
+                case TYPE_DOUBLE:
+                    double[] doubles = new double[rowCount];
+                    for (int r = 0; r < rowCount; r++) {
+                        Object value = getValue(rows[r], column);
+                        if (value == null) {
+                            nulls[r] = hasNulls = true;
+                        } else doubles[r] = ((Number) value).doubleValue();
+                    }
+                    bundle.putDoubleArray(KEY_VALUES + c, doubles);
+                    break;
+                case TYPE_STRING:
+                    String[] strings = new String[rowCount];
+                    for (int r = 0; r < rowCount; r++) {
+                        strings[r] = (String) getValue(rows[r], column);
+                    }
+                    bundle.putStringArray(KEY_VALUES + c, strings);
+                    break;
+                case TYPE_BLOB:
+                    int[] offsets = new int[rowCount + 1];
+                    for (int r = 0; r < rowCount; r++) {
+                        byte[] blob = (byte[]) getValue(rows[r], column);
+                        if (blob == null)
+                            nulls[r] = hasNulls = true;
+                        offsets[r + 1] = offsets[r] + (blob == null ? 0 : blob.length);
+                    }
+                    byte[] blobs = new byte[offsets[rowCount]];
+                    for (int r = 0; r < rowCount; r++) {
+                        byte[] blob = (byte[]) getValue(rows[r], column);
+                        if (blob != null)
+                            System.arraycopy(blob, 0, blobs, offsets[r], blob.length);
+                    }
+                    bundle.putByteArray(KEY_VALUES + c, blobs);
+                    bundle.putIntArray(KEY_OFFSETS + c, offsets);
+                    break;
+                case TYPE_OBJECT:
+                    Serializable[] objects = new Serializable[rowCount];
+                    for (int r = 0; r < rowCount; r++) {
+                        objects[r] = (Serializable) getValue(rows[r], column);
+                    }
+                    bundle.putSerializable(KEY_VALUES + c, objects);
+                    break;
+            }
+
+            if (hasNulls)
+                bundle.putBooleanArray(KEY_NULLS + c, nulls);
+            if (hasMissing)
+                bundle.putBooleanArray(KEY_MISSING + c, missing);
+        }
+
+        bundle.putStringArray(KEY_COLUMNS, columns);
+        bundle.putString(KEY_TYPES, new String(types));
+        bundle.putInt(KEY_ROW_COUNT, rowCount);
+    }
+
+    /**
+     * Reads the rows written by {@link #write(Bundle, ContentValues[])}.
+     *
+     * @param bundle The bundle containing the rows.
+     * @return The rows.
+     */
+    public static ContentValues[] read(Bundle bundle) {
+
+        String[] columns = bundle.getStringArray(KEY_COLUMNS);
+        String types = bundle.getString(KEY_TYPES);
+        int rowCount = bundle.getInt(KEY_ROW_COUNT);
+
+        ContentValues[] rows = new ContentValues[rowCount];
+        for (int r = 0; r < rowCount; r++) {
+            rows[r] = new ContentValues(columns.length);
+        }
+
+        for (int c = 0; c < columns.length; c++) {
+
+            String column = columns[c];
+            boolean[] nulls = bundle.getBooleanArray(KEY_NULLS + c);
+            boolean[] missing = bundle.getBooleanArray(KEY_MISSING + c);
+            switch (types.charAt(c)) {
+                case TYPE_NULL:
+                    for (int r = 0; r < rowCount; r++) {
+                        rows[r].putNull(column);
+                    }
+                    break;
+                case TYPE_LONG:
+                    long[] longs = bundle.getLongArray(KEY_VALUES + c);
+                    for (int r = 0; r < rowCount; r++) {
+                        if (nulls != null && nulls[r]) rows[r].putNull(column);
+                        else rows[r].put(column, longs[r]);
+                    }
+                    break;
+                case TYPE_DOUBLE:
+                    double[] doubles = bundle.getDoubleArray(KEY_VALUES + c);
+                    for (int r = 0; r < rowCount; r++) {
+                        if (nulls != null && nulls[r]) rows[r].putNull(column);
+                        else rows[r].put(column, doubles[r]);
+                    }
+                    break;
+                case TYPE_STRING:
+                    String[] strings = bundle.getStringArray(KEY_VALUES + c);
+                    for (int r = 0; r < rowCount; r++) {
+                        rows[r].put(column, strings[r]);
+                    }
+                    break;
+                case TYPE_BLOB:
+                    byte[] blobs = bundle.getByteArray(KEY_VALUES + c);
+                    int[] offsets = bundle.getIntArray(KEY_OFFSETS + c);
+                    for (int r = 0; r < rowCount; r++) {
+                        if (nulls != null && nulls[r]) rows[r].putNull(column);
+                        else rows[r].put(column, Arrays.copyOfRange(blobs, offsets[r], offsets[r + 1]));
+                    }
+                    break;
+                default:
+                    Object[] objects = (Object[]) bundle.getSerializable(KEY_VALUES + c);
+                    for (int r = 0; r < rowCount; r++) {
+                        putValue(rows[r], column, objects[r]);
+                    }
+                    break;
+            }
+
+            if (missing != null) {
+                for (int r = 0; r < rowCount; r++) {
+                    if (missing[r]) rows[r].remove(column);
+                }
+            }
+        }
+
+        return rows;
+    }
+
+    /**
+     * Finds the most compact array type that can hold all of the values of the column.
+     */
+    private static char findType(ContentValues[] rows, String column) {
+
+        char type = TYPE_NULL;
+        for (ContentValues row : rows) {
+
+            Object value = getValue(row, column);
+            char valueType;
+            if (value == null)
+                continue;
+            else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte || value instanceof Boolean)
+                valueType = TYPE_LONG;
+            else if (value instanceof Double || value instanceof Float)
+                valueType = TYPE_DOUBLE;
+            else if (value instanceof String)
+                valueType = TYPE_STRING;
+            else if (value instanceof byte[])
+                valueType = TYPE_BLOB;
+            else
+                throw new IllegalArgumentException("Unsupported value type " + value.getClass() + " for column " + column);
+
+            if (type == TYPE_NULL)
+                type = valueType;
+            else if (type != valueType)
+                return TYPE_OBJECT;
+        }
+
+        return type;
+    }
+
+    /**
+     * @return The value of the column, or null if the row does not contain the column.
+     */
+    private static Object getValue(ContentValues row, String column) {
+
+        return row.get(column);
+    }
+
+    private static void putValue(ContentValues row, String column, Object value) {
+
+        if (value == null) row.putNull(column);
+        else if (value instanceof Long) row.put(column, (Long) value);
+        else if (value instanceof Integer) row.put(column, (Integer) value);
+        else if (value instanceof Short) row.put(column, (Short) value);
+        else if (value instanceof Byte) row.put(column, (Byte) value);
+        else if (value instanceof Boolean) row.put(column, (Boolean) value);
+        else if (value instanceof Double) row.put(column, (Double) value);
+        else if (value instanceof Float) row.put(column, (Float) value);
+        else if (value instanceof byte[]) row.put(column, (byte[]) value);
+        else row.put(column, String.valueOf(value));
+    }
+}
@@ -0,0 +1,60 @@
+package za.co.cporm.provider.util;
+
+import android.database.AbstractWindowedCursor;
+import android.database.Cursor;
+import android.database.CursorWindow;
+import za.co.cporm.util.CPOrmLog;
+
+import java.lang.reflect.Constructor;
+
+/**
+ * Sets the size of the window of query cursors.  Windows with a custom size can only be created from Android 9, using
+ * the CursorWindow(String, long) constructor, which is looked up using reflection so that it can be used without
+ * compiling against Android 9.  On older devices the default window size of the platform is used.
+ */
+public class CursorWindowHelper {
+
+    private static Constructor<CursorWindow> windowConstructor;
+    private static boolean windowConstructorResolved = false;
+
+    /**
+     * Replaces the window of the cursor with a window of the size.  This must be done before the cursor is first
+     * filled, otherwise the window is refilled.
+     *
+     * @param cursor The cursor returned by the database.
+     * @param windowSize The size of the window in bytes.
+     * @param name The name of the window, used for debugging.
+     * @return True if the window was replaced.
+     */
+    public static boolean setWindowSize(Cursor cursor, long windowSize, String name) {
+
+        if (windowSize <= 0 || !(cursor instanceof AbstractWindowedCursor))
+            return false;
+
+        Constructor<CursorWindow> constructor = getWindowConstructor();
+        if (constructor == null)
+            return false;
+
+        try {
+            ((AbstractWindowedCursor) cursor).setWindow(constructor.newInstance(name, windowSize));
+            return true;
+        } catch (Exception ex) {
+            CPOrmLog.w("Failed to create a cursor window of " + windowSize + " bytes", ex);
+            return false;
+        }
+    }
+
+    private static synchronized Constructor<CursorWindow> getWindowConstructor() {
+
+        if (!windowConstructorResolved) {
+            windowConstructorResolved = true;
+            try {
+                windowConstructor = CursorWindow.class.getConstructor(String.class, long.class);
+            } catch (NoSuchMethodException ex) {
+                CPOrmLog.d("Cursor window sizes are not supported on this device, using the default window size");
+            }
+        }
+
+        return windowConstructor;
+    }
+}
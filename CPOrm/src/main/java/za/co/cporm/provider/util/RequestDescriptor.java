@@ -0,0 +1,219 @@
+package za.co.cporm.provider.util;
+
+import android.net.Uri;
+import android.text.TextUtils;
+import za.co.cporm.model.CPOrm;
+import za.co.cporm.model.ConflictStrategy;
+import za.co.cporm.model.generate.TableDetails;
+import za.co.cporm.provider.CPOrmContentProvider;
+
+/**
+ * Contains all of the information the content provider needs from a request uri.  The uri is parsed once, and the descriptor
+ * is cached by the content provider under its {@link #createCacheKey(Uri) cache key}, so that repeated requests for the same
+ * table and query parameters do not have to match the uri or parse the query parameters again.  Single item requests for
+ * different items share a descriptor, the item id and notification uris of those are taken from the request uri.
+ */
+public class RequestDescriptor {
+
+    private final TableDetails tableDetails;
+    private final boolean singleItem;
+    private final String limit;
+    private final boolean offsetWithoutLimit;
+    private final boolean distinct;
+    private final String groupBy;
+    private final String having;
+    private final boolean includeArchive;
+    private final int cursorWindowSize;
+    private final boolean sync;
+    private final boolean notifyChanges;
+    private final ConflictStrategy conflictStrategy;
+    private final Uri[] notificationUris = new Uri[CPOrm.ChangeType.values().length];
+
+    private RequestDescriptor(Uri uri, UriMatcherHelper uriMatcherHelper) {
+
+        this.tableDetails = uriMatcherHelper.getTableDetails(uri);
+        this.singleItem = uriMatcherHelper.isSingleItemRequested(uri);
+        this.limit = constructLimit(uri);
+        this.offsetWithoutLimit = limit == null && uri.getQueryParameter(CPOrmContentProvider.PARAMETER_OFFSET) != null;
+        this.distinct = uri.getBooleanQueryParameter("DISTINCT", false);
+        this.groupBy = uri.getQueryParameter("GROUP_BY");
+        this.having = uri.getQueryParameter("HAVING");
+        this.includeArchive = uri.getBooleanQueryParameter(CPOrmContentProvider.PARAMETER_INCLUDE_ARCHIVE, false);
+        this.cursorWindowSize = constructCursorWindowSize(uri, tableDetails);
+        this.sync = uri.getBooleanQueryParameter(CPOrmContentProvider.PARAMETER_SYNC, true);
+        this.notifyChanges = uri.getBooleanQueryParameter(CPOrmContentProvider.PARAMETER_NOTIFY_CHANGES, true);
+        this.conflictStrategy = ConflictStrategy.fromUri(uri);
+    }
+
+    /**
+     * Creates the key the descriptor of the uri is cached under, which is the path of the uri with the item id replaced
+     * by a wildcard, together with the query of the uri.
+     */
+    public static String createCacheKey(Uri uri) {
+
+        String path = uri.getEncodedPath();
+        String query = uri.getEncodedQuery();
+        int itemSeparator = path == null ? -1 : path.lastIndexOf('/');
+
+        StringBuilder cacheKey = new StringBuilder();
+        cacheKey.append(uri.getEncodedAuthority());
+        if (itemSeparator > 0)
+            cacheKey.append(path, 0, itemSeparator).append("/*");
+        else if (path != null)
+            cacheKey.append(path);
+        if (query != null)
+            cacheKey.append('?').append(query);
+
+        return cacheKey.toString();
+    }
+
+    /**
+     * Parses the request uri.
+     *
+     * @param uri The uri of the request.
+     * @param uriMatcherHelper The helper used to find the table of the uri.
+     * @return The descriptor for the uri.
+     */
+    public static RequestDescriptor parse(Uri uri, UriMatcherHelper uriMatcherHelper) {
+
+        return new RequestDescriptor(uri, uriMatcherHelper);
+    }
+
+    public TableDetails getTableDetails() {
+        return tableDetails;
+    }
+
+    public boolean isSingleItem() {
+        return singleItem;
+    }
+
+    /**
+     * @param uri The uri of the request.
+     * @return The id of the requested item, or null if this is not a single item request.
+     */
+    public String getItemId(Uri uri) {
+        return singleItem ? uri.getLastPathSegment() : null;
+    }
+
+    /**
+     * @return The limit clause of a query, or null if no limit was requested.
+     * @throws IllegalArgumentException If an offset was requested without a limit.
+     */
+    public String getLimit() {
+
+        if (offsetWithoutLimit)
+            throw new IllegalArgumentException("A limit must also be provided when setting an offset");
+
+        return limit;
+    }
+
+    public boolean isDistinct() {
+        return distinct;
+    }
+
+    public String getGroupBy() {
+        return groupBy;
+    }
+
+    public String getHaving() {
+        return having;
+    }
+
+    /**
+     * @return True if the query should also return the rows that were moved to the archive.
+     */
+    public boolean isIncludeArchive() {
+        return includeArchive;
+    }
+
+    /**
+     * @return The size in bytes of the cursor window for queries, or 0 to use the default size.
+     */
+    public int getCursorWindowSize() {
+        return cursorWindowSize;
+    }
+
+    /**
+     * @return True if the change notification should request a network sync.
+     */
+    public boolean isSync() {
+        return sync;
+    }
+
+    public boolean isNotifyChanges() {
+        return notifyChanges;
+    }
+
+    /**
+     * @return The strategy used to resolve conflicts when inserting rows using this request.
+     */
+    public ConflictStrategy getConflictStrategy() {
+        return conflictStrategy;
+    }
+
+    /**
+     * The notification uri is only built when a change is notified.  It is built again for every single item request,
+     * since those share the descriptor, and built once for other requests.
+     *
+     * @param uri The uri of the request.
+     * @param changeType The type of change made using the request.
+     * @return The uri that is notified when rows are changed using this request.
+     */
+    public Uri getNotificationUri(Uri uri, CPOrm.ChangeType changeType) {
+
+        if (singleItem)
+            return createNotificationUri(uri, changeType);
+
+        //Concurrent requests can both build the uri, which is harmless since they are equal
+        Uri notificationUri = notificationUris[changeType.ordinal()];
+        if (notificationUri == null) {
+            notificationUri = createNotificationUri(uri, changeType);
+            notificationUris[changeType.ordinal()] = notificationUri;
+        }
+        return notificationUri;
+    }
+
+    private static Uri createNotificationUri(Uri uri, CPOrm.ChangeType changeType) {
+
+        return uri.buildUpon().appendQueryParameter(CPOrmContentProvider.PARAMETER_CHANGE_TYPE, changeType.toString()).build();
+    }
+
+    private static int constructCursorWindowSize(Uri uri, TableDetails tableDetails) {
+
+        String windowSizeParam = uri.getQueryParameter(CPOrmContentProvider.PARAMETER_CURSOR_WINDOW_SIZE);
+        if (!TextUtils.isEmpty(windowSizeParam) && TextUtils.isDigitsOnly(windowSizeParam))
+            return Integer.parseInt(windowSizeParam);
+
+        return tableDetails.getCursorWindowSize();
+    }
+
+    private static String constructLimit(Uri uri) {
+
+        String offsetParam = uri.getQueryParameter(CPOrmContentProvider.PARAMETER_OFFSET);
+        String limitParam = uri.getQueryParameter(CPOrmContentProvider.PARAMETER_LIMIT);
+
+        Integer offset = null;
+        Integer limit = null;
+
+        if (!TextUtils.isEmpty(offsetParam) && TextUtils.isDigitsOnly(offsetParam)) {
+            offset = Integer.valueOf(offsetParam);
+        }
+        if (!TextUtils.isEmpty(limitParam) && TextUtils.isDigitsOnly(limitParam)) {
+            limit = Integer.valueOf(limitParam);
+        }
+
+        //An offset without a limit is only rejected when the limit is used by a query, see getLimit()
+        if (limit == null)
+            return null;
+
+        StringBuilder limitStatement = new StringBuilder();
+
+        if (offset != null) {
+            limitStatement.append(offset);
+            limitStatement.append(",");
+        }
+        limitStatement.append(limit);
+
+        return limitStatement.toString();
+    }
+}
@@ -0,0 +1,351 @@
+package za.co.cporm.provider.util;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.util.LruCache;
+import za.co.cporm.model.generate.TableDetails;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Caches single rows queried by primary key, for the tables with a row cache size.  Every table has its own least
+ * recently used cache, limited to the row cache size of the table in bytes, so rows of large tables can not evict the
+ * rows of small reference tables.  The size of a row is estimated from its values.
+ * Rows must be removed once a change to them is committed.  Every removal increments the generation of the table, and a
+ * row is only added if the generation did not change while it was queried, so a row that was read before a change was
+ * committed is never added after the change was removed.
+ * Only rows changed through the content provider are removed, rows changed by triggers or foreign key actions are not.
+ */
+public class RowCache {
+
+    private static final int ROW_OVERHEAD = 32;
+    private static final int VALUE_OVERHEAD = 16;
+    private static final Pattern INTEGER_KEY = Pattern.compile("0|-?[1-9][0-9]{0,18}");
+
+    private final Map<String, TableCache> tableCaches = new HashMap<String, TableCache>();
+    private final Statistics totalStatistics = new Statistics();
+
+    /**
+     * @return True if single rows of the table can be cached.
+     */
+    public static boolean isCached(TableDetails tableDetails) {
+        return tableDetails.getRowCacheSize() > 0;
+    }
+
+    /**
+     * @return The generation of the table, which must be passed when adding a row queried afterwards.
+     */
+    public synchronized long getGeneration(TableDetails tableDetails) {
+        return getTableCache(tableDetails).generation;
+    }
+
+    /**
+     * @param projection The columns to return, or null for all of the columns of the row.
+     * @return A cursor containing the cached row, or null if the row is not cached or does not contain the columns.
+     */
+    public synchronized Cursor get(TableDetails tableDetails, String primaryKey, String[] projection) {
+
+        TableCache tableCache = getTableCache(tableDetails);
+        String key = tableCache.toCacheKey(primaryKey);
+        CachedRow row = key == null ? null : tableCache.rows.get(key);
+        Cursor cursor = row == null ? null : row.toCursor(projection);
+
+        if (cursor == null) {
+            totalStatistics.misses++;
+            tableCache.statistics.misses++;
+        } else {
+            totalStatistics.hits++;
+            tableCache.statistics.hits++;
+        }
+
+        return cursor;
+    }
+
+    /**
+     * Adds the row, unless a change to the table was removed since the generation was read.
+     *
+     * @param generation The generation of the table read before the row was queried.
+     */
+    public synchronized void put(TableDetails tableDetails, String primaryKey, CachedRow row, long generation) {
+
+        TableCache tableCache = getTableCache(tableDetails);
+        String key = tableCache.toCacheKey(primaryKey);
+        if (key == null || tableCache.generation != generation || row.size + key.length() * 2 > tableCache.rows.maxSize())
+            return;
+
+        tableCache.rows.put(key, row);
+    }
+
+    /**
+     * Removes the changed rows.
+     *
+     * @param primaryKeys The primary keys of the changed rows, or null to remove all of the rows of the table.
+     */
+    public synchronized void invalidate(String tableName, String[] primaryKeys) {
+
+        TableCache tableCache = tableCaches.get(tableName);
+        if (tableCache == null)
+            return;
+
+        tableCache.generation++;
+        if (primaryKeys != null) {
+
+            for (String primaryKey : primaryKeys) {
+
+                String key = tableCache.toCacheKey(primaryKey);
+                if (key == null) {
+                    //The key is not in the form the rows are cached by, so the changed row is not known
+                    tableCache.rows.evictAll();
+                    return;
+                }
+                tableCache.rows.remove(key);
+            }
+        } else
+            tableCache.rows.evictAll();
+    }
+
+    /**
+     * Removes all of the rows, the statistics are kept.
+     */
+    public synchronized void clear() {
+
+        for (TableCache tableCache : tableCaches.values()) {
+
+            tableCache.generation++;
+            tableCache.rows.evictAll();
+        }
+    }
+
+    /**
+     * @return A copy of the statistics of all of the tables.
+     */
+    public synchronized Statistics getStatistics() {
+
+        Statistics statistics = totalStatistics.copy();
+        for (TableCache tableCache : tableCaches.values()) {
+            statistics.sizeBytes += tableCache.rows.size();
+        }
+        return statistics;
+    }
+
+    /**
+     * @return A copy of the statistics of the table.
+     */
+    public synchronized Statistics getStatistics(TableDetails tableDetails) {
+
+        TableCache tableCache = getTableCache(tableDetails);
+        Statistics statistics = tableCache.statistics.copy();
+        statistics.sizeBytes = tableCache.rows.size();
+        return statistics;
+    }
+
+    /**
+     * Reads the current row of the cursor.
+     */
+    public static CachedRow readRow(Cursor cursor) {
+
+        String[] columnNames = cursor.getColumnNames();
+        Object[] values = new Object[columnNames.length];
+        int size = ROW_OVERHEAD;
+
+        for (int i = 0; i < columnNames.length; i++) {
+
+            switch (cursor.getType(i)) {
+                case Cursor.FIELD_TYPE_NULL:
+                    values[i] = null;
+                    break;
+                case Cursor.FIELD_TYPE_INTEGER:
+                    values[i] = cursor.getLong(i);
+                    size += VALUE_OVERHEAD;
+                    break;
+                case Cursor.FIELD_TYPE_FLOAT:
+                    values[i] = cursor.getDouble(i);
+                    size += VALUE_OVERHEAD;
+                    break;
+                case Cursor.FIELD_TYPE_BLOB:
+                    byte[] blob = cursor.getBlob(i);
+                    values[i] = blob;
+                    size += VALUE_OVERHEAD + blob.length;
+                    break;
+                default:
+                    String string = cursor.getString(i);
+                    values[i] = string;
+                    size += VALUE_OVERHEAD + string.length() * 2;
+                    break;
+            }
+            size += 4;
+        }
+
+        return new CachedRow(columnNames, values, size);
+    }
+
+    private TableCache getTableCache(TableDetails tableDetails) {
+
+        TableCache tableCache = tableCaches.get(tableDetails.getTableName());
+        if (tableCache == null) {
+            tableCache = new TableCache(tableDetails);
+            tableCaches.put(tableDetails.getTableName(), tableCache);
+        }
+
+        return tableCache;
+    }
+
+    private class TableCache {
+
+        private final String keyType;
+        private final LruCache<String, CachedRow> rows;
+        private final Statistics statistics = new Statistics();
+        private long generation;
+
+        TableCache(TableDetails tableDetails) {
+
+            this.keyType = tableDetails.findPrimaryKeyColumn().getColumnTypeMapping().getSqlColumnTypeName();
+            this.rows = new LruCache<String, CachedRow>(Math.max(tableDetails.getRowCacheSize(), 1)) {
+                @Override
+                protected int sizeOf(String key, CachedRow value) {
+                    return value.size + key.length() * 2;
+                }
+
+                @Override
+                protected void entryRemoved(boolean evicted, String key, CachedRow oldValue, CachedRow newValue) {
+
+                    if (evicted) {
+                        totalStatistics.evictions++;
+                        statistics.evictions++;
+                    }
+                }
+            };
+        }
+
+        /**
+         * SQLite converts a key such as 05 to the integer 5 when it is compared with an integer column, so integer keys
+         * are only cached in their canonical form, otherwise a change by one form of the key would not remove the other.
+         * Text keys are compared as is, keys of other types are not cached.
+         *
+         * @return The key the row is cached by, or null if the key is not in the canonical form.
+         */
+        String toCacheKey(String primaryKey) {
+
+            if (primaryKey == null)
+                return null;
+            else if ("TEXT".equalsIgnoreCase(keyType))
+                return primaryKey;
+            else if ("INTEGER".equalsIgnoreCase(keyType) && INTEGER_KEY.matcher(primaryKey).matches())
+                return primaryKey;
+
+            return null;
+        }
+    }
+
+    /**
+     * The values of a single row.  Blob values are copied when the row is returned, so the cached values can not be
+     * changed by the callers.
+     */
+    public static class CachedRow {
+
+        private final String[] columnNames;
+        private final Object[] values;
+        private final int size;
+
+        CachedRow(String[] columnNames, Object[] values, int size) {
+
+            this.columnNames = columnNames;
+            this.values = values;
+            this.size = size;
+        }
+
+        /**
+         * @param projection The columns to return, or null for all of the columns.
+         * @return A cursor containing the row, or null if the row does not contain all of the columns.
+         */
+        public Cursor toCursor(String[] projection) {
+
+            String[] cursorColumns = projection == null ? columnNames : projection;
+            Object[] cursorValues = new Object[cursorColumns.length];
+
+            for (int i = 0; i < cursorColumns.length; i++) {
+
+                int columnIndex = findColumn(cursorColumns[i]);
+                if (columnIndex == -1)
+                    return null;
+
+                Object value = values[columnIndex];
+                cursorValues[i] = value instanceof byte[] ? ((byte[]) value).clone() : value;
+            }
+
+            MatrixCursor cursor = new MatrixCursor(cursorColumns, 1);
+            cursor.addRow(cursorValues);
+            return cursor;
+        }
+
+        private int findColumn(String columnName) {
+
+            for (int i = 0; i < columnNames.length; i++) {
+                if (columnNames[i].equalsIgnoreCase(columnName))
+                    return i;
+            }
+
+            return -1;
+        }
+    }
+
+    public static class Statistics {
+
+        private long hits;
+        private long misses;
+        private long evictions;
+        private long sizeBytes;
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        /**
+         * @return The estimated size of the cached rows in bytes.
+         */
+        public long getSizeBytes() {
+            return sizeBytes;
+        }
+
+        /**
+         * @return The fraction of lookups that were answered from the cache, between 0 and 1.
+         */
+        public double getHitRate() {
+
+            long total = hits + misses;
+            return total == 0 ? 0 : (double) hits / total;
+        }
+
+        Statistics copy() {
+
+            Statistics copy = new Statistics();
+            copy.hits = hits;
+            copy.misses = misses;
+            copy.evictions = evictions;
+            copy.sizeBytes = sizeBytes;
+            return copy;
+        }
+
+        @Override
+        public String toString() {
+
+            return "Statistics{" +
+                    "hits=" + hits +
+                    ", misses=" + misses +
+                    ", evictions=" + evictions +
+                    ", sizeBytes=" + sizeBytes +
+                    ", hitRate=" + getHitRate() +
+                    '}';
+        }
+    }
+}
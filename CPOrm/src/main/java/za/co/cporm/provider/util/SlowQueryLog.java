@@ -0,0 +1,359 @@
+package za.co.cporm.provider.util;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import za.co.cporm.util.CPOrmLog;
+import za.co.cporm.util.CPOrmMetrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Records the queries and writes that took longer than a threshold, together with their fingerprint and query plan.
+ * The fingerprint is the sql with all literals replaced by placeholders, so that the same query shape with different
+ * values is counted together.  The most recent slow operations are kept in a ring buffer, and the total time spent on
+ * every fingerprint is kept for the session, including operations below the threshold, so that cheap queries that are
+ * executed very often also show up in the report.
+ */
+public class SlowQueryLog {
+
+    public static final int DEFAULT_CAPACITY = 64;
+    public static final int MAX_FINGERPRINTS = 256;
+    public static final String OTHER_FINGERPRINT = "<other>";
+
+    private static final Pattern BLOB_LITERAL = Pattern.compile("[xX]'[0-9a-fA-F]*'");
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMERIC_LITERAL = Pattern.compile("\\b\\d+(?:\\.\\d+)?(?:[eE][+-]?\\d+)?\\b");
+    private static final Pattern IN_LIST = Pattern.compile("(?i)\\bIN\\s*\\(\\s*\\?(?:\\s*,\\s*\\?)*\\s*\\)");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final long thresholdNanos;
+    private final Entry[] entries;
+    private final Map<String, FingerprintStats> fingerprints = new HashMap<String, FingerprintStats>();
+    private long entryCount = 0;
+
+    /**
+     * @param thresholdMillis The duration above which operations are recorded, 0 to disable the log.
+     * @param capacity The amount of slow operations to keep.
+     */
+    public SlowQueryLog(long thresholdMillis, int capacity) {
+
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+        this.entries = new Entry[capacity];
+    }
+
+    public boolean isEnabled() {
+        return thresholdNanos > 0;
+    }
+
+    /**
+     * @return The start time of an operation, or 0 if the log is disabled.
+     */
+    public long start() {
+        return isEnabled() ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records an operation started using {@link #start()}.  If the operation was slow, and it is a query, update or
+     * delete, its query plan is captured using the database.
+     *
+     * @param db The database the operation was executed on.
+     * @param operation The type of the operation.
+     * @param tableName The table of the operation.
+     * @param sql The sql that was executed.
+     * @param bindArgCount The amount of arguments bound to the sql.
+     * @param rowCount The amount of rows returned or affected.
+     * @param startNanos The start time returned by {@link #start()}.
+     */
+    public void record(SQLiteDatabase db, CPOrmMetrics.Operation operation, String tableName, String sql, int bindArgCount, int rowCount, long startNanos) {
+
+        if (startNanos == 0)
+            return;
+
+        long duration = System.nanoTime() - startNanos;
+        boolean slow = duration >= thresholdNanos;
+        String fingerprint = fingerprint(sql);
+
+        synchronized (this) {
+
+            FingerprintStats stats = fingerprints.get(fingerprint);
+            if (stats == null) {
+
+                String statsKey = fingerprints.size() >= MAX_FINGERPRINTS ? OTHER_FINGERPRINT : fingerprint;
+                stats = fingerprints.get(statsKey);
+                if (stats == null) {
+                    stats = new FingerprintStats(statsKey);
+                    fingerprints.put(statsKey, stats);
+                }
+            }
+            stats.add(duration, rowCount, slow);
+        }
+
+        if (!slow)
+            return;
+
+        String queryPlan = null;
+        if (operation == CPOrmMetrics.Operation.QUERY || operation == CPOrmMetrics.Operation.UPDATE || operation == CPOrmMetrics.Operation.DELETE)
+            queryPlan = explain(db, sql);
+
+        Entry entry = new Entry(System.currentTimeMillis(), operation, tableName, fingerprint, sql, bindArgCount, rowCount, duration, queryPlan);
+        synchronized (this) {
+            entries[(int) (entryCount++ % entries.length)] = entry;
+        }
+    }
+
+    /**
+     * @return The recorded slow operations, the most recent first.
+     */
+    public synchronized List<Entry> getEntries() {
+
+        int size = (int) Math.min(entryCount, entries.length);
+        List<Entry> result = new ArrayList<Entry>(size);
+        for (long i = entryCount - 1; i >= entryCount - size; i--) {
+            result.add(entries[(int) (i % entries.length)]);
+        }
+
+        return result;
+    }
+
+    /**
+     * @param count The maximum amount of fingerprints to return.
+     * @return The fingerprints that took the most total time, the most expensive first.
+     */
+    public List<FingerprintStats> getTopFingerprints(int count) {
+
+        List<FingerprintStats> result = new ArrayList<FingerprintStats>();
+        synchronized (this) {
+            for (FingerprintStats stats : fingerprints.values()) {
+                result.add(stats.copy());
+            }
+        }
+
+        Collections.sort(result, new Comparator<FingerprintStats>() {
+            @Override
+            public int compare(FingerprintStats lhs, FingerprintStats rhs) {
+
+                return lhs.totalNanos < rhs.totalNanos ? 1 : (lhs.totalNanos == rhs.totalNanos ? 0 : -1);
+            }
+        });
+
+        return result.size() > count ? new ArrayList<FingerprintStats>(result.subList(0, count)) : result;
+    }
+
+    public synchronized void clear() {
+
+        fingerprints.clear();
+        entryCount = 0;
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = null;
+        }
+    }
+
+    /**
+     * @param topCount The amount of fingerprints to include.
+     * @return A report with the most expensive fingerprints, followed by the recorded slow operations.
+     */
+    public String dump(int topCount) {
+
+        StringBuilder report = new StringBuilder();
+        report.append("Top fingerprints by total time: count slow rows total max (ms)\n");
+        for (FingerprintStats stats : getTopFingerprints(topCount)) {
+
+            report.append(stats.getCount()).append(' ')
+                    .append(stats.getSlowCount()).append(' ')
+                    .append(stats.getTotalRows()).append(' ')
+                    .append(TimeUnit.NANOSECONDS.toMillis(stats.getTotalNanos())).append(' ')
+                    .append(TimeUnit.NANOSECONDS.toMillis(stats.getMaxNanos())).append(' ')
+                    .append(stats.getFingerprint()).append('\n');
+        }
+
+        report.append("Slow operations:\n");
+        for (Entry entry : getEntries()) {
+
+            report.append(entry.getOperation()).append(' ')
+                    .append(entry.getTableName()).append(' ')
+                    .append(TimeUnit.NANOSECONDS.toMillis(entry.getDurationNanos())).append("ms ")
+                    .append(entry.getRowCount()).append(" rows ")
+                    .append(entry.getBindArgCount()).append(" args: ")
+                    .append(entry.getFingerprint()).append('\n');
+
+            if (entry.getQueryPlan() != null)
+                report.append(entry.getQueryPlan());
+        }
+
+        return report.toString();
+    }
+
+    /**
+     * Normalizes the sql by replacing all literals with placeholders, collapsing IN lists and whitespace.
+     */
+    public static String fingerprint(String sql) {
+
+        if (sql == null)
+            return "";
+
+        String fingerprint = BLOB_LITERAL.matcher(sql).replaceAll("?");
+        fingerprint = STRING_LITERAL.matcher(fingerprint).replaceAll("?");
+        fingerprint = NUMERIC_LITERAL.matcher(fingerprint).replaceAll("?");
+        fingerprint = IN_LIST.matcher(fingerprint).replaceAll("IN (...)");
+        return WHITESPACE.matcher(fingerprint).replaceAll(" ").trim();
+    }
+
+    /**
+     * Runs EXPLAIN QUERY PLAN on the sql without binding its arguments, the plan does not depend on the bound values.
+     *
+     * @return A line for every step of the plan, or null if the plan could not be determined.
+     */
+    private static String explain(SQLiteDatabase db, String sql) {
+
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sql, null);
+            int detailIndex = cursor.getColumnIndex("detail");
+            if (detailIndex == -1)
+                detailIndex = cursor.getColumnCount() - 1;
+
+            StringBuilder plan = new StringBuilder();
+            while (cursor.moveToNext()) {
+                plan.append("    ").append(cursor.getString(detailIndex)).append('\n');
+            }
+
+            return plan.toString();
+        } catch (RuntimeException ex) {
+            CPOrmLog.w("Failed to capture the query plan of " + sql, ex);
+            return null;
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+    }
+
+    public static class Entry {
+
+        private final long timestamp;
+        private final CPOrmMetrics.Operation operation;
+        private final String tableName;
+        private final String fingerprint;
+        private final String sql;
+        private final int bindArgCount;
+        private final int rowCount;
+        private final long durationNanos;
+        private final String queryPlan;
+
+        Entry(long timestamp, CPOrmMetrics.Operation operation, String tableName, String fingerprint, String sql,
+              int bindArgCount, int rowCount, long durationNanos, String queryPlan) {
+
+            this.timestamp = timestamp;
+            this.operation = operation;
+            this.tableName = tableName;
+            this.fingerprint = fingerprint;
+            this.sql = sql;
+            this.bindArgCount = bindArgCount;
+            this.rowCount = rowCount;
+            this.durationNanos = durationNanos;
+            this.queryPlan = queryPlan;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public CPOrmMetrics.Operation getOperation() {
+            return operation;
+        }
+
+        public String getTableName() {
+            return tableName;
+        }
+
+        public String getFingerprint() {
+            return fingerprint;
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        public int getBindArgCount() {
+            return bindArgCount;
+        }
+
+        public int getRowCount() {
+            return rowCount;
+        }
+
+        public long getDurationNanos() {
+            return durationNanos;
+        }
+
+        /**
+         * @return The output of EXPLAIN QUERY PLAN, one step per line, or null if no plan was captured.
+         */
+        public String getQueryPlan() {
+            return queryPlan;
+        }
+    }
+
+    public static class FingerprintStats {
+
+        private final String fingerprint;
+        private long count;
+        private long slowCount;
+        private long totalRows;
+        private long totalNanos;
+        private long maxNanos;
+
+        FingerprintStats(String fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+
+        void add(long durationNanos, int rowCount, boolean slow) {
+
+            count++;
+            if (slow) slowCount++;
+            if (rowCount > 0) totalRows += rowCount;
+            totalNanos += durationNanos;
+            maxNanos = Math.max(maxNanos, durationNanos);
+        }
+
+        FingerprintStats copy() {
+
+            FingerprintStats copy = new FingerprintStats(fingerprint);
+            copy.count = count;
+            copy.slowCount = slowCount;
+            copy.totalRows = totalRows;
+            copy.totalNanos = totalNanos;
+            copy.maxNanos = maxNanos;
+            return copy;
+        }
+
+        public String getFingerprint() {
+            return fingerprint;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getSlowCount() {
+            return slowCount;
+        }
+
+        public long getTotalRows() {
+            return totalRows;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+    }
+}
@@ -0,0 +1,315 @@
+package za.co.cporm.provider.util;
+
+import android.content.ContentValues;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.LruCache;
+import za.co.cporm.model.generate.TableDetails;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Executes primary key point writes: inserts, updates of a fixed column set by primary key, and deletes by primary key,
+ * using compiled statements that are reused for the same sql.  A statement is checked out of the cache for a single
+ * execution and returned afterwards, so a statement is never used by two threads at the same time, and nothing is executed
+ * while holding the lock of the cache.  A statement that is not in the cache when it is needed, for instance while another
+ * thread is executing it, is compiled and added to the cache once it is returned.
+ * The least recently used sql is evicted once the cache contains more than the maximum amount of sql, which closes its
+ * idle statements.
+ */
+public class StatementCache {
+
+    public static final int DEFAULT_MAX_STATEMENTS = 64;
+    private static final int MAX_IDLE_STATEMENTS_PER_SQL = 4;
+
+    private final LruCache<String, IdleStatements> statements;
+    private final Map<String, Statistics> tableStatistics = new HashMap<String, Statistics>();
+    private final Statistics totalStatistics = new Statistics();
+    private boolean clearing = false;
+
+    public StatementCache(int maxStatements) {
+
+        this.statements = new LruCache<String, IdleStatements>(maxStatements) {
+            @Override
+            protected void entryRemoved(boolean evicted, String key, IdleStatements oldValue, IdleStatements newValue) {
+
+                oldValue.close();
+                if (evicted && !clearing) {
+                    totalStatistics.evictions++;
+                    getTableStatistics(oldValue.tableName).evictions++;
+                }
+            }
+        };
+    }
+
+    /**
+     * @return The row id of the inserted row, or -1 if the row was not inserted.
+     */
+    public long executeInsert(SQLiteDatabase db, String tableName, String sql, Object[] bindArgs) {
+
+        SQLiteStatement statement = checkOut(db, tableName, sql);
+        try {
+            bindArguments(statement, bindArgs);
+            return statement.executeInsert();
+        } finally {
+            checkIn(db, tableName, sql, statement);
+        }
+    }
+
+    /**
+     * @return The amount of rows updated or deleted.
+     */
+    public int executeUpdateDelete(SQLiteDatabase db, String tableName, String sql, Object[] bindArgs) {
+
+        SQLiteStatement statement = checkOut(db, tableName, sql);
+        try {
+            bindArguments(statement, bindArgs);
+            return statement.executeUpdateDelete();
+        } finally {
+            checkIn(db, tableName, sql, statement);
+        }
+    }
+
+    /**
+     * @return A copy of the statistics of all of the tables.
+     */
+    public synchronized Statistics getStatistics() {
+        return totalStatistics.copy();
+    }
+
+    /**
+     * @return A copy of the statistics of the table.
+     */
+    public synchronized Statistics getStatistics(String tableName) {
+        return getTableStatistics(tableName).copy();
+    }
+
+    /**
+     * Closes all of the idle statements, this must be called before the databases are closed.  The statistics are kept.
+     */
+    public synchronized void clear() {
+
+        clearing = true;
+        try {
+            statements.evictAll();
+        } finally {
+            clearing = false;
+        }
+    }
+
+    /**
+     * @return The sql that inserts the columns of the values.
+     */
+    public static String buildInsertSql(TableDetails tableDetails, ContentValues contentValues) {
+
+        StringBuilder sql = new StringBuilder("INSERT INTO ");
+        sql.append(tableDetails.getTableName()).append(" (");
+        StringBuilder valuesClause = new StringBuilder();
+
+        int index = 0;
+        for (String columnName : contentValues.keySet()) {
+
+            if (index++ > 0) {
+                sql.append(", ");
+                valuesClause.append(", ");
+            }
+            sql.append(columnName);
+            valuesClause.append("?");
+        }
+        sql.append(") VALUES (").append(valuesClause).append(")");
+        return sql.toString();
+    }
+
+    /**
+     * @return The sql that updates the columns of the values for a single primary key, which is the last argument.
+     */
+    public static String buildUpdateSql(TableDetails tableDetails, ContentValues contentValues) {
+
+        StringBuilder sql = new StringBuilder("UPDATE ");
+        sql.append(tableDetails.getTableName()).append(" SET ");
+
+        int index = 0;
+        for (String columnName : contentValues.keySet()) {
+
+            if (index++ > 0)
+                sql.append(", ");
+            sql.append(columnName).append(" = ?");
+        }
+        sql.append(" WHERE ").append(tableDetails.findPrimaryKeyColumn().getColumnName()).append(" = ?");
+        return sql.toString();
+    }
+
+    public static String buildDeleteSql(TableDetails tableDetails) {
+
+        return "DELETE FROM " + tableDetails.getTableName() + " WHERE " + tableDetails.findPrimaryKeyColumn().getColumnName() + " = ?";
+    }
+
+    /**
+     * @param primaryKey The primary key appended as the last argument, or null to only bind the values.
+     * @return The arguments in the same order as the columns of the sql built from the values.
+     */
+    public static Object[] buildBindArgs(ContentValues contentValues, Object primaryKey) {
+
+        Object[] bindArgs = new Object[contentValues.size() + (primaryKey == null ? 0 : 1)];
+
+        int index = 0;
+        for (String columnName : contentValues.keySet()) {
+            bindArgs[index++] = contentValues.get(columnName);
+        }
+        if (primaryKey != null)
+            bindArgs[index] = primaryKey;
+
+        return bindArgs;
+    }
+
+    /**
+     * @return An idle compiled statement for the sql, or a newly compiled statement if there is none.
+     */
+    private SQLiteStatement checkOut(SQLiteDatabase db, String tableName, String sql) {
+
+        SQLiteStatement statement = takeIdleStatement(db, tableName, sql);
+        return statement != null ? statement : db.compileStatement(sql);
+    }
+
+    private synchronized SQLiteStatement takeIdleStatement(SQLiteDatabase db, String tableName, String sql) {
+
+        Statistics statistics = getTableStatistics(tableName);
+        IdleStatements idleStatements = statements.get(db.getPath() + ':' + sql);
+        SQLiteStatement statement = idleStatements == null || idleStatements.db != db ? null : idleStatements.statements.poll();
+
+        if (statement != null) {
+            totalStatistics.hits++;
+            statistics.hits++;
+        } else {
+            totalStatistics.misses++;
+            statistics.misses++;
+        }
+
+        return statement;
+    }
+
+    /**
+     * Returns the statement to the cache once it was executed, or closes it if the cache already contains enough idle
+     * statements for the sql.
+     */
+    private void checkIn(SQLiteDatabase db, String tableName, String sql, SQLiteStatement statement) {
+
+        statement.clearBindings();
+        if (!returnIdleStatement(db, tableName, sql, statement))
+            statement.close();
+    }
+
+    private synchronized boolean returnIdleStatement(SQLiteDatabase db, String tableName, String sql, SQLiteStatement statement) {
+
+        if (!db.isOpen())
+            return false;
+
+        String key = db.getPath() + ':' + sql;
+        IdleStatements idleStatements = statements.get(key);
+        if (idleStatements == null || idleStatements.db != db) {
+            //Replacing the statements of a database that was reopened closes them
+            idleStatements = new IdleStatements(db, tableName);
+            statements.put(key, idleStatements);
+        }
+
+        if (idleStatements.statements.size() >= MAX_IDLE_STATEMENTS_PER_SQL)
+            return false;
+
+        idleStatements.statements.push(statement);
+        return true;
+    }
+
+    private Statistics getTableStatistics(String tableName) {
+
+        Statistics statistics = tableStatistics.get(tableName);
+        if (statistics == null) {
+            statistics = new Statistics();
+            tableStatistics.put(tableName, statistics);
+        }
+
+        return statistics;
+    }
+
+    private static void bindArguments(SQLiteStatement statement, Object[] bindArgs) {
+
+        for (int i = 0; i < bindArgs.length; i++) {
+
+            DatabaseUtils.bindObjectToProgram(statement, i + 1, bindArgs[i]);
+        }
+    }
+
+    /**
+     * The compiled statements of a single sql that are not being executed.
+     */
+    private static class IdleStatements {
+
+        private final SQLiteDatabase db;
+        private final String tableName;
+        private final ArrayDeque<SQLiteStatement> statements = new ArrayDeque<SQLiteStatement>();
+
+        IdleStatements(SQLiteDatabase db, String tableName) {
+
+            this.db = db;
+            this.tableName = tableName;
+        }
+
+        void close() {
+
+            for (SQLiteStatement statement : statements) {
+                statement.close();
+            }
+            statements.clear();
+        }
+    }
+
+    public static class Statistics {
+
+        private long hits;
+        private long misses;
+        private long evictions;
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        /**
+         * @return The fraction of executions that reused a compiled statement, between 0 and 1.
+         */
+        public double getHitRate() {
+
+            long total = hits + misses;
+            return total == 0 ? 0 : (double) hits / total;
+        }
+
+        Statistics copy() {
+
+            Statistics copy = new Statistics();
+            copy.hits = hits;
+            copy.misses = misses;
+            copy.evictions = evictions;
+            return copy;
+        }
+
+        @Override
+        public String toString() {
+
+            return "Statistics{" +
+                    "hits=" + hits +
+                    ", misses=" + misses +
+                    ", evictions=" + evictions +
+                    ", hitRate=" + getHitRate() +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package za.co.cporm.util;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a latency histogram in memory for every combination of layer, operation and table, which can be dumped to
+ * the log or a string at any time.
+ */
+public class AggregatingMetrics implements CPOrmMetrics {
+
+    private final Map<Key, LatencyHistogram> histograms = new HashMap<Key, LatencyHistogram>();
+
+    @Override
+    public void record(Layer layer, Operation operation, String tableName, int rowCount, long durationNanos) {
+
+        Key key = new Key(layer, operation, tableName);
+        synchronized (histograms) {
+
+            LatencyHistogram histogram = histograms.get(key);
+            if (histogram == null) {
+                histogram = new LatencyHistogram();
+                histograms.put(key, histogram);
+            }
+            histogram.record(TimeUnit.NANOSECONDS.toMicros(durationNanos), rowCount);
+        }
+    }
+
+    /**
+     * @return A copy of the histogram of the operation, or an empty histogram if the operation was never recorded.
+     */
+    public LatencyHistogram getHistogram(Layer layer, Operation operation, String tableName) {
+
+        synchronized (histograms) {
+
+            LatencyHistogram histogram = histograms.get(new Key(layer, operation, tableName));
+            return histogram == null ? new LatencyHistogram() : histogram.copy();
+        }
+    }
+
+    /**
+     * @return A copy of the histograms of the operation on all of the tables combined.
+     */
+    public LatencyHistogram getHistogram(Layer layer, Operation operation) {
+
+        LatencyHistogram combined = new LatencyHistogram();
+        synchronized (histograms) {
+
+            for (Map.Entry<Key, LatencyHistogram> entry : histograms.entrySet()) {
+
+                Key key = entry.getKey();
+                if (key.layer == layer && key.operation == operation)
+                    combined.add(entry.getValue());
+            }
+        }
+        return combined;
+    }
+
+    public void reset() {
+
+        synchronized (histograms) {
+            histograms.clear();
+        }
+    }
+
+    /**
+     * @return A table with a line for every recorded operation, with latencies in microseconds.
+     */
+    public String dump() {
+
+        List<Map.Entry<Key, LatencyHistogram>> entries = new ArrayList<Map.Entry<Key, LatencyHistogram>>();
+        synchronized (histograms) {
+
+            for (Map.Entry<Key, LatencyHistogram> entry : histograms.entrySet()) {
+                entries.add(new AbstractMap.SimpleImmutableEntry<Key, LatencyHistogram>(entry.getKey(), entry.getValue().copy()));
+            }
+        }
+
+        Collections.sort(entries, new Comparator<Map.Entry<Key, LatencyHistogram>>() {
+            @Override
+            public int compare(Map.Entry<Key, LatencyHistogram> lhs, Map.Entry<Key, LatencyHistogram> rhs) {
+
+                return lhs.getKey().toString().compareTo(rhs.getKey().toString());
+            }
+        });
+
+        StringBuilder dump = new StringBuilder();
+        dump.append("layer operation table: count rows mean p50 p90 p99 max (us)\n");
+        for (Map.Entry<Key, LatencyHistogram> entry : entries) {
+
+            LatencyHistogram histogram = entry.getValue();
+            dump.append(entry.getKey()).append(": ")
+                    .append(histogram.getCount()).append(' ')
+                    .append(histogram.getTotalRows()).append(' ')
+                    .append(histogram.getMeanMicros()).append(' ')
+                    .append(histogram.getPercentileMicros(50)).append(' ')
+                    .append(histogram.getPercentileMicros(90)).append(' ')
+                    .append(histogram.getPercentileMicros(99)).append(' ')
+                    .append(histogram.getMaxMicros()).append('\n');
+        }
+
+        return dump.toString();
+    }
+
+    /**
+     * Writes the {@link #dump()} to the log.
+     */
+    public void dumpToLog() {
+
+        for (String line : dump().split("\n")) {
+            CPOrmLog.i(line);
+        }
+    }
+
+    private static final class Key {
+
+        private final Layer layer;
+        private final Operation operation;
+        private final String tableName;
+
+        Key(Layer layer, Operation operation, String tableName) {
+
+            this.layer = layer;
+            this.operation = operation;
+            this.tableName = tableName;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+
+            Key key = (Key) o;
+            return layer == key.layer && operation == key.operation
+                    && (tableName == null ? key.tableName == null : tableName.equals(key.tableName));
+        }
+
+        @Override
+        public int hashCode() {
+
+            int result = layer.hashCode();
+            result = 31 * result + operation.hashCode();
+            result = 31 * result + (tableName != null ? tableName.hashCode() : 0);
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return layer + " " + operation + " " + (tableName == null ? "*" : tableName);
+        }
+    }
+}
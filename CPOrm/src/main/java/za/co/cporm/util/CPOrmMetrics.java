@@ -0,0 +1,26 @@
+package za.co.cporm.util;
+
+/**
+ * Receives the latency of every operation executed by the content provider and the client facade.  Implementations
+ * must be thread safe and fast, since they are called on the thread that executed the operation.
+ * Register an implementation using {@link CPOrmMetricsRegistry#setMetrics(CPOrmMetrics)}, by default nothing is recorded.
+ */
+public interface CPOrmMetrics {
+
+    /**
+     * Where the operation was measured, the provider measures only the database work while the client also includes the
+     * binder and cursor window overhead.
+     */
+    enum Layer {PROVIDER, CLIENT}
+
+    enum Operation {QUERY, INSERT, BULK_INSERT, UPDATE, DELETE, BATCH, CURSOR_FILL, INFLATE}
+
+    /**
+     * @param layer Where the operation was measured.
+     * @param operation The type of the operation.
+     * @param tableName The table the operation was executed on, or null if the operation spans tables.
+     * @param rowCount The amount of rows affected or returned, or -1 if not known.
+     * @param durationNanos The duration of the operation in nanoseconds.
+     */
+    void record(Layer layer, Operation operation, String tableName, int rowCount, long durationNanos);
+}
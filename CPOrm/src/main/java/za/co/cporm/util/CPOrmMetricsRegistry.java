@@ -0,0 +1,53 @@
+package za.co.cporm.util;
+
+/**
+ * Holds the metrics implementation operations are reported to.  Operations are measured using {@link #start()} and
+ * {@link #record(CPOrmMetrics.Layer, CPOrmMetrics.Operation, String, int, long)}, which do nothing while the
+ * {@link NoOpMetrics} is registered.
+ */
+public final class CPOrmMetricsRegistry {
+
+    private static volatile CPOrmMetrics metrics = NoOpMetrics.INSTANCE;
+
+    private CPOrmMetricsRegistry() {
+    }
+
+    public static CPOrmMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @param metrics The metrics to report to, or null to stop recording.
+     */
+    public static void setMetrics(CPOrmMetrics metrics) {
+        CPOrmMetricsRegistry.metrics = metrics == null ? NoOpMetrics.INSTANCE : metrics;
+    }
+
+    public static boolean isEnabled() {
+        return metrics != NoOpMetrics.INSTANCE;
+    }
+
+    /**
+     * @return The start time of an operation, or 0 if metrics are not recorded.
+     */
+    public static long start() {
+        return isEnabled() ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records an operation started using {@link #start()}.
+     */
+    public static void record(CPOrmMetrics.Layer layer, CPOrmMetrics.Operation operation, String tableName, int rowCount, long startNanos) {
+
+        if (startNanos == 0)
+            return;
+
+        long duration = System.nanoTime() - startNanos;
+        CPOrmMetrics current = metrics;
+        try {
+            current.record(layer, operation, tableName, rowCount, duration);
+        } catch (RuntimeException ex) {
+            CPOrmLog.e("Failed to record the metrics of " + operation, ex);
+        }
+    }
+}
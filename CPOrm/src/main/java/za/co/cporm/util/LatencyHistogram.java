@@ -0,0 +1,130 @@
+package za.co.cporm.util;
+
+/**
+ * A log linear histogram of latencies in microseconds.  Every power of two is divided into 8 buckets, so a recorded value
+ * is never more than 12.5% off, while the whole range of a long fits into less than 500 buckets.
+ * This class is not thread safe.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = SUB_BUCKET_COUNT + (64 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    private final long[] buckets = new long[BUCKET_COUNT];
+    private long count = 0;
+    private long totalMicros = 0;
+    private long minMicros = Long.MAX_VALUE;
+    private long maxMicros = 0;
+    private long totalRows = 0;
+
+    /**
+     * @param micros The latency in microseconds.
+     * @param rowCount The amount of rows of the operation, ignored if negative.
+     */
+    public void record(long micros, int rowCount) {
+
+        if (micros < 0) micros = 0;
+
+        buckets[bucketIndex(micros)]++;
+        count++;
+        totalMicros += micros;
+        if (micros < minMicros) minMicros = micros;
+        if (micros > maxMicros) maxMicros = micros;
+        if (rowCount > 0) totalRows += rowCount;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getTotalRows() {
+        return totalRows;
+    }
+
+    public long getTotalMicros() {
+        return totalMicros;
+    }
+
+    public long getMinMicros() {
+        return count == 0 ? 0 : minMicros;
+    }
+
+    public long getMaxMicros() {
+        return maxMicros;
+    }
+
+    public long getMeanMicros() {
+        return count == 0 ? 0 : totalMicros / count;
+    }
+
+    /**
+     * @param percentile The percentile between 0 and 100.
+     * @return The upper bound of the bucket the percentile falls in, never more than the maximum recorded latency.
+     */
+    public long getPercentileMicros(double percentile) {
+
+        if (percentile < 0 || percentile > 100)
+            throw new IllegalArgumentException("The percentile must be between 0 and 100");
+
+        if (count == 0)
+            return 0;
+
+        long target = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+
+            seen += buckets[i];
+            if (seen >= target)
+                return Math.min(bucketUpperBound(i), maxMicros);
+        }
+
+        return maxMicros;
+    }
+
+    /**
+     * Adds all of the values recorded in another histogram to this histogram.
+     */
+    public void add(LatencyHistogram other) {
+
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] += other.buckets[i];
+        }
+        count += other.count;
+        totalMicros += other.totalMicros;
+        totalRows += other.totalRows;
+        if (other.count > 0) {
+            minMicros = Math.min(minMicros, other.minMicros);
+            maxMicros = Math.max(maxMicros, other.maxMicros);
+        }
+    }
+
+    public LatencyHistogram copy() {
+
+        LatencyHistogram copy = new LatencyHistogram();
+        copy.add(this);
+        return copy;
+    }
+
+    static int bucketIndex(long micros) {
+
+        if (micros < SUB_BUCKET_COUNT)
+            return (int) micros;
+
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (micros >> shift) - SUB_BUCKET_COUNT;
+        return SUB_BUCKET_COUNT + shift * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    static long bucketUpperBound(int index) {
+
+        if (index < SUB_BUCKET_COUNT)
+            return index;
+
+        int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_COUNT;
+        int subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_COUNT;
+        long lowerBound = (long) (SUB_BUCKET_COUNT + subBucket) << shift;
+        return lowerBound + (1L << shift) - 1;
+    }
+}
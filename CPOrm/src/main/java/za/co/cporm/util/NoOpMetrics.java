@@ -0,0 +1,16 @@
+package za.co.cporm.util;
+
+/**
+ * The default metrics, which does not record anything.  While it is registered no timestamps are taken either.
+ */
+public final class NoOpMetrics implements CPOrmMetrics {
+
+    public static final NoOpMetrics INSTANCE = new NoOpMetrics();
+
+    private NoOpMetrics() {
+    }
+
+    @Override
+    public void record(Layer layer, Operation operation, String tableName, int rowCount, long durationNanos) {
+    }
+}
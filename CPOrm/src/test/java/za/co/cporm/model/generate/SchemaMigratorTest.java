@@ -0,0 +1,220 @@
+package za.co.cporm.model.generate;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import za.co.cporm.model.annotation.Authority;
+import za.co.cporm.model.annotation.Column.Column;
+import za.co.cporm.model.annotation.Column.PrimaryKey;
+import za.co.cporm.model.annotation.Index;
+import za.co.cporm.model.annotation.Indices;
+import za.co.cporm.model.annotation.Table;
+import za.co.cporm.test.TestFixture;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class SchemaMigratorTest {
+
+    private SQLiteDatabase db;
+
+    @Before
+    public void setUp() {
+
+        db = SQLiteDatabase.create(null);
+    }
+
+    @After
+    public void tearDown() {
+
+        db.close();
+    }
+
+    @Test
+    public void missingTablesAreCreatedOnce() {
+
+        assertEquals(1, migrate(TestFixture.Item.class));
+        assertEquals(0, migrate(TestFixture.Item.class));
+    }
+
+    @Test
+    public void optionalColumnsAreAdded() {
+
+        migrate(TestFixture.Item.class);
+        db.execSQL("INSERT INTO item (id, name) VALUES (1, 'first')");
+
+        assertEquals(1, migrate(DescribedItem.class));
+        assertEquals(0, migrate(DescribedItem.class));
+        assertEquals("first", queryName(1));
+        assertTrue(hasColumn("description"));
+    }
+
+    @Test
+    public void removedColumnsRebuildTheTableAndKeepTheRows() {
+
+        migrate(DescribedItem.class);
+        db.execSQL("INSERT INTO item (id, name, description) VALUES (1, 'first', 'removed')");
+
+        assertEquals(1, migrate(TestFixture.Item.class));
+        assertEquals(0, migrate(TestFixture.Item.class));
+        assertEquals("first", queryName(1));
+        assertTrue(!hasColumn("description"));
+    }
+
+    @Test
+    public void changedColumnTypesRebuildTheTable() {
+
+        migrate(TestFixture.Item.class);
+        db.execSQL("INSERT INTO item (id, name) VALUES (1, 'first')");
+
+        assertEquals(1, migrate(NumberedItem.class));
+        assertEquals(0, migrate(NumberedItem.class));
+        assertEquals("first", queryName(1));
+    }
+
+    @Test
+    public void requiredColumnsRebuildTheTableAndKeepTheRows() {
+
+        migrate(TestFixture.Item.class);
+        db.execSQL("INSERT INTO item (id, name) VALUES (1, 'first')");
+
+        assertEquals(1, migrate(CodedItem.class));
+        assertEquals(0, migrate(CodedItem.class));
+        assertEquals("first", queryName(1));
+        assertEquals("", queryString("code", 1));
+    }
+
+    @Test
+    public void columnsThatBecomeRequiredReplaceNulls() {
+
+        migrate(DescribedItem.class);
+        db.execSQL("INSERT INTO item (id, name, description) VALUES (1, 'first', NULL)");
+        db.execSQL("INSERT INTO item (id, name, description) VALUES (2, 'second', 'kept')");
+
+        assertEquals(1, migrate(RequiredDescribedItem.class));
+        assertEquals(0, migrate(RequiredDescribedItem.class));
+        assertEquals("", queryString("description", 1));
+        assertEquals("kept", queryString("description", 2));
+    }
+
+    @Test
+    public void indicesAreCreatedAndDropped() {
+
+        migrate(TestFixture.Item.class);
+
+        assertEquals(1, migrate(IndexedItem.class));
+        assertEquals(0, migrate(IndexedItem.class));
+        assertEquals(1, migrate(TestFixture.Item.class));
+        assertEquals(0, migrate(TestFixture.Item.class));
+    }
+
+    private int migrate(Class<?> dataModel) {
+
+        TableDetails tableDetails = TestFixture.getTableDetails(dataModel);
+        return new SchemaMigrator(db, false, null).migrate(Collections.singletonList(tableDetails));
+    }
+
+    private String queryName(long id) {
+
+        return queryString("name", id);
+    }
+
+    private String queryString(String columnName, long id) {
+
+        Cursor cursor = db.rawQuery("SELECT " + columnName + " FROM item WHERE id = ?", new String[]{String.valueOf(id)});
+        try {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private boolean hasColumn(String columnName) {
+
+        Cursor cursor = db.rawQuery("SELECT * FROM item LIMIT 0", null);
+        try {
+            return cursor.getColumnIndex(columnName) != -1;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Table(tableName = "item")
+    @Authority(TestFixture.AUTHORITY)
+    public static class DescribedItem {
+
+        @Column
+        @PrimaryKey(autoIncrement = false)
+        private Long id;
+
+        @Column
+        private String name;
+
+        @Column(required = false)
+        private String description;
+    }
+
+    @Table(tableName = "item")
+    @Authority(TestFixture.AUTHORITY)
+    public static class RequiredDescribedItem {
+
+        @Column
+        @PrimaryKey(autoIncrement = false)
+        private Long id;
+
+        @Column
+        private String name;
+
+        @Column
+        private String description;
+    }
+
+    @Table(tableName = "item")
+    @Authority(TestFixture.AUTHORITY)
+    public static class CodedItem {
+
+        @Column
+        @PrimaryKey(autoIncrement = false)
+        private Long id;
+
+        @Column
+        private String name;
+
+        @Column
+        private String code;
+    }
+
+    @Table(tableName = "item")
+    @Authority(TestFixture.AUTHORITY)
+    public static class NumberedItem {
+
+        @Column
+        @PrimaryKey(autoIncrement = false)
+        private Long id;
+
+        @Column
+        private Long name;
+    }
+
+    @Table(tableName = "item")
+    @Authority(TestFixture.AUTHORITY)
+    @Indices(indices = {@Index(indexName = "name", indexColumns = {"name"})})
+    public static class IndexedItem {
+
+        @Column
+        @PrimaryKey(autoIncrement = false)
+        private Long id;
+
+        @Column
+        private String name;
+    }
+}
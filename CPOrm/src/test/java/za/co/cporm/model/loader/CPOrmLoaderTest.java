@@ -0,0 +1,103 @@
+package za.co.cporm.model.loader;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import za.co.cporm.model.query.Select;
+import za.co.cporm.test.TestFixture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class CPOrmLoaderTest {
+
+    private static volatile long queryDelayMillis;
+
+    @Before
+    public void setUp() {
+
+        Robolectric.buildContentProvider(SlowProvider.class).create(TestFixture.AUTHORITY);
+    }
+
+    @Test
+    public void timedOutLoadsDeliverNullInsteadOfThrowing() {
+
+        queryDelayMillis = 500;
+        CPOrmLoader<TestFixture.Item> loader = new CPOrmLoader<TestFixture.Item>(RuntimeEnvironment.application, Select.from(TestFixture.Item.class).timeout(50));
+
+        assertNull(loader.loadInBackground());
+        assertTrue(loader.isTimedOut());
+    }
+
+    @Test
+    public void loadsWithinTheTimeoutReturnTheCursor() {
+
+        queryDelayMillis = 0;
+        CPOrmLoader<TestFixture.Item> loader = new CPOrmLoader<TestFixture.Item>(RuntimeEnvironment.application, Select.from(TestFixture.Item.class).timeout(10000));
+
+        Cursor cursor = loader.loadInBackground();
+        try {
+            assertNotNull(cursor);
+            assertEquals(1, cursor.getCount());
+            assertFalse(loader.isTimedOut());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public static class SlowProvider extends ContentProvider {
+
+        @Override
+        public boolean onCreate() {
+            return true;
+        }
+
+        @Override
+        public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+
+            try {
+                Thread.sleep(queryDelayMillis);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+
+            MatrixCursor cursor = new MatrixCursor(new String[]{"id", "name"});
+            cursor.addRow(new Object[]{1L, "first"});
+            return cursor;
+        }
+
+        @Override
+        public String getType(Uri uri) {
+            return null;
+        }
+
+        @Override
+        public Uri insert(Uri uri, ContentValues values) {
+            return null;
+        }
+
+        @Override
+        public int delete(Uri uri, String selection, String[] selectionArgs) {
+            return 0;
+        }
+
+        @Override
+        public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package za.co.cporm.model.map.types;
+
+import android.content.ContentValues;
+import android.database.MatrixCursor;
+import android.os.Bundle;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import za.co.cporm.model.CPOrmBlob;
+import za.co.cporm.model.annotation.Authority;
+import za.co.cporm.model.annotation.Column.Column;
+import za.co.cporm.model.annotation.Column.PrimaryKey;
+import za.co.cporm.model.annotation.Table;
+import za.co.cporm.model.generate.TableDetails;
+import za.co.cporm.model.util.ModelInflater;
+import za.co.cporm.test.TestFixture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class BlobTypeTest {
+
+    private TableDetails tableDetails;
+
+    @Before
+    public void setUp() {
+
+        tableDetails = TestFixture.getTableDetails(Document.class);
+    }
+
+    @Test
+    public void unsetBlobIsStoredAsNull() {
+
+        Document document = new Document();
+        document.id = 1L;
+
+        ContentValues contentValues = ModelInflater.deflate(tableDetails, document);
+
+        assertTrue(contentValues.containsKey("content"));
+        assertNull(contentValues.get("content"));
+        assertNull(new BlobType().toSqlType(null));
+    }
+
+    @Test
+    public void nullColumnIsInflatedAsUnsetBlob() {
+
+        MatrixCursor cursor = new MatrixCursor(new String[]{"id", "content"});
+        cursor.addRow(new Object[]{1L, null});
+        cursor.moveToFirst();
+
+        Document document = ModelInflater.inflate(cursor, tableDetails);
+
+        assertNull(document.content);
+        assertNull(new BlobType().getColumnValue(cursor, 1));
+    }
+
+    @Test
+    public void missingOrNullBundleValueIsUnsetBlob() {
+
+        Bundle bundle = new Bundle();
+        assertNull(new BlobType().getColumnValue(bundle, "content"));
+
+        bundle.putString("content", null);
+        assertNull(new BlobType().getColumnValue(bundle, "content"));
+
+        Document document = ModelInflater.inflate(bundle, tableDetails);
+        assertNull(document.content);
+    }
+
+    @Test
+    public void setBlobIsStoredById() {
+
+        Document document = new Document();
+        document.id = 1L;
+        document.content = CPOrmBlob.create();
+
+        ContentValues contentValues = ModelInflater.deflate(tableDetails, document);
+
+        assertEquals(document.content.getId(), contentValues.getAsString("content"));
+    }
+
+    @Table
+    @Authority(TestFixture.AUTHORITY)
+    public static class Document {
+
+        @Column
+        @PrimaryKey(autoIncrement = false)
+        private Long id;
+
+        @Column
+        private CPOrmBlob content;
+    }
+}
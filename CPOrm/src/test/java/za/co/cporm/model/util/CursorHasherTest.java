@@ -0,0 +1,74 @@
+package za.co.cporm.model.util;
+
+import android.database.MatrixCursor;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class CursorHasherTest {
+
+    @Test
+    public void equalRowsHaveEqualHashes() {
+
+        assertEquals(hash(1L, "name", 2.5, new byte[]{1, 2}, null), hash(1L, "name", 2.5, new byte[]{1, 2}, null));
+    }
+
+    @Test
+    public void emptyValuesOfDifferentTypesHashDifferently() {
+
+        Set<Long> hashes = new HashSet<Long>();
+        hashes.add(hash((Object) null));
+        hashes.add(hash(0L));
+        hashes.add(hash(0.0));
+        hashes.add(hash(""));
+        hashes.add(hash((Object) new byte[0]));
+
+        assertEquals(5, hashes.size());
+    }
+
+    @Test
+    public void valuesThatCollideWithAPolynomialHashDiffer() {
+
+        //31 * (31 + 0) + 31 == 31 * (31 + 1) + 0
+        assertNotEquals(hash(0L, 31L), hash(1L, 0L));
+        //"Aa" and "BB" have the same String.hashCode()
+        assertNotEquals(hash("Aa"), hash("BB"));
+    }
+
+    @Test
+    public void swappedValuesHashDifferently() {
+
+        assertNotEquals(hash("a", "b"), hash("b", "a"));
+        assertNotEquals(hash(1L, 2L), hash(2L, 1L));
+    }
+
+    @Test
+    public void valuesThatOnlyDifferInLengthHashDifferently() {
+
+        assertNotEquals(hash("a"), hash("a\u0000"));
+        assertNotEquals(hash((Object) new byte[]{1}), hash((Object) new byte[]{0, 1}));
+        assertNotEquals(hash(1L), hash(1L, null));
+    }
+
+    private static long hash(Object... values) {
+
+        String[] columns = new String[values.length];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = "column" + i;
+        }
+
+        MatrixCursor cursor = new MatrixCursor(columns);
+        cursor.addRow(values);
+        cursor.moveToFirst();
+        return CursorHasher.hashRow(cursor);
+    }
+}
@@ -0,0 +1,112 @@
+package za.co.cporm.model.util;
+
+import android.database.MatrixCursor;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import za.co.cporm.model.generate.TableDetails;
+import za.co.cporm.test.TestFixture;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class ResultDiffTest {
+
+    private TableDetails tableDetails;
+
+    @Before
+    public void setUp() {
+
+        tableDetails = TestFixture.getTableDetails(TestFixture.Item.class);
+    }
+
+    @Test
+    public void equalResultsHaveNoDifferences() {
+
+        ResultSnapshot oldSnapshot = snapshot(1L, "a", 2L, "b");
+        ResultSnapshot newSnapshot = snapshot(1L, "a", 2L, "b");
+
+        ResultDiff diff = ResultDiff.calculate(oldSnapshot, newSnapshot);
+
+        assertTrue(diff.isEmpty());
+        assertTrue(oldSnapshot.contentEquals(newSnapshot));
+    }
+
+    @Test
+    public void insertedAndRemovedRowsAreFound() {
+
+        ResultDiff diff = ResultDiff.calculate(snapshot(1L, "a", 2L, "b", 3L, "c"), snapshot(1L, "a", 3L, "c", 4L, "d"));
+
+        assertFalse(diff.isEmpty());
+        assertArrayEquals(new int[]{1}, diff.getRemovedPositions());
+        assertArrayEquals(new int[]{2}, diff.getInsertedPositions());
+        assertArrayEquals(new int[0], diff.getMovedFromPositions());
+        assertArrayEquals(new int[0], diff.getChangedPositions());
+    }
+
+    @Test
+    public void changedRowsAreFoundAtTheirNewPosition() {
+
+        ResultDiff diff = ResultDiff.calculate(snapshot(1L, "a", 2L, "b"), snapshot(0L, "z", 1L, "a", 2L, "changed"));
+
+        assertArrayEquals(new int[]{0}, diff.getInsertedPositions());
+        assertArrayEquals(new int[]{2}, diff.getChangedPositions());
+    }
+
+    @Test
+    public void onlyTheFewestRowsAreMoved() {
+
+        ResultDiff diff = ResultDiff.calculate(snapshot(1L, "a", 2L, "b", 3L, "c"), snapshot(3L, "c", 1L, "a", 2L, "b"));
+
+        assertArrayEquals(new int[]{2}, diff.getMovedFromPositions());
+        assertArrayEquals(new int[]{0}, diff.getMovedToPositions());
+        assertArrayEquals(new int[0], diff.getChangedPositions());
+    }
+
+    @Test
+    public void rowsWithoutPrimaryKeyAreMatchedByPosition() {
+
+        ResultDiff diff = ResultDiff.calculate(nameSnapshot("a", "b"), nameSnapshot("a", "c", "d"));
+
+        assertArrayEquals(new int[]{1}, diff.getChangedPositions());
+        assertArrayEquals(new int[]{2}, diff.getInsertedPositions());
+        assertArrayEquals(new int[0], diff.getRemovedPositions());
+    }
+
+    @Test
+    public void emptySnapshotRemovesAllRows() {
+
+        ResultDiff diff = ResultDiff.calculate(snapshot(1L, "a", 2L, "b"), ResultSnapshot.EMPTY);
+
+        assertArrayEquals(new int[]{0, 1}, diff.getRemovedPositions());
+        assertArrayEquals(new int[0], diff.getInsertedPositions());
+    }
+
+    /**
+     * @param values The id and name of every row.
+     */
+    private ResultSnapshot snapshot(Object... values) {
+
+        MatrixCursor cursor = new MatrixCursor(new String[]{"id", "name"});
+        for (int i = 0; i < values.length; i += 2) {
+            cursor.addRow(new Object[]{values[i], values[i + 1]});
+        }
+
+        return ResultSnapshot.create(cursor, tableDetails);
+    }
+
+    private ResultSnapshot nameSnapshot(String... names) {
+
+        MatrixCursor cursor = new MatrixCursor(new String[]{"name"});
+        for (String name : names) {
+            cursor.addRow(new Object[]{name});
+        }
+
+        return ResultSnapshot.create(cursor, tableDetails);
+    }
+}
@@ -0,0 +1,130 @@
+package za.co.cporm.provider.util;
+
+import android.content.ContentValues;
+import android.os.Bundle;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class ColumnarValuesTest {
+
+    @Test
+    public void primitiveValuesRoundTrip() {
+
+        ContentValues first = new ContentValues();
+        first.put("id", 1L);
+        first.put("price", 2.5);
+        first.put("name", "first");
+        first.put("active", true);
+        ContentValues second = new ContentValues();
+        second.put("id", 2L);
+        second.putNull("price");
+        second.putNull("name");
+        second.put("active", false);
+
+        ContentValues[] rows = roundTrip(first, second);
+
+        assertEquals(2, rows.length);
+        assertEquals(1L, rows[0].getAsLong("id").longValue());
+        assertEquals(2.5, rows[0].getAsDouble("price"), 0);
+        assertEquals("first", rows[0].getAsString("name"));
+        assertEquals(1L, rows[0].getAsLong("active").longValue());
+        assertEquals(2L, rows[1].getAsLong("id").longValue());
+        assertTrue(rows[1].containsKey("price"));
+        assertNull(rows[1].get("price"));
+        assertTrue(rows[1].containsKey("name"));
+        assertNull(rows[1].get("name"));
+        assertEquals(0L, rows[1].getAsLong("active").longValue());
+    }
+
+    @Test
+    public void blobsRoundTrip() {
+
+        ContentValues first = new ContentValues();
+        first.put("data", new byte[]{1, 2, 3});
+        ContentValues empty = new ContentValues();
+        empty.put("data", new byte[0]);
+        ContentValues nullBlob = new ContentValues();
+        nullBlob.putNull("data");
+        ContentValues last = new ContentValues();
+        last.put("data", new byte[]{4});
+
+        ContentValues[] rows = roundTrip(first, empty, nullBlob, last);
+
+        assertArrayEquals(new byte[]{1, 2, 3}, rows[0].getAsByteArray("data"));
+        assertArrayEquals(new byte[0], rows[1].getAsByteArray("data"));
+        assertTrue(rows[2].containsKey("data"));
+        assertNull(rows[2].get("data"));
+        assertArrayEquals(new byte[]{4}, rows[3].getAsByteArray("data"));
+    }
+
+    @Test
+    public void blobsAreNotSerialized() {
+
+        ContentValues row = new ContentValues();
+        row.put("data", new byte[]{1, 2});
+        Bundle bundle = new Bundle();
+        ColumnarValues.write(bundle, new ContentValues[]{row});
+
+        for (String key : bundle.keySet()) {
+            assertFalse(bundle.get(key) instanceof byte[][]);
+        }
+    }
+
+    @Test
+    public void rowsWithDifferentColumnsKeepTheirOwnColumns() {
+
+        ContentValues first = new ContentValues();
+        first.put("id", 1L);
+        ContentValues second = new ContentValues();
+        second.put("id", 2L);
+        second.put("name", "second");
+        ContentValues third = new ContentValues();
+        third.put("data", new byte[]{5});
+
+        ContentValues[] rows = roundTrip(first, second, third);
+
+        assertEquals(1, rows[0].size());
+        assertEquals(1L, rows[0].getAsLong("id").longValue());
+        assertEquals(2, rows[1].size());
+        assertEquals("second", rows[1].getAsString("name"));
+        assertEquals(1, rows[2].size());
+        assertArrayEquals(new byte[]{5}, rows[2].getAsByteArray("data"));
+    }
+
+    @Test
+    public void mixedValueTypesRoundTrip() {
+
+        ContentValues first = new ContentValues();
+        first.put("value", 1L);
+        ContentValues second = new ContentValues();
+        second.put("value", "text");
+
+        ContentValues[] rows = roundTrip(first, second);
+
+        assertEquals(1L, rows[0].getAsLong("value").longValue());
+        assertEquals("text", rows[1].getAsString("value"));
+    }
+
+    @Test
+    public void emptyRowsRoundTrip() {
+
+        assertEquals(0, roundTrip().length);
+    }
+
+    private static ContentValues[] roundTrip(ContentValues... rows) {
+
+        Bundle bundle = new Bundle();
+        ColumnarValues.write(bundle, rows);
+        return ColumnarValues.read(bundle);
+    }
+}
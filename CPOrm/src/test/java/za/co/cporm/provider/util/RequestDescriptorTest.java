@@ -0,0 +1,35 @@
+package za.co.cporm.provider.util;
+
+import android.net.Uri;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class RequestDescriptorTest {
+
+    @Test
+    public void singleItemRequestsShareTheCacheKey() {
+
+        assertEquals(cacheKey("content://za.co.cporm.test/item/1"), cacheKey("content://za.co.cporm.test/item/2"));
+        assertEquals(cacheKey("content://za.co.cporm.test/item/1?SYNC=false"), cacheKey("content://za.co.cporm.test/item/2?SYNC=false"));
+    }
+
+    @Test
+    public void tablesAndQueriesHaveTheirOwnCacheKey() {
+
+        assertNotEquals(cacheKey("content://za.co.cporm.test/item"), cacheKey("content://za.co.cporm.test/item/1"));
+        assertNotEquals(cacheKey("content://za.co.cporm.test/item/1"), cacheKey("content://za.co.cporm.test/item/1?SYNC=false"));
+        assertNotEquals(cacheKey("content://za.co.cporm.test/item"), cacheKey("content://za.co.cporm.test/other"));
+    }
+
+    private static String cacheKey(String uri) {
+
+        return RequestDescriptor.createCacheKey(Uri.parse(uri));
+    }
+}
@@ -0,0 +1,115 @@
+package za.co.cporm.provider.util;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import za.co.cporm.model.generate.TableDetails;
+import za.co.cporm.test.TestFixture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class RowCacheTest {
+
+    private TableDetails tableDetails;
+    private RowCache rowCache;
+
+    @Before
+    public void setUp() {
+
+        tableDetails = TestFixture.getTableDetails(TestFixture.Item.class);
+        rowCache = new RowCache();
+    }
+
+    @Test
+    public void cachedRowsAreReturned() {
+
+        rowCache.put(tableDetails, "1", row(1L, "first"), rowCache.getGeneration(tableDetails));
+
+        Cursor cursor = rowCache.get(tableDetails, "1", new String[]{"name"});
+
+        assertNotNull(cursor);
+        assertTrue(cursor.moveToFirst());
+        assertEquals("first", cursor.getString(0));
+        assertEquals(1, rowCache.getStatistics(tableDetails).getHits());
+        assertTrue(RowCache.isCached(tableDetails));
+    }
+
+    @Test
+    public void rowsReadBeforeAnInvalidationAreNotAdded() {
+
+        long generation = rowCache.getGeneration(tableDetails);
+        rowCache.invalidate(tableDetails.getTableName(), new String[]{"1"});
+
+        rowCache.put(tableDetails, "1", row(1L, "stale"), generation);
+
+        assertNull(rowCache.get(tableDetails, "1", null));
+        assertEquals(1, rowCache.getStatistics(tableDetails).getMisses());
+    }
+
+    @Test
+    public void invalidationOnlyRemovesTheChangedRows() {
+
+        long generation = rowCache.getGeneration(tableDetails);
+        rowCache.put(tableDetails, "1", row(1L, "first"), generation);
+        rowCache.put(tableDetails, "2", row(2L, "second"), generation);
+
+        rowCache.invalidate(tableDetails.getTableName(), new String[]{"1"});
+
+        assertNull(rowCache.get(tableDetails, "1", null));
+        assertNotNull(rowCache.get(tableDetails, "2", null));
+        assertTrue(rowCache.getGeneration(tableDetails) > generation);
+    }
+
+    @Test
+    public void nonCanonicalKeysAreNotCachedAndInvalidateAllRows() {
+
+        long generation = rowCache.getGeneration(tableDetails);
+        rowCache.put(tableDetails, "05", row(5L, "five"), generation);
+        rowCache.put(tableDetails, "1", row(1L, "first"), generation);
+
+        assertNull(rowCache.get(tableDetails, "05", null));
+        assertNotNull(rowCache.get(tableDetails, "1", null));
+
+        rowCache.invalidate(tableDetails.getTableName(), new String[]{"01"});
+
+        assertNull(rowCache.get(tableDetails, "1", null));
+    }
+
+    @Test
+    public void clearRemovesAllRowsAndAdvancesTheGeneration() {
+
+        long generation = rowCache.getGeneration(tableDetails);
+        rowCache.put(tableDetails, "1", row(1L, "first"), generation);
+
+        rowCache.clear();
+        rowCache.put(tableDetails, "2", row(2L, "second"), generation);
+
+        assertNull(rowCache.get(tableDetails, "1", null));
+        assertNull(rowCache.get(tableDetails, "2", null));
+    }
+
+    @Test
+    public void projectionsWithUnknownColumnsAreMisses() {
+
+        rowCache.put(tableDetails, "1", row(1L, "first"), rowCache.getGeneration(tableDetails));
+
+        assertNull(rowCache.get(tableDetails, "1", new String[]{"missing"}));
+    }
+
+    private static RowCache.CachedRow row(long id, String name) {
+
+        MatrixCursor cursor = new MatrixCursor(new String[]{"id", "name"});
+        cursor.addRow(new Object[]{id, name});
+        cursor.moveToFirst();
+        return RowCache.readRow(cursor);
+    }
+}
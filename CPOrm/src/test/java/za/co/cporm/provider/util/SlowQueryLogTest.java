@@ -0,0 +1,86 @@
+package za.co.cporm.provider.util;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import za.co.cporm.util.CPOrmMetrics;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class SlowQueryLogTest {
+
+    private static final long NEVER_SLOW_MILLIS = 60 * 60 * 1000;
+
+    @Test
+    public void literalsAreReplacedWithPlaceholders() {
+
+        assertEquals("SELECT * FROM item WHERE id = ? AND name = ? AND data = ? AND price > ?",
+                SlowQueryLog.fingerprint("SELECT * FROM item WHERE id = 5 AND name = 'it''s' AND data = x'0AFF' AND price > 1.5e3"));
+    }
+
+    @Test
+    public void identifiersWithDigitsAreKept() {
+
+        assertEquals("SELECT column1 FROM table2 WHERE id = ?", SlowQueryLog.fingerprint("SELECT column1 FROM table2 WHERE id = 12"));
+    }
+
+    @Test
+    public void inListsAreCollapsed() {
+
+        assertEquals("DELETE FROM item WHERE id IN (...)", SlowQueryLog.fingerprint("DELETE FROM item WHERE id IN (1, 2,3)"));
+        assertEquals(SlowQueryLog.fingerprint("DELETE FROM item WHERE id in (?)"), SlowQueryLog.fingerprint("DELETE FROM item WHERE id in (?, ?, ?)"));
+    }
+
+    @Test
+    public void whitespaceIsCollapsed() {
+
+        assertEquals("SELECT * FROM item", SlowQueryLog.fingerprint("  SELECT  *\n\tFROM item "));
+        assertEquals("", SlowQueryLog.fingerprint(null));
+    }
+
+    @Test
+    public void queriesWithTheSameShapeShareStatistics() {
+
+        SlowQueryLog slowQueryLog = new SlowQueryLog(NEVER_SLOW_MILLIS, SlowQueryLog.DEFAULT_CAPACITY);
+        record(slowQueryLog, "SELECT * FROM item WHERE id = 1", 1);
+        record(slowQueryLog, "SELECT * FROM item WHERE id = 2", 3);
+
+        List<SlowQueryLog.FingerprintStats> fingerprints = slowQueryLog.getTopFingerprints(10);
+
+        assertEquals(1, fingerprints.size());
+        assertEquals("SELECT * FROM item WHERE id = ?", fingerprints.get(0).getFingerprint());
+        assertEquals(2, fingerprints.get(0).getCount());
+        assertEquals(0, fingerprints.get(0).getSlowCount());
+        assertEquals(4, fingerprints.get(0).getTotalRows());
+        assertTrue(slowQueryLog.getEntries().isEmpty());
+    }
+
+    @Test
+    public void fingerprintsAboveTheLimitAreCombined() {
+
+        SlowQueryLog slowQueryLog = new SlowQueryLog(NEVER_SLOW_MILLIS, SlowQueryLog.DEFAULT_CAPACITY);
+        int extraFingerprints = 10;
+        for (int i = 0; i < SlowQueryLog.MAX_FINGERPRINTS + extraFingerprints; i++) {
+            record(slowQueryLog, "SELECT column" + i + " FROM item", 1);
+        }
+
+        List<SlowQueryLog.FingerprintStats> fingerprints = slowQueryLog.getTopFingerprints(Integer.MAX_VALUE);
+
+        assertEquals(SlowQueryLog.MAX_FINGERPRINTS + 1, fingerprints.size());
+        for (SlowQueryLog.FingerprintStats stats : fingerprints) {
+            if (SlowQueryLog.OTHER_FINGERPRINT.equals(stats.getFingerprint()))
+                assertEquals(extraFingerprints, stats.getCount());
+        }
+    }
+
+    private static void record(SlowQueryLog slowQueryLog, String sql, int rowCount) {
+
+        slowQueryLog.record(null, CPOrmMetrics.Operation.QUERY, "item", sql, 0, rowCount, slowQueryLog.start());
+    }
+}
@@ -0,0 +1,74 @@
+package za.co.cporm.provider.util;
+
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class StatementCacheTest {
+
+    private static final String INSERT_SQL = "INSERT INTO item (id, name) VALUES (?, ?)";
+    private static final String DELETE_SQL = "DELETE FROM item WHERE id = ?";
+
+    private SQLiteDatabase db;
+    private StatementCache statementCache;
+
+    @Before
+    public void setUp() {
+
+        db = SQLiteDatabase.create(null);
+        db.execSQL("CREATE TABLE item (id INTEGER PRIMARY KEY, name TEXT)");
+        statementCache = new StatementCache(StatementCache.DEFAULT_MAX_STATEMENTS);
+    }
+
+    @After
+    public void tearDown() {
+
+        statementCache.clear();
+        db.close();
+    }
+
+    @Test
+    public void compiledStatementsAreReused() {
+
+        assertEquals(1, statementCache.executeInsert(db, "item", INSERT_SQL, new Object[]{1L, "first"}));
+        assertEquals(2, statementCache.executeInsert(db, "item", INSERT_SQL, new Object[]{2L, "second"}));
+        assertEquals(1, statementCache.executeUpdateDelete(db, "item", DELETE_SQL, new Object[]{1L}));
+
+        StatementCache.Statistics statistics = statementCache.getStatistics("item");
+        assertEquals(1, statistics.getHits());
+        assertEquals(2, statistics.getMisses());
+        assertEquals(1, DatabaseUtils.queryNumEntries(db, "item"));
+    }
+
+    @Test
+    public void boundArgumentsAreNotReused() {
+
+        statementCache.executeInsert(db, "item", INSERT_SQL, new Object[]{1L, "first"});
+        statementCache.executeInsert(db, "item", INSERT_SQL, new Object[]{2L, null});
+
+        assertEquals(1, DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM item WHERE name IS NULL", null));
+    }
+
+    @Test
+    public void leastRecentlyUsedSqlIsEvicted() {
+
+        StatementCache smallCache = new StatementCache(1);
+        smallCache.executeInsert(db, "item", INSERT_SQL, new Object[]{1L, "first"});
+        smallCache.executeUpdateDelete(db, "item", DELETE_SQL, new Object[]{1L});
+        smallCache.executeInsert(db, "item", INSERT_SQL, new Object[]{1L, "first"});
+
+        StatementCache.Statistics statistics = smallCache.getStatistics();
+        assertEquals(0, statistics.getHits());
+        assertEquals(2, statistics.getEvictions());
+        smallCache.clear();
+    }
+}
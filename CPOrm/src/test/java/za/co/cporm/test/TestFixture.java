@@ -0,0 +1,40 @@
+package za.co.cporm.test;
+
+import org.robolectric.RuntimeEnvironment;
+import za.co.cporm.model.annotation.Authority;
+import za.co.cporm.model.annotation.Column.Column;
+import za.co.cporm.model.annotation.Column.PrimaryKey;
+import za.co.cporm.model.annotation.Table;
+import za.co.cporm.model.generate.ReflectionHelper;
+import za.co.cporm.model.generate.TableDetails;
+
+/**
+ * The model and helpers shared by the unit tests, test models use the {@link #AUTHORITY} authority.
+ */
+public final class TestFixture {
+
+    public static final String AUTHORITY = "za.co.cporm.test";
+
+    private TestFixture() {
+    }
+
+    /**
+     * @return The table details of the model, using the Robolectric application context.
+     */
+    public static TableDetails getTableDetails(Class<?> dataModel) {
+
+        return ReflectionHelper.getTableDetails(RuntimeEnvironment.application, dataModel);
+    }
+
+    @Table(tableName = "item", rowCacheSize = 4096)
+    @Authority(AUTHORITY)
+    public static class Item {
+
+        @Column
+        @PrimaryKey(autoIncrement = false)
+        private Long id;
+
+        @Column
+        private String name;
+    }
+}
@@ -0,0 +1,91 @@
+package za.co.cporm.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void emptyHistogramReportsZero() {
+
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMinMicros());
+        assertEquals(0, histogram.getMeanMicros());
+        assertEquals(0, histogram.getPercentileMicros(99));
+    }
+
+    @Test
+    public void bucketsAreWithinTheRelativeError() {
+
+        long[] values = {0, 1, 7, 8, 9, 15, 16, 100, 1000, 123456, 987654321L, Long.MAX_VALUE / 3, Long.MAX_VALUE};
+        int previousIndex = -1;
+        for (long value : values) {
+
+            int index = LatencyHistogram.bucketIndex(value);
+            long upperBound = LatencyHistogram.bucketUpperBound(index);
+
+            assertTrue(index >= previousIndex);
+            assertTrue(upperBound >= value);
+            assertTrue(upperBound - value <= value / 8);
+            previousIndex = index;
+        }
+    }
+
+    @Test
+    public void percentilesAreWithinTheRelativeError() {
+
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i, 1);
+        }
+
+        long median = histogram.getPercentileMicros(50);
+        assertTrue(median >= 500 && median <= 500 + 500 / 8);
+        assertEquals(1000, histogram.getPercentileMicros(100));
+        assertEquals(1, histogram.getMinMicros());
+        assertEquals(1000, histogram.getMaxMicros());
+        assertEquals(500, histogram.getMeanMicros());
+        assertEquals(1000, histogram.getTotalRows());
+    }
+
+    @Test
+    public void negativeLatenciesAndRowCountsAreClamped() {
+
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5, -1);
+
+        assertEquals(1, histogram.getCount());
+        assertEquals(0, histogram.getMaxMicros());
+        assertEquals(0, histogram.getTotalRows());
+    }
+
+    @Test
+    public void addedHistogramsAreMerged() {
+
+        LatencyHistogram first = new LatencyHistogram();
+        first.record(10, 1);
+        LatencyHistogram second = new LatencyHistogram();
+        second.record(2000, 3);
+
+        LatencyHistogram merged = first.copy();
+        merged.add(second);
+        merged.add(new LatencyHistogram());
+
+        assertEquals(2, merged.getCount());
+        assertEquals(10, merged.getMinMicros());
+        assertEquals(2000, merged.getMaxMicros());
+        assertEquals(4, merged.getTotalRows());
+        assertEquals(2000, merged.getPercentileMicros(100));
+        assertEquals(1, first.getCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void percentilesAboveOneHundredAreRejected() {
+
+        new LatencyHistogram().getPercentileMicros(101);
+    }
+}
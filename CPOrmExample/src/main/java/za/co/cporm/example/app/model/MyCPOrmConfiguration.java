@@ -3,6 +3,8 @@ package za.co.cporm.example.app.model;
 import za.co.cporm.example.app.model.domain.Role;
 import za.co.cporm.example.app.model.domain.User;
 import za.co.cporm.model.CPOrmConfiguration;
+import za.co.cporm.model.CPOrmTuningProfile;
+import za.co.cporm.model.CPOrmTuningProvider;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -10,7 +12,7 @@ import java.util.List;
 /**
  * Created by hennie.brink on 2015-03-20.
  */
-public class MyCPOrmConfiguration implements CPOrmConfiguration {
+public class MyCPOrmConfiguration implements CPOrmConfiguration, CPOrmTuningProvider {
 
     @Override
     public String getDatabaseName() {
@@ -48,4 +50,10 @@ public class MyCPOrmConfiguration implements CPOrmConfiguration {
 
         return domainObjects;
     }
+
+    @Override
+    public CPOrmTuningProfile getTuningProfile() {
+
+        return CPOrmTuningProfile.READ_HEAVY_UI;
+    }
 }